@@ -0,0 +1,102 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Inputs shared by the benchmarks: the query files the correctness tests use, and the
+ * map data. Paths are relative to the project directory, where the jmh profile runs.
+ */
+final class BenchmarkData {
+    /** OSM data the tests use; the full Berkeley map is not checked in. */
+    static final String OSM_FULL = "../library-sp18/data/berkeley-2018.osm.xml";
+    static final String OSM_SMALL = "../library-sp18/data/berkeley-2018-small.osm.xml";
+    static final String IMG_ROOT = "data/proj3_imgs/";
+    static final String WORDS = "data/words.txt";
+    private static final String PATH_PARAMS = "path_params.txt";
+    private static final String RASTER_PARAMS = "raster_params.txt";
+    private static final String SYNTHETIC = "synthetic-";
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Reads path_params.txt.
+     * @return one {start_lon, start_lat, end_lon, end_lat} per query
+     */
+    static List<double[]> pathQueries() throws IOException {
+        return numbers(PATH_PARAMS, 4);
+    }
+
+    /**
+     * Reads raster_params.txt.
+     * @return one Rasterer parameter map per query
+     */
+    static List<Map<String, Double>> rasterQueries() throws IOException {
+        String[] keys = {"ullon", "ullat", "lrlon", "lrlat", "w", "h"};
+        List<Map<String, Double>> queries = new ArrayList<>();
+        for (double[] q : numbers(RASTER_PARAMS, keys.length)) {
+            Map<String, Double> params = new HashMap<>();
+            for (int i = 0; i < keys.length; i++) {
+                params.put(keys[i], q[i]);
+            }
+            queries.add(params);
+        }
+        return queries;
+    }
+
+    /**
+     * Reads a parameter file of one number per line, skipping '#' comments, in groups of
+     * n lines.
+     */
+    private static List<double[]> numbers(String file, int n) throws IOException {
+        List<String> lines = Files.readAllLines(Paths.get(file), Charset.defaultCharset());
+        List<double[]> groups = new ArrayList<>();
+        double[] group = new double[n];
+        int filled = 0;
+        for (String line : lines) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            group[filled++] = Double.parseDouble(line);
+            if (filled == n) {
+                groups.add(group);
+                group = new double[n];
+                filled = 0;
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * Returns OSM_FULL if it is present and OSM_SMALL otherwise.
+     */
+    static String defaultOsm() {
+        return Files.isRegularFile(Paths.get(OSM_FULL)) ? OSM_FULL : OSM_SMALL;
+    }
+
+    /**
+     * Resolves the value of an osm benchmark parameter.
+     * @param osm "default"; "synthetic-N" for a network of about N road nodes from
+     *            OsmGenerator, written to a temporary file; or a path
+     */
+    static String osm(String osm) throws IOException {
+        if ("default".equals(osm)) {
+            return defaultOsm();
+        }
+        if (osm.startsWith(SYNTHETIC)) {
+            File file = File.createTempFile("synthetic", ".osm.xml");
+            file.deleteOnExit();
+            new OsmGenerator(Long.parseLong(osm.substring(SYNTHETIC.length())), 39)
+                    .write(file.getPath());
+            return file.getPath();
+        }
+        return osm;
+    }
+}
@@ -0,0 +1,49 @@
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+/**
+ * Nearest-vertex lookups for a batch of points scattered over the graph, in random
+ * order, as GPS fixes from many vehicles arrive. batch answers them all with
+ * GraphDB.closestBatch, and oneByOne calls GraphDB.closest for each in turn over the
+ * same grid. Parameters: osm (see BenchmarkData.osm) and points, the batch size.
+ */
+public class ClosestBatchWorkload implements bench.Workload {
+    private GraphDB graph;
+    private double[] lons;
+    private double[] lats;
+
+    @Override
+    public void setUp(Map<String, String> params) throws Exception {
+        graph = new GraphDB(BenchmarkData.osm(params.get("osm")));
+        int points = Integer.parseInt(params.getOrDefault("points", "10000"));
+        Random random = new Random(47);
+        lons = new double[points];
+        lats = new double[points];
+        for (int q = 0; q < points; q++) {
+            /* Within a few tens of metres of some vertex. */
+            int v = random.nextInt(graph.vertexCount());
+            lons[q] = graph.lonAt(v) + (random.nextDouble() - 0.5) * 0.0005;
+            lats[q] = graph.latAt(v) + (random.nextDouble() - 0.5) * 0.0005;
+        }
+        graph.closest(lons[0], lats[0]);
+    }
+
+    @Override
+    public Callable<Object> operation(String name) {
+        switch (name) {
+            case "batch":
+                return () -> graph.closestBatch(lons, lats, false);
+            case "oneByOne":
+                return () -> {
+                    long[] ids = new long[lons.length];
+                    for (int q = 0; q < ids.length; q++) {
+                        ids[q] = graph.closest(lons[q], lats[q]);
+                    }
+                    return ids;
+                };
+            default:
+                throw new IllegalArgumentException("No operation " + name);
+        }
+    }
+}
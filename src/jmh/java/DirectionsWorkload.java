@@ -0,0 +1,49 @@
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Directions for a long route: corner to corner across a synthetic network from
+ * OsmGenerator, along arterials and residential streets. Parameters: nodes, the size
+ * of the network.
+ */
+public class DirectionsWorkload implements bench.Workload {
+    private GraphDB graph;
+    private List<Long> route;
+
+    @Override
+    public void setUp(Map<String, String> params) throws Exception {
+        OsmGenerator generator = new OsmGenerator(Long.parseLong(params.get("nodes")), 40);
+        File file = File.createTempFile("directions", ".osm.xml");
+        try {
+            generator.write(file.getPath());
+            graph = new GraphDB(file.getPath());
+        } finally {
+            file.delete();
+        }
+        int n = graph.vertexCount();
+        int from = 0, to = 0;
+        for (int i = 1; i < n; i++) {
+            double a = graph.lonAt(i) - graph.latAt(i);
+            if (a < graph.lonAt(from) - graph.latAt(from)) {
+                from = i;
+            }
+            if (a > graph.lonAt(to) - graph.latAt(to)) {
+                to = i;
+            }
+        }
+        route = Router.shortestPath(graph, graph.idAt(from), graph.idAt(to));
+        if (route.isEmpty()) {
+            throw new IllegalStateException("No route across the network");
+        }
+    }
+
+    @Override
+    public Callable<Object> operation(String name) {
+        if (!name.equals("routeDirections")) {
+            throw new IllegalArgumentException("No operation " + name);
+        }
+        return () -> Router.routeDirections(graph, route);
+    }
+}
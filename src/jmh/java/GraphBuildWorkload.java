@@ -0,0 +1,23 @@
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Parsing an OSM file and building the graph and its indexes, as at server start.
+ * Parameters: osm (see BenchmarkData.osm).
+ */
+public class GraphBuildWorkload implements bench.Workload {
+    private String osm;
+
+    @Override
+    public void setUp(Map<String, String> params) throws Exception {
+        osm = BenchmarkData.osm(params.get("osm"));
+    }
+
+    @Override
+    public Callable<Object> operation(String name) {
+        if (!name.equals("build")) {
+            throw new IllegalArgumentException("No operation " + name);
+        }
+        return () -> new GraphDB(osm);
+    }
+}
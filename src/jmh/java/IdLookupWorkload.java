@@ -0,0 +1,58 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+/**
+ * OSM id to dense index lookups for a batch of LOOKUPS random vertex ids: with
+ * GraphDB.indexOf, which uses a minimal perfect hash, and with the HashMap of boxed ids
+ * it replaced, built here for comparison. Each call looks up the whole batch and
+ * returns the sum of the indices. Parameters: osm (see BenchmarkData.osm).
+ */
+public class IdLookupWorkload implements bench.Workload {
+    /** Ids per call; the benchmark divides its score by this. */
+    static final int LOOKUPS = 1024;
+
+    private GraphDB graph;
+    private Map<Long, Integer> index;
+    private long[] ids;
+
+    @Override
+    public void setUp(Map<String, String> params) throws Exception {
+        graph = new GraphDB(BenchmarkData.osm(params.get("osm")));
+        int n = graph.vertexCount();
+        index = new HashMap<>(n * 2);
+        for (int i = 0; i < n; i++) {
+            index.put(graph.idAt(i), i);
+        }
+        Random random = new Random(45);
+        ids = new long[LOOKUPS];
+        for (int k = 0; k < LOOKUPS; k++) {
+            ids[k] = graph.idAt(random.nextInt(n));
+        }
+    }
+
+    @Override
+    public Callable<Object> operation(String name) {
+        switch (name) {
+            case "perfectHash":
+                return () -> {
+                    long sum = 0;
+                    for (long id : ids) {
+                        sum += graph.indexOf(id);
+                    }
+                    return sum;
+                };
+            case "hashMap":
+                return () -> {
+                    long sum = 0;
+                    for (long id : ids) {
+                        sum += index.get(id);
+                    }
+                    return sum;
+                };
+            default:
+                throw new IllegalArgumentException("No operation " + name);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Map matching of synthetic GPS traces, made by TraceGenerator from random routes with
+ * a fix every 15 metres moved by 5 metres of noise. match runs MapMatcher.match over
+ * the next of a fixed set of traces each call, so the set is cycled through. Parameters:
+ * osm (see BenchmarkData.osm) and fixes, the length of every trace.
+ */
+public class MapMatchWorkload implements bench.Workload {
+    /** Traces made; cycled through so no one route's searches stay in cache. */
+    private static final int TRACES = 32;
+
+    private MapMatcher matcher;
+    private TraceGenerator.Trace[] traces;
+    private int next;
+
+    @Override
+    public void setUp(Map<String, String> params) throws Exception {
+        GraphDB graph = new GraphDB(BenchmarkData.osm(params.get("osm")));
+        int fixes = Integer.parseInt(params.getOrDefault("fixes", "200"));
+        TraceGenerator generator = new TraceGenerator(graph, 0.003, 53);
+        traces = new TraceGenerator.Trace[TRACES];
+        for (int i = 0; i < TRACES; i++) {
+            traces[i] = generator.next(fixes);
+        }
+        matcher = new MapMatcher(graph);
+    }
+
+    @Override
+    public Callable<Object> operation(String name) {
+        switch (name) {
+            case "match":
+                return () -> {
+                    TraceGenerator.Trace trace = traces[next];
+                    next = (next + 1) % TRACES;
+                    return matcher.match(trace.lons, trace.lats);
+                };
+            default:
+                throw new IllegalArgumentException("No operation " + name);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Recording into a latency histogram and a counter of a Metrics registry, and scraping
+ * it. Only recordSince and increment are safe to call from several threads.
+ */
+public class MetricsWorkload implements bench.Workload {
+    private final Metrics metrics = new Metrics();
+    private final LatencyHistogram histogram = metrics.histogram("bench_seconds", "Bench.",
+            "phase", "bench");
+    private final LongAdder counter = metrics.counter("bench_total", "Bench.", "kind", "bench");
+    private long value = 1;
+
+    @Override
+    public void setUp(Map<String, String> params) {
+    }
+
+    @Override
+    public Callable<Object> operation(String name) {
+        switch (name) {
+            case "record":
+                return () -> {
+                    value = value * 6364136223846793005L + 1442695040888963407L;
+                    histogram.record(value >>> 40);
+                    return null;
+                };
+            case "recordSince":
+                return () -> {
+                    histogram.recordSince(System.nanoTime() - 1000);
+                    return null;
+                };
+            case "increment":
+                return () -> {
+                    counter.increment();
+                    return null;
+                };
+            case "scrape":
+                return metrics::toPrometheus;
+            default:
+                throw new IllegalArgumentException("No operation " + name);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+/**
+ * k-nearest and radius queries over synthetic points of interest spread uniformly over
+ * the map, with the GridIndex behind /nearby and with a linear scan for comparison.
+ * Parameters: pois, the number of points.
+ */
+public class NearbyWorkload implements bench.Workload {
+    private static final int K = 10;
+    private static final double RADIUS_MILES = 0.1;
+
+    private double[] lons;
+    private double[] lats;
+    private GridIndex index;
+    private double[] queries;
+    private int next;
+
+    @Override
+    public void setUp(Map<String, String> params) {
+        int pois = Integer.parseInt(params.get("pois"));
+        Random random = new Random(27);
+        double lonSpan = MapServer.ROOT_LRLON - MapServer.ROOT_ULLON;
+        double latSpan = MapServer.ROOT_ULLAT - MapServer.ROOT_LRLAT;
+        lons = new double[pois];
+        lats = new double[pois];
+        for (int i = 0; i < pois; i++) {
+            lons[i] = MapServer.ROOT_ULLON + random.nextDouble() * lonSpan;
+            lats[i] = MapServer.ROOT_LRLAT + random.nextDouble() * latSpan;
+        }
+        index = new GridIndex(lons, lats);
+        queries = new double[2 * 1024];
+        for (int i = 0; i < queries.length; i += 2) {
+            queries[i] = MapServer.ROOT_ULLON + random.nextDouble() * lonSpan;
+            queries[i + 1] = MapServer.ROOT_LRLAT + random.nextDouble() * latSpan;
+        }
+    }
+
+    private int nextQuery() {
+        int i = next;
+        next = (next + 2) & (queries.length - 1);
+        return i;
+    }
+
+    @Override
+    public Callable<Object> operation(String name) {
+        switch (name) {
+            case "nearest":
+                return () -> {
+                    int q = nextQuery();
+                    return index.nearest(queries[q], queries[q + 1], K, i -> true);
+                };
+            case "within":
+                return () -> {
+                    int q = nextQuery();
+                    return index.within(queries[q], queries[q + 1], RADIUS_MILES, i -> true);
+                };
+            case "nearestLinearScan":
+                return () -> {
+                    int q = nextQuery();
+                    return nearestLinearScan(queries[q], queries[q + 1]);
+                };
+            default:
+                throw new IllegalArgumentException("No operation " + name);
+        }
+    }
+
+    /** k nearest by computing the distance to every point. */
+    private int[] nearestLinearScan(double lon, double lat) {
+        int[] best = new int[K];
+        double[] bestDist = new double[K];
+        int n = 0;
+        for (int i = 0; i < lons.length; i++) {
+            double d = GraphDB.distance(lon, lat, lons[i], lats[i]);
+            if (n < K || d < bestDist[n - 1]) {
+                int j = n < K ? n++ : n - 1;
+                while (j > 0 && bestDist[j - 1] > d) {
+                    best[j] = best[j - 1];
+                    bestDist[j] = bestDist[j - 1];
+                    j--;
+                }
+                best[j] = i;
+                bestDist[j] = d;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,56 @@
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import javax.imageio.ImageIO;
+
+/**
+ * Encoding a 5 by 4 tile raster at depth 4 with PngEncoder, or with ImageIO's PNG
+ * writer. The operation returns the encoded size. Parameters: encoding, "imageio" or a
+ * PngEncoder filter and deflate level such as "NONE-3".
+ */
+public class PngWorkload implements bench.Workload {
+    private BufferedImage raster;
+    private PngEncoder encoder;
+
+    @Override
+    public void setUp(Map<String, String> params) throws Exception {
+        int cols = 5, rows = 4;
+        raster = new BufferedImage(cols * MapServer.TILE_SIZE, rows * MapServer.TILE_SIZE,
+                BufferedImage.TYPE_INT_RGB);
+        Graphics g = raster.getGraphics();
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                File tile = new File(BenchmarkData.IMG_ROOT + "d4_x" + (4 + c) + "_y" + (4 + r)
+                        + ".png");
+                g.drawImage(ImageIO.read(tile), c * MapServer.TILE_SIZE,
+                        r * MapServer.TILE_SIZE, null);
+            }
+        }
+        g.dispose();
+        String encoding = params.get("encoding");
+        if (!encoding.equals("imageio")) {
+            String[] parts = encoding.split("-");
+            encoder = new PngEncoder(Integer.parseInt(parts[1]),
+                    PngEncoder.Filter.valueOf(parts[0]), false);
+        }
+    }
+
+    @Override
+    public Callable<Object> operation(String name) {
+        if (!name.equals("encode")) {
+            throw new IllegalArgumentException("No operation " + name);
+        }
+        return () -> {
+            ByteArrayOutputStream os = new ByteArrayOutputStream(1 << 20);
+            if (encoder == null) {
+                ImageIO.write(raster, "png", os);
+            } else {
+                encoder.write(raster, os);
+            }
+            return os.size();
+        };
+    }
+}
@@ -0,0 +1,114 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+/**
+ * Replays pan and zoom sessions against a tile cache, with or without the tile
+ * prefetcher. Sessions start at the query boxes of raster_params.txt and then take
+ * random steps: pan half a viewport in one of four directions, or zoom in or out by a
+ * factor of two. Each request first pauses THINK_MILLIS, which gives the prefetcher the
+ * idle time it has between a user's requests, then fetches the next raster's tiles and
+ * returns the cache's {hits, misses} for them. The coldCache operation starts over
+ * with an empty cache, and stop shuts its prefetcher down.
+ * Parameters: prefetch, "true" or "false".
+ */
+public class PrefetchWorkload implements bench.Workload {
+    private static final int SESSIONS = 100;
+    private static final int STEPS = 20;
+    /** Pause between requests, as a user takes a moment between drags. */
+    private static final long THINK_MILLIS = 2;
+
+    private boolean prefetch;
+    private List<Map<String, Double>> replay;
+    private TileCache cache;
+    private TilePrefetcher prefetcher;
+    private int next;
+
+    @Override
+    public void setUp(Map<String, String> params) throws Exception {
+        prefetch = Boolean.parseBoolean(params.get("prefetch"));
+        List<Map<String, Double>> starts = BenchmarkData.rasterQueries();
+        Random random = new Random(33);
+        replay = new ArrayList<>();
+        for (int s = 0; s < SESSIONS; s++) {
+            Map<String, Double> box = new HashMap<>(starts.get(s % starts.size()));
+            for (int step = 0; step < STEPS; step++) {
+                replay.add(new HashMap<>(box));
+                move(box, random.nextInt(6));
+            }
+        }
+    }
+
+    /** Pans the box half a viewport (moves 0 to 3) or zooms it in or out (4, 5). */
+    private static void move(Map<String, Double> box, int move) {
+        double ullon = box.get("ullon"), ullat = box.get("ullat");
+        double lrlon = box.get("lrlon"), lrlat = box.get("lrlat");
+        double w = lrlon - ullon, h = ullat - lrlat;
+        double dx = 0, dy = 0, scale = 1;
+        if (move < 2) {
+            dx = move == 0 ? w / 2 : -w / 2;
+        } else if (move < 4) {
+            dy = move == 2 ? h / 2 : -h / 2;
+        } else if (move == 4 || w * 2 > MapServer.ROOT_LRLON - MapServer.ROOT_ULLON) {
+            scale = 0.5;
+        } else {
+            scale = 2;
+        }
+        /* Keep the centre on the map, so sessions do not wander off it. */
+        double cx = Math.max(MapServer.ROOT_ULLON, Math.min(MapServer.ROOT_LRLON,
+                (ullon + lrlon) / 2 + dx));
+        double cy = Math.max(MapServer.ROOT_LRLAT, Math.min(MapServer.ROOT_ULLAT,
+                (ullat + lrlat) / 2 + dy));
+        box.put("ullon", cx - w * scale / 2);
+        box.put("lrlon", cx + w * scale / 2);
+        box.put("ullat", cy + h * scale / 2);
+        box.put("lrlat", cy - h * scale / 2);
+    }
+
+    @Override
+    public Callable<Object> operation(String name) {
+        switch (name) {
+            case "coldCache":
+                return () -> {
+                    cache = new TileCache(new TileDirectory(BenchmarkData.IMG_ROOT), 512, 16);
+                    prefetcher = new TilePrefetcher(cache, 256, 2);
+                    next = 0;
+                    return null;
+                };
+            case "stop":
+                return () -> {
+                    prefetcher.shutdown();
+                    return null;
+                };
+            case "request":
+                return this::request;
+            default:
+                throw new IllegalArgumentException("No operation " + name);
+        }
+    }
+
+    private long[] request() throws InterruptedException {
+        Thread.sleep(THINK_MILLIS);
+        Map<String, Double> params = replay.get(next);
+        next = next + 1 == replay.size() ? 0 : next + 1;
+        Map<String, Object> raster = new Rasterer().getMapRaster(params);
+        if (!(boolean) raster.get("query_success")) {
+            return new long[2];
+        }
+        String[][] grid = (String[][]) raster.get("render_grid");
+        long hits = cache.hits(), misses = cache.misses();
+        for (String[] row : grid) {
+            for (String tile : row) {
+                cache.get(tile);
+            }
+        }
+        long[] lookups = {cache.hits() - hits, cache.misses() - misses};
+        if (prefetch) {
+            prefetcher.afterRaster(grid, (int) raster.get("depth"));
+        }
+        return lookups;
+    }
+}
@@ -0,0 +1,59 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.EnumSet;
+
+/**
+ * Measures the heap one graph of every profile keeps against three graphs of one
+ * profile each, on networks from OsmGenerator, with the vertex and edge counts of
+ * each. Results go to standard output as CSV.
+ *
+ * Run with
+ *     mvn -Pjmh test-compile exec:exec@profiles -Dscaling.sizes=100000,1000000
+ * and give the forked JVM more heap with -Dscaling.jvmArgs=-Xmx8g. Routing latency on
+ * either layout is measured by ProfileBenchmark.
+ */
+public final class ProfileReport {
+    private ProfileReport() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        String sizes = args.length > 0 ? args[0] : "100000,1000000";
+        System.out.println("nodes,layout,vertices,edges,heap_mb");
+        for (String size : sizes.split(",")) {
+            long nodes = Long.parseLong(size.trim());
+            File file = File.createTempFile("profiles", ".osm.xml");
+            try {
+                new OsmGenerator(nodes, 39).write(file.getPath());
+                long before = usedHeap();
+                GraphDB shared = new GraphDB(file.getPath(), EnumSet.allOf(Profile.class));
+                long heap = usedHeap() - before;
+                System.out.println(nodes + ",shared," + shared.vertexCount() + ","
+                        + shared.edgeStart(shared.vertexCount()) + "," + heap / (1 << 20));
+                shared = null;
+
+                before = usedHeap();
+                GraphDB[] separate = new GraphDB[Profile.values().length];
+                int vertices = 0, edges = 0;
+                for (Profile p : Profile.values()) {
+                    GraphDB g = new GraphDB(file.getPath(), EnumSet.of(p));
+                    separate[p.ordinal()] = g;
+                    vertices += g.vertexCount();
+                    edges += g.edgeStart(g.vertexCount());
+                }
+                heap = usedHeap() - before;
+                System.out.println(nodes + ",separate," + vertices + "," + edges + ","
+                        + heap / (1 << 20));
+            } finally {
+                file.delete();
+            }
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,53 @@
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+/**
+ * Routing for one profile on a graph shared by every profile, against routing on a
+ * graph of that profile's ways alone, as keeping three graphs would. route answers the
+ * next of QUERIES fixed pairs of random vertices of the profile's own graph each call,
+ * cycling through them; the same pairs are asked of either layout. Parameters: osm
+ * (see BenchmarkData.osm), profile (DRIVE, BIKE or WALK) and graphs: "shared" or
+ * "separate".
+ */
+public class ProfileWorkload implements bench.Workload {
+    private static final int QUERIES = 256;
+
+    private ContractedGraph searchGraph;
+    private Profile profile;
+    private long[] from;
+    private long[] to;
+    private int next;
+
+    @Override
+    public void setUp(Map<String, String> params) throws Exception {
+        String osm = BenchmarkData.osm(params.get("osm"));
+        profile = Profile.valueOf(params.getOrDefault("profile", "DRIVE"));
+        GraphDB own = new GraphDB(osm, EnumSet.of(profile));
+        GraphDB graph = "shared".equals(params.get("graphs"))
+                ? new GraphDB(osm, EnumSet.allOf(Profile.class)) : own;
+        Random random = new Random(59);
+        from = new long[QUERIES];
+        to = new long[QUERIES];
+        for (int q = 0; q < QUERIES; q++) {
+            from[q] = own.idAt(random.nextInt(own.vertexCount()));
+            to[q] = own.idAt(random.nextInt(own.vertexCount()));
+        }
+        searchGraph = graph.searchGraph();
+    }
+
+    @Override
+    public Callable<Object> operation(String name) {
+        switch (name) {
+            case "route":
+                return () -> {
+                    int q = next;
+                    next = (q + 1) % QUERIES;
+                    return Router.route(searchGraph, from[q], to[q], profile, false);
+                };
+            default:
+                throw new IllegalArgumentException("No operation " + name);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Rastering the queries in raster_params.txt: choosing the tiles, and compositing and
+ * encoding them into the response image, both as whole tiles and cropped to the
+ * viewport. Tiles are read from data/proj3_imgs through the server's tile cache, which
+ * is warm after the first pass over the queries. The image operations return the
+ * encoded size.
+ */
+public class RasterWorkload implements bench.Workload {
+    private List<Map<String, Double>> queries;
+    private int next;
+
+    @Override
+    public void setUp(Map<String, String> params) throws Exception {
+        queries = BenchmarkData.rasterQueries();
+        MapServer.initializeTiles(new TileDirectory(BenchmarkData.IMG_ROOT));
+    }
+
+    private Map<String, Double> nextQuery() {
+        int i = next;
+        next = i + 1 == queries.size() ? 0 : i + 1;
+        return queries.get(i);
+    }
+
+    @Override
+    public Callable<Object> operation(String name) {
+        switch (name) {
+            case "getMapRaster":
+                return () -> new Rasterer().getMapRaster(nextQuery());
+            case "writeImages":
+                return () -> {
+                    Map<String, Object> raster = new Rasterer().getMapRaster(nextQuery());
+                    ByteArrayOutputStream os = new ByteArrayOutputStream();
+                    MapServer.writeImagesToOutputStream(raster, null, null, os);
+                    return os.size();
+                };
+            case "writeImagesCropped":
+                return () -> {
+                    Map<String, Double> params = nextQuery();
+                    Map<String, Object> raster = new Rasterer().getMapRaster(params);
+                    double[] window = Rasterer.cropToQuery(raster, params);
+                    ByteArrayOutputStream os = new ByteArrayOutputStream();
+                    MapServer.writeImagesToOutputStream(raster, window, null, os);
+                    return os.size();
+                };
+            default:
+                throw new IllegalArgumentException("No operation " + name);
+        }
+    }
+}
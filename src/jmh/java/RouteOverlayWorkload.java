@@ -0,0 +1,84 @@
+import java.awt.BasicStroke;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Drawing a long route onto a 1024 by 768 raster centred on the route, with
+ * RouteOverlay and with the per-segment drawLine loop it replaced. The route is every
+ * path in path_params.txt joined end to end. Parameters: osm (see BenchmarkData.osm)
+ * and depth.
+ */
+public class RouteOverlayWorkload implements bench.Workload {
+    private static final int WIDTH = 1024, HEIGHT = 768;
+
+    private GraphDB graph;
+    private int depth;
+    private long[] route;
+    private RouteOverlay overlay;
+    private BufferedImage img;
+    private Graphics2D g2d;
+    private double ullon, ullat, wdpp, hdpp;
+
+    @Override
+    public void setUp(Map<String, String> params) throws Exception {
+        graph = new GraphDB(BenchmarkData.osm(params.get("osm")));
+        depth = Integer.parseInt(params.get("depth"));
+        List<Long> joined = new ArrayList<>();
+        for (double[] q : BenchmarkData.pathQueries()) {
+            joined.addAll(Router.shortestPath(graph, q[0], q[1], q[2], q[3]));
+        }
+        route = new long[joined.size()];
+        for (int i = 0; i < route.length; i++) {
+            route[i] = joined.get(i);
+        }
+        overlay = RouteOverlay.of(graph, route);
+
+        long middle = route[route.length / 2];
+        wdpp = (MapServer.ROOT_LRLON - MapServer.ROOT_ULLON) / (MapServer.TILE_SIZE << depth);
+        hdpp = (MapServer.ROOT_ULLAT - MapServer.ROOT_LRLAT) / (MapServer.TILE_SIZE << depth);
+        ullon = graph.lon(middle) - WIDTH / 2 * wdpp;
+        ullat = graph.lat(middle) + HEIGHT / 2 * hdpp;
+        img = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        g2d = img.createGraphics();
+        g2d.setColor(MapServer.ROUTE_STROKE_COLOR);
+        g2d.setStroke(new BasicStroke(MapServer.ROUTE_STROKE_WIDTH_PX,
+                BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+    }
+
+    @Override
+    public void tearDown() {
+        g2d.dispose();
+    }
+
+    @Override
+    public Callable<Object> operation(String name) {
+        switch (name) {
+            case "overlay":
+                return () -> {
+                    overlay.draw(g2d, depth, ullon, ullat, wdpp, hdpp, WIDTH, HEIGHT,
+                            MapServer.ROUTE_STROKE_WIDTH_PX);
+                    return img;
+                };
+            case "perSegment":
+                return this::perSegment;
+            default:
+                throw new IllegalArgumentException("No operation " + name);
+        }
+    }
+
+    private Object perSegment() {
+        for (int i = 1; i < route.length; i++) {
+            long v = route[i - 1];
+            long w = route[i];
+            g2d.drawLine((int) ((graph.lon(v) - ullon) * (1 / wdpp)),
+                         (int) ((ullat - graph.lat(v)) * (1 / hdpp)),
+                         (int) ((graph.lon(w) - ullon) * (1 / wdpp)),
+                         (int) ((ullat - graph.lat(w)) * (1 / hdpp)));
+        }
+        return img;
+    }
+}
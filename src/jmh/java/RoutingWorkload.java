@@ -0,0 +1,125 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Snapping, routing and reachability over the queries in path_params.txt. Each call of
+ * an operation answers the next query in the file, cycling through all of them. snap
+ * finds the nearest point on any road with the segment R-tree, where closest scans for
+ * the nearest vertex, and routeOnRoads routes between two such points as MapServer does.
+ * searchAcross instead routes between opposite corners of the graph, and
+ * searchAcrossUncontracted does the same over a search graph with no chains collapsed.
+ * searchUnreachable routes from a corner to a vertex of the smallest component, which
+ * the largest cannot reach, or across the graph if it has only one component.
+ * Parameters: osm (see BenchmarkData.osm), isochroneMiles, and order: "hilbert" to
+ * number vertices along a Hilbert curve as GraphDB does, or "input" for file order.
+ */
+public class RoutingWorkload implements bench.Workload {
+    private GraphDB graph;
+    private double[][] queries;
+    private long[][] snapped;
+    private List<List<Long>> paths;
+    private double isochroneMiles;
+    /** Opposite corners of the graph, north-west and south-east. */
+    private long[] corners;
+    private ContractedGraph uncontracted;
+    private long island;
+    private int next;
+
+    @Override
+    public void setUp(Map<String, String> params) throws Exception {
+        graph = new GraphDB(BenchmarkData.osm(params.get("osm")),
+                !"input".equals(params.get("order")));
+        isochroneMiles = Double.parseDouble(params.getOrDefault("isochroneMiles", "1"));
+        queries = BenchmarkData.pathQueries().toArray(new double[0][]);
+        snapped = new long[queries.length][];
+        paths = new ArrayList<>();
+        for (int i = 0; i < queries.length; i++) {
+            snapped[i] = new long[] {graph.closest(queries[i][0], queries[i][1]),
+                graph.closest(queries[i][2], queries[i][3])};
+            paths.add(Router.shortestPath(graph, snapped[i][0], snapped[i][1]));
+        }
+        int nw = 0, se = 0;
+        for (int i = 1; i < graph.vertexCount(); i++) {
+            double a = graph.lonAt(i) - graph.latAt(i);
+            if (a < graph.lonAt(nw) - graph.latAt(nw)) {
+                nw = i;
+            }
+            if (a > graph.lonAt(se) - graph.latAt(se)) {
+                se = i;
+            }
+        }
+        corners = new long[] {graph.idAt(nw), graph.idAt(se)};
+        uncontracted = new ContractedGraph(graph, false);
+        island = corners[1];
+        for (int i = 0; i < graph.vertexCount(); i++) {
+            int c = graph.componentOf(i);
+            if (c > 0 && c == graph.componentCount() - 1) {
+                island = graph.idAt(i);
+                break;
+            }
+        }
+    }
+
+    private int nextQuery() {
+        int i = next;
+        next = i + 1 == queries.length ? 0 : i + 1;
+        return i;
+    }
+
+    @Override
+    public Callable<Object> operation(String name) {
+        switch (name) {
+            case "closest":
+                return () -> {
+                    double[] q = queries[nextQuery()];
+                    return graph.closest(q[0], q[1]);
+                };
+            case "snap":
+                return () -> {
+                    double[] q = queries[nextQuery()];
+                    return graph.snap(q[0], q[1]);
+                };
+            case "routeOnRoads":
+                return () -> {
+                    double[] q = queries[nextQuery()];
+                    return Router.route(graph, graph.snap(q[0], q[1]), graph.snap(q[2], q[3]),
+                            false);
+                };
+            case "shortestPath":
+                return () -> {
+                    double[] q = queries[nextQuery()];
+                    return Router.shortestPath(graph, q[0], q[1], q[2], q[3]);
+                };
+            case "searchWithoutStats":
+                return () -> {
+                    long[] s = snapped[nextQuery()];
+                    return Router.route(graph, s[0], s[1], false);
+                };
+            case "searchWithStats":
+                return () -> {
+                    long[] s = snapped[nextQuery()];
+                    return Router.route(graph, s[0], s[1], true);
+                };
+            case "searchAcross":
+                return () -> Router.route(graph, corners[0], corners[1], false);
+            case "searchUnreachable":
+                return () -> Router.route(graph, corners[0], island, false);
+            case "searchAcrossUncontracted":
+                return () -> Router.route(uncontracted, corners[0], corners[1], false);
+            case "directions":
+                return () -> {
+                    List<Long> path = paths.get(nextQuery());
+                    return path.isEmpty() ? null : Router.routeDirections(graph, path);
+                };
+            case "isochrone":
+                return () -> {
+                    double[] q = queries[nextQuery()];
+                    return Isochrone.reachable(graph, q[0], q[1], isochroneMiles);
+                };
+            default:
+                throw new IllegalArgumentException("No operation " + name);
+        }
+    }
+}
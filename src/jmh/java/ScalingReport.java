@@ -0,0 +1,88 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Random;
+
+/**
+ * Measures how graph import, heap and query latency grow with the size of the road
+ * network, on networks from OsmGenerator. For each size it writes the network to a
+ * temporary file, then times building a GraphDB from it, measures the heap the graph
+ * keeps, and times closest-vertex snapping and shortestPath between random points of
+ * the network. Results go to standard output and, as CSV ready to plot against the
+ * nodes column, to target/scaling.csv.
+ *
+ * Run with
+ *     mvn -Pjmh test-compile exec:exec@scaling -Dscaling.sizes=10000,100000,1000000
+ * and give the forked JVM more heap than the default 2g with -Dscaling.jvmArgs=-Xmx8g.
+ * These are one-shot timings, not JMH measurements; they show growth, not precise
+ * costs.
+ */
+public final class ScalingReport {
+    private static final int CLOSEST_QUERIES = 200;
+    private static final int ROUTE_QUERIES = 20;
+    private static final String CSV = "target/scaling.csv";
+
+    private ScalingReport() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        String sizes = args.length > 0 ? args[0] : "10000,100000,1000000";
+        try (PrintWriter csv = new PrintWriter(CSV)) {
+            String header = "nodes,vertices,edges,file_mb,import_ms,heap_mb,"
+                    + "closest_us,route_ms,route_settled";
+            csv.println(header);
+            System.out.println(header);
+            for (String size : sizes.split(",")) {
+                String row = measure(Long.parseLong(size.trim()));
+                csv.println(row);
+                csv.flush();
+                System.out.println(row);
+            }
+        }
+    }
+
+    private static String measure(long nodes) throws IOException {
+        OsmGenerator generator = new OsmGenerator(nodes, 39);
+        File file = File.createTempFile("scaling", ".osm.xml");
+        try {
+            generator.write(file.getPath());
+
+            long heapBefore = usedHeap();
+            long start = System.nanoTime();
+            GraphDB g = new GraphDB(file.getPath());
+            long importNanos = System.nanoTime() - start;
+            long heap = usedHeap() - heapBefore;
+
+            int n = g.vertexCount();
+            Random random = new Random(39);
+            start = System.nanoTime();
+            for (int q = 0; q < CLOSEST_QUERIES; q++) {
+                int v = random.nextInt(n);
+                g.closest(g.lonAt(v) + 0.0001, g.latAt(v) - 0.0001);
+            }
+            long closestNanos = (System.nanoTime() - start) / CLOSEST_QUERIES;
+
+            long routeNanos = 0, settled = 0;
+            for (int q = 0; q < ROUTE_QUERIES; q++) {
+                long from = g.idAt(random.nextInt(n)), to = g.idAt(random.nextInt(n));
+                Router.RouteResult r = Router.route(g, from, to, true);
+                routeNanos += r.stats.searchNanos + r.stats.pathNanos;
+                settled += r.stats.settled;
+            }
+            return nodes + "," + n + "," + g.edgeStart(n) + ","
+                    + file.length() / (1 << 20) + "," + importNanos / 1_000_000 + ","
+                    + heap / (1 << 20) + "," + closestNanos / 1000 + ","
+                    + routeNanos / ROUTE_QUERIES / 1_000_000 + "," + settled / ROUTE_QUERIES;
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,55 @@
+import java.io.File;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+/**
+ * Reading the encoded bytes of random tiles from across the whole pyramid, from loose
+ * files and from a TilePack archive of the same files. The page cache is warm after the
+ * first iteration, so this measures the per-tile open and read overhead, not the disk.
+ * Parameters: store, "loose" or "pack".
+ */
+public class TileStoreWorkload implements bench.Workload {
+    private TileStore tiles;
+    private File archive;
+    private String[] names;
+    private int next;
+
+    @Override
+    public void setUp(Map<String, String> params) throws Exception {
+        if (params.get("store").equals("pack")) {
+            archive = File.createTempFile("tiles", ".pack");
+            TilePack.pack(BenchmarkData.IMG_ROOT, archive.getPath());
+            tiles = new TilePack(archive.getPath());
+        } else {
+            tiles = new TileDirectory(BenchmarkData.IMG_ROOT);
+        }
+        Random random = new Random(32);
+        names = new String[4096];
+        for (int i = 0; i < names.length; i++) {
+            int depth = 1 + random.nextInt(MapServer.MAX_DEPTH);
+            names[i] = "d" + depth + "_x" + random.nextInt(1 << depth) + "_y"
+                    + random.nextInt(1 << depth) + ".png";
+        }
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        if (tiles instanceof TilePack) {
+            ((TilePack) tiles).close();
+            archive.delete();
+        }
+    }
+
+    @Override
+    public Callable<Object> operation(String name) {
+        if (!name.equals("readTile")) {
+            throw new IllegalArgumentException("No operation " + name);
+        }
+        return () -> {
+            String tile = names[next];
+            next = (next + 1) & (names.length - 1);
+            return tiles.readTile(tile);
+        };
+    }
+}
@@ -0,0 +1,55 @@
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+/**
+ * Prefix lookups in a TrieSet holding an even sample of data/words.txt, keyed the way
+ * GraphDB keys location names. Prefixes are the first one to four letters of random
+ * words from the sample, so short prefixes with many matches are common.
+ * Parameters: words, the number of words put in the trie.
+ */
+public class TrieWorkload implements bench.Workload {
+    private TrieSet trie;
+    private String[] prefixes;
+    private int next;
+
+    @Override
+    public void setUp(Map<String, String> params) throws Exception {
+        int words = Integer.parseInt(params.get("words"));
+        List<String> all = Files.readAllLines(Paths.get(BenchmarkData.WORDS),
+                Charset.defaultCharset());
+        int step = Math.max(1, all.size() / words);
+        List<String> sample = new ArrayList<>();
+        trie = new TrieSet(128);
+        for (int i = 0; i < all.size() && sample.size() < words; i += step) {
+            String key = GraphDB.cleanStringAlter(all.get(i));
+            if (!key.isEmpty()) {
+                trie.put(key, all.get(i));
+                sample.add(key);
+            }
+        }
+        Random random = new Random(38);
+        prefixes = new String[1024];
+        for (int i = 0; i < prefixes.length; i++) {
+            String w = sample.get(random.nextInt(sample.size()));
+            prefixes[i] = w.substring(0, Math.min(w.length(), 1 + random.nextInt(4)));
+        }
+    }
+
+    @Override
+    public Callable<Object> operation(String name) {
+        if (!name.equals("getAll")) {
+            throw new IllegalArgumentException("No operation " + name);
+        }
+        return () -> {
+            String prefix = prefixes[next];
+            next = (next + 1) & (prefixes.length - 1);
+            return trie.getAll(prefix);
+        };
+    }
+}
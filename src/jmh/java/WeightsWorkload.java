@@ -0,0 +1,90 @@
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Live weight updates and the routes searched while they land. update slows batch
+ * random roads by random factors from 1 to 3 in one call, as a traffic feed would; it
+ * is meant for one thread at a time, as updates are serialised anyway. route answers
+ * the next of QUERIES fixed pairs of random vertices, and is safe from any number of
+ * threads. Before either runs, a first update slows preload roads, so that routes
+ * search over live weights whether or not updates are landing; with none, routes
+ * search with no weights kept at all. Parameters: osm (see BenchmarkData.osm), batch
+ * and preload.
+ */
+public class WeightsWorkload implements bench.Workload {
+    private static final int QUERIES = 256;
+    private static final int ROADS = 1 << 16;
+
+    private GraphDB graph;
+    private int batch;
+    private long[] from;
+    private long[] to;
+    /* Ends of random edges to update, and factors to give them. */
+    private long[] roadFrom;
+    private long[] roadTo;
+    private double[] factors;
+    private final AtomicInteger next = new AtomicInteger();
+    private int nextRoad;
+
+    @Override
+    public void setUp(Map<String, String> params) throws Exception {
+        graph = new GraphDB(BenchmarkData.osm(params.get("osm")));
+        batch = Integer.parseInt(params.getOrDefault("batch", "1"));
+        Random random = new Random(61);
+        from = new long[QUERIES];
+        to = new long[QUERIES];
+        for (int q = 0; q < QUERIES; q++) {
+            from[q] = graph.idAt(random.nextInt(graph.vertexCount()));
+            to[q] = graph.idAt(random.nextInt(graph.vertexCount()));
+        }
+        roadFrom = new long[ROADS];
+        roadTo = new long[ROADS];
+        factors = new double[ROADS];
+        for (int k = 0; k < ROADS; k++) {
+            int v;
+            do {
+                v = random.nextInt(graph.vertexCount());
+            } while (graph.edgeStart(v) == graph.edgeStart(v + 1));
+            int e = graph.edgeStart(v) + random.nextInt(graph.edgeStart(v + 1)
+                    - graph.edgeStart(v));
+            roadFrom[k] = graph.idAt(v);
+            roadTo[k] = graph.idAt(graph.edgeTarget(v, e));
+            factors[k] = 1 + 2 * random.nextDouble();
+        }
+        int preload = Integer.parseInt(params.getOrDefault("preload", "1000"));
+        if (preload > 0) {
+            update(preload);
+        }
+    }
+
+    /** Updates the next count roads of the pool, cycling through it. */
+    private long update(int count) {
+        long[] a = new long[count], b = new long[count];
+        double[] f = new double[count];
+        for (int k = 0; k < count; k++) {
+            int r = nextRoad;
+            nextRoad = (r + 1) % ROADS;
+            a[k] = roadFrom[r];
+            b[k] = roadTo[r];
+            f[k] = factors[r];
+        }
+        return graph.updateWeights(a, b, f);
+    }
+
+    @Override
+    public Callable<Object> operation(String name) {
+        switch (name) {
+            case "update":
+                return () -> update(batch);
+            case "route":
+                return () -> {
+                    int q = Math.floorMod(next.getAndIncrement(), QUERIES);
+                    return Router.route(graph, from[q], to[q], false);
+                };
+            default:
+                throw new IllegalArgumentException("No operation " + name);
+        }
+    }
+}
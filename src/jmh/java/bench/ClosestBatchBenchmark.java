@@ -0,0 +1,56 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to snap a whole batch of points to their nearest vertices, with
+ * GraphDB.closestBatch and with GraphDB.closest per point; points per second is the
+ * batch size divided by the score. See ClosestBatchWorkload.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClosestBatchBenchmark {
+    /** OSM file to load; see RoutingBenchmark. */
+    @Param({"synthetic-1000000"})
+    public String osm;
+
+    /** Points per batch. */
+    @Param({"10000", "100000", "1000000"})
+    public String points;
+
+    private Callable<Object> batch, oneByOne;
+
+    @Setup
+    public void setUp() throws Exception {
+        Workload w = Workload.load("ClosestBatchWorkload", "osm", osm, "points", points);
+        batch = w.operation("batch");
+        oneByOne = w.operation("oneByOne");
+    }
+
+    @Benchmark
+    public Object batch() throws Exception {
+        return batch.call();
+    }
+
+    @Benchmark
+    public Object oneByOne() throws Exception {
+        return oneByOne.call();
+    }
+}
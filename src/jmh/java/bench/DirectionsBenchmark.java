@@ -0,0 +1,45 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Router.routeDirections on a long route across a synthetic network. See
+ * DirectionsWorkload.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DirectionsBenchmark {
+    /** Road nodes in the network. */
+    @Param({"100000"})
+    public String nodes;
+
+    private Callable<Object> routeDirections;
+
+    @Setup
+    public void setUp() throws Exception {
+        routeDirections = Workload.load("DirectionsWorkload", "nodes", nodes)
+                .operation("routeDirections");
+    }
+
+    @Benchmark
+    public Object routeDirections() throws Exception {
+        return routeDirections.call();
+    }
+}
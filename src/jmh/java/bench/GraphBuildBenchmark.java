@@ -0,0 +1,43 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to parse an OSM file and build the graph and its indexes, as at server start.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GraphBuildBenchmark {
+    /** OSM file to load; "default" uses the full Berkeley map when present. */
+    @Param({"default"})
+    public String osm;
+
+    private Callable<Object> build;
+
+    @Setup
+    public void setUp() throws Exception {
+        build = Workload.load("GraphBuildWorkload", "osm", osm).operation("build");
+    }
+
+    @Benchmark
+    public Object build() throws Exception {
+        return build.call();
+    }
+}
@@ -0,0 +1,57 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OSM id lookups through GraphDB's minimal perfect hash against a HashMap of boxed ids,
+ * per lookup. See IdLookupWorkload.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IdLookupBenchmark {
+    /** Lookups per call of an operation; must match IdLookupWorkload.LOOKUPS. */
+    private static final int LOOKUPS = 1024;
+
+    /** OSM file to load; see RoutingBenchmark. */
+    @Param({"default", "synthetic-100000", "synthetic-1000000"})
+    public String osm;
+
+    private Callable<Object> perfectHash, hashMap;
+
+    @Setup
+    public void setUp() throws Exception {
+        Workload w = Workload.load("IdLookupWorkload", "osm", osm);
+        perfectHash = w.operation("perfectHash");
+        hashMap = w.operation("hashMap");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public Object perfectHash() throws Exception {
+        return perfectHash.call();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public Object hashMap() throws Exception {
+        return hashMap.call();
+    }
+}
@@ -0,0 +1,48 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Isochrone.reachable from the start points of path_params.txt, at several budgets.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IsochroneBenchmark {
+    /** OSM file to load; "default" uses the full Berkeley map when present. */
+    @Param({"default"})
+    public String osm;
+
+    /** Distance budget in miles. */
+    @Param({"0.25", "1", "4"})
+    public String miles;
+
+    private Callable<Object> isochrone;
+
+    @Setup
+    public void setUp() throws Exception {
+        isochrone = Workload.load("RoutingWorkload", "osm", osm, "isochroneMiles", miles)
+                .operation("isochrone");
+    }
+
+    @Benchmark
+    public Object reachable() throws Exception {
+        return isochrone.call();
+    }
+}
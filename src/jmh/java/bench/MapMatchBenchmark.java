@@ -0,0 +1,50 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of map matching in GPS fixes per second, each call matching one
+ * synthetic trace of FIXES fixes. See MapMatchWorkload.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MapMatchBenchmark {
+    /** Fixes per trace. */
+    private static final int FIXES = 200;
+
+    /** OSM file to load; see RoutingBenchmark. */
+    @Param({"synthetic-100000", "synthetic-1000000"})
+    public String osm;
+
+    private Callable<Object> match;
+
+    @Setup
+    public void setUp() throws Exception {
+        match = Workload.load("MapMatchWorkload", "osm", osm, "fixes",
+                String.valueOf(FIXES)).operation("match");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FIXES)
+    public Object match() throws Exception {
+        return match.call();
+    }
+}
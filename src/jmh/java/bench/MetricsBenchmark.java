@@ -0,0 +1,71 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of recording metrics on the request path, single-threaded and with four threads
+ * recording into the same histogram. nanoTime is the clock read that timing needs anyway.
+ * See MetricsWorkload.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+    private Callable<Object> record, recordSince, increment, scrape;
+
+    @Setup
+    public void setUp() throws Exception {
+        Workload w = Workload.load("MetricsWorkload");
+        record = w.operation("record");
+        recordSince = w.operation("recordSince");
+        increment = w.operation("increment");
+        scrape = w.operation("scrape");
+    }
+
+    @Benchmark
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+
+    @Benchmark
+    public Object record() throws Exception {
+        return record.call();
+    }
+
+    @Benchmark
+    public Object recordSince() throws Exception {
+        return recordSince.call();
+    }
+
+    @Benchmark
+    public Object increment() throws Exception {
+        return increment.call();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object recordSinceContended() throws Exception {
+        return recordSince.call();
+    }
+
+    @Benchmark
+    public Object scrape() throws Exception {
+        return scrape.call();
+    }
+}
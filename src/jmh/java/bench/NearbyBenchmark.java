@@ -0,0 +1,55 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GridIndex nearest and within queries against a linear scan. See NearbyWorkload.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NearbyBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    public String pois;
+
+    private Callable<Object> nearest, within, nearestLinearScan;
+
+    @Setup
+    public void setUp() throws Exception {
+        Workload w = Workload.load("NearbyWorkload", "pois", pois);
+        nearest = w.operation("nearest");
+        within = w.operation("within");
+        nearestLinearScan = w.operation("nearestLinearScan");
+    }
+
+    @Benchmark
+    public Object nearest() throws Exception {
+        return nearest.call();
+    }
+
+    @Benchmark
+    public Object within() throws Exception {
+        return within.call();
+    }
+
+    @Benchmark
+    public Object nearestLinearScan() throws Exception {
+        return nearestLinearScan.call();
+    }
+}
@@ -0,0 +1,44 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PNG encoding of a raster at several row filters and deflate levels, against ImageIO.
+ * See PngWorkload.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PngBenchmark {
+    /** "imageio", or a PngEncoder filter and deflate level such as "NONE-3". */
+    @Param({"imageio", "NONE-1", "NONE-3", "NONE-6", "NONE-9", "ADAPTIVE-3", "ADAPTIVE-6"})
+    public String encoding;
+
+    private Callable<Object> encode;
+
+    @Setup
+    public void setUp() throws Exception {
+        encode = Workload.load("PngWorkload", "encoding", encoding).operation("encode");
+    }
+
+    @Benchmark
+    public Object encode() throws Exception {
+        return encode.call();
+    }
+}
@@ -0,0 +1,73 @@
+package bench;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays pan and zoom sessions against a cold tile cache, with and without the tile
+ * prefetcher, and samples the time to fetch each raster's tiles; the samples give the
+ * p95. The hits and misses counters give the cache hit rate. See PrefetchWorkload.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PrefetchBenchmark {
+    @Param({"false", "true"})
+    public String prefetch;
+
+    private Callable<Object> coldCache, stop, request;
+
+    /**
+     * Cache lookups of the measured requests.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Lookups {
+        public long hits;
+        public long misses;
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        Workload w = Workload.load("PrefetchWorkload", "prefetch", prefetch);
+        coldCache = w.operation("coldCache");
+        stop = w.operation("stop");
+        request = w.operation("request");
+    }
+
+    @Setup(Level.Iteration)
+    public void coldCache() throws Exception {
+        coldCache.call();
+    }
+
+    @TearDown(Level.Iteration)
+    public void stopPrefetcher() throws Exception {
+        stop.call();
+    }
+
+    @Benchmark
+    public Object request(Lookups lookups) throws Exception {
+        long[] counts = (long[]) request.call();
+        lookups.hits += counts[0];
+        lookups.misses += counts[1];
+        return counts;
+    }
+}
@@ -0,0 +1,53 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A* between random vertices for each profile, on one graph shared by all profiles and
+ * on a graph of the profile's ways alone. The heap each layout keeps is measured by
+ * ProfileReport. See ProfileWorkload.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProfileBenchmark {
+    /** OSM file to load; see RoutingBenchmark. */
+    @Param({"synthetic-100000"})
+    public String osm;
+
+    @Param({"DRIVE", "BIKE", "WALK"})
+    public String profile;
+
+    /** "shared" for one graph of every profile, "separate" for the profile's own. */
+    @Param({"shared", "separate"})
+    public String graphs;
+
+    private Callable<Object> route;
+
+    @Setup
+    public void setUp() throws Exception {
+        route = Workload.load("ProfileWorkload", "osm", osm, "profile", profile,
+                "graphs", graphs).operation("route");
+    }
+
+    @Benchmark
+    public Object route() throws Exception {
+        return route.call();
+    }
+}
@@ -0,0 +1,52 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rasterer.getMapRaster and the /raster image, whole and cropped, over
+ * raster_params.txt. See RasterWorkload.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RasterBenchmark {
+    private Callable<Object> getMapRaster, writeImages, writeImagesCropped;
+
+    @Setup
+    public void setUp() throws Exception {
+        Workload w = Workload.load("RasterWorkload");
+        getMapRaster = w.operation("getMapRaster");
+        writeImages = w.operation("writeImages");
+        writeImagesCropped = w.operation("writeImagesCropped");
+    }
+
+    @Benchmark
+    public Object getMapRaster() throws Exception {
+        return getMapRaster.call();
+    }
+
+    @Benchmark
+    public Object writeImages() throws Exception {
+        return writeImages.call();
+    }
+
+    @Benchmark
+    public Object writeImagesCropped() throws Exception {
+        return writeImagesCropped.call();
+    }
+}
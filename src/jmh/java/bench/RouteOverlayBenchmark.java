@@ -0,0 +1,61 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drawing a long route at every depth with RouteOverlay and with one drawLine per
+ * segment. See RouteOverlayWorkload.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RouteOverlayBenchmark {
+    /** OSM file to load; "default" uses the full Berkeley map when present. */
+    @Param({"default"})
+    public String osm;
+
+    @Param({"0", "1", "2", "3", "4", "5", "6", "7"})
+    public String depth;
+
+    private Workload workload;
+    private Callable<Object> overlay, perSegment;
+
+    @Setup
+    public void setUp() throws Exception {
+        workload = Workload.load("RouteOverlayWorkload", "osm", osm, "depth", depth);
+        overlay = workload.operation("overlay");
+        perSegment = workload.operation("perSegment");
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        workload.tearDown();
+    }
+
+    @Benchmark
+    public Object overlay() throws Exception {
+        return overlay.call();
+    }
+
+    @Benchmark
+    public Object perSegment() throws Exception {
+        return perSegment.call();
+    }
+}
@@ -0,0 +1,119 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GraphDB.closest, GraphDB.snap, Router.shortestPath, routing between snapped points and
+ * Router.routeDirections over path_params.txt,
+ * the A* search alone with search statistics on and off, and A* across the whole graph
+ * with and without degree-2 chains collapsed, and A* to a vertex it cannot reach.
+ * See RoutingWorkload.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoutingBenchmark {
+    /**
+     * OSM file to load; "default" uses the full Berkeley map when present, and
+     * "synthetic-N" a generated network of N nodes around the same area.
+     */
+    @Param({"default", "synthetic-100000"})
+    public String osm;
+
+    /** Vertex numbering: "hilbert", as GraphDB does, or "input" for file order. */
+    @Param({"hilbert"})
+    public String order;
+
+    private Callable<Object> closest, snap, routeOnRoads, shortestPath, searchWithoutStats,
+            searchWithStats, searchAcross, searchAcrossUncontracted, searchUnreachable,
+            directions;
+
+    @Setup
+    public void setUp() throws Exception {
+        Workload w = Workload.load("RoutingWorkload", "osm", osm, "order", order);
+        closest = w.operation("closest");
+        snap = w.operation("snap");
+        routeOnRoads = w.operation("routeOnRoads");
+        shortestPath = w.operation("shortestPath");
+        searchWithoutStats = w.operation("searchWithoutStats");
+        searchWithStats = w.operation("searchWithStats");
+        searchAcross = w.operation("searchAcross");
+        searchAcrossUncontracted = w.operation("searchAcrossUncontracted");
+        searchUnreachable = w.operation("searchUnreachable");
+        directions = w.operation("directions");
+    }
+
+    @Benchmark
+    public Object closest() throws Exception {
+        return closest.call();
+    }
+
+    /** Nearest point on any road, from the segment R-tree. */
+    @Benchmark
+    public Object snap() throws Exception {
+        return snap.call();
+    }
+
+    /** Snapping both ends onto roads and routing between the partial edges. */
+    @Benchmark
+    public Object routeOnRoads() throws Exception {
+        return routeOnRoads.call();
+    }
+
+    @Benchmark
+    public Object shortestPath() throws Exception {
+        return shortestPath.call();
+    }
+
+    /** A* between already snapped vertices, without statistics. */
+    @Benchmark
+    public Object searchWithoutStats() throws Exception {
+        return searchWithoutStats.call();
+    }
+
+    /** A* between already snapped vertices, collecting statistics. */
+    @Benchmark
+    public Object searchWithStats() throws Exception {
+        return searchWithStats.call();
+    }
+
+    /** A* between opposite corners of the graph, without statistics. */
+    @Benchmark
+    public Object searchAcross() throws Exception {
+        return searchAcross.call();
+    }
+
+    /** The same search over every vertex of the graph. */
+    @Benchmark
+    public Object searchAcrossUncontracted() throws Exception {
+        return searchAcrossUncontracted.call();
+    }
+
+    /** A* from a corner to a vertex in another connected component. */
+    @Benchmark
+    public Object searchUnreachable() throws Exception {
+        return searchUnreachable.call();
+    }
+
+    /** Directions for already found paths. */
+    @Benchmark
+    public Object directions() throws Exception {
+        return directions.call();
+    }
+}
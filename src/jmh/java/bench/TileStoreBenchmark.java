@@ -0,0 +1,50 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Random tile reads from loose files against a TilePack archive. See TileStoreWorkload.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TileStoreBenchmark {
+    @Param({"loose", "pack"})
+    public String store;
+
+    private Workload workload;
+    private Callable<Object> readTile;
+
+    @Setup
+    public void setUp() throws Exception {
+        workload = Workload.load("TileStoreWorkload", "store", store);
+        readTile = workload.operation("readTile");
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        workload.tearDown();
+    }
+
+    @Benchmark
+    public Object readTile() throws Exception {
+        return readTile.call();
+    }
+}
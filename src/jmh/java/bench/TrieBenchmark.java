@@ -0,0 +1,43 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TrieSet.getAll for short prefixes, as behind /api/search. See TrieWorkload.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TrieBenchmark {
+    /** Number of words put in the trie. */
+    @Param({"20000"})
+    public String words;
+
+    private Callable<Object> getAll;
+
+    @Setup
+    public void setUp() throws Exception {
+        getAll = Workload.load("TrieWorkload", "words", words).operation("getAll");
+    }
+
+    @Benchmark
+    public Object getAll() throws Exception {
+        return getAll.call();
+    }
+}
@@ -0,0 +1,80 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Live weight updates: the cost of one update of batch roads on its own, and routing
+ * on three threads with no updates landing against the same three threads while a
+ * fourth updates as fast as it can, far more often than any traffic feed would. See
+ * WeightsWorkload.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WeightsBenchmark {
+    /** OSM file to load; see RoutingBenchmark. */
+    @Param({"synthetic-100000", "synthetic-1000000"})
+    public String osm;
+
+    /** Roads changed by each update. */
+    @Param({"1", "100"})
+    public String batch;
+
+    /** Roads slowed before measuring; 0 to route with no live weights. */
+    @Param({"1000"})
+    public String preload;
+
+    private Callable<Object> update, route;
+
+    @Setup
+    public void setUp() throws Exception {
+        Workload w = Workload.load("WeightsWorkload", "osm", osm, "batch", batch,
+                "preload", preload);
+        update = w.operation("update");
+        route = w.operation("route");
+    }
+
+    @Benchmark
+    public Object update() throws Exception {
+        return update.call();
+    }
+
+    @Benchmark
+    @Threads(3)
+    public Object route() throws Exception {
+        return route.call();
+    }
+
+    @Benchmark
+    @Group("live")
+    @GroupThreads(3)
+    public Object liveRoute() throws Exception {
+        return route.call();
+    }
+
+    @Benchmark
+    @Group("live")
+    @GroupThreads(1)
+    public Object liveUpdate() throws Exception {
+        return update.call();
+    }
+}
@@ -0,0 +1,52 @@
+package bench;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * The code under benchmark, as seen from this package. The server's classes are all in
+ * the default package, which code in a named package cannot refer to, while JMH will
+ * only generate benchmarks in a named package. So each benchmark here loads, by name, a
+ * default-package class implementing this interface and calls the operations it
+ * returns; the cost of that one interface call is included in every measurement.
+ */
+public interface Workload {
+    /**
+     * Prepares the workload.
+     * @param params the benchmark's parameters, by name
+     * @throws Exception if the workload's data cannot be loaded
+     */
+    void setUp(Map<String, String> params) throws Exception;
+
+    /**
+     * Returns one of the workload's operations.
+     * @param name name of the operation
+     * @return the operation; its result is consumed by the benchmark
+     */
+    Callable<Object> operation(String name);
+
+    /**
+     * Releases anything setUp acquired.
+     * @throws Exception if releasing fails
+     */
+    default void tearDown() throws Exception {
+    }
+
+    /**
+     * Creates and sets up a default-package workload class.
+     * @param className name of the class
+     * @param params alternating parameter names and values
+     * @return the workload, set up
+     * @throws Exception if the class cannot be created or set up
+     */
+    static Workload load(String className, String... params) throws Exception {
+        Map<String, String> map = new HashMap<>();
+        for (int i = 0; i + 1 < params.length; i += 2) {
+            map.put(params[i], params[i + 1]);
+        }
+        Workload w = (Workload) Class.forName(className).getDeclaredConstructor().newInstance();
+        w.setUp(map);
+        return w;
+    }
+}
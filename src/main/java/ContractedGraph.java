@@ -0,0 +1,335 @@
+import java.util.Arrays;
+
+/**
+ * The road graph with its chains of degree-2 vertices collapsed, for searching. Most
+ * OSM vertices are shape points partway along a road, with one edge in and one out;
+ * a search gains nothing from settling them one at a time. Here only junctions are
+ * vertices: those with other than two neighbours, and those where two different ways
+ * meet, so that every contracted edge lies on a single way, and so is open to the same
+ * profiles all along, which it records as the way does. Each contracted edge runs
+ * from one junction to the next and weighs the sum of the edges it replaces. The shape
+ * points it passes are kept, in order, in one packed array, so that a route over
+ * contracted edges expands back into every vertex of the full graph.
+ *
+ * Every shape point also records the contracted edge it lies on and its distance from
+ * that edge's source, so that a search may start or end in the middle of a chain.
+ * A ring of shape points with no junction on it has one of them made a junction.
+ */
+public class ContractedGraph {
+    private final GraphDB g;
+    /** Junction number of each dense vertex, or -1 for a shape point. */
+    private final int[] junctionOf;
+    /** Dense vertex of each junction. */
+    private final int[] vertexOf;
+    /* Contracted edges of each junction, with their targets packed. */
+    private final PackedAdjacency adjacency;
+    private final int[] edgeSource;
+    private final double[] edgeLength;
+    private final byte[] edgeAccess;
+    /* Shape points of contracted edge e, from its source to its target, are
+     * via[viaStart[e]] through via[viaStart[e + 1] - 1]. */
+    private final int[] viaStart;
+    private final int[] via;
+    /** For each shape point, a contracted edge it lies on; -1 for junctions. */
+    private final int[] chainOf;
+    /** For each shape point, its position in via. */
+    private final int[] chainPos;
+    /** For each shape point, its distance in miles from the source of chainOf. */
+    private final double[] chainOffset;
+
+    /**
+     * Contracts a graph.
+     * @param g the graph, with its dense arrays built
+     * @param contract whether to collapse chains at all; if not, every vertex is a
+     *                 junction and the contracted graph is a copy of g, for comparison
+     */
+    ContractedGraph(GraphDB g, boolean contract) {
+        this.g = g;
+        int n = g.vertexCount();
+        int edges = g.edgeStart(n);
+        int[] targets = new int[Math.max(2, g.maxDegree())];
+        boolean[] junction = new boolean[n];
+        for (int v = 0; v < n; v++) {
+            junction[v] = !contract || !isShapePoint(g, v, targets);
+        }
+
+        junctionOf = new int[n];
+        Arrays.fill(junctionOf, -1);
+        chainOf = new int[n];
+        Arrays.fill(chainOf, -1);
+        chainPos = new int[n];
+        chainOffset = new double[n];
+        int[] vertices = new int[n];
+        int[] start = new int[n + 1];
+        int[] source = new int[edges];
+        int[] target = new int[edges];
+        double[] length = new double[edges];
+        byte[] access = new byte[edges];
+        int[] viaFrom = new int[edges + 1];
+        int[] shape = new int[edges];
+        int junctions = 0, e = 0, shapes = 0;
+
+        /* Walk out of every junction in dense order, then out of a vertex of each ring
+         * left over, making it a junction. The targets are dense vertices until all
+         * junctions are numbered. */
+        for (int pass = 0; pass < 2; pass++) {
+            for (int v = 0; v < n; v++) {
+                if (pass == 0 ? !junction[v] : junction[v] || chainOf[v] >= 0) {
+                    continue;
+                }
+                junction[v] = true;
+                junctionOf[v] = junctions;
+                vertices[junctions] = v;
+                start[junctions] = e;
+                int[] firsts = Arrays.copyOf(targets, g.targets(v, targets));
+                for (int k = 0; k < firsts.length; k++) {
+                    int first = g.edgeStart(v) + k;
+                    int prev = v, cur = firsts[k];
+                    double total = g.edgeLength(first);
+                    viaFrom[e] = shapes;
+                    boolean record = true;
+                    while (!junction[cur]) {
+                        if (chainOf[cur] >= 0) {
+                            /* Already walked from the other end; keep that record. */
+                            record = false;
+                        }
+                        if (record) {
+                            chainOf[cur] = e;
+                            chainPos[cur] = shapes;
+                            chainOffset[cur] = total;
+                        }
+                        shape[shapes++] = cur;
+                        /* Leave a shape point by the edge that does not lead back. */
+                        g.targets(cur, targets);
+                        int ahead = targets[0] == prev ? 1 : 0;
+                        prev = cur;
+                        cur = targets[ahead];
+                        total += g.edgeLength(g.edgeStart(prev) + ahead);
+                    }
+                    source[e] = junctions;
+                    target[e] = cur;
+                    length[e] = total;
+                    access[e] = (byte) g.edgeAccess(first);
+                    e++;
+                }
+                junctions++;
+            }
+        }
+        start[junctions] = e;
+        viaFrom[e] = shapes;
+        for (int k = 0; k < e; k++) {
+            target[k] = junctionOf[target[k]];
+        }
+
+        vertexOf = Arrays.copyOf(vertices, junctions);
+        adjacency = new PackedAdjacency(Arrays.copyOf(start, junctions + 1),
+                Arrays.copyOf(target, e));
+        edgeSource = Arrays.copyOf(source, e);
+        edgeLength = Arrays.copyOf(length, e);
+        edgeAccess = Arrays.copyOf(access, e);
+        viaStart = Arrays.copyOf(viaFrom, e + 1);
+        via = Arrays.copyOf(shape, shapes);
+    }
+
+    /**
+     * Returns whether v lies partway along a single way: two edges, to two different
+     * neighbours other than v, on the same way.
+     */
+    private static boolean isShapePoint(GraphDB g, int v, int[] targets) {
+        if (g.targets(v, targets) != 2) {
+            return false;
+        }
+        int e = g.edgeStart(v);
+        int a = targets[0], b = targets[1];
+        return a != b && a != v && b != v && g.edgeWay(e) == g.edgeWay(e + 1);
+    }
+
+    GraphDB graph() {
+        return g;
+    }
+
+    /**
+     * Returns the number of junctions.
+     * @return the number of vertices of the contracted graph
+     */
+    int junctionCount() {
+        return vertexOf.length;
+    }
+
+    /**
+     * Returns the number of contracted edges, counting each direction.
+     * @return the number of edges
+     */
+    int edgeCount() {
+        return edgeSource.length;
+    }
+
+    /**
+     * Returns the junction number of a dense vertex.
+     * @param v dense vertex index
+     * @return its junction number, or -1 if v is a shape point
+     */
+    int junctionOf(int v) {
+        return junctionOf[v];
+    }
+
+    /**
+     * Returns the dense vertex of a junction.
+     * @param j junction number
+     * @return its dense vertex index
+     */
+    int vertexOf(int j) {
+        return vertexOf[j];
+    }
+
+    /**
+     * Returns the first contracted edge of junction j; its edges run up to
+     * edgeStart(j + 1).
+     */
+    int edgeStart(int j) {
+        return adjacency.edgeStart(j);
+    }
+
+    /**
+     * Decodes the junctions the contracted edges of junction j lead to, in edge order.
+     * @param j junction number
+     * @param out where to write them, at least maxDegree() long
+     * @return the number of edges of j
+     */
+    int targets(int j, int[] out) {
+        return adjacency.targets(j, out);
+    }
+
+    /**
+     * Returns the largest number of contracted edges of any junction.
+     * @return the largest degree
+     */
+    int maxDegree() {
+        return adjacency.maxDegree();
+    }
+
+    int edgeSource(int e) {
+        return edgeSource[e];
+    }
+
+    /**
+     * Returns the junction contracted edge e leads to, decoding the edges of its source.
+     * @param e contracted edge
+     * @return junction number
+     */
+    int edgeTarget(int e) {
+        return adjacency.target(edgeSource[e], e);
+    }
+
+    /**
+     * Returns the length of contracted edge e in miles.
+     * @param e contracted edge
+     * @return the summed length of the edges it replaces
+     */
+    double edgeLength(int e) {
+        return edgeLength[e];
+    }
+
+    /**
+     * Returns which profiles may use contracted edge e.
+     * @param e contracted edge
+     * @return a mask of Profile bits
+     */
+    int edgeAccess(int e) {
+        return edgeAccess[e];
+    }
+
+    /**
+     * Returns the contracted edge an edge of the full graph lies on, in one direction.
+     * @param e an edge of the full graph
+     * @param v dense index of its source
+     * @param w dense index of its target
+     * @return a contracted edge through both, or -1 if none is found
+     */
+    int edgeContaining(int e, int v, int w) {
+        if (junctionOf[v] < 0 || junctionOf[w] < 0) {
+            return chainOf[junctionOf[v] < 0 ? v : w];
+        }
+        /* Between two junctions it is a contracted edge of its own, with no shape. */
+        int from = junctionOf[v];
+        int[] targets = new int[maxDegree()];
+        int degree = targets(from, targets);
+        for (int k = 0; k < degree; k++) {
+            int f = edgeStart(from) + k;
+            if (targets[k] == junctionOf[w] && viaStart[f] == viaStart[f + 1]
+                    && edgeLength[f] == g.edgeLength(e) && edgeAccess[f] == g.edgeAccess(e)) {
+                return f;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the contracted edge running the other way along the same road as e.
+     * @param e contracted edge
+     * @return the reverse edge, or -1 if none is found
+     */
+    int reverseOf(int e) {
+        int source = edgeSource[e], target = edgeTarget(e);
+        int[] targets = new int[maxDegree()];
+        int degree = targets(target, targets);
+        int shapes = viaStart[e + 1] - viaStart[e];
+        for (int k = 0; k < degree; k++) {
+            int f = edgeStart(target) + k;
+            if (f == e || targets[k] != source || viaStart[f + 1] - viaStart[f] != shapes
+                    || edgeAccess[f] != edgeAccess[e]) {
+                continue;
+            }
+            /* The lengths are summed in opposite orders, so may differ in the last bits. */
+            boolean sameShape = shapes == 0 ? Math.abs(edgeLength[f] - edgeLength[e]) < 1e-9
+                    : via[viaStart[f]] == via[viaStart[e + 1] - 1];
+            if (sameShape) {
+                return f;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the position in the packed shape array of the first shape point of e.
+     * The shape points of e are viaAt(viaStart(e)) through viaAt(viaStart(e + 1) - 1).
+     */
+    int viaStart(int e) {
+        return viaStart[e];
+    }
+
+    /**
+     * Returns the shape point at a position of the packed shape array.
+     * @param k position
+     * @return dense vertex index
+     */
+    int viaAt(int k) {
+        return via[k];
+    }
+
+    /**
+     * Returns the contracted edge a shape point lies on.
+     * @param v dense vertex index
+     * @return a contracted edge, or -1 if v is a junction
+     */
+    int chainOf(int v) {
+        return chainOf[v];
+    }
+
+    /**
+     * Returns the position of a shape point in the packed shape array, within the
+     * range of chainOf(v).
+     */
+    int chainPos(int v) {
+        return chainPos[v];
+    }
+
+    /**
+     * Returns the distance of a shape point from the source of chainOf(v).
+     * @param v dense vertex index of a shape point
+     * @return distance along the chain in miles
+     */
+    double chainOffset(int v) {
+        return chainOffset[v];
+    }
+}
@@ -0,0 +1,83 @@
+import java.util.Arrays;
+
+/**
+ * One version of the live weights of a contracted graph's edges: for each contracted
+ * edge, a factor its length is multiplied by, at least 1 for a slowed road and infinite
+ * for a closed one. A contracted edge is the road between two junctions, so a factor
+ * applies all along it, and to the partial edges a route may start or end on.
+ *
+ * Versions are immutable. GraphDB keeps the current one and replaces it whole on each
+ * update; a search takes the current version when it starts and uses it throughout, so
+ * it sees every update or none, and updates never wait for searches. The factors are
+ * kept in fixed-size pages, and a new version copies only the pages its update changes,
+ * sharing the rest with the version before, so an update costs about its own size
+ * rather than the graph's. Factors of at least 1 keep a route no shorter than the
+ * straight line, which A* relies on.
+ */
+public class EdgeWeights {
+    /** The weights before any update: every factor 1, with no pages kept. */
+    static final EdgeWeights NONE = new EdgeWeights(0, null);
+
+    private static final int PAGE_SHIFT = 10;
+    private static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+    /* A page of factors no update has touched, shared by every version. */
+    private static final double[] ONES = new double[1 << PAGE_SHIFT];
+
+    static {
+        Arrays.fill(ONES, 1);
+    }
+
+    private final long version;
+    /* Factor of contracted edge e is pages[e >> PAGE_SHIFT][e & PAGE_MASK], or 1 if
+     * pages is null. */
+    private final double[][] pages;
+
+    private EdgeWeights(long version, double[][] pages) {
+        this.version = version;
+        this.pages = pages;
+    }
+
+    /**
+     * Returns the number of updates made before this version.
+     * @return the version number, 0 for NONE
+     */
+    long version() {
+        return version;
+    }
+
+    /**
+     * Returns the factor of a contracted edge.
+     * @param e contracted edge
+     * @return at least 1, infinite if the edge is closed
+     */
+    double factor(int e) {
+        return pages == null ? 1 : pages[e >> PAGE_SHIFT][e & PAGE_MASK];
+    }
+
+    /**
+     * Returns a new version with some factors changed.
+     * @param edgeCount number of contracted edges
+     * @param edges the contracted edges to change
+     * @param factors the new factor of each, in order
+     * @return the next version
+     */
+    EdgeWeights with(int edgeCount, int[] edges, double[] factors) {
+        double[][] next;
+        if (pages == null) {
+            next = new double[(edgeCount + PAGE_MASK) >> PAGE_SHIFT][];
+            Arrays.fill(next, ONES);
+        } else {
+            next = pages.clone();
+        }
+        boolean[] copied = new boolean[next.length];
+        for (int k = 0; k < edges.length; k++) {
+            int page = edges[k] >> PAGE_SHIFT;
+            if (!copied[page]) {
+                next[page] = next[page].clone();
+                copied[page] = true;
+            }
+            next[page][edges[k] & PAGE_MASK] = factors[k];
+        }
+        return new EdgeWeights(version + 1, next);
+    }
+}
@@ -3,9 +3,6 @@ import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Set;
 
 /**
  *  Parses OSM XML files using an XML SAX parser. Used to construct the graph of roads for
@@ -27,16 +24,6 @@ import java.util.Set;
  *  @author Alan Yao, Maurice Lee
  */
 public class GraphBuildingHandler extends DefaultHandler {
-    /**
-     * Only allow for non-service roads; this prevents going on pedestrian streets as much as
-     * possible. Note that in Berkeley, many of the campus roads are tagged as motor vehicle
-     * roads, but in practice we walk all over them with such impunity that we forget cars can
-     * actually drive on them.
-     */
-    private static final Set<String> ALLOWED_HIGHWAY_TYPES = new HashSet<>(Arrays.asList
-            ("motorway", "trunk", "primary", "secondary", "tertiary", "unclassified",
-                    "residential", "living_street", "motorway_link", "trunk_link", "primary_link",
-                    "secondary_link", "tertiary_link"));
     private String activeState = "";
     private final GraphDB g;
     private String lastNode = "";
@@ -44,15 +31,29 @@ public class GraphBuildingHandler extends DefaultHandler {
     private String lastLat = "";
     private ArrayList<String> nodesToBeAdded = new ArrayList<>();
     private String speed = "0";
+    private String highway = "";
     private String wayName = "";
-    private boolean isValidWay = false;
+    private String bicycle = "";
+    private String foot = "";
+    /* Mask of the profiles whose ways are kept; see Profile. */
+    private final int profiles;
 
     /**
-     * Create a new GraphBuildingHandler.
+     * Create a new GraphBuildingHandler that keeps the ways cars may drive on.
      * @param g The graph to populate with the XML data.
      */
     public GraphBuildingHandler(GraphDB g) {
+        this(g, Profile.DRIVE.bit());
+    }
+
+    /**
+     * Create a new GraphBuildingHandler that keeps the ways any of some profiles may use.
+     * @param g The graph to populate with the XML data.
+     * @param profiles mask of the profiles to keep ways for
+     */
+    GraphBuildingHandler(GraphDB g, int profiles) {
         this.g = g;
+        this.profiles = profiles;
     }
 
     /**
@@ -104,7 +105,6 @@ public class GraphBuildingHandler extends DefaultHandler {
             lastLon = null;
             activeState = "way";
             nodesToBeAdded = new ArrayList<>();
-            isValidWay = false;
 
         } else if (activeState.equals("way") && qName.equals("nd")) {
             this.nodesToBeAdded.add(attributes.getValue("ref"));
@@ -119,9 +119,13 @@ public class GraphBuildingHandler extends DefaultHandler {
                 this.speed = v;
 
             } else if (k.equals("highway")) {
-                if (ALLOWED_HIGHWAY_TYPES.contains(v)) {
-                    isValidWay = true;
-                }
+                this.highway = v;
+
+            } else if (k.equals("bicycle")) {
+                this.bicycle = v;
+
+            } else if (k.equals("foot")) {
+                this.foot = v;
 
             } else if (k.equals("name")) {
                 this.wayName = v;
@@ -143,19 +147,24 @@ public class GraphBuildingHandler extends DefaultHandler {
     @Override
     public void endElement(String uri, String localName, String qName) throws SAXException {
         if (qName.equals("way")) {
-            if (isValidWay) {
+            /* Only the profiles being kept are recorded on the way. */
+            int access = Profile.access(this.highway, this.bicycle, this.foot) & profiles;
+            if (access != 0) {
+                /* The way's attributes are stored once; its edges carry only its id. */
+                int way = g.addWay(this.wayName, this.highway, this.speed, access);
                 String prevNode = this.nodesToBeAdded.get(0);
-                g.addStreetName(prevNode, this.wayName);
                 for (int i = 1; i < this.nodesToBeAdded.size(); i++) {
                     String currNode = this.nodesToBeAdded.get(i);
-                    g.addEdge(prevNode, currNode);
-                    g.addStreetName(currNode, this.wayName);
-                    g.addStreetNames(currNode, this.wayName);
+                    g.addEdge(prevNode, currNode, way);
                     prevNode = currNode;
                 }
             }
             activeState = "";
             wayName = "";
+            highway = "";
+            bicycle = "";
+            foot = "";
+            speed = "0";
         }
         if (qName.equals("node")) {
             activeState = "";
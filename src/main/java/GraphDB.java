@@ -9,9 +9,11 @@ import javax.xml.parsers.SAXParserFactory;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.HashMap;
+import java.util.function.IntPredicate;
 
 
 
@@ -31,26 +33,64 @@ public class GraphDB {
     private HashMap<String, ArrayList<Long>> locations = new HashMap<>();
     private HashMap<Long, Node> locationNodes = new HashMap<>();
     private TrieSet trie = new TrieSet(128);
+    private final WayTable ways = new WayTable();
+    private Node[] locationList;
+    private GridIndex locationIndex;
 
 
     private final double BINNUM = 10d;
     private Map<Double, HashSet<Node>> partitionedNodes = new HashMap<>();
+
+    /* Dense copy of the cleaned graph built by compact(), which replaces the Node objects:
+     * vertex i has OSM id vertexIds[i] and coordinates in units of FIXED_SCALE degrees,
+     * and its edges are those of adjacency, numbered as a CSR layout would. */
+    private long[] vertexIds;
+    private int[] vertexLons;
+    private int[] vertexLats;
+    private PackedAdjacency adjacency;
+    /* Length in miles and way id of each edge. */
+    private float[] adjLength;
+    private int[] adjWay;
+    /* Dense index of each vertex id: idHash gives the id a slot, and indexBySlot the
+     * index of the vertex holding that slot, which is checked against the id. */
+    private PerfectHash idHash;
+    private int[] indexBySlot;
+    /* Mask of the profiles whose ways were read, and the union of the access masks of
+     * the edges of each dense vertex. */
+    private final int profiles;
+    private byte[] vertexAccess;
+    /* Connected component of each dense vertex; components are numbered by decreasing
+     * size, so component 0 is the largest. */
+    private int[] componentOf;
+    private int componentCount;
+    /* Coordinates are stored as whole multiples of 1 / FIXED_SCALE degrees, the
+     * precision OSM files are written in. */
+    private static final double FIXED_SCALE = 1e7;
+    /* Largest coordinate of the grid vertices are ordered along. */
+    private static final int HILBERT_MAX = (1 << 16) - 1;
+    /* The graph Router searches, with chains of shape points collapsed. */
+    private ContractedGraph searchGraph;
+    /* R-tree of the road segments, for snapping points onto roads. */
+    private SegmentIndex segments;
+    /* Grid of the vertices for nearest-vertex queries, built on first use. */
+    private volatile VertexIndex vertexIndex;
+    /* Current live weights of the contracted edges, replaced by a new version on each update. */
+    private volatile EdgeWeights weights = EdgeWeights.NONE;
     /**
      * Helper Node class that stores each node in the given XML file
      * id: node id
      * lat: latitude of the node
      * lon: longitude of the node
      * adj: the adjacency list of the node, listing all adjacent nodes
+     * adjWays: the way id of each edge in adj, in the same order
      */
     class Node {
         private long id;
         private double lat;
         private double lon;
-        private double distToStart;
-        private String wayName;
         private String locationName;
         private ArrayList<Node> adj;
-        private HashSet<String> wayNames;
+        private int[] adjWays;
 
         /**
          * Constructor of the Node class
@@ -62,22 +102,18 @@ public class GraphDB {
             this.id = inputId;
             this.lat = inputLat;
             this.lon = inputLon;
-            this.adj = new ArrayList<>();
-            this.wayName = "";
-            this.wayNames = new HashSet<>();
+            this.adj = new ArrayList<>(2);
+            this.adjWays = new int[2];
             this.locationName = null;
-            this.distToStart = Double.MAX_VALUE;
         }
 
         Node(long inputId, double inputLat, double inputLon, String name) {
             this.id = inputId;
             this.lat = inputLat;
             this.lon = inputLon;
-            this.adj = new ArrayList<>();
-            this.wayName = "";
-            this.wayNames = new HashSet<>();
+            this.adj = new ArrayList<>(2);
+            this.adjWays = new int[2];
             this.locationName = name;
-            this.distToStart = Double.MAX_VALUE;
         }
         public String toString() {
             return "[" + this.id + ", " + this.lon + ", " + this.lat + "]";
@@ -105,6 +141,31 @@ public class GraphDB {
      * @param dbPath Path to the XML file to be parsed.
      */
     public GraphDB(String dbPath) {
+        this(dbPath, true);
+    }
+
+    /**
+     * Reads the ways some profiles may use into one graph, each edge marked with which
+     * of them may use it, to route any of them on.
+     * @param dbPath Path to the XML file to be parsed.
+     * @param profiles the profiles to keep ways for
+     */
+    public GraphDB(String dbPath, Set<Profile> profiles) {
+        this(dbPath, true, Profile.mask(profiles));
+    }
+
+    /**
+     * Reads a graph, optionally leaving its vertices in file order rather than along a
+     * Hilbert curve, to measure what the reordering is worth.
+     * @param dbPath Path to the XML file to be parsed.
+     * @param reorder whether to number vertices along a Hilbert curve
+     */
+    GraphDB(String dbPath, boolean reorder) {
+        this(dbPath, reorder, Profile.DRIVE.bit());
+    }
+
+    private GraphDB(String dbPath, boolean reorder, int profiles) {
+        this.profiles = profiles;
         try {
             File inputFile = new File(dbPath);
             FileInputStream inputStream = new FileInputStream(inputFile);
@@ -112,12 +173,17 @@ public class GraphDB {
 
             SAXParserFactory factory = SAXParserFactory.newInstance();
             SAXParser saxParser = factory.newSAXParser();
-            GraphBuildingHandler gbh = new GraphBuildingHandler(this);
+            GraphBuildingHandler gbh = new GraphBuildingHandler(this, profiles);
             saxParser.parse(inputStream, gbh);
         } catch (ParserConfigurationException | SAXException | IOException e) {
             e.printStackTrace();
         }
         clean();
+        compact(reorder);
+        labelComponents();
+        searchGraph = new ContractedGraph(this, true);
+        segments = new SegmentIndex(this);
+        indexLocations();
     }
 
     /**
@@ -138,14 +204,16 @@ public class GraphDB {
         this.unconnected.add(newNode);
     }
 
-    void addStreetName(String id, String n) {
-        long nodeId = Long.parseLong(id);
-        this.nodes.get(nodeId).wayName = n;
-    }
-
-    void addStreetNames(String id, String n) {
-        long nodeId = Long.parseLong(id);
-        this.nodes.get(nodeId).wayNames.add(n);
+    /**
+     * Adds a way to the way table.
+     * @param name name of the way, or "" if it has none
+     * @param highway value of the way's highway tag
+     * @param maxSpeed value of the way's maxspeed tag, e.g. "25 mph", or "0"
+     * @param access mask of the profiles that may use the way
+     * @return the id of the way, for addEdge
+     */
+    int addWay(String name, String highway, String maxSpeed, int access) {
+        return ways.add(name, highway, parseSpeed(maxSpeed), access);
     }
 
     /**
@@ -188,15 +256,24 @@ public class GraphDB {
     }
 
     /**
-     * Returns true if a node contains the specified street name
+     * Returns true if a way with the specified name passes through a node
      * @param id node id
      * @param n specified street name
-     * @return true if the node contains that street name
+     * @return true if one of the node's edges is on a way of that name
      * false otherwise
      */
     boolean containsStreetName(long id, String n) {
-        long nodeId = id;
-        return this.nodes.get(nodeId).wayNames.contains(n);
+        int v = indexOf(id);
+        int nameId = ways.nameIdOf(n);
+        if (v < 0 || nameId < 0) {
+            return false;
+        }
+        for (int e = edgeStart(v); e < edgeStart(v + 1); e++) {
+            if (ways.nameId(adjWay[e]) == nameId) {
+                return true;
+            }
+        }
+        return false;
     }
 
 
@@ -205,18 +282,26 @@ public class GraphDB {
      * the other vertex's adjacency list
      * @param vid the String format id of vertex V
      * @param wid the String format id of vertex W
+     * @param way the id of the way the edge is on, from addWay
      */
-    void addEdge(String vid, String wid) {
+    void addEdge(String vid, String wid, int way) {
         long longVid = Long.parseLong(vid);
         long longWid = Long.parseLong(wid);
         Node v = nodes.get(longVid);
         Node w = nodes.get(longWid);
         this.unconnected.remove(v);
         this.unconnected.remove(w);
-        ArrayList<Node> vAdj = v.adj;
-        ArrayList<Node> wAdj = w.adj;
-        vAdj.add(w);
-        wAdj.add(v);
+        addAdjacent(v, w, way);
+        addAdjacent(w, v, way);
+    }
+
+    private static void addAdjacent(Node v, Node w, int way) {
+        int n = v.adj.size();
+        if (n == v.adjWays.length) {
+            v.adjWays = Arrays.copyOf(v.adjWays, n * 2);
+        }
+        v.adjWays[n] = way;
+        v.adj.add(w);
     }
 
     void addEdgeWithSpeed(String vid, String wid, String speed) {
@@ -247,6 +332,81 @@ public class GraphDB {
         return returnedList;
     }
 
+    /**
+     * Builds the spatial index over named location nodes.
+     */
+    private void indexLocations() {
+        locationList = this.locationNodes.values().toArray(new Node[0]);
+        double[] lons = new double[locationList.length];
+        double[] lats = new double[locationList.length];
+        for (int i = 0; i < locationList.length; i++) {
+            lons[i] = locationList[i].lon;
+            lats[i] = locationList[i].lat;
+        }
+        locationIndex = new GridIndex(lons, lats);
+    }
+
+    /**
+     * Returns the k named locations closest to the given point, nearest first.
+     * @param lon query longitude
+     * @param lat query latitude
+     * @param k maximum number of locations to return
+     * @param prefix only return locations whose cleaned name starts with this prefix;
+     *               null to return any location
+     * @return a list of location maps with "lat", "lon", "name", "id" and "distance"
+     */
+    ArrayList<Map<String, Object>> getNearbyLocations(double lon, double lat, int k,
+                                                      String prefix) {
+        int[] hits = locationIndex.nearest(lon, lat, k, locationFilter(prefix));
+        return locationMaps(hits, lon, lat);
+    }
+
+    /**
+     * Returns the named locations within the given distance of a point, nearest first.
+     * @param lon query longitude
+     * @param lat query latitude
+     * @param miles search radius in miles
+     * @param prefix only return locations whose cleaned name starts with this prefix;
+     *               null to return any location
+     * @param limit most locations to return; the nearest are kept
+     * @return a list of location maps with "lat", "lon", "name", "id" and "distance"
+     */
+    ArrayList<Map<String, Object>> getLocationsWithin(double lon, double lat, double miles,
+                                                      String prefix, int limit) {
+        int[] hits = locationIndex.within(lon, lat, miles, locationFilter(prefix));
+        if (hits.length > limit) {
+            hits = Arrays.copyOf(hits, limit);
+        }
+        return locationMaps(hits, lon, lat);
+    }
+
+    /**
+     * Returns a filter accepting the locations whose full name the trie lists under
+     * the cleaned prefix, or null if there is no prefix.
+     */
+    private IntPredicate locationFilter(String prefix) {
+        if (prefix == null) {
+            return null;
+        }
+        HashSet<String> names = new HashSet<>(trie.getAll(cleanStringAlter(prefix)));
+        return i -> names.contains(locationList[i].locationName);
+    }
+
+    private ArrayList<Map<String, Object>> locationMaps(int[] hits, double lon, double lat) {
+        ArrayList<Map<String, Object>> returnedList = new ArrayList<>();
+        for (int i: hits) {
+            Node n = locationList[i];
+            Map<String, Object> matchingLocationMap = new HashMap<>();
+            matchingLocationMap.put("lat", n.lat);
+            matchingLocationMap.put("lon", n.lon);
+            matchingLocationMap.put("name", n.locationName);
+            matchingLocationMap.put("id", n.id);
+            matchingLocationMap.put("distance", distance(lon, lat, n.lon, n.lat));
+            returnedList.add(matchingLocationMap);
+        }
+        return returnedList;
+    }
+
     /**
      * Given prefix, returns a complete list that contains the matching
      * locations
@@ -289,20 +449,431 @@ public class GraphDB {
      *  we can reasonably assume this since typically roads are connected.
      */
     private void clean() {
-        Iterable<Long> ids = vertices();
-        Set<Long> set = (Set) ids;
         for (Node n: this.unconnected) {
             this.nodes.remove(n.id);
             //removeNodeFromPartitioned(n);
         }
     }
 
+    /**
+     * Lays the cleaned graph out in primitive arrays indexed by a dense vertex number,
+     * so that searches can keep their state in plain arrays instead of maps, then lets
+     * the Node objects go. Coordinates are kept as fixed-point ints, adjacency lists
+     * packed as varint differences, which take about a byte each for nearby vertex
+     * numbers, and ids found by a minimal perfect hash rather than a map of boxed keys.
+     * Vertices are numbered along a Hilbert curve over their coordinates, so that
+     * vertices near each other on the map are mostly near each other in the arrays too,
+     * and a search touches few cache lines rather than jumping across them in OSM id
+     * order. Must be called after clean().
+     * @param reorder whether to number along the curve; if not, in file order
+     */
+    private void compact(boolean reorder) {
+        int n = this.nodes.size();
+        Node[] order = this.nodes.values().toArray(new Node[0]);
+        if (reorder) {
+            order = hilbertOrder(order);
+        }
+        vertexIds = new long[n];
+        vertexLons = new int[n];
+        vertexLats = new int[n];
+        int[] adjStart = new int[n + 1];
+        int edges = 0;
+        for (int i = 0; i < n; i++) {
+            Node v = order[i];
+            vertexIds[i] = v.id;
+            vertexLons[i] = (int) Math.round(v.lon * FIXED_SCALE);
+            vertexLats[i] = (int) Math.round(v.lat * FIXED_SCALE);
+            edges += v.adj.size();
+        }
+        idHash = new PerfectHash(vertexIds);
+        indexBySlot = new int[n];
+        for (int i = 0; i < n; i++) {
+            indexBySlot[idHash.slot(vertexIds[i])] = i;
+        }
+        int[] adjTarget = new int[edges];
+        adjLength = new float[edges];
+        adjWay = new int[edges];
+        vertexAccess = new byte[n];
+        int e = 0;
+        for (int i = 0; i < n; i++) {
+            adjStart[i] = e;
+            Node v = order[i];
+            for (int k = 0; k < v.adj.size(); k++) {
+                int target = indexOf(v.adj.get(k).id);
+                adjTarget[e] = target;
+                adjWay[e] = v.adjWays[k];
+                vertexAccess[i] |= ways.access(adjWay[e]);
+                adjLength[e] = (float) distance(lonAt(i), latAt(i),
+                        lonAt(target), latAt(target));
+                e++;
+            }
+        }
+        adjStart[n] = e;
+        adjacency = new PackedAdjacency(adjStart, adjTarget);
+        this.nodes = null;
+        this.unconnected = null;
+    }
+
+    /**
+     * Sorts nodes by their position along a Hilbert curve through a 2^16 by 2^16 grid
+     * over their bounding box.
+     */
+    private static Node[] hilbertOrder(Node[] nodes) {
+        double minLon = Double.POSITIVE_INFINITY, minLat = Double.POSITIVE_INFINITY;
+        double maxLon = Double.NEGATIVE_INFINITY, maxLat = Double.NEGATIVE_INFINITY;
+        for (Node v : nodes) {
+            minLon = Math.min(minLon, v.lon);
+            maxLon = Math.max(maxLon, v.lon);
+            minLat = Math.min(minLat, v.lat);
+            maxLat = Math.max(maxLat, v.lat);
+        }
+        double lonScale = HILBERT_MAX / Math.max(maxLon - minLon, 1e-12);
+        double latScale = HILBERT_MAX / Math.max(maxLat - minLat, 1e-12);
+        /* Curve position in the high half, original position in the low half. */
+        long[] keys = new long[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            int x = (int) ((nodes[i].lon - minLon) * lonScale);
+            int y = (int) ((maxLat - nodes[i].lat) * latScale);
+            keys[i] = hilbert(x, y) << 32 | i;
+        }
+        Arrays.sort(keys);
+        Node[] sorted = new Node[nodes.length];
+        for (int i = 0; i < keys.length; i++) {
+            sorted[i] = nodes[(int) keys[i]];
+        }
+        return sorted;
+    }
+
+    /**
+     * Returns the distance along the Hilbert curve through the 2^16 by 2^16 grid of the
+     * cell at (x, y).
+     */
+    static long hilbert(int x, int y) {
+        long d = 0;
+        for (int s = (HILBERT_MAX + 1) / 2; s > 0; s /= 2) {
+            int rx = (x & s) > 0 ? 1 : 0;
+            int ry = (y & s) > 0 ? 1 : 0;
+            d += (long) s * s * ((3 * rx) ^ ry);
+            /* Rotate the quadrant so the curve inside it runs the right way. */
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = HILBERT_MAX - x;
+                    y = HILBERT_MAX - y;
+                }
+                int t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return d;
+    }
+
+    /**
+     * Labels every vertex with its connected component by breadth-first search over the
+     * dense arrays. clean() drops isolated vertices but not islands of them, such as a
+     * parking lot loop whose access road is not a routable highway; no route leaves one.
+     * Edges of every profile count, so vertices in different components are joined by
+     * no route of any profile, though two in one component may have none of some.
+     * Must be called after compact().
+     */
+    private void labelComponents() {
+        int n = vertexCount();
+        int[] label = new int[n];
+        Arrays.fill(label, -1);
+        int[] queue = new int[n];
+        int[] sizes = new int[Math.max(n, 1)];
+        int[] targets = new int[adjacency.maxDegree()];
+        int count = 0;
+        for (int root = 0; root < n; root++) {
+            if (label[root] >= 0) {
+                continue;
+            }
+            int head = 0, tail = 0;
+            label[root] = count;
+            queue[tail++] = root;
+            while (head < tail) {
+                int v = queue[head++];
+                int degree = adjacency.targets(v, targets);
+                for (int k = 0; k < degree; k++) {
+                    int w = targets[k];
+                    if (label[w] < 0) {
+                        label[w] = count;
+                        queue[tail++] = w;
+                    }
+                }
+            }
+            sizes[count++] = tail;
+        }
+
+        /* Renumber by decreasing size, ties in order of discovery. */
+        Integer[] order = new Integer[count];
+        for (int c = 0; c < count; c++) {
+            order[c] = c;
+        }
+        Arrays.sort(order, (a, b) -> sizes[b] != sizes[a]
+                ? Integer.compare(sizes[b], sizes[a]) : Integer.compare(a, b));
+        int[] rank = new int[count];
+        for (int c = 0; c < count; c++) {
+            rank[order[c]] = c;
+        }
+        for (int v = 0; v < n; v++) {
+            label[v] = rank[label[v]];
+        }
+        componentOf = label;
+        componentCount = count;
+    }
+
+    /**
+     * Returns the number of vertices in the cleaned graph.
+     * @return the number of vertices
+     */
+    int vertexCount() {
+        return vertexIds.length;
+    }
+
+    /**
+     * Returns the dense index of a vertex.
+     * @param v The id of the vertex.
+     * @return the index of v, or -1 if v is not in the graph
+     */
+    int indexOf(long v) {
+        int slot = idHash.slot(v);
+        if (slot < 0) {
+            return -1;
+        }
+        int i = indexBySlot[slot];
+        return vertexIds[i] == v ? i : -1;
+    }
+
+    /**
+     * Returns the OSM id of the vertex at the given index.
+     * @param i dense vertex index
+     * @return the id of that vertex
+     */
+    long idAt(int i) {
+        return vertexIds[i];
+    }
+
+    double lonAt(int i) {
+        return vertexLons[i] / FIXED_SCALE;
+    }
+
+    double latAt(int i) {
+        return vertexLats[i] / FIXED_SCALE;
+    }
+
+    /**
+     * Returns the index of the first edge leaving vertex i. The edges of i are
+     * edgeStart(i) inclusive through edgeStart(i + 1) exclusive.
+     * @param i dense vertex index, up to and including vertexCount()
+     * @return an edge index
+     */
+    int edgeStart(int i) {
+        return adjacency.edgeStart(i);
+    }
+
+    /**
+     * Decodes the vertices the edges of vertex i point to, in edge order: the target of
+     * edge edgeStart(i) + k is written to out[k].
+     * @param i dense vertex index
+     * @param out where to write them, at least maxDegree() long
+     * @return the number of edges of i
+     */
+    int targets(int i, int[] out) {
+        return adjacency.targets(i, out);
+    }
+
+    /**
+     * Returns the dense index of the vertex an edge points to. Decodes the edges of
+     * the source before it; loops over every edge of a vertex should use targets.
+     * @param i dense index of the edge's source
+     * @param e an edge of i
+     * @return a dense vertex index
+     */
+    int edgeTarget(int i, int e) {
+        return adjacency.target(i, e);
+    }
+
+    /**
+     * Returns the largest number of edges of any vertex.
+     * @return the largest degree
+     */
+    int maxDegree() {
+        return adjacency.maxDegree();
+    }
+
+    /**
+     * Returns the great-circle length of edge e in miles.
+     * @param e edge index
+     * @return the length of the edge
+     */
+    double edgeLength(int e) {
+        return adjLength[e];
+    }
+
+    /**
+     * Returns the id of the way edge e is on.
+     * @param e edge index
+     * @return a way id of ways()
+     */
+    int edgeWay(int e) {
+        return adjWay[e];
+    }
+
+    /**
+     * Returns which profiles may use edge e.
+     * @param e edge index
+     * @return a mask of Profile bits
+     */
+    int edgeAccess(int e) {
+        return ways.access(adjWay[e]);
+    }
+
+    /**
+     * Returns which profiles the graph was read with.
+     * @return a mask of Profile bits
+     */
+    int profiles() {
+        return profiles;
+    }
+
+    /**
+     * Returns whether a profile may use some edge of a vertex, so a route of that
+     * profile may start or end there.
+     * @param i dense vertex index
+     * @param profile a profile
+     * @return whether any edge of i allows profile
+     */
+    boolean allows(int i, Profile profile) {
+        return (vertexAccess[i] & profile.bit()) != 0;
+    }
+
+    /**
+     * Returns an edge from vertex v to vertex w. Where several ways join the same two
+     * vertices, one on the way named nameId is preferred.
+     * @param v dense index of the first vertex, or -1
+     * @param w dense index of the second vertex
+     * @param nameId name id of the preferred way, or -1 for none
+     * @return an edge index, or -1 if there is no such edge
+     */
+    int edgeBetween(int v, int w, int nameId) {
+        if (v < 0) {
+            return -1;
+        }
+        int found = -1;
+        int[] targets = new int[adjacency.maxDegree()];
+        int degree = adjacency.targets(v, targets);
+        for (int k = 0; k < degree; k++) {
+            int e = adjacency.edgeStart(v) + k;
+            if (targets[k] == w) {
+                if (ways.nameId(adjWay[e]) == nameId) {
+                    return e;
+                }
+                if (found < 0) {
+                    found = e;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns the connected component of a vertex. Two vertices are joined by a route
+     * exactly when their components are equal.
+     * @param i dense vertex index
+     * @return its component, 0 being the largest
+     */
+    int componentOf(int i) {
+        return componentOf[i];
+    }
+
+    /**
+     * Returns the number of connected components.
+     * @return the number of components
+     */
+    int componentCount() {
+        return componentCount;
+    }
+
+    /**
+     * Returns the graph with chains of degree-2 vertices collapsed, which routes are
+     * searched on.
+     * @return the contracted graph
+     */
+    ContractedGraph searchGraph() {
+        return searchGraph;
+    }
+
+    /**
+     * Returns the current live weights of the contracted edges. A search should take
+     * them once and use that version throughout.
+     * @return the latest version
+     */
+    EdgeWeights weights() {
+        return weights;
+    }
+
+    /**
+     * Slows, closes or reopens roads without rebuilding the graph. Each update names an
+     * edge by its two end vertices and sets the factor of the road between the junctions
+     * either side of it, in both directions, so closing one edge closes the whole block
+     * it lies on. Searches already running keep the version they started with.
+     * @param from node id of one end of each edge
+     * @param to node id of the other end of each edge
+     * @param factors the factor to multiply each road's length by: 1 to restore it, more
+     *                to slow it, or positive infinity to close it
+     * @return the new version number
+     * @throws IllegalArgumentException if the arrays differ in length, a factor is
+     *         below 1 or not a number, or two ids are not joined by an edge
+     */
+    synchronized long updateWeights(long[] from, long[] to, double[] factors) {
+        if (from.length != to.length || from.length != factors.length) {
+            throw new IllegalArgumentException("Updates need a from, to and factor each");
+        }
+        int[] edges = new int[2 * from.length];
+        double[] values = new double[2 * from.length];
+        int count = 0;
+        for (int k = 0; k < from.length; k++) {
+            if (!(factors[k] >= 1)) {
+                throw new IllegalArgumentException("Factor must be at least 1: " + factors[k]);
+            }
+            int v = indexOf(from[k]), w = indexOf(to[k]);
+            int e = w < 0 ? -1 : edgeBetween(v, w, -1);
+            int forward = e < 0 ? -1 : searchGraph.edgeContaining(e, v, w);
+            if (forward < 0) {
+                throw new IllegalArgumentException("No edge from " + from[k] + " to " + to[k]);
+            }
+            edges[count] = forward;
+            values[count++] = factors[k];
+            int backward = searchGraph.reverseOf(forward);
+            if (backward >= 0) {
+                edges[count] = backward;
+                values[count++] = factors[k];
+            }
+        }
+        EdgeWeights next = weights.with(searchGraph.edgeCount(),
+                Arrays.copyOf(edges, count), Arrays.copyOf(values, count));
+        weights = next;
+        return next.version();
+    }
+
+    /**
+     * Returns the table of the ways edges are on.
+     * @return the way table
+     */
+    WayTable ways() {
+        return ways;
+    }
+
     /**
      * Returns an iterable of all vertex IDs in the graph.
      * @return An iterable of id's of all vertices in the graph.
      */
     Iterable<Long> vertices() {
-        Set<Long> vertices = this.nodes.keySet();
+        ArrayList<Long> vertices = new ArrayList<>(vertexIds.length);
+        for (long id : vertexIds) {
+            vertices.add(id);
+        }
         return vertices;
     }
 
@@ -312,16 +883,17 @@ public class GraphDB {
      * @return An iterable of the ids of the neighbors of v.
      */
     Iterable<Long> adjacent(long v) {
-        ArrayList<Long> adjacency = new ArrayList<>();
-        Node vNode = nodes.get(v);
-        if (vNode == null) {
-            return adjacency;
+        ArrayList<Long> neighbours = new ArrayList<>();
+        int i = indexOf(v);
+        if (i < 0) {
+            return neighbours;
         }
-        ArrayList<Node> adjacenyNodes = vNode.adj;
-        for (Node n: adjacenyNodes) {
-            adjacency.add(n.id);
+        int[] targets = new int[adjacency.maxDegree()];
+        int degree = adjacency.targets(i, targets);
+        for (int k = 0; k < degree; k++) {
+            neighbours.add(vertexIds[targets[k]]);
         }
-        return adjacency;
+        return neighbours;
     }
 
     /**
@@ -336,6 +908,11 @@ public class GraphDB {
         return distance(lon(v), lat(v), lon(w), lat(w));
     }
 
+    /** Radius of the earth in miles, as distances are measured on a sphere. */
+    static final double EARTH_RADIUS_MILES = 3963;
+    /** Miles per degree of latitude, or of longitude at the equator. */
+    static final double MILES_PER_DEGREE = EARTH_RADIUS_MILES * Math.PI / 180;
+
     static double distance(double lonV, double latV, double lonW, double latW) {
         double phi1 = Math.toRadians(latV);
         double phi2 = Math.toRadians(latW);
@@ -344,7 +921,7 @@ public class GraphDB {
         double a = Math.sin(dphi / 2.0) * Math.sin(dphi / 2.0);
         a += Math.cos(phi1) * Math.cos(phi2) * Math.sin(dlambda / 2.0) * Math.sin(dlambda / 2.0);
         double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-        return 3963 * c;
+        return EARTH_RADIUS_MILES * c;
     }
 
     /**
@@ -375,23 +952,150 @@ public class GraphDB {
     }
 
     /**
-     * Returns the vertex closest to the given longitude and latitude.
+     * Returns the vertex closest to the given longitude and latitude. Only vertices on
+     * roads cars may drive on are considered, which are all of them unless the graph
+     * was read with other profiles too.
      * @param lon The target longitude.
      * @param lat The target latitude.
      * @return The id of the node in the graph closest to the target.
      */
     long closest(double lon, double lat) {
-        double dist = Double.MAX_VALUE;
-        Node closestNode = null;
-        for (long id: this.nodes.keySet()) {
-            Node n = this.nodes.get(id);
-            double newDist = distance(n.lon, n.lat, lon, lat);
-            if (newDist < dist) {
-                dist = newDist;
-                closestNode = n;
+        return closest(lon, lat, false);
+    }
+
+    /**
+     * Returns the vertex closest to the given longitude and latitude, optionally only
+     * among the vertices of the largest connected component, so that a point dropped
+     * near a small island still snaps to somewhere most of the map can be reached from.
+     * @param lon The target longitude.
+     * @param lat The target latitude.
+     * @param largestComponent whether to consider only the largest component
+     * @return The id of the node in the graph closest to the target.
+     */
+    long closest(double lon, double lat, boolean largestComponent) {
+        return closest(lon, lat, largestComponent, Profile.DRIVE);
+    }
+
+    /**
+     * Returns the vertex closest to the given longitude and latitude among those a
+     * profile may start or end a route at.
+     * @param lon The target longitude.
+     * @param lat The target latitude.
+     * @param largestComponent whether to consider only the largest component
+     * @param profile the profile the vertex must have an edge for
+     * @return The id of the node in the graph closest to the target.
+     * @throws IllegalArgumentException if no vertex qualifies, as for a target that is
+     *         not a number or a graph with no vertices
+     */
+    long closest(double lon, double lat, boolean largestComponent, Profile profile) {
+        int nearest = vertexIndex().nearest(lon, lat, filter(largestComponent, profile));
+        if (nearest < 0) {
+            throw new IllegalArgumentException("No vertex near " + lon + ", " + lat);
+        }
+        return vertexIds[nearest];
+    }
+
+    /**
+     * Returns the vertex closest to each of a batch of locations. Queries are answered
+     * in spatial order rather than one by one, which is much faster for large batches of
+     * nearby points such as GPS fixes.
+     * @param lons The target longitudes.
+     * @param lats The target latitudes, as many as lons.
+     * @param largestComponent whether to consider only the largest component
+     * @return The id of the node closest to each target, in order.
+     * @throws IllegalArgumentException if the arrays differ in length, or no vertex
+     *         qualifies for some target, as for one that is not a number
+     */
+    long[] closestBatch(double[] lons, double[] lats, boolean largestComponent) {
+        if (lons.length != lats.length) {
+            throw new IllegalArgumentException(lons.length + " longitudes but "
+                    + lats.length + " latitudes");
+        }
+        int[] nearest = vertexIndex().nearestBatch(lons, lats,
+                filter(largestComponent, Profile.DRIVE));
+        long[] ids = new long[nearest.length];
+        for (int q = 0; q < ids.length; q++) {
+            if (nearest[q] < 0) {
+                throw new IllegalArgumentException("No vertex near " + lons[q] + ", "
+                        + lats[q]);
             }
+            ids[q] = vertexIds[nearest[q]];
         }
-        return closestNode.id;
+        return ids;
+    }
+
+    /**
+     * Returns a filter accepting the vertices of the largest component, if asked, with
+     * an edge for profile, or null to accept every vertex.
+     * @throws IllegalArgumentException if the graph was not read with profile
+     */
+    private IntPredicate filter(boolean largestComponent, Profile profile) {
+        if ((profiles & profile.bit()) == 0) {
+            throw new IllegalArgumentException("Graph has no " + profile + " profile");
+        }
+        if (profiles == profile.bit()) {
+            /* Every edge allows the only profile read. */
+            return largestComponent ? v -> componentOf[v] == 0 : null;
+        }
+        int bit = profile.bit();
+        return largestComponent ? v -> componentOf[v] == 0 && (vertexAccess[v] & bit) != 0
+                : v -> (vertexAccess[v] & bit) != 0;
+    }
+
+    /**
+     * Returns the grid of the vertices, building it the first time; a graph only used
+     * for routing between snapped points never needs it.
+     */
+    private VertexIndex vertexIndex() {
+        VertexIndex index = vertexIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = vertexIndex;
+                if (index == null) {
+                    index = new VertexIndex(this);
+                    vertexIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Returns the point on any road cars may drive on nearest to the given longitude and
+     * latitude, which may lie partway along an edge.
+     * @param lon The target longitude.
+     * @param lat The target latitude.
+     * @return the snapped point with its edge and offset, or null if there are no roads
+     */
+    SegmentIndex.Snap snap(double lon, double lat) {
+        return snap(lon, lat, Profile.DRIVE);
+    }
+
+    /**
+     * Returns the point nearest to the given longitude and latitude on any edge a
+     * profile may use.
+     * @param lon The target longitude.
+     * @param lat The target latitude.
+     * @param profile the profile the edge must allow
+     * @return the snapped point with its edge and offset, or null if there is no edge
+     */
+    SegmentIndex.Snap snap(double lon, double lat, Profile profile) {
+        SegmentIndex.Snap[] snaps = segments.nearest(lon, lat, 1, Double.POSITIVE_INFINITY,
+                profile.bit());
+        return snaps.length == 0 ? null : snaps[0];
+    }
+
+    /**
+     * Returns the nearest points on the k segments of roads cars may drive on nearest to
+     * the given longitude and latitude, leaving out any farther than a radius.
+     * @param lon The target longitude.
+     * @param lat The target latitude.
+     * @param k largest number of points to return
+     * @param miles search radius in miles
+     * @return up to k points, one per edge, nearest first
+     */
+    SegmentIndex.Snap[] snaps(double lon, double lat, int k, double miles) {
+        return segments.nearest(lon, lat, k, miles, Profile.DRIVE.bit());
     }
 
     /**
@@ -400,11 +1104,11 @@ public class GraphDB {
      * @return The longitude of the vertex.
      */
     double lon(long v) {
-        if (!this.nodes.containsKey(v)) {
+        int i = indexOf(v);
+        if (i < 0) {
             return -1;
         }
-        Node n = this.nodes.get(v);
-        return n.lon;
+        return lonAt(i);
     }
 
     /**
@@ -413,11 +1117,11 @@ public class GraphDB {
      * @return The latitude of the vertex.
      */
     double lat(long v) {
-        if (!this.nodes.containsKey(v)) {
+        int i = indexOf(v);
+        if (i < 0) {
             return -1;
         }
-        Node n = this.nodes.get(v);
-        return n.lat;
+        return latAt(i);
     }
 
     /**
@@ -437,24 +1141,8 @@ public class GraphDB {
         return n;
     }
 
-    void setCurrCost(Long id, double dist) {
-        Node n = nodes.get(id);
-        n.distToStart = dist;
-    }
-
     double getForwardCost(Long nodeId, Long destNodeId) {
-        Node n = nodes.get(nodeId);
-        Node d = nodes.get(destNodeId);
-        double stlon = n.lon;
-        double stlat = n.lat;
-        double destlon = d.lon;
-        double destlat = d.lat;
-        return distance(stlon, stlat, destlon, destlat);
-    }
-
-    double getBackWardCost(Long id) {
-        Node n = nodes.get(id);
-        return n.distToStart;
+        return distance(nodeId, destNodeId);
     }
 
 
@@ -541,15 +1229,21 @@ public class GraphDB {
         return closestNode.id;
     }
 
+    /**
+     * Returns the name of a way through a node: that of its last edge with a named way.
+     * @param id node id
+     * @return the street name, or "" if the node is on no named way
+     */
     String getNodeName(Long id) {
-        Node n = this.nodes.get(id);
-        if (n == null || n.wayName.equals("")) {
+        int v = indexOf(id);
+        if (v < 0) {
             return "";
         }
-        return n.wayName;
-    }
-
-    double getNodeDistanceToStart(Long id) {
-        return this.nodes.get(id).distToStart;
+        for (int e = edgeStart(v + 1) - 1; e >= edgeStart(v); e--) {
+            if (ways.nameId(adjWay[e]) != WayTable.NO_NAME) {
+                return ways.name(adjWay[e]);
+            }
+        }
+        return "";
     }
 }
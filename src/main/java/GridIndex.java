@@ -0,0 +1,228 @@
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Static uniform grid over a set of points given by longitude and latitude, answering
+ * k-nearest and within-radius queries. Points are referred to by their position in the
+ * arrays the grid was built from. The cell size is chosen so that each cell holds a
+ * constant number of points on average, which keeps query cost independent of the
+ * number of points for roughly uniform data such as POIs or road vertices.
+ */
+public class GridIndex {
+    /** Average number of points per cell the grid is sized for. */
+    private static final int POINTS_PER_CELL = 4;
+
+    private final double[] lons;
+    private final double[] lats;
+    private final double minLon;
+    private final double minLat;
+    private final double cellLon;
+    private final double cellLat;
+    private final int cols;
+    private final int rows;
+    /* Points of cell c are cellItems[cellStart[c]] through cellItems[cellStart[c + 1] - 1]. */
+    private final int[] cellStart;
+    private final int[] cellItems;
+    /* Smallest extent of a cell in miles, for ring pruning. */
+    private final double cellMiles;
+
+    /**
+     * Builds a grid over the given points. The arrays are kept, not copied.
+     * @param lons longitudes of the points
+     * @param lats latitudes of the points
+     */
+    public GridIndex(double[] lons, double[] lats) {
+        this.lons = lons;
+        this.lats = lats;
+        int n = lons.length;
+        double loLon = Double.POSITIVE_INFINITY, hiLon = Double.NEGATIVE_INFINITY;
+        double loLat = Double.POSITIVE_INFINITY, hiLat = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            loLon = Math.min(loLon, lons[i]);
+            hiLon = Math.max(hiLon, lons[i]);
+            loLat = Math.min(loLat, lats[i]);
+            hiLat = Math.max(hiLat, lats[i]);
+        }
+        if (n == 0) {
+            loLon = 0;
+            hiLon = 0;
+            loLat = 0;
+            hiLat = 0;
+        }
+        double cosLat = Math.cos(Math.toRadians((loLat + hiLat) / 2));
+        double width = Math.max((hiLon - loLon) * cosLat, 1e-9);
+        double height = Math.max(hiLat - loLat, 1e-9);
+        double cells = Math.max(1, n / POINTS_PER_CELL);
+        double side = Math.sqrt(width * height / cells);
+        this.cols = (int) Math.max(1, Math.min(Math.ceil(width / side), 1 << 14));
+        this.rows = (int) Math.max(1, Math.min(Math.ceil(height / side), 1 << 14));
+        this.minLon = loLon;
+        this.minLat = loLat;
+        this.cellLon = Math.max(hiLon - loLon, 1e-9) / cols;
+        this.cellLat = Math.max(hiLat - loLat, 1e-9) / rows;
+        this.cellMiles = Math.min(cellLon * cosLat, cellLat) * GraphDB.MILES_PER_DEGREE;
+
+        cellStart = new int[cols * rows + 1];
+        int[] cellOf = new int[n];
+        for (int i = 0; i < n; i++) {
+            cellOf[i] = cell(col(lons[i]), row(lats[i]));
+            cellStart[cellOf[i] + 1]++;
+        }
+        for (int c = 0; c < cols * rows; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        cellItems = new int[n];
+        int[] fill = Arrays.copyOf(cellStart, cols * rows);
+        for (int i = 0; i < n; i++) {
+            cellItems[fill[cellOf[i]]++] = i;
+        }
+    }
+
+    /**
+     * Returns the number of points in the grid.
+     * @return the number of points
+     */
+    public int size() {
+        return lons.length;
+    }
+
+    /**
+     * Returns up to k accepted points closest to the query location, nearest first.
+     * @param lon query longitude
+     * @param lat query latitude
+     * @param k maximum number of points to return
+     * @param accept filter on point positions, or null to accept every point
+     * @return positions of the nearest accepted points
+     */
+    public int[] nearest(double lon, double lat, int k, IntPredicate accept) {
+        if (k <= 0 || lons.length == 0) {
+            return new int[0];
+        }
+        /* No more can be found than there are points, however many are asked for. */
+        k = Math.min(k, lons.length);
+        int[] best = new int[k];
+        double[] bestDist = new double[k];
+        int found = 0;
+        int qc = col(lon);
+        int qr = row(lat);
+        int maxRing = Math.max(Math.max(qc, cols - 1 - qc), Math.max(qr, rows - 1 - qr));
+        for (int ring = 0; ring <= maxRing; ring++) {
+            if (found == k && (ring - 1) * cellMiles > bestDist[k - 1]) {
+                break;
+            }
+            for (int r = qr - ring; r <= qr + ring; r++) {
+                if (r < 0 || r >= rows) {
+                    continue;
+                }
+                boolean edgeRow = r == qr - ring || r == qr + ring;
+                int step = edgeRow ? 1 : 2 * ring;
+                for (int c = qc - ring; c <= qc + ring; c += Math.max(step, 1)) {
+                    if (c < 0 || c >= cols) {
+                        continue;
+                    }
+                    int cell = cell(c, r);
+                    for (int j = cellStart[cell]; j < cellStart[cell + 1]; j++) {
+                        int p = cellItems[j];
+                        if (accept != null && !accept.test(p)) {
+                            continue;
+                        }
+                        double d = GraphDB.distance(lon, lat, lons[p], lats[p]);
+                        if (found < k) {
+                            found = insert(best, bestDist, found, p, d);
+                        } else if (d < bestDist[k - 1]) {
+                            insert(best, bestDist, k - 1, p, d);
+                        }
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(best, found);
+    }
+
+    /**
+     * Returns every accepted point within the given great-circle distance, nearest first.
+     * @param lon query longitude
+     * @param lat query latitude
+     * @param miles search radius in miles
+     * @param accept filter on point positions, or null to accept every point
+     * @return positions of the matching points
+     */
+    public int[] within(double lon, double lat, double miles, IntPredicate accept) {
+        /* Clamped in double, as a huge radius would overflow an int. */
+        int reach = (int) Math.min(Math.ceil(miles / cellMiles) + 1, Math.max(rows, cols));
+        int qc = col(lon);
+        int qr = row(lat);
+        int[] hits = new int[16];
+        double[] hitDist = new double[16];
+        int found = 0;
+        for (int r = Math.max(0, qr - reach); r <= Math.min(rows - 1, qr + reach); r++) {
+            for (int c = Math.max(0, qc - reach); c <= Math.min(cols - 1, qc + reach); c++) {
+                int cell = cell(c, r);
+                for (int j = cellStart[cell]; j < cellStart[cell + 1]; j++) {
+                    int p = cellItems[j];
+                    if (accept != null && !accept.test(p)) {
+                        continue;
+                    }
+                    double d = GraphDB.distance(lon, lat, lons[p], lats[p]);
+                    if (d <= miles) {
+                        if (found == hits.length) {
+                            hits = Arrays.copyOf(hits, found * 2);
+                            hitDist = Arrays.copyOf(hitDist, found * 2);
+                        }
+                        hits[found] = p;
+                        hitDist[found] = d;
+                        found++;
+                    }
+                }
+            }
+        }
+        sortByDistance(hits, hitDist, found);
+        return Arrays.copyOf(hits, found);
+    }
+
+    /**
+     * Inserts point p at distance d into the sorted prefix of length n,
+     * shifting farther entries right and dropping the last one if the arrays are full.
+     * @return the new number of entries
+     */
+    private static int insert(int[] best, double[] bestDist, int n, int p, double d) {
+        int i = n;
+        while (i > 0 && bestDist[i - 1] > d) {
+            if (i < best.length) {
+                best[i] = best[i - 1];
+                bestDist[i] = bestDist[i - 1];
+            }
+            i--;
+        }
+        best[i] = p;
+        bestDist[i] = d;
+        return Math.min(n + 1, best.length);
+    }
+
+    private static void sortByDistance(int[] items, double[] dist, int n) {
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(dist[a], dist[b]));
+        int[] sorted = new int[n];
+        for (int i = 0; i < n; i++) {
+            sorted[i] = items[order[i]];
+        }
+        System.arraycopy(sorted, 0, items, 0, n);
+    }
+
+    private int col(double lon) {
+        int c = (int) ((lon - minLon) / cellLon);
+        return Math.max(0, Math.min(cols - 1, c));
+    }
+
+    private int row(double lat) {
+        int r = (int) ((lat - minLat) / cellLat);
+        return Math.max(0, Math.min(rows - 1, r));
+    }
+
+    private int cell(int c, int r) {
+        return r * cols + c;
+    }
+}
@@ -0,0 +1,133 @@
+import java.util.Arrays;
+
+/**
+ * Binary min-heap over the integers 0 through capacity - 1, ordered by a double
+ * priority, with decrease-key. All storage is allocated once in the constructor, so
+ * a single instance can be cleared and reused across searches without allocating.
+ * @source Algorithms, 4th Edition, Sedgewick and Wayne, IndexMinPQ
+ */
+public class IndexMinPQ {
+    private final int[] heap;
+    private final int[] position;
+    private final double[] priority;
+    private int size;
+
+    /**
+     * Creates an empty queue for indices 0 through capacity - 1.
+     * @param capacity number of distinct indices the queue can hold
+     */
+    public IndexMinPQ(int capacity) {
+        heap = new int[capacity + 1];
+        position = new int[capacity];
+        priority = new double[capacity];
+        Arrays.fill(position, -1);
+    }
+
+    /**
+     * Returns the number of indices the queue was sized for.
+     * @return the capacity
+     */
+    public int capacity() {
+        return position.length;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns true if index i is currently in the queue.
+     * @param i index
+     * @return whether i is queued
+     */
+    public boolean contains(int i) {
+        return position[i] != -1;
+    }
+
+    /**
+     * Inserts index i with priority p, or lowers its priority to p if i is already
+     * queued with a higher one.
+     * @param i index
+     * @param p priority
+     */
+    public void push(int i, double p) {
+        if (position[i] == -1) {
+            size++;
+            heap[size] = i;
+            position[i] = size;
+            priority[i] = p;
+            swim(size);
+        } else if (p < priority[i]) {
+            priority[i] = p;
+            swim(position[i]);
+        }
+    }
+
+    /**
+     * Returns the priority of the smallest index without removing it.
+     * @return the smallest priority in the queue
+     */
+    public double minPriority() {
+        return priority[heap[1]];
+    }
+
+    /**
+     * Removes and returns the index with the smallest priority.
+     * @return the removed index
+     */
+    public int pop() {
+        int min = heap[1];
+        exchange(1, size);
+        size--;
+        sink(1);
+        position[min] = -1;
+        return min;
+    }
+
+    /**
+     * Empties the queue in time proportional to its current size.
+     */
+    public void clear() {
+        for (int k = 1; k <= size; k++) {
+            position[heap[k]] = -1;
+        }
+        size = 0;
+    }
+
+    private void swim(int k) {
+        while (k > 1 && greater(k / 2, k)) {
+            exchange(k, k / 2);
+            k = k / 2;
+        }
+    }
+
+    private void sink(int k) {
+        while (2 * k <= size) {
+            int j = 2 * k;
+            if (j < size && greater(j, j + 1)) {
+                j++;
+            }
+            if (!greater(k, j)) {
+                break;
+            }
+            exchange(k, j);
+            k = j;
+        }
+    }
+
+    private boolean greater(int a, int b) {
+        return priority[heap[a]] > priority[heap[b]];
+    }
+
+    private void exchange(int a, int b) {
+        int t = heap[a];
+        heap[a] = heap[b];
+        heap[b] = t;
+        position[heap[a]] = a;
+        position[heap[b]] = b;
+    }
+}
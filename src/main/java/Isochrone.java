@@ -0,0 +1,176 @@
+import java.util.Arrays;
+
+/**
+ * Computes the set of graph vertices reachable from a start location within a travel
+ * budget, together with an outline polygon around them. The search is Dijkstra's
+ * algorithm over the dense arrays of GraphDB that stops as soon as the next vertex
+ * would exceed the budget. Search state lives in per-thread arrays that are reset
+ * in time proportional to the previous search, so repeated queries allocate only
+ * their result.
+ */
+public class Isochrone {
+    /** Default travel speed used to turn a time budget into a distance budget. */
+    public static final double DEFAULT_SPEED_MPH = 25.0;
+
+    private static final ThreadLocal<SearchState> STATE = new ThreadLocal<>();
+
+    /**
+     * Reusable search arrays, sized to one graph.
+     */
+    private static class SearchState {
+        private final IndexMinPQ fringe;
+        private final double[] distTo;
+        private final int[] touched;
+        private final int[] settled;
+        /** Targets of the vertex being settled, decoded from GraphDB. */
+        private final int[] targets;
+        private int touchedCount;
+        private int settledCount;
+
+        private SearchState(int n, int maxDegree) {
+            fringe = new IndexMinPQ(n);
+            targets = new int[maxDegree];
+            distTo = new double[n];
+            touched = new int[n];
+            settled = new int[n];
+            Arrays.fill(distTo, Double.POSITIVE_INFINITY);
+        }
+
+        private void reset() {
+            fringe.clear();
+            for (int k = 0; k < touchedCount; k++) {
+                distTo[touched[k]] = Double.POSITIVE_INFINITY;
+            }
+            touchedCount = 0;
+            settledCount = 0;
+        }
+
+        private void relax(int v, double dist) {
+            if (distTo[v] == Double.POSITIVE_INFINITY) {
+                touched[touchedCount++] = v;
+            }
+            distTo[v] = dist;
+            fringe.push(v, dist);
+        }
+    }
+
+    /**
+     * Result of a reachability query.
+     */
+    public static class Result {
+        /** Id of the vertex the search started from. */
+        final long start;
+        /** Ids of all reachable vertices, in order of increasing distance. */
+        final long[] nodes;
+        /** Network distance in miles from start to each entry of nodes. */
+        final double[] distances;
+        /** Convex outline of the reachable vertices as {lon, lat} pairs, counterclockwise. */
+        final double[][] outline;
+
+        Result(long start, long[] nodes, double[] distances, double[][] outline) {
+            this.start = start;
+            this.nodes = nodes;
+            this.distances = distances;
+            this.outline = outline;
+        }
+    }
+
+    /**
+     * Converts a time budget into the distance travelled at a constant speed.
+     * @param minutes time budget in minutes
+     * @param mph travel speed in miles per hour
+     * @return distance budget in miles
+     */
+    public static double milesFor(double minutes, double mph) {
+        return minutes / 60.0 * mph;
+    }
+
+    /**
+     * Returns every vertex whose network distance by road from the vertex closest to
+     * the given location is at most budget miles.
+     * @param g The graph to use.
+     * @param lon The longitude of the start location.
+     * @param lat The latitude of the start location.
+     * @param budget Distance budget in miles.
+     * @return the reachable vertices and their outline
+     */
+    public static Result reachable(GraphDB g, double lon, double lat, double budget) {
+        int start = g.indexOf(g.closest(lon, lat));
+        SearchState state = stateFor(g);
+        state.reset();
+        state.relax(start, 0.0);
+
+        while (!state.fringe.isEmpty() && state.fringe.minPriority() <= budget) {
+            int v = state.fringe.pop();
+            state.settled[state.settledCount++] = v;
+            double dv = state.distTo[v];
+            int degree = g.targets(v, state.targets);
+            for (int k = 0; k < degree; k++) {
+                int e = g.edgeStart(v) + k;
+                if ((g.edgeAccess(e) & Profile.DRIVE.bit()) == 0) {
+                    continue;
+                }
+                int w = state.targets[k];
+                double dw = dv + g.edgeLength(e);
+                if (dw < state.distTo[w] && dw <= budget) {
+                    state.relax(w, dw);
+                }
+            }
+        }
+
+        int settled = state.settledCount;
+        long[] nodes = new long[settled];
+        double[] distances = new double[settled];
+        double[][] points = new double[settled][];
+        for (int k = 0; k < settled; k++) {
+            int v = state.settled[k];
+            nodes[k] = g.idAt(v);
+            distances[k] = state.distTo[v];
+            points[k] = new double[] {g.lonAt(v), g.latAt(v)};
+        }
+        return new Result(g.idAt(start), nodes, distances, convexHull(points));
+    }
+
+    private static SearchState stateFor(GraphDB g) {
+        SearchState state = STATE.get();
+        if (state == null || state.distTo.length != g.vertexCount()
+                || state.targets.length < g.maxDegree()) {
+            state = new SearchState(g.vertexCount(), g.maxDegree());
+            STATE.set(state);
+        }
+        return state;
+    }
+
+    /**
+     * Returns the convex hull of the given points using Andrew's monotone chain.
+     * @param points {lon, lat} pairs; reordered in place
+     * @return hull vertices in counterclockwise order, without repeating the first
+     */
+    static double[][] convexHull(double[][] points) {
+        int n = points.length;
+        if (n < 3) {
+            return points;
+        }
+        Arrays.sort(points, (a, b) -> a[0] != b[0]
+                ? Double.compare(a[0], b[0]) : Double.compare(a[1], b[1]));
+        double[][] hull = new double[2 * n][];
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            while (k >= 2 && cross(hull[k - 2], hull[k - 1], points[i]) <= 0) {
+                k--;
+            }
+            hull[k++] = points[i];
+        }
+        for (int i = n - 2, lower = k + 1; i >= 0; i--) {
+            while (k >= lower && cross(hull[k - 2], hull[k - 1], points[i]) <= 0) {
+                k--;
+            }
+            hull[k++] = points[i];
+        }
+        return Arrays.copyOf(hull, k - 1);
+    }
+
+    private static double cross(double[] o, double[] a, double[] b) {
+        return (a[0] - o[0]) * (b[1] - o[1]) - (a[1] - o[1]) * (b[0] - o[0]);
+    }
+}
@@ -0,0 +1,127 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of durations in nanoseconds with log-linear buckets, in the style
+ * of HdrHistogram: values below 32 get a bucket each, and every power of two above that
+ * is split into 16 equal buckets, so any recorded value is known to within 1/16 of
+ * itself. Recording is one atomic increment of a bucket plus one LongAdder add, which
+ * is cheap enough to do on every request. Values above about 36 minutes are counted in
+ * the last bucket.
+ */
+public class LatencyHistogram {
+    /** Values below this get a bucket each. */
+    private static final int LINEAR = 32;
+    /** Number of buckets each power of two above LINEAR is split into. */
+    private static final int SUB_BUCKETS = 16;
+    /** Largest shift of a bucket, bounding recorded values to below 2^41 ns. */
+    private static final int MAX_SHIFT = 36;
+    private static final long MAX_VALUE = (1L << (MAX_SHIFT + 5)) - 1;
+    private static final int NUM_BUCKETS = LINEAR + MAX_SHIFT * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * Records one duration.
+     * @param nanos the duration in nanoseconds; negative values count as 0
+     */
+    public void record(long nanos) {
+        long v = Math.max(0, Math.min(MAX_VALUE, nanos));
+        counts.incrementAndGet(bucketOf(v));
+        sum.add(v);
+    }
+
+    /**
+     * Records the time elapsed since a System.nanoTime() reading.
+     * @param startNanos the earlier reading
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Returns the number of recorded values.
+     * @return the count
+     */
+    public long count() {
+        long n = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            n += counts.get(i);
+        }
+        return n;
+    }
+
+    /**
+     * Returns the sum of recorded values in nanoseconds.
+     * @return the sum
+     */
+    public long sum() {
+        return sum.sum();
+    }
+
+    /**
+     * Returns the value at or below which a fraction of recorded values lie, to within
+     * the precision of the buckets.
+     * @param fraction between 0 and 1, e.g. 0.95 for the 95th percentile
+     * @return the upper bound of the bucket holding that value, or 0 if nothing was
+     * recorded
+     */
+    public long valueAt(double fraction) {
+        long[] snapshot = snapshot();
+        long total = 0;
+        for (long c : snapshot) {
+            total += c;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+        return MAX_VALUE;
+    }
+
+    /**
+     * Returns the number of recorded values in each bucket, copied bucket by bucket.
+     * Concurrent recording may or may not be reflected.
+     * @return the bucket counts
+     */
+    long[] snapshot() {
+        long[] c = new long[NUM_BUCKETS];
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            c[i] = counts.get(i);
+        }
+        return c;
+    }
+
+    static int numBuckets() {
+        return NUM_BUCKETS;
+    }
+
+    static int bucketOf(long v) {
+        if (v < LINEAR) {
+            return (int) v;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(v) - 4;
+        int mantissa = (int) (v >>> shift);
+        return LINEAR + (shift - 1) * SUB_BUCKETS + (mantissa - SUB_BUCKETS);
+    }
+
+    /**
+     * Returns the largest value counted in a bucket.
+     */
+    static long upperBound(int bucket) {
+        if (bucket < LINEAR) {
+            return bucket;
+        }
+        int shift = (bucket - LINEAR) / SUB_BUCKETS + 1;
+        long mantissa = (bucket - LINEAR) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,343 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Matches GPS traces onto the roads of a graph with a hidden Markov model, after Newson
+ * and Krumm. The hidden state at each fix is the point on some road the vehicle was
+ * really at; the candidates are the nearest points on the few segments within a radius
+ * of the fix. A candidate is as likely as a normal distribution of GPS error makes its
+ * distance from the fix, and moving from one candidate to the next is as likely as an
+ * exponential distribution makes the difference between the route between them and the
+ * straight line between the two fixes, since vehicles rarely detour between fixes. The
+ * routes come from Router searches bounded to a few times that straight line, and the
+ * most likely sequence of candidates from Viterbi decoding.
+ *
+ * A trace is matched as a stream: fixes are added one at a time, and a match is emitted
+ * for a fix as soon as every candidate sequence still alive agrees on it, which for
+ * clean traces is within a few fixes. At most window fixes wait undecided; past that
+ * the best sequence so far is taken, so memory per trace stays bounded however long it
+ * runs. Where no route joins any candidate of a fix to any of the one before, or a fix
+ * has no road within the radius, the trace is broken there and matched in pieces.
+ */
+public class MapMatcher {
+    /** Standard deviation of GPS error in miles, about 5 metres. */
+    static final double DEFAULT_SIGMA = 0.003;
+    /** Scale of route detours in miles, about 50 metres. */
+    static final double DEFAULT_BETA = 0.03;
+    /** Largest distance of a candidate from its fix, in miles, about 50 metres. */
+    static final double DEFAULT_RADIUS = 0.03;
+    /** Candidates kept per fix. */
+    static final int DEFAULT_CANDIDATES = 4;
+    /** Fixes left undecided before the best sequence so far is taken. */
+    static final int DEFAULT_WINDOW = 64;
+    /** Routes longer than this many times the straight line between fixes, plus twice
+     * the radius, are not searched for. */
+    private static final double MAX_DETOUR = 3;
+
+    private final GraphDB g;
+    private final double sigma;
+    private final double beta;
+    private final double radius;
+    private final int candidates;
+    private final int window;
+
+    /**
+     * A fix matched onto a road.
+     */
+    public static class Match {
+        /** Position of the fix in its trace. */
+        public final int fix;
+        /** Where on the roads the fix was matched to. */
+        public final SegmentIndex.Snap snap;
+        /** Whether the match joins the one before by a route; false at the start of the
+         * trace and after each break. */
+        public final boolean connected;
+        /** Vertex ids passed on the route from the match before, if connected. */
+        public final List<Long> path;
+
+        Match(int fix, SegmentIndex.Snap snap, boolean connected, List<Long> path) {
+            this.fix = fix;
+            this.snap = snap;
+            this.connected = connected;
+            this.path = path;
+        }
+    }
+
+    /** The candidates of one fix waiting to be decided. */
+    private static class Step {
+        private final int fix;
+        private final double lon, lat;
+        private final SegmentIndex.Snap[] snaps;
+        /** Log probability of the best sequence ending at each candidate. */
+        private final double[] score;
+        /** Candidate of the step before on that sequence. */
+        private final int[] back;
+
+        private Step(int fix, double lon, double lat, SegmentIndex.Snap[] snaps) {
+            this.fix = fix;
+            this.lon = lon;
+            this.lat = lat;
+            this.snaps = snaps;
+            score = new double[snaps.length];
+            back = new int[snaps.length];
+        }
+
+        private int best() {
+            int best = 0;
+            for (int i = 1; i < score.length; i++) {
+                if (score[i] > score[best]) {
+                    best = i;
+                }
+            }
+            return best;
+        }
+    }
+
+    /**
+     * Matching of one trace in progress. Not thread safe; use one per trace.
+     */
+    public class Stream {
+        private final Consumer<Match> sink;
+        /* Steps not yet decided, oldest first; the back links of the oldest point into
+         * the last emitted step. */
+        private final ArrayDeque<Step> pending = new ArrayDeque<>();
+        /* The last match emitted, which the next one is routed from, or null at the start
+         * or after a break. */
+        private Match last;
+        /* Position of the fix last added. */
+        private double lastLon, lastLat;
+        private int fixes;
+
+        private Stream(Consumer<Match> sink) {
+            this.sink = sink;
+        }
+
+        /**
+         * Adds the next fix of the trace, emitting any matches it decides.
+         * @param lon longitude of the fix
+         * @param lat latitude of the fix
+         */
+        public void add(double lon, double lat) {
+            int fix = fixes++;
+            SegmentIndex.Snap[] snaps = g.snaps(lon, lat, candidates, radius);
+            if (snaps.length == 0) {
+                /* Off the map; what came before stands on its own. */
+                finish();
+                return;
+            }
+            Step step = new Step(fix, lon, lat, snaps);
+            Step prev = pending.peekLast();
+            if (prev == null && last != null) {
+                /* Everything before is decided; go on from the last match alone. */
+                prev = new Step(last.fix, lastLon, lastLat,
+                        new SegmentIndex.Snap[] {last.snap});
+            }
+            if (!transitions(prev, step)) {
+                /* Nothing joins this fix to the one before; start afresh from it. */
+                finish();
+                transitions(null, step);
+            }
+            pending.addLast(step);
+            lastLon = lon;
+            lastLat = lat;
+            decide();
+        }
+
+        /**
+         * Scores every candidate of step by its best predecessor in prev, or by its
+         * distance from its fix alone if prev is null.
+         * @return whether prev is null or any candidate has a route from one of prev
+         */
+        private boolean transitions(Step prev, Step step) {
+            boolean any = prev == null;
+            double straight = prev == null ? 0
+                    : GraphDB.distance(prev.lon, prev.lat, step.lon, step.lat);
+            double limit = MAX_DETOUR * straight + 2 * radius;
+            for (int j = 0; j < step.snaps.length; j++) {
+                double emission = -0.5 * square(step.snaps[j].distance / sigma);
+                if (prev == null) {
+                    step.score[j] = emission;
+                    step.back[j] = -1;
+                    continue;
+                }
+                double best = Double.NEGATIVE_INFINITY;
+                int from = -1;
+                for (int i = 0; i < prev.snaps.length; i++) {
+                    if (prev.score[i] == Double.NEGATIVE_INFINITY) {
+                        continue;
+                    }
+                    /* Traces follow the roads as built, so live weights are left out. */
+                    double route = Router.route(g, prev.snaps[i], step.snaps[j],
+                            Profile.DRIVE, EdgeWeights.NONE, limit, false).length;
+                    double score = prev.score[i] - Math.abs(route - straight) / beta;
+                    if (score > best) {
+                        best = score;
+                        from = i;
+                    }
+                }
+                step.score[j] = best + emission;
+                step.back[j] = from;
+                any |= from >= 0;
+            }
+            /* Only differences matter; keep the scores near zero on long traces. */
+            double top = step.score[step.best()];
+            if (top > Double.NEGATIVE_INFINITY) {
+                for (int j = 0; j < step.score.length; j++) {
+                    step.score[j] -= top;
+                }
+            }
+            return any;
+        }
+
+        /**
+         * Emits the steps every live sequence agrees on, or, past the window, the best
+         * sequence.
+         */
+        private void decide() {
+            if (pending.size() > window) {
+                Step newest = pending.peekLast();
+                emitThrough(pending.size(), newest.best());
+                return;
+            }
+            /* Walk back from the live candidates of the newest step until they share one
+             * ancestor; that step and those before it are settled. */
+            Step[] steps = pending.toArray(new Step[0]);
+            boolean[] alive = new boolean[steps[steps.length - 1].snaps.length];
+            for (int j = 0; j < alive.length; j++) {
+                alive[j] = steps[steps.length - 1].score[j] > Double.NEGATIVE_INFINITY;
+            }
+            for (int k = steps.length - 1; k > 0; k--) {
+                boolean[] before = new boolean[steps[k - 1].snaps.length];
+                int count = 0, only = -1;
+                for (int j = 0; j < alive.length; j++) {
+                    if (alive[j] && steps[k].back[j] >= 0 && !before[steps[k].back[j]]) {
+                        before[steps[k].back[j]] = true;
+                        count++;
+                        only = steps[k].back[j];
+                    }
+                }
+                if (count == 1) {
+                    emitThrough(k, only);
+                    return;
+                }
+                alive = before;
+            }
+        }
+
+        /**
+         * Emits the oldest count pending steps along the sequence ending at candidate
+         * end of the last of them.
+         */
+        private void emitThrough(int count, int end) {
+            int[] chosen = new int[count];
+            Step[] steps = new Step[count];
+            Iterator<Step> it = pending.iterator();
+            for (int k = 0; k < count; k++) {
+                steps[k] = it.next();
+            }
+            chosen[count - 1] = end;
+            for (int k = count - 1; k > 0; k--) {
+                chosen[k - 1] = steps[k].back[chosen[k]];
+            }
+            for (int k = 0; k < count; k++) {
+                pending.removeFirst();
+                emit(steps[k].fix, steps[k].snaps[chosen[k]], steps[k].back[chosen[k]] >= 0);
+            }
+            /* The steps left now hang off the one emitted last. */
+            Step next = pending.peekFirst();
+            if (next != null) {
+                for (int j = 0; j < next.back.length; j++) {
+                    if (next.back[j] != chosen[count - 1]) {
+                        next.score[j] = Double.NEGATIVE_INFINITY;
+                    }
+                }
+            }
+        }
+
+        private void emit(int fix, SegmentIndex.Snap snap, boolean connected) {
+            List<Long> path = Collections.emptyList();
+            if (connected && last != null) {
+                path = Router.route(g, last.snap, snap, Profile.DRIVE, EdgeWeights.NONE,
+                        Double.POSITIVE_INFINITY, false).path;
+            }
+            last = new Match(fix, snap, connected && last != null, path);
+            sink.accept(last);
+        }
+
+        /**
+         * Emits the best sequence for every fix still undecided; call at the end of the
+         * trace.
+         */
+        public void finish() {
+            if (!pending.isEmpty()) {
+                emitThrough(pending.size(), pending.peekLast().best());
+            }
+            last = null;
+        }
+    }
+
+    /**
+     * Creates a matcher with the default model parameters.
+     * @param g the graph to match onto
+     */
+    public MapMatcher(GraphDB g) {
+        this(g, DEFAULT_SIGMA, DEFAULT_BETA, DEFAULT_RADIUS, DEFAULT_CANDIDATES,
+                DEFAULT_WINDOW);
+    }
+
+    /**
+     * Creates a matcher.
+     * @param g the graph to match onto
+     * @param sigma standard deviation of GPS error in miles
+     * @param beta scale of route detours in miles
+     * @param radius largest distance of a candidate from its fix in miles
+     * @param candidates candidates kept per fix
+     * @param window fixes left undecided before the best sequence so far is taken
+     */
+    public MapMatcher(GraphDB g, double sigma, double beta, double radius, int candidates,
+                      int window) {
+        this.g = g;
+        this.sigma = sigma;
+        this.beta = beta;
+        this.radius = radius;
+        this.candidates = candidates;
+        this.window = window;
+    }
+
+    /**
+     * Starts matching a trace fix by fix.
+     * @param sink receives each match, in fix order, as soon as it is decided
+     * @return the stream to add fixes to
+     */
+    public Stream stream(Consumer<Match> sink) {
+        return new Stream(sink);
+    }
+
+    /**
+     * Matches a whole trace.
+     * @param lons longitudes of the fixes, in order
+     * @param lats latitudes of the fixes, as many as lons
+     * @return a match for every fix with a road within the radius, in fix order
+     */
+    public List<Match> match(double[] lons, double[] lats) {
+        if (lons.length != lats.length) {
+            throw new IllegalArgumentException(lons.length + " longitudes but "
+                    + lats.length + " latitudes");
+        }
+        List<Match> matches = new ArrayList<>();
+        Stream stream = stream(matches::add);
+        for (int i = 0; i < lons.length; i++) {
+            stream.add(lons[i], lats[i]);
+        }
+        stream.finish();
+        return matches;
+    }
+
+    private static double square(double x) {
+        return x * x;
+    }
+}
@@ -1,23 +1,31 @@
 
-import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.BasicStroke;
 import java.awt.Color;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.EnumSet;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
 import java.awt.image.BufferedImage;
-import javax.imageio.ImageIO;
 import java.io.IOException;
 
 
 /* Maven is used to pull in these dependencies. */
 import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
 
 import static spark.Spark.*;
 
@@ -39,14 +47,23 @@ public class MapServer {
             ROOT_LRLAT = 37.82280243352756, ROOT_LRLON = -122.2119140625;
     /** Each tile is 256x256 pixels. */
     public static final int TILE_SIZE = 256;
+    /** Deepest level of the tile pyramid. */
+    public static final int MAX_DEPTH = 7;
     /** HTTP failed response. */
     private static final int HALT_RESPONSE = 403;
+    /** HTTP response when the worker pool for a request is saturated. */
+    private static final int BUSY_RESPONSE = 503;
     /** Route stroke information: typically roads are not more than 5px wide. */
     public static final float ROUTE_STROKE_WIDTH_PX = 5.0f;
     /** Route stroke information: Cyan with half transparency. */
     public static final Color ROUTE_STROKE_COLOR = new Color(108, 181, 230, 200);
     /** The tile images are in the IMG_ROOT folder. */
     private static final String IMG_ROOT = "../CalBearMap/data/proj3_imgs/";
+    /**
+     * Archive of all tile images written by TilePack. When it exists, tiles are read
+     * from it instead of from IMG_ROOT.
+     */
+    private static final String TILE_PACK = "../CalBearMap/data/proj3_imgs.pack";
     /**
      * The OSM XML file path. Downloaded from <a href="http://download.bbbike.org/osm/">here</a>
      * using custom region selection.
@@ -58,19 +75,137 @@ public class MapServer {
      * i.e., params.get("ullat") inside getMapRaster(). <br>
      * ullat : upper left corner latitude, <br> ullon : upper left corner longitude, <br>
      * lrlat : lower right corner latitude,<br> lrlon : lower right corner longitude <br>
-     * w : user viewport window width in pixels,<br> h : user viewport height in pixels.
+     * w : user viewport window width in pixels,<br> h : user viewport height in pixels.<br>
+     * Optionally crop=true, to get an image of exactly the query box at viewport size
+     * instead of whole tiles.
      **/
     private static final String[] REQUIRED_RASTER_REQUEST_PARAMS = {"ullat", "ullon", "lrlat",
         "lrlon", "w", "h"};
+    /** Largest width or height in pixels of a cropped raster, a few screens' worth. */
+    private static final int MAX_CROP_PIXELS = 4096;
     /**
      * Each route request to the server will have the following parameters
      * as keys in the params map.<br>
      * start_lat : start point latitude,<br> start_lon : start point longitude,<br>
-     * end_lat : end point latitude, <br>end_lon : end point longitude.
+     * end_lat : end point latitude, <br>end_lon : end point longitude.<br>
+     * Optionally profile: drive (the default), bike or walk.
      **/
     private static final String[] REQUIRED_ROUTE_REQUEST_PARAMS = {"start_lat", "start_lon",
         "end_lat", "end_lon"};
 
+    /**
+     * Each isochrone request to the server will have the following parameters
+     * as keys in the params map.<br>
+     * lon : start point longitude,<br> lat : start point latitude.<br>
+     * The budget is given either as distance (miles) or as minutes, optionally with
+     * mph (travel speed, defaults to Isochrone.DEFAULT_SPEED_MPH).
+     **/
+    private static final String[] REQUIRED_ISOCHRONE_REQUEST_PARAMS = {"lon", "lat"};
+    /** Largest isochrone budget in miles, beyond which a search would reach the whole map. */
+    private static final double MAX_ISOCHRONE_MILES = 20;
+
+    /**
+     * Each nearby request to the server will have the following parameters
+     * as keys in the params map.<br>
+     * lon : query longitude,<br> lat : query latitude.<br>
+     * Optionally k (number of results, default DEFAULT_NEARBY_K), radius (miles; returns
+     * every location within it instead of the k nearest) and prefix (name prefix).
+     **/
+    private static final String[] REQUIRED_NEARBY_REQUEST_PARAMS = {"lon", "lat"};
+    /** Number of locations /nearby returns when k is not given. */
+    private static final int DEFAULT_NEARBY_K = 10;
+    /** Most locations /nearby returns for a request, by k or within a radius. */
+    private static final int MAX_NEARBY_K = 1000;
+
+    /**
+     * Body of a POST to /closest: the points to snap to their nearest vertices, and
+     * whether to consider only the largest connected component.
+     **/
+    private static class ClosestRequest {
+        double[] lons;
+        double[] lats;
+        boolean largest;
+    }
+
+    /** Most fixes a /match trace may have; each costs several bounded route searches. */
+    private static final int MAX_MATCH_FIXES = 10000;
+
+    /**
+     * Body of a POST to /match: the fixes of a GPS trace, in order.
+     **/
+    private static class MatchRequest {
+        double[] lons;
+        double[] lats;
+    }
+
+    /**
+     * Body of a POST to /weights: the roads to slow, close or restore.
+     */
+    private static class WeightsRequest {
+        WeightUpdate[] updates;
+    }
+
+    /**
+     * One road of a /weights request, named by the ids of the two ends of an edge on it.
+     */
+    private static class WeightUpdate {
+        long from;
+        long to;
+        /** Multiplier of the road's length, 1 to restore it. */
+        double factor = 1;
+        /** Whether to close the road, whatever the factor. */
+        boolean closed;
+    }
+
+    /** Heap budget of the route cache in bytes. */
+    private static final long ROUTE_CACHE_BYTES = 16L << 20;
+    /** Number of independently locked segments of the route cache. */
+    private static final int ROUTE_CACHE_SEGMENTS = 16;
+
+    /** Name of the cookie (or query parameter) identifying a client's route. */
+    private static final String ROUTE_TOKEN = "route_token";
+    /** How long an untouched client route is kept, in milliseconds. */
+    private static final long ROUTE_TTL_MILLIS = 30L * 60 * 1000;
+    /** Maximum number of client routes kept at once. */
+    private static final int MAX_ROUTE_SESSIONS = 100000;
+
+    /**
+     * Encoder for rastered images. Map tiles are mostly flat colour, which deflate
+     * handles better unfiltered; level 3 is about twice as fast as ImageIO's PNG writer
+     * with slightly smaller output. Tunable with -Dpng.level, -Dpng.filter and
+     * -Dpng.indexed.
+     */
+    private static final PngEncoder PNG_ENCODER = new PngEncoder(
+            Integer.getInteger("png.level", 3),
+            PngEncoder.Filter.valueOf(System.getProperty("png.filter", "NONE")),
+            Boolean.getBoolean("png.indexed"));
+
+    /** Maximum number of decoded tiles kept in memory (about 200 KB each). */
+    private static final int TILE_CACHE_TILES = 512;
+    /** Number of independently locked segments of the tile cache. */
+    private static final int TILE_CACHE_SEGMENTS = 16;
+    /** Maximum number of tiles waiting to be prefetched. */
+    private static final int PREFETCH_QUEUE = 256;
+    /** Concurrent raster requests above which prefetching pauses. */
+    private static final int PREFETCH_MAX_FOREGROUND = 2;
+
+    /** Number of threads and queue length of the pool rastering and encoding images. */
+    private static final int RASTER_THREADS = Runtime.getRuntime().availableProcessors();
+    private static final int RASTER_QUEUE = 4 * RASTER_THREADS;
+    /** Number of threads and queue length of the pool running route and isochrone searches. */
+    private static final int ROUTE_THREADS = Math.max(1,
+            Runtime.getRuntime().availableProcessors() / 2);
+    private static final int ROUTE_QUEUE = 8 * ROUTE_THREADS;
+    /** Number of threads and queue length of the pool answering search and nearby queries. */
+    private static final int SEARCH_THREADS = 2;
+    private static final int SEARCH_QUEUE = 256;
+    /**
+     * Maximum number of Jetty request threads. Requests wait on their pool from these
+     * threads, so there must be more of them than the pools can hold at once.
+     */
+    private static final int HTTP_THREADS = 2 * (RASTER_THREADS + RASTER_QUEUE + ROUTE_THREADS
+            + ROUTE_QUEUE + SEARCH_THREADS + SEARCH_QUEUE);
+
     /**
      * The result of rastering must be a map containing all of the
      * fields listed in the comments for getMapRaster in Rasterer.java.
@@ -78,9 +213,56 @@ public class MapServer {
     private static final String[] REQUIRED_RASTER_RESULT_PARAMS = {"render_grid", "raster_ul_lon",
         "raster_ul_lat", "raster_lr_lon", "raster_lr_lat", "depth", "query_success"};
 
-    private static Rasterer rasterer;
+    private static TileCache tileCache;
+    private static TilePrefetcher prefetcher;
     private static GraphDB graph;
-    private static List<Long> route = new LinkedList<>();
+    private static RouteSessions routes = new RouteSessions(ROUTE_TTL_MILLIS,
+            MAX_ROUTE_SESSIONS);
+    private static RouteCache routeCache = new RouteCache(ROUTE_CACHE_BYTES,
+            ROUTE_CACHE_SEGMENTS);
+    private static WorkerPool rasterPool = new WorkerPool("raster", RASTER_THREADS,
+            RASTER_QUEUE);
+    private static WorkerPool routePool = new WorkerPool("route", ROUTE_THREADS, ROUTE_QUEUE);
+    private static WorkerPool searchPool = new WorkerPool("search", SEARCH_THREADS,
+            SEARCH_QUEUE);
+
+    /** Endpoints whose requests are counted and timed; other paths are static files. */
+    private static final Set<String> TIMED_ENDPOINTS = new HashSet<>(Arrays.asList(
+            "/raster", "/route", "/isochrone", "/clear_route", "/search", "/nearby",
+            "/closest", "/match", "/weights"));
+    /** Request attribute holding the System.nanoTime() at which a request arrived. */
+    private static final String START_NANOS = "start_nanos";
+    private static Metrics metrics = new Metrics();
+    private static final String PHASES = "bearmaps_phase_seconds";
+    private static final String PHASES_HELP = "Time spent in each phase of handling a request.";
+    private static LatencyHistogram snapTime = metrics.histogram(PHASES, PHASES_HELP, "phase",
+            "snap");
+    private static LatencyHistogram searchTime = metrics.histogram(PHASES, PHASES_HELP,
+            "phase", "astar");
+    private static LatencyHistogram directionsTime = metrics.histogram(PHASES, PHASES_HELP,
+            "phase", "directions");
+    private static LatencyHistogram tileReadTime = metrics.histogram(PHASES, PHASES_HELP,
+            "phase", "tile_read");
+    private static LatencyHistogram compositeTime = metrics.histogram(PHASES, PHASES_HELP,
+            "phase", "composite");
+    private static LatencyHistogram encodeTime = metrics.histogram(PHASES, PHASES_HELP,
+            "phase", "encode");
+    private static LatencyHistogram serializeTime = metrics.histogram(PHASES, PHASES_HELP,
+            "phase", "serialize");
+    private static LatencyHistogram pathTime = metrics.histogram(PHASES, PHASES_HELP,
+            "phase", "path");
+    private static final String EFFORT = "bearmaps_route_effort";
+    private static final String EFFORT_HELP = "Work done by each route search, by measure.";
+    private static LatencyHistogram settledCount = metrics.countHistogram(EFFORT, EFFORT_HELP,
+            "measure", "settled");
+    private static LatencyHistogram relaxedCount = metrics.countHistogram(EFFORT, EFFORT_HELP,
+            "measure", "relaxed");
+    private static LatencyHistogram pushCount = metrics.countHistogram(EFFORT, EFFORT_HELP,
+            "measure", "pushes");
+    private static LatencyHistogram popCount = metrics.countHistogram(EFFORT, EFFORT_HELP,
+            "measure", "pops");
+    private static LatencyHistogram maxFringeSize = metrics.countHistogram(EFFORT, EFFORT_HELP,
+            "measure", "max_fringe");
     /* Define any static variables here. Do not define any instance variables of MapServer. */
 
 
@@ -90,8 +272,81 @@ public class MapServer {
      * This is for testing purposes, and you may fail tests otherwise.
      **/
     public static void initialize() {
-        graph = new GraphDB(OSM_DB_PATH);
-        rasterer = new Rasterer();
+        graph = new GraphDB(OSM_DB_PATH, EnumSet.allOf(Profile.class));
+        initializeTiles(openTileStore());
+        registerMetrics();
+    }
+
+    /**
+     * Sets up the tile cache and prefetcher over a tile store. Benchmarks call this to
+     * raster without loading the map data.
+     * @param store where to read tiles from
+     */
+    static void initializeTiles(TileStore store) {
+        tileCache = new TileCache(store, TILE_CACHE_TILES, TILE_CACHE_SEGMENTS);
+        prefetcher = new TilePrefetcher(tileCache, PREFETCH_QUEUE, PREFETCH_MAX_FOREGROUND);
+    }
+
+    /**
+     * Registers the metrics read from other components when /metrics is scraped.
+     */
+    private static void registerMetrics() {
+        for (WorkerPool pool : new WorkerPool[] {rasterPool, routePool, searchPool}) {
+            metrics.gauge("bearmaps_pool_queued", "Tasks waiting for a worker thread.",
+                    "pool", pool.name(), pool::queued);
+            metrics.gauge("bearmaps_pool_active", "Worker threads running a task.",
+                    "pool", pool.name(), pool::active);
+            metrics.counter("bearmaps_pool_rejected_total",
+                    "Requests turned away with a 503 because the pool was full.",
+                    "pool", pool.name(), pool::rejected);
+        }
+        String lookups = "bearmaps_cache_lookups_total";
+        String lookupsHelp = "Cache lookups by cache and outcome.";
+        metrics.counter(lookups, lookupsHelp, "cache", "route_hit", routeCache::hits);
+        metrics.counter(lookups, lookupsHelp, "cache", "route_miss", routeCache::misses);
+        metrics.counter(lookups, lookupsHelp, "cache", "tile_hit", tileCache::hits);
+        metrics.counter(lookups, lookupsHelp, "cache", "tile_miss", tileCache::misses);
+        metrics.counter("bearmaps_prefetch_total", "Tiles prefetched or cancelled.",
+                "outcome", "prefetched", prefetcher::prefetched);
+        metrics.counter("bearmaps_prefetch_total", "Tiles prefetched or cancelled.",
+                "outcome", "cancelled", prefetcher::cancelled);
+        metrics.gauge("bearmaps_route_sessions", "Client routes currently kept.",
+                "store", "sessions", routes::size);
+    }
+
+    /**
+     * Counts and times a finished request to one of the API endpoints.
+     */
+    private static void recordRequest(spark.Request req, spark.Response res) {
+        String endpoint = req.pathInfo();
+        Long start = req.attribute(START_NANOS);
+        if (start == null || !TIMED_ENDPOINTS.contains(endpoint)) {
+            return;
+        }
+        metrics.histogram("bearmaps_request_seconds", "Request latency by endpoint.",
+                "endpoint", endpoint).recordSince(start);
+        metrics.counter("bearmaps_requests_total", "Requests by endpoint.",
+                "endpoint", endpoint).increment();
+        if (res.status() >= 400) {
+            metrics.counter("bearmaps_request_errors_total",
+                    "Requests answered with an HTTP error, by endpoint.",
+                    "endpoint", endpoint).increment();
+        }
+    }
+
+    /**
+     * Opens the tile archive if there is one, falling back to the tile directory.
+     * @return the store to read tiles from
+     */
+    private static TileStore openTileStore() {
+        if (new File(TILE_PACK).isFile()) {
+            try {
+                return new TilePack(TILE_PACK);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return new TileDirectory(IMG_ROOT);
     }
 
     private static int getHerokuAssignedPort() {
@@ -105,56 +360,67 @@ public class MapServer {
     public static void main(String[] args) {
         initialize();
         port(getHerokuAssignedPort());
+        threadPool(HTTP_THREADS);
         staticFileLocation("/page");
         /* Allow for all origin requests (since this is not an authenticated server, we do not
          * care about CSRF).  */
         before((request, response) -> {
+            request.attribute(START_NANOS, System.nanoTime());
             response.header("Access-Control-Allow-Origin", "*");
             response.header("Access-Control-Request-Method", "*");
             response.header("Access-Control-Allow-Headers", "*");
         });
 
+        afterAfter(MapServer::recordRequest);
+
+        /* Define the metrics endpoint, in the Prometheus text format. */
+        get("/metrics", (req, res) -> {
+            res.type("text/plain; version=0.0.4");
+            return metrics.toPrometheus();
+        });
+
         /* Define the raster endpoint for HTTP GET requests. I use anonymous functions to define
-         * the request handlers. */
+         * the request handlers. Each handler parses its parameters on the request thread and
+         * does the work on the worker pool for its class of request. */
         get("/raster", (req, res) -> {
             HashMap<String, Double> params =
                     getRequestParams(req, REQUIRED_RASTER_REQUEST_PARAMS);
-            /* The png image is written to the ByteArrayOutputStream */
-            ByteArrayOutputStream os = new ByteArrayOutputStream();
-            /* getMapRaster() does almost all the work for this API call */
-            Map<String, Object> rasteredImgParams = rasterer.getMapRaster(params);
-
-            boolean rasterSuccess = validateRasteredImgParams(rasteredImgParams);
-
-            if (rasterSuccess) {
-                writeImagesToOutputStream(rasteredImgParams, os);
-                String encodedImage = Base64.getEncoder().encodeToString(os.toByteArray());
-                rasteredImgParams.put("b64_encoded_image_data", encodedImage);
+            boolean crop = Boolean.parseBoolean(req.queryParams("crop"));
+            /* A cropped image is drawn at viewport size, so the viewport bounds its memory. */
+            if (crop && !(params.get("w") > 0 && params.get("w") <= MAX_CROP_PIXELS
+                    && params.get("h") > 0 && params.get("h") <= MAX_CROP_PIXELS)) {
+                halt(HALT_RESPONSE, "Incorrect parameters - w and h are above 0 and at most "
+                        + MAX_CROP_PIXELS + " to crop.");
+                return null;
             }
-
-            /* Encode response to Json */
-            Gson gson = new Gson();
-            return gson.toJson(rasteredImgParams);
+            String token = getRouteToken(req, res);
+            return runOn(rasterPool, () -> raster(params, crop, token));
         });
 
         /* Define the routing endpoint for HTTP GET requests. */
         get("/route", (req, res) -> {
             HashMap<String, Double> params =
                     getRequestParams(req, REQUIRED_ROUTE_REQUEST_PARAMS);
-            route = Router.shortestPath(graph, params.get("start_lon"), params.get("start_lat"),
-                    params.get("end_lon"), params.get("end_lat"));
-            String directions = getDirectionsText();
-            Map<String, Object> routeParams = new HashMap<>();
-            routeParams.put("routing_success", !route.isEmpty());
-            routeParams.put("directions_success", directions.length() > 0);
-            routeParams.put("directions", directions);
-            Gson gson = new Gson();
-            return gson.toJson(routeParams);
+            Profile profile = getProfile(req);
+            String token = getRouteToken(req, res);
+            return runOn(routePool, () -> route(params, profile, token));
+        });
+
+        /* Define the reachability endpoint for HTTP GET requests. */
+        get("/isochrone", (req, res) -> {
+            HashMap<String, Double> params =
+                    getRequestParams(req, REQUIRED_ISOCHRONE_REQUEST_PARAMS);
+            if (!Double.isFinite(params.get("lon")) || !Double.isFinite(params.get("lat"))) {
+                halt(HALT_RESPONSE, "Incorrect parameters - provide finite numbers.");
+                return null;
+            }
+            double budget = getIsochroneBudget(req);
+            return runOn(routePool, () -> isochrone(params, budget));
         });
 
         /* Define the API endpoint for clearing the current route. */
         get("/clear_route", (req, res) -> {
-            clearRoute();
+            clearRoute(getRouteToken(req, res));
             return true;
         });
 
@@ -162,16 +428,149 @@ public class MapServer {
         get("/search", (req, res) -> {
             Set<String> reqParams = req.queryParams();
             String term = req.queryParams("term");
-            Gson gson = new Gson();
-            /* Search for actual location data. */
-            if (reqParams.contains("full")) {
-                List<Map<String, Object>> data = getLocations(term);
+            boolean full = reqParams.contains("full");
+            return runOn(searchPool, () -> {
+                Gson gson = new Gson();
+                /* Search for actual location data. */
+                if (full) {
+                    List<Map<String, Object>> data = getLocations(term);
+                    return gson.toJson(data);
+                } else {
+                    /* Search for prefix matching strings. */
+                    List<String> matches = getLocationsByPrefix(term);
+                    return gson.toJson(matches);
+                }
+            });
+        });
+
+        /* Define the API endpoint for nearest named locations */
+        get("/nearby", (req, res) -> {
+            HashMap<String, Double> params =
+                    getRequestParams(req, REQUIRED_NEARBY_REQUEST_PARAMS);
+            String prefix = req.queryParams("prefix");
+            double radius = -1;
+            int k = DEFAULT_NEARBY_K;
+            try {
+                if (req.queryParams("radius") != null) {
+                    radius = Double.parseDouble(req.queryParams("radius"));
+                    if (!(radius >= 0)) {
+                        halt(HALT_RESPONSE, "Incorrect parameters - radius is at least 0.");
+                        return null;
+                    }
+                } else if (req.queryParams("k") != null) {
+                    k = Integer.parseInt(req.queryParams("k"));
+                }
+            } catch (NumberFormatException e) {
+                halt(HALT_RESPONSE, "Incorrect parameters - provide numbers.");
+                return null;
+            }
+            if (k > MAX_NEARBY_K) {
+                halt(HALT_RESPONSE, "Incorrect parameters - k is at most " + MAX_NEARBY_K + ".");
+                return null;
+            }
+            double searchRadius = radius;
+            int searchK = k;
+            return runOn(searchPool, () -> {
+                List<Map<String, Object>> data;
+                if (searchRadius >= 0) {
+                    data = graph.getLocationsWithin(params.get("lon"), params.get("lat"),
+                            searchRadius, prefix, MAX_NEARBY_K);
+                } else {
+                    data = graph.getNearbyLocations(params.get("lon"), params.get("lat"),
+                            searchK, prefix);
+                }
+                Gson gson = new Gson();
                 return gson.toJson(data);
-            } else {
-                /* Search for prefix matching strings. */
-                List<String> matches = getLocationsByPrefix(term);
-                return gson.toJson(matches);
+            });
+        });
+
+        /* Define the API endpoint for snapping a batch of points to their nearest
+         * vertices, given as JSON {"lons": [...], "lats": [...], "largest": false}. */
+        post("/closest", (req, res) -> {
+            ClosestRequest batch;
+            try {
+                batch = new Gson().fromJson(req.body(), ClosestRequest.class);
+            } catch (JsonSyntaxException e) {
+                batch = null;
+            }
+            if (batch == null || batch.lons == null || batch.lats == null
+                    || batch.lons.length != batch.lats.length) {
+                halt(HALT_RESPONSE, "Incorrect parameters - provide lons and lats.");
+                return null;
+            }
+            if (!allFinite(batch.lons, batch.lats)) {
+                halt(HALT_RESPONSE, "Incorrect parameters - provide finite numbers.");
+                return null;
+            }
+            ClosestRequest points = batch;
+            res.type("application/json");
+            try {
+                return runOn(searchPool, () -> {
+                    long[] ids = graph.closestBatch(points.lons, points.lats,
+                            points.largest);
+                    Map<String, Object> closestParams = new HashMap<>();
+                    closestParams.put("ids", ids);
+                    return new Gson().toJson(closestParams);
+                });
+            } catch (IllegalArgumentException e) {
+                halt(HALT_RESPONSE, "Request failed - " + e.getMessage() + ".");
+                return null;
+            }
+        });
+
+        /* Define the API endpoint for matching a GPS trace onto the roads, given as JSON
+         * {"lons": [...], "lats": [...]}. */
+        post("/match", (req, res) -> {
+            MatchRequest body;
+            try {
+                body = new Gson().fromJson(req.body(), MatchRequest.class);
+            } catch (JsonSyntaxException e) {
+                body = null;
+            }
+            if (body == null || body.lons == null || body.lats == null
+                    || body.lons.length != body.lats.length) {
+                halt(HALT_RESPONSE, "Incorrect parameters - provide lons and lats.");
+                return null;
+            }
+            if (body.lons.length > MAX_MATCH_FIXES) {
+                halt(HALT_RESPONSE, "Incorrect parameters - a trace has at most "
+                        + MAX_MATCH_FIXES + " fixes.");
+                return null;
             }
+            if (!allFinite(body.lons, body.lats)) {
+                halt(HALT_RESPONSE, "Incorrect parameters - provide finite numbers.");
+                return null;
+            }
+            MatchRequest trace = body;
+            res.type("application/json");
+            return runOn(routePool, () -> matchTrace(trace));
+        });
+
+        /* Define the API endpoint for live road weights, given as JSON {"updates":
+         * [{"from": id, "to": id, "factor": 2.5}, {"from": id, "to": id, "closed": true}]}.
+         * Routes found from then on use them; the response is the new weights version. */
+        post("/weights", (req, res) -> {
+            WeightsRequest body;
+            try {
+                body = new Gson().fromJson(req.body(), WeightsRequest.class);
+            } catch (JsonSyntaxException e) {
+                body = null;
+            }
+            if (body == null || body.updates == null) {
+                halt(HALT_RESPONSE, "Incorrect parameters - provide updates.");
+                return null;
+            }
+            long version;
+            try {
+                version = updateWeights(body.updates);
+            } catch (IllegalArgumentException e) {
+                halt(HALT_RESPONSE, "Incorrect parameters - " + e.getMessage() + ".");
+                return null;
+            }
+            res.type("application/json");
+            Map<String, Object> weightsParams = new HashMap<>();
+            weightsParams.put("version", version);
+            return new Gson().toJson(weightsParams);
         });
 
         /* Define map application redirect */
@@ -181,6 +580,182 @@ public class MapServer {
         });
     }
 
+    /**
+     * Returns whether every longitude and latitude of a batch is a finite number.
+     */
+    private static boolean allFinite(double[] lons, double[] lats) {
+        for (int i = 0; i < lons.length; i++) {
+            if (!Double.isFinite(lons[i]) || !Double.isFinite(lats[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Runs the work of a request on a worker pool, answering 503 if the pool is full.
+     * @param pool the pool for the request's class of work
+     * @param work the work, returning the response body
+     * @return the response body
+     */
+    private static String runOn(WorkerPool pool, Callable<String> work) {
+        try {
+            return pool.call(work);
+        } catch (RejectedExecutionException e) {
+            halt(BUSY_RESPONSE, "Server busy - try again later.");
+            return null;
+        }
+    }
+
+    /**
+     * Rasters the query box and draws the client's route on it.
+     * @param params the raster request parameters
+     * @param crop whether to return exactly the query box at viewport size
+     * @param token the client's route token
+     * @return the Json response
+     */
+    private static String raster(HashMap<String, Double> params, boolean crop, String token) {
+        /* The png image is written to the ByteArrayOutputStream */
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        Map<String, Object> rasteredImgParams;
+        boolean rasterSuccess;
+        prefetcher.beginRequest();
+        try {
+            /* getMapRaster() does almost all the work for this API call. Rasterer keeps the
+             * query it is working on in fields, so each request gets its own. */
+            rasteredImgParams = new Rasterer().getMapRaster(params);
+            rasterSuccess = validateRasteredImgParams(rasteredImgParams);
+            if (rasterSuccess) {
+                RouteOverlay route = routes.get(token);
+                double[] window = null;
+                if (crop) {
+                    window = Rasterer.cropToQuery(rasteredImgParams, params);
+                }
+                writeImagesToOutputStream(rasteredImgParams, window, route, os);
+            }
+        } finally {
+            prefetcher.endRequest();
+        }
+        if (rasterSuccess) {
+            prefetcher.afterRaster((String[][]) rasteredImgParams.get("render_grid"),
+                    (int) rasteredImgParams.get("depth"));
+        }
+
+        /* Encode response to Json */
+        long start = System.nanoTime();
+        if (rasterSuccess) {
+            String encodedImage = Base64.getEncoder().encodeToString(os.toByteArray());
+            rasteredImgParams.put("b64_encoded_image_data", encodedImage);
+        }
+        Gson gson = new Gson();
+        String json = gson.toJson(rasteredImgParams);
+        serializeTime.recordSince(start);
+        return json;
+    }
+
+    /**
+     * Finds the route between the request's endpoints and makes it the client's route.
+     * @param params the route request parameters
+     * @param profile the way of travelling to route for
+     * @param token the client's route token
+     * @return the Json response
+     */
+    private static String route(HashMap<String, Double> params, Profile profile,
+                                String token) {
+        RouteCache.Entry cached = findRoute(params.get("start_lon"),
+                params.get("start_lat"), params.get("end_lon"), params.get("end_lat"),
+                profile);
+        routes.put(token, cached.overlay);
+        long start = System.nanoTime();
+        String directions = getDirectionsText(cached.directions);
+        Map<String, Object> routeParams = new HashMap<>();
+        routeParams.put("routing_success", cached.overlay.size() > 1);
+        routeParams.put("directions_success", directions.length() > 0);
+        routeParams.put("directions", directions);
+        routeParams.put(ROUTE_TOKEN, token);
+        Gson gson = new Gson();
+        String json = gson.toJson(routeParams);
+        serializeTime.recordSince(start);
+        return json;
+    }
+
+    /**
+     * Finds everything reachable from the request's location within budget.
+     * @param params the isochrone request parameters
+     * @param budget the distance budget in miles
+     * @return the Json response
+     */
+    private static String isochrone(HashMap<String, Double> params, double budget) {
+        Isochrone.Result reach = Isochrone.reachable(graph, params.get("lon"),
+                params.get("lat"), budget);
+        Map<String, Object> isochroneParams = new HashMap<>();
+        isochroneParams.put("start", reach.start);
+        isochroneParams.put("budget", budget);
+        isochroneParams.put("nodes", reach.nodes);
+        isochroneParams.put("distances", reach.distances);
+        isochroneParams.put("outline", reach.outline);
+        isochroneParams.put("isochrone_success", reach.nodes.length > 0);
+        Gson gson = new Gson();
+        return gson.toJson(isochroneParams);
+    }
+
+    /**
+     * Matches a GPS trace onto the roads.
+     * @param trace the fixes of the trace
+     * @return JSON with, for each matched fix, its position in the trace ("fixes") and
+     * the point on the road it was matched to ("lons", "lats"), and the vertex ids of
+     * the route driven ("route"), with null between pieces the trace broke into
+     */
+    private static String matchTrace(MatchRequest trace) {
+        List<MapMatcher.Match> matches = new MapMatcher(graph).match(trace.lons, trace.lats);
+        int[] fixes = new int[matches.size()];
+        double[] lons = new double[matches.size()], lats = new double[matches.size()];
+        List<Long> route = new ArrayList<>();
+        for (int i = 0; i < matches.size(); i++) {
+            MapMatcher.Match m = matches.get(i);
+            fixes[i] = m.fix;
+            lons[i] = m.snap.lon;
+            lats[i] = m.snap.lat;
+            if (!m.connected && !route.isEmpty()) {
+                route.add(null);
+            }
+            for (long v : m.path) {
+                /* Consecutive paths share the vertex where one ends and the next starts. */
+                Long end = route.isEmpty() ? null : route.get(route.size() - 1);
+                if (end == null || end != v) {
+                    route.add(v);
+                }
+            }
+        }
+        Map<String, Object> matchParams = new HashMap<>();
+        matchParams.put("fixes", fixes);
+        matchParams.put("lons", lons);
+        matchParams.put("lats", lats);
+        matchParams.put("route", route);
+        return new Gson().toJson(matchParams);
+    }
+
+    /**
+     * Applies live road weights to the graph and drops the cached routes they may change.
+     * @param updates the roads to change
+     * @return the new weights version
+     */
+    private static long updateWeights(WeightUpdate[] updates) {
+        long[] from = new long[updates.length], to = new long[updates.length];
+        double[] factors = new double[updates.length];
+        for (int i = 0; i < updates.length; i++) {
+            if (updates[i] == null) {
+                throw new IllegalArgumentException("An update is missing");
+            }
+            from[i] = updates[i].from;
+            to[i] = updates[i].to;
+            factors[i] = updates[i].closed ? Double.POSITIVE_INFINITY : updates[i].factor;
+        }
+        long version = graph.updateWeights(from, to, factors);
+        routeCache.clear();
+        return version;
+    }
+
     /**
      * Validate & return a parameter map of the required request parameters.
      * Requires that all input parameters are doubles.
@@ -207,32 +782,131 @@ public class MapServer {
         return params;
     }
 
+    /**
+     * Reads the profile parameter of a route request.
+     * @param req HTTP Request.
+     * @return the profile named, or DRIVE if none is.
+     */
+    private static Profile getProfile(spark.Request req) {
+        String name = req.queryParams("profile");
+        if (name == null) {
+            return Profile.DRIVE;
+        }
+        try {
+            return Profile.valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            halt(HALT_RESPONSE, "Incorrect parameters - profile is drive, bike or walk.");
+            return null;
+        }
+    }
+
+    /**
+     * Reads the travel budget of an isochrone request in miles, either directly from
+     * the distance parameter or from minutes at mph.
+     * @param req HTTP Request.
+     * @return the distance budget in miles.
+     */
+    private static double getIsochroneBudget(spark.Request req) {
+        double budget = Double.NaN;
+        try {
+            if (req.queryParams("distance") != null) {
+                budget = Double.parseDouble(req.queryParams("distance"));
+            } else if (req.queryParams("minutes") != null) {
+                double mph = Isochrone.DEFAULT_SPEED_MPH;
+                if (req.queryParams("mph") != null) {
+                    mph = Double.parseDouble(req.queryParams("mph"));
+                }
+                budget = Isochrone.milesFor(Double.parseDouble(req.queryParams("minutes")), mph);
+            } else {
+                halt(HALT_RESPONSE, "Request failed - provide distance or minutes.");
+            }
+        } catch (NumberFormatException e) {
+            e.printStackTrace();
+            halt(HALT_RESPONSE, "Incorrect parameters - provide numbers.");
+        }
+        if (!(budget > 0 && budget <= MAX_ISOCHRONE_MILES)) {
+            halt(HALT_RESPONSE, "Incorrect parameters - the budget is above 0 and at most "
+                    + MAX_ISOCHRONE_MILES + " miles.");
+        }
+        return budget;
+    }
+
+    /**
+     * Returns the token identifying the requesting client's route. Clients that send
+     * route_token as a query parameter use that; browsers get a cookie on their first
+     * request and send it back from then on.
+     * @param req HTTP Request.
+     * @param res HTTP Response, used to set the cookie for new clients.
+     * @return the client's route token.
+     */
+    private static String getRouteToken(spark.Request req, spark.Response res) {
+        String token = req.queryParams(ROUTE_TOKEN);
+        if (token == null) {
+            token = req.cookie(ROUTE_TOKEN);
+        }
+        if (token == null) {
+            token = UUID.randomUUID().toString();
+            res.cookie("/", ROUTE_TOKEN, token, -1, false);
+        }
+        return token;
+    }
+
     /**
      * Writes the images corresponding to rasteredImgParams to the output stream.
      * In Spring 2016, students had to do this on their own, but in 2017,
      * we have made this into provided code since it was just a bit too low level.
+     * @param crop {x, y, width, height} of the part of the tile grid to draw, as returned
+     *             by Rasterer.cropToQuery, scaled to raster_width by raster_height; or null
+     *             to draw every tile at full size
      */
-    private static void writeImagesToOutputStream(Map<String, Object> rasteredImageParams,
-                                                  ByteArrayOutputStream os) {
+    static void writeImagesToOutputStream(Map<String, Object> rasteredImageParams,
+                                          double[] crop, RouteOverlay route,
+                                          ByteArrayOutputStream os) {
         String[][] renderGrid = (String[][]) rasteredImageParams.get("render_grid");
         int numVertTiles = renderGrid.length;
         int numHorizTiles = renderGrid[0].length;
 
-        BufferedImage img = new BufferedImage(numHorizTiles * MapServer.TILE_SIZE,
-                numVertTiles * MapServer.TILE_SIZE, BufferedImage.TYPE_INT_RGB);
-        Graphics graphic = img.getGraphics();
-        int x = 0, y = 0;
+        BufferedImage img;
+        if (crop == null) {
+            img = new BufferedImage(numHorizTiles * MapServer.TILE_SIZE,
+                    numVertTiles * MapServer.TILE_SIZE, BufferedImage.TYPE_INT_RGB);
+        } else {
+            img = new BufferedImage((int) rasteredImageParams.get("raster_width"),
+                    (int) rasteredImageParams.get("raster_height"), BufferedImage.TYPE_INT_RGB);
+        }
+        Graphics2D graphic = img.createGraphics();
+        if (crop != null) {
+            /* Map the crop window of the tile grid onto the whole image. */
+            graphic.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                    RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphic.scale(img.getWidth() / crop[2], img.getHeight() / crop[3]);
+            graphic.translate(-crop[0], -crop[1]);
+        }
+
+        /* Read every needed tile first, so reading and compositing are timed apart. */
+        long phaseStart = System.nanoTime();
+        BufferedImage[][] tiles = new BufferedImage[numVertTiles][numHorizTiles];
+        for (int r = 0; r < numVertTiles; r += 1) {
+            for (int c = 0; c < numHorizTiles; c += 1) {
+                int x = c * MapServer.TILE_SIZE, y = r * MapServer.TILE_SIZE;
+                if (crop == null || (x < crop[0] + crop[2] && x + MapServer.TILE_SIZE > crop[0]
+                        && y < crop[1] + crop[3] && y + MapServer.TILE_SIZE > crop[1])) {
+                    tiles[r][c] = getImage(renderGrid[r][c]);
+                }
+            }
+        }
+        tileReadTime.recordSince(phaseStart);
 
+        phaseStart = System.nanoTime();
         for (int r = 0; r < numVertTiles; r += 1) {
             for (int c = 0; c < numHorizTiles; c += 1) {
-                graphic.drawImage(getImage(IMG_ROOT + renderGrid[r][c]), x, y, null);
-                x += MapServer.TILE_SIZE;
-                if (x >= img.getWidth()) {
-                    x = 0;
-                    y += MapServer.TILE_SIZE;
+                if (tiles[r][c] != null) {
+                    graphic.drawImage(tiles[r][c], c * MapServer.TILE_SIZE,
+                            r * MapServer.TILE_SIZE, null);
                 }
             }
         }
+        graphic.setTransform(new AffineTransform());
 
         /* If there is a route, draw it. */
         double ullon = (double) rasteredImageParams.get("raster_ul_lon"); //tiles.get(0).ulp;
@@ -242,49 +916,122 @@ public class MapServer {
 
         final double wdpp = (lrlon - ullon) / img.getWidth();
         final double hdpp = (ullat - lrlat) / img.getHeight();
-        if (route != null && !route.isEmpty()) {
-            Graphics2D g2d = (Graphics2D) graphic;
-            g2d.setColor(MapServer.ROUTE_STROKE_COLOR);
-            g2d.setStroke(new BasicStroke(MapServer.ROUTE_STROKE_WIDTH_PX,
+        if (route != null && route.size() > 1) {
+            graphic.setColor(MapServer.ROUTE_STROKE_COLOR);
+            graphic.setStroke(new BasicStroke(MapServer.ROUTE_STROKE_WIDTH_PX,
                     BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-            route.stream().reduce((v, w) -> {
-                g2d.drawLine((int) ((graph.lon(v) - ullon) * (1 / wdpp)),
-                             (int) ((ullat - graph.lat(v)) * (1 / hdpp)),
-                             (int) ((graph.lon(w) - ullon) * (1 / wdpp)),
-                             (int) ((ullat - graph.lat(w)) * (1 / hdpp)));
-                return w;
-            });
+            int depth = (int) rasteredImageParams.get("depth");
+            route.draw(graphic, depth, ullon, ullat, wdpp, hdpp, img.getWidth(), img.getHeight(),
+                    MapServer.ROUTE_STROKE_WIDTH_PX);
         }
 
+        compositeTime.recordSince(phaseStart);
+
         rasteredImageParams.put("raster_width", img.getWidth());
         rasteredImageParams.put("raster_height", img.getHeight());
 
+        phaseStart = System.nanoTime();
         try {
-            ImageIO.write(img, "png", os);
+            PNG_ENCODER.write(img, os);
         } catch (IOException e) {
             e.printStackTrace();
         }
+        encodeTime.recordSince(phaseStart);
 
     }
 
-    private static BufferedImage getImage(String imgPath) {
-        BufferedImage tileImg = null;
-        if (tileImg == null) {
-            try {
-                File in = new File(imgPath);
-                tileImg = ImageIO.read(in);
-            } catch (IOException | NullPointerException e) {
-                e.printStackTrace();
+    private static BufferedImage getImage(String tileName) {
+        return tileCache.get(tileName);
+    }
+
+    /**
+     * Snaps both endpoints onto the nearest roads the profile may use and returns the
+     * route between them, from the route cache if this pair of points was routed before
+     * for the profile. The overlay runs from the snapped start through the vertices
+     * passed to the snapped destination.
+     * @return the cached or newly computed route
+     */
+    private static RouteCache.Entry findRoute(double stlon, double stlat,
+                                              double destlon, double destlat,
+                                              Profile profile) {
+        long phaseStart = System.nanoTime();
+        SegmentIndex.Snap start = graph.snap(stlon, stlat, profile);
+        SegmentIndex.Snap dest = graph.snap(destlon, destlat, profile);
+        snapTime.recordSince(phaseStart);
+        if (start == null || dest == null) {
+            return new RouteCache.Entry(new long[0], new ArrayList<>(),
+                    new RouteOverlay(new double[0]));
+        }
+        /* OSM ids and edge keys leave bits 52 to 62 clear, for the weights version and
+         * the profile. The version is read before the search, so a route cached while
+         * an update lands is keyed by the version it may predate, and never served
+         * again once the cache is cleared. */
+        long version = graph.weights().version();
+        long startKey = cacheKey(start) | (version & 0x7FF) << 52;
+        long destKey = cacheKey(dest) | (long) profile.ordinal() << 56;
+        RouteCache.Entry cached = routeCache.get(startKey, destKey);
+        if (cached != null) {
+            return cached;
+        }
+        Router.RouteResult result = Router.route(graph, start, dest, profile, true);
+        recordSearchEffort(result.stats);
+        List<Long> path = result.path;
+        long[] packed = new long[path.size()];
+        for (int i = 0; i < packed.length; i++) {
+            packed[i] = path.get(i);
+        }
+        phaseStart = System.nanoTime();
+        List<Router.NavigationDirection> directions = path.isEmpty()
+                ? new ArrayList<>() : Router.routeDirections(graph, path);
+        directionsTime.recordSince(phaseStart);
+        RouteOverlay overlay = new RouteOverlay(new double[0]);
+        if (result.found) {
+            /* Drawn from the snapped points, which need not be vertices. */
+            double[] coords = new double[2 * packed.length + 4];
+            coords[0] = start.lon;
+            coords[1] = start.lat;
+            for (int i = 0; i < packed.length; i++) {
+                coords[2 * i + 2] = graph.lon(packed[i]);
+                coords[2 * i + 3] = graph.lat(packed[i]);
             }
+            coords[coords.length - 2] = dest.lon;
+            coords[coords.length - 1] = dest.lat;
+            overlay = new RouteOverlay(coords);
+        }
+        return routeCache.put(startKey, destKey, packed, directions, overlay);
+    }
+
+    /**
+     * Returns the route cache key of a snapped point: the id of its vertex, or, partway
+     * along an edge, the edge and the position along it to a millionth, with the sign bit
+     * set so that it cannot equal a vertex id.
+     */
+    private static long cacheKey(SegmentIndex.Snap snap) {
+        if (snap.vertex() >= 0) {
+            return graph.idAt(snap.vertex());
         }
-        return tileImg;
+        return Long.MIN_VALUE | (long) snap.edge << 20 | Math.round(snap.fraction * 1e6);
     }
 
     /**
-     * Clear the current found route, if it exists.
+     * Adds the effort of one route search to the route effort and phase histograms.
      */
-    public static void clearRoute() {
-        route = new LinkedList<Long>();
+    private static void recordSearchEffort(Router.SearchStats stats) {
+        searchTime.record(stats.searchNanos);
+        pathTime.record(stats.pathNanos);
+        settledCount.record(stats.settled);
+        relaxedCount.record(stats.relaxed);
+        pushCount.record(stats.pushes);
+        popCount.record(stats.pops);
+        maxFringeSize.record(stats.maxFringe);
+    }
+
+    /**
+     * Clear the current found route of a client, if it exists.
+     * @param token the client's route token
+     */
+    public static void clearRoute(String token) {
+        routes.remove(token);
     }
 
     /**
@@ -321,26 +1068,30 @@ public class MapServer {
     private static boolean validateRasteredImgParams(Map<String, Object> rip) {
         for (String p : REQUIRED_RASTER_RESULT_PARAMS) {
             if (!rip.containsKey(p)) {
-                System.out.println("Your rastering result is missing the " + p + " field.");
+                rasterFailures("missing_" + p).increment();
                 return false;
             }
         }
         if (rip.containsKey("query_success")) {
             boolean success = (boolean) rip.get("query_success");
             if (!success) {
-                System.out.println("query_success was reported as a failure");
+                rasterFailures("query_failed").increment();
                 return false;
             }
         }
         return true;
     }
 
+    private static LongAdder rasterFailures(String reason) {
+        return metrics.counter("bearmaps_raster_failures_total",
+                "Raster requests that could not be rendered, by reason.", "reason", reason);
+    }
+
     /**
-     * Takes the route of this MapServer and converts it into an HTML friendly
+     * Takes the directions of a route and converts them into an HTML friendly
      * String to be passed to the frontend.
      */
-    private static String getDirectionsText() {
-        List<Router.NavigationDirection> directions = Router.routeDirections(graph, route);
+    private static String getDirectionsText(List<Router.NavigationDirection> directions) {
         if (directions == null || directions.isEmpty()) {
           return "";
         }
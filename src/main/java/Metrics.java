@@ -0,0 +1,214 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Registry of the server's counters, gauges and latency histograms, written out in the
+ * Prometheus text exposition format. Each metric belongs to a family (a name with help
+ * text and a type) and is told apart from the others in its family by the value of one
+ * label. Callers look a metric up once and keep it; recording is then lock-free.
+ * Counters and gauges may also be read from a LongSupplier at scrape time, for values
+ * kept elsewhere such as cache hit counts.
+ */
+public class Metrics {
+    /** Upper bounds of the exported histogram buckets, in seconds. */
+    private static final String[] BUCKET_SECONDS = {"0.0001", "0.00025", "0.0005", "0.001",
+        "0.0025", "0.005", "0.01", "0.025", "0.05", "0.1", "0.25", "0.5", "1", "2.5", "5", "10"};
+    /** Upper bounds of the exported buckets of histograms of counts. */
+    private static final String[] BUCKET_COUNTS = {"1", "4", "16", "64", "256", "1024", "4096",
+        "16384", "65536", "262144", "1048576"};
+
+    private final Map<String, Family> families = new ConcurrentHashMap<>();
+    /** Families in the order they were first registered. */
+    private final List<Family> order = new ArrayList<>();
+
+    /**
+     * A metric name with its help text, type and labelled members.
+     */
+    private static class Family {
+        private final String name;
+        private final String help;
+        private final String type;
+        private final String labelName;
+        /** Exported bucket bounds of a histogram, and the recorded units per exported unit. */
+        private final String[] buckets;
+        private final double scale;
+        private final Map<String, Object> members = new ConcurrentHashMap<>();
+        private final List<String> labels = new ArrayList<>();
+
+        Family(String name, String help, String type, String labelName, String[] buckets,
+               double scale) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.labelName = labelName;
+            this.buckets = buckets;
+            this.scale = scale;
+        }
+    }
+
+    /**
+     * Returns the counter with the given label value, creating it if needed.
+     * @param name family name, e.g. "bearmaps_requests_total"
+     * @param help one line describing the family
+     * @param labelName name of the label telling the family's members apart
+     * @param labelValue value of the label for this counter
+     * @return the counter
+     */
+    public LongAdder counter(String name, String help, String labelName, String labelValue) {
+        return (LongAdder) member(family(name, help, "counter", labelName, null, 1),
+                labelValue, LongAdder.class);
+    }
+
+    /**
+     * Returns the latency histogram with the given label value, creating it if needed.
+     * It is exported in seconds.
+     * @return the histogram
+     */
+    public LatencyHistogram histogram(String name, String help, String labelName,
+                                      String labelValue) {
+        return (LatencyHistogram) member(family(name, help, "histogram", labelName,
+                BUCKET_SECONDS, 1e9), labelValue, LatencyHistogram.class);
+    }
+
+    /**
+     * Returns the histogram of counts (such as vertices visited per query) with the given
+     * label value, creating it if needed. It is exported unscaled.
+     * @return the histogram
+     */
+    public LatencyHistogram countHistogram(String name, String help, String labelName,
+                                           String labelValue) {
+        return (LatencyHistogram) member(family(name, help, "histogram", labelName,
+                BUCKET_COUNTS, 1), labelValue, LatencyHistogram.class);
+    }
+
+    /**
+     * Registers a counter whose value is read from value at scrape time.
+     */
+    public void counter(String name, String help, String labelName, String labelValue,
+                        LongSupplier value) {
+        register(name, help, "counter", labelName, labelValue, value);
+    }
+
+    /**
+     * Registers a gauge whose value is read from value at scrape time.
+     */
+    public void gauge(String name, String help, String labelName, String labelValue,
+                      LongSupplier value) {
+        register(name, help, "gauge", labelName, labelValue, value);
+    }
+
+    private Object member(Family f, String labelValue, Class<?> kind) {
+        Object m = f.members.get(labelValue);
+        if (m == null) {
+            synchronized (f) {
+                m = f.members.get(labelValue);
+                if (m == null) {
+                    m = kind == LongAdder.class ? new LongAdder() : new LatencyHistogram();
+                    f.members.put(labelValue, m);
+                    f.labels.add(labelValue);
+                }
+            }
+        }
+        if (!kind.isInstance(m)) {
+            throw new IllegalArgumentException(f.name + " " + labelValue + " is not a "
+                    + kind.getSimpleName());
+        }
+        return m;
+    }
+
+    private void register(String name, String help, String type, String labelName,
+                          String labelValue, LongSupplier value) {
+        Family f = family(name, help, type, labelName, null, 1);
+        synchronized (f) {
+            if (f.members.put(labelValue, value) == null) {
+                f.labels.add(labelValue);
+            }
+        }
+    }
+
+    private Family family(String name, String help, String type, String labelName,
+                          String[] buckets, double scale) {
+        Family f = families.get(name);
+        if (f == null) {
+            synchronized (order) {
+                f = families.get(name);
+                if (f == null) {
+                    f = new Family(name, help, type, labelName, buckets, scale);
+                    families.put(name, f);
+                    order.add(f);
+                }
+            }
+        }
+        if (!f.type.equals(type) || !f.labelName.equals(labelName) || f.scale != scale) {
+            throw new IllegalArgumentException(name + " is already registered as a "
+                    + f.type + " labelled by " + f.labelName);
+        }
+        return f;
+    }
+
+    /**
+     * Writes every metric in the Prometheus text exposition format, version 0.0.4.
+     * @return the exposition
+     */
+    public String toPrometheus() {
+        StringBuilder sb = new StringBuilder();
+        List<Family> snapshot;
+        synchronized (order) {
+            snapshot = new ArrayList<>(order);
+        }
+        for (Family f : snapshot) {
+            List<String> labels;
+            synchronized (f) {
+                labels = new ArrayList<>(f.labels);
+            }
+            sb.append("# HELP ").append(f.name).append(' ').append(f.help).append('\n');
+            sb.append("# TYPE ").append(f.name).append(' ').append(f.type).append('\n');
+            for (String label : labels) {
+                Object m = f.members.get(label);
+                String labelPair = f.labelName + "=\"" + escape(label) + "\"";
+                if (m instanceof LatencyHistogram) {
+                    writeHistogram(sb, f, labelPair, (LatencyHistogram) m);
+                } else {
+                    long v = m instanceof LongAdder ? ((LongAdder) m).sum()
+                            : ((LongSupplier) m).getAsLong();
+                    sb.append(f.name).append('{').append(labelPair).append("} ")
+                            .append(v).append('\n');
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void writeHistogram(StringBuilder sb, Family f, String labelPair,
+                                       LatencyHistogram h) {
+        String name = f.name;
+        long[] counts = h.snapshot();
+        long cumulative = 0;
+        int bucket = 0;
+        for (String le : f.buckets) {
+            long bound = Math.round(Double.parseDouble(le) * f.scale);
+            while (bucket < counts.length && LatencyHistogram.upperBound(bucket) <= bound) {
+                cumulative += counts[bucket++];
+            }
+            sb.append(name).append("_bucket{").append(labelPair).append(",le=\"").append(le)
+                    .append("\"} ").append(cumulative).append('\n');
+        }
+        while (bucket < counts.length) {
+            cumulative += counts[bucket++];
+        }
+        sb.append(name).append("_bucket{").append(labelPair).append(",le=\"+Inf\"} ")
+                .append(cumulative).append('\n');
+        String sum = f.scale == 1 ? Long.toString(h.sum()) : Double.toString(h.sum() / f.scale);
+        sb.append(name).append("_sum{").append(labelPair).append("} ").append(sum).append('\n');
+        sb.append(name).append("_count{").append(labelPair).append("} ")
+                .append(cumulative).append('\n');
+    }
+
+    private static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,356 @@
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes synthetic road networks as OSM XML that GraphBuildingHandler reads, for testing
+ * how the graph, snapping and routing scale past the size of the Berkeley extract.
+ * The network is a grid of intersections about 90 metres apart, centred on the Berkeley
+ * map, each moved by up to a third of the spacing. Every ARTERIAL_EVERY-th row and
+ * column is an unbroken primary road; the streets in between are residential, and each
+ * block of them is missing with probability DROP_PERMILLE / 1000, so blocks vary in size
+ * and a few corners end up cut off; one missing block in PATH_EVERY is a straight
+ * footway and another a cycleway, which only walking or cycling routes may take. Each
+ * block has up to MAX_SHAPE shape points along a slightly curved line between its
+ * corners, as OSM roads do. One node in POI_EVERY more is a named point of interest off
+ * the roads, and every DRIVE_EVERY-th of those has a short private drive joined to no
+ * other road, the islands real extracts have too.
+ *
+ * Everything about a node or block is a hash of the seed and its grid position, so the
+ * network is written in one pass without being held in memory, and the same size and
+ * seed always give the same file. Nodes are written in an order scattered across the
+ * grid, as in real extracts.
+ */
+public class OsmGenerator {
+    /** Grid spacing in degrees, about 90 metres either way at Berkeley's latitude. */
+    private static final double LAT_STEP = 0.0008, LON_STEP = 0.001;
+    /** Largest number of shape points between two intersections. */
+    private static final int MAX_SHAPE = 2;
+    /** Ids reserved per intersection: its own, then those of its east and south shapes. */
+    private static final int SLOTS = 1 + 2 * MAX_SHAPE;
+    /** Average number of nodes per intersection, counting its share of shape points. */
+    private static final double NODES_PER_INTERSECTION = 1 + MAX_SHAPE;
+    private static final int ARTERIAL_EVERY = 8;
+    private static final int DROP_PERMILLE = 80;
+    private static final int POI_EVERY = 100;
+    private static final int DRIVE_EVERY = 10;
+    private static final int PATH_EVERY = 3;
+    private static final long ID_BASE = 1_000_000_000L;
+    private static final String[] AVENUES = {"Oak", "Cedar", "Walnut", "Elm", "Spruce",
+        "Chestnut", "Hazel", "Laurel", "Maple", "Willow", "Birch", "Juniper"};
+    private static final String[] POI_KINDS = {"Cafe", "Market", "Library", "Park",
+        "Pharmacy", "Bakery", "School", "Theater"};
+
+    private final int rows;
+    private final int cols;
+    private final int pois;
+    private final long seed;
+    private final double north;
+    private final double west;
+
+    /**
+     * Creates a generator.
+     * @param nodes approximate number of road nodes to write, at least 4
+     * @param seed seed of the network's randomness
+     */
+    public OsmGenerator(long nodes, long seed) {
+        long side = Math.max(2, Math.round(Math.sqrt(nodes / NODES_PER_INTERSECTION)));
+        if (side * side * SLOTS >= ID_BASE) {
+            throw new IllegalArgumentException("Too many nodes: " + nodes);
+        }
+        this.rows = (int) side;
+        this.cols = (int) side;
+        this.pois = (int) Math.max(1, nodes / POI_EVERY);
+        this.seed = seed;
+        this.north = (MapServer.ROOT_ULLAT + MapServer.ROOT_LRLAT) / 2 + rows / 2 * LAT_STEP;
+        this.west = (MapServer.ROOT_ULLON + MapServer.ROOT_LRLON) / 2 - cols / 2 * LON_STEP;
+    }
+
+    /**
+     * Returns the number of rows of intersections.
+     * @return the number of rows
+     */
+    public int rows() {
+        return rows;
+    }
+
+    /**
+     * Returns the number of columns of intersections.
+     * @return the number of columns
+     */
+    public int cols() {
+        return cols;
+    }
+
+    /**
+     * Writes the network to a file.
+     * @param path the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void write(String path) throws IOException {
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(path), StandardCharsets.UTF_8), 1 << 16)) {
+            write(out);
+        }
+    }
+
+    /**
+     * Writes the network as an OSM XML document.
+     * @param out where to write it; not closed
+     * @throws IOException if writing fails
+     */
+    public void write(Writer out) throws IOException {
+        out.write("<?xml version='1.0' encoding='UTF-8'?>\n");
+        out.write("<osm version=\"0.6\" generator=\"OsmGenerator\">\n");
+        out.write("\t<bounds minlat=\"" + (north - rows * LAT_STEP) + "\" minlon=\"" + west
+                + "\" maxlat=\"" + north + "\" maxlon=\"" + (west + cols * LON_STEP)
+                + "\"/>\n");
+        /* Intersections in scattered order, as the ids of a real extract follow its edit
+         * history rather than its geography: cell k of the walk is k * stride modulo the
+         * cell count, which visits every cell once since the two are coprime. */
+        long cells = (long) rows * cols;
+        long stride = scatterStride(cells);
+        for (long k = 0; k < cells; k++) {
+            long cell = k * stride % cells;
+            int r = (int) (cell / cols), c = (int) (cell % cols);
+            writeNode(out, id(r, c), lat(r, c), lon(r, c), null);
+            if (c + 1 < cols && hasBlock(r, c, 0)) {
+                writeShape(out, r, c, r, c + 1, 0);
+            }
+            if (r + 1 < rows && hasBlock(r, c, 1)) {
+                writeShape(out, r, c, r + 1, c, 1);
+            }
+        }
+        long poiBase = ID_BASE + (long) rows * cols * SLOTS;
+        for (int p = 0; p < pois; p++) {
+            double lat = north - unit(p, -1, 7) * rows * LAT_STEP;
+            double lon = west + unit(p, -1, 8) * cols * LON_STEP;
+            String name = POI_KINDS[(int) (hash(p, -1, 9) >>> 33) % POI_KINDS.length] + " "
+                    + (p + 1);
+            writeNode(out, poiBase + p, lat, lon, name);
+            if (p % DRIVE_EVERY == 0) {
+                writeNode(out, driveId(p, 0), lat + LAT_STEP / 8, lon, null);
+                writeNode(out, driveId(p, 1), lat + LAT_STEP / 8, lon + LON_STEP / 4, null);
+            }
+        }
+
+        long wayId = 1;
+        for (int r = 0; r < rows; r++) {
+            wayId = writeWays(out, wayId, r, true);
+        }
+        for (int c = 0; c < cols; c++) {
+            wayId = writeWays(out, wayId, c, false);
+        }
+        for (int p = 0; p < pois; p += DRIVE_EVERY) {
+            out.write("\t<way id=\"" + wayId++ + "\" version=\"1\">\n");
+            out.write("\t\t<nd ref=\"" + driveId(p, 0) + "\"/>\n");
+            out.write("\t\t<nd ref=\"" + driveId(p, 1) + "\"/>\n");
+            out.write("\t\t<tag k=\"highway\" v=\"residential\"/>\n");
+            out.write("\t</way>\n");
+        }
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                if (c + 1 < cols && !hasBlock(r, c, 0)) {
+                    wayId = writePath(out, wayId, r, c, r, c + 1, 0);
+                }
+                if (r + 1 < rows && !hasBlock(r, c, 1)) {
+                    wayId = writePath(out, wayId, r, c, r + 1, c, 1);
+                }
+            }
+        }
+        out.write("</osm>\n");
+    }
+
+    /**
+     * Writes a footway or cycleway in place of the missing block from (r, c) to
+     * (r2, c2), or nothing, and returns the next free way id.
+     */
+    private long writePath(Writer out, long wayId, int r, int c, int r2, int c2, int dir)
+            throws IOException {
+        int kind = (int) ((hash(r, c, 12 + dir) >>> 33) % PATH_EVERY);
+        if (kind > 1) {
+            return wayId;
+        }
+        out.write("\t<way id=\"" + wayId + "\" version=\"1\">\n");
+        out.write("\t\t<nd ref=\"" + id(r, c) + "\"/>\n");
+        out.write("\t\t<nd ref=\"" + id(r2, c2) + "\"/>\n");
+        out.write("\t\t<tag k=\"highway\" v=\"" + (kind == 0 ? "footway" : "cycleway")
+                + "\"/>\n");
+        out.write("\t</way>\n");
+        return wayId + 1;
+    }
+
+    /** Returns a step near the golden ratio of n that is coprime to n. */
+    private static long scatterStride(long n) {
+        long stride = Math.max(1, (long) (n * 0.618));
+        while (gcd(stride, n) != 1) {
+            stride++;
+        }
+        return stride;
+    }
+
+    private static long gcd(long a, long b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    /**
+     * Writes the ways along one row or column, a new way starting after every missing
+     * block. Returns the next free way id.
+     */
+    private long writeWays(Writer out, long wayId, int line, boolean isRow) throws IOException {
+        int length = isRow ? cols : rows;
+        int dir = isRow ? 0 : 1;
+        StringBuilder refs = new StringBuilder();
+        int refCount = 0;
+        for (int i = 0; i < length; i++) {
+            int r = isRow ? line : i, c = isRow ? i : line;
+            refs.append("\t\t<nd ref=\"").append(id(r, c)).append("\"/>\n");
+            refCount++;
+            boolean more = i + 1 < length && hasBlock(r, c, dir);
+            if (more) {
+                for (int k = 0; k < shapes(r, c, dir); k++) {
+                    refs.append("\t\t<nd ref=\"").append(shapeId(r, c, dir, k)).append("\"/>\n");
+                    refCount++;
+                }
+            } else {
+                if (refCount > 1) {
+                    writeWay(out, wayId++, refs, line, isRow);
+                }
+                refs.setLength(0);
+                refCount = 0;
+            }
+        }
+        return wayId;
+    }
+
+    private void writeWay(Writer out, long wayId, CharSequence refs, int line, boolean isRow)
+            throws IOException {
+        boolean arterial = line % ARTERIAL_EVERY == 0;
+        String name;
+        if (isRow) {
+            name = ordinal(line + 1) + (arterial ? " Boulevard" : " Street");
+        } else {
+            int round = line / AVENUES.length;
+            name = AVENUES[line % AVENUES.length] + (round > 0 ? " " + (round + 1) : "")
+                    + (arterial ? " Parkway" : " Avenue");
+        }
+        out.write("\t<way id=\"" + wayId + "\" version=\"1\">\n");
+        out.append(refs);
+        out.write("\t\t<tag k=\"name\" v=\"" + name + "\"/>\n");
+        out.write("\t\t<tag k=\"highway\" v=\"" + (arterial ? "primary" : "residential")
+                + "\"/>\n");
+        out.write("\t\t<tag k=\"maxspeed\" v=\"" + (arterial ? "35 mph" : "25 mph") + "\"/>\n");
+        out.write("\t</way>\n");
+    }
+
+    /**
+     * Writes the shape points of the block from (r, c) to (r2, c2), bowed a little to one
+     * side of the straight line.
+     */
+    private void writeShape(Writer out, int r, int c, int r2, int c2, int dir)
+            throws IOException {
+        int n = shapes(r, c, dir);
+        double lat0 = lat(r, c), lon0 = lon(r, c);
+        double lat1 = lat(r2, c2), lon1 = lon(r2, c2);
+        double bow = (unit(r, c, 4 + dir) - 0.5) * 0.2;
+        for (int k = 0; k < n; k++) {
+            double t = (k + 1) / (double) (n + 1);
+            double side = bow * Math.sin(Math.PI * t);
+            double lat = lat0 + (lat1 - lat0) * t + side * (lon1 - lon0) * LAT_STEP / LON_STEP;
+            double lon = lon0 + (lon1 - lon0) * t - side * (lat1 - lat0) * LON_STEP / LAT_STEP;
+            writeNode(out, shapeId(r, c, dir, k), lat, lon, null);
+        }
+    }
+
+    private static void writeNode(Writer out, long id, double lat, double lon, String name)
+            throws IOException {
+        out.write("\t<node id=\"" + id + "\" lat=\"" + round7(lat) + "\" lon=\""
+                + round7(lon) + "\" version=\"1\"");
+        if (name == null) {
+            out.write("/>\n");
+        } else {
+            out.write(">\n\t\t<tag k=\"name\" v=\"" + name + "\"/>\n\t</node>\n");
+        }
+    }
+
+    /** Rounds to the 7 decimal places OSM stores. */
+    private static double round7(double x) {
+        return Math.round(x * 1e7) / 1e7;
+    }
+
+    /**
+     * Returns whether the block leaving (r, c) eastwards (dir 0) or southwards (dir 1)
+     * exists. Blocks along arterials always do.
+     */
+    private boolean hasBlock(int r, int c, int dir) {
+        if ((dir == 0 ? r : c) % ARTERIAL_EVERY == 0) {
+            return true;
+        }
+        return (hash(r, c, 2 + dir) >>> 33) % 1000 >= DROP_PERMILLE;
+    }
+
+    private int shapes(int r, int c, int dir) {
+        return (int) ((hash(r, c, 10 + dir) >>> 33) % (MAX_SHAPE + 1));
+    }
+
+    private long id(int r, int c) {
+        return ID_BASE + ((long) r * cols + c) * SLOTS;
+    }
+
+    private long shapeId(int r, int c, int dir, int k) {
+        return id(r, c) + 1 + dir * MAX_SHAPE + k;
+    }
+
+    /** Returns the id of node k of the private drive of point of interest p. */
+    private long driveId(int p, int k) {
+        return ID_BASE + (long) rows * cols * SLOTS + pois + 2L * p + k;
+    }
+
+    private double lat(int r, int c) {
+        return north - r * LAT_STEP + (unit(r, c, 0) - 0.5) * LAT_STEP * 2 / 3;
+    }
+
+    private double lon(int r, int c) {
+        return west + c * LON_STEP + (unit(r, c, 1) - 0.5) * LON_STEP * 2 / 3;
+    }
+
+    /** Returns a value in [0, 1) determined by the seed, a position and a salt. */
+    private double unit(int a, int b, int salt) {
+        return (hash(a, b, salt) >>> 11) * 0x1.0p-53;
+    }
+
+    /** Mixes the seed, a position and a salt with the SplitMix64 finalizer. */
+    private long hash(int a, int b, int salt) {
+        long z = seed + 0x9E3779B97F4A7C15L * (((long) a << 32 ^ (b & 0xFFFFFFFFL)) * 31 + salt);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static String ordinal(int n) {
+        int mod100 = n % 100;
+        String suffix = mod100 >= 11 && mod100 <= 13 ? "th"
+                : n % 10 == 1 ? "st" : n % 10 == 2 ? "nd" : n % 10 == 3 ? "rd" : "th";
+        return n + suffix;
+    }
+
+    /**
+     * Writes a network from the command line.
+     * @param args number of road nodes, output file, and optionally a seed
+     * @throws IOException if the file cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: OsmGenerator <nodes> <output.osm.xml> [seed]");
+            System.exit(2);
+        }
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 39;
+        OsmGenerator generator = new OsmGenerator(Long.parseLong(args[0]), seed);
+        generator.write(args[1]);
+        System.out.println("Wrote " + generator.rows() + " x " + generator.cols()
+                + " intersections to " + args[1]);
+    }
+}
@@ -0,0 +1,128 @@
+import java.util.Arrays;
+
+/**
+ * Adjacency lists of a graph with dense vertex numbers, packed into one byte array. The
+ * targets of each vertex are stored in order as differences, each from the previous
+ * target and the first from the vertex itself, zigzag-encoded so small negative steps
+ * stay small, and written as varints of seven bits per byte. When vertices are numbered
+ * so that neighbours have nearby numbers, most differences take one or two bytes
+ * instead of the four of an int.
+ *
+ * Edge numbers are kept as in a plain CSR layout, so arrays of per-edge values can sit
+ * beside the packed targets: the edges of v are numbered edgeStart(v) up to
+ * edgeStart(v + 1), and targets(v, out) decodes them in that order.
+ */
+public class PackedAdjacency {
+    private final int[] edgeStart;
+    /* The targets of v are encoded in bytes[byteStart[v]] up to bytes[byteStart[v + 1]]. */
+    private final int[] byteStart;
+    private final byte[] bytes;
+    private final int maxDegree;
+
+    /**
+     * Packs adjacency lists given in CSR form.
+     * @param edgeStart first edge of each vertex, with one more entry for the end
+     * @param target target of each edge
+     */
+    PackedAdjacency(int[] edgeStart, int[] target) {
+        int n = edgeStart.length - 1;
+        this.edgeStart = edgeStart;
+        this.byteStart = new int[n + 1];
+        byte[] out = new byte[Math.max(16, target.length * 2)];
+        int pos = 0, max = 0;
+        for (int v = 0; v < n; v++) {
+            byteStart[v] = pos;
+            max = Math.max(max, edgeStart[v + 1] - edgeStart[v]);
+            int prev = v;
+            for (int e = edgeStart[v]; e < edgeStart[v + 1]; e++) {
+                if (pos + 5 > out.length) {
+                    out = Arrays.copyOf(out, out.length * 2);
+                }
+                int delta = target[e] - prev;
+                int zigzag = (delta << 1) ^ (delta >> 31);
+                while ((zigzag & ~0x7F) != 0) {
+                    out[pos++] = (byte) (zigzag & 0x7F | 0x80);
+                    zigzag >>>= 7;
+                }
+                out[pos++] = (byte) zigzag;
+                prev = target[e];
+            }
+        }
+        byteStart[n] = pos;
+        bytes = Arrays.copyOf(out, pos);
+        maxDegree = max;
+    }
+
+    /**
+     * Returns the first edge of vertex v; its edges run up to edgeStart(v + 1).
+     * @param v dense vertex index, up to and including the vertex count
+     * @return an edge number
+     */
+    int edgeStart(int v) {
+        return edgeStart[v];
+    }
+
+    /**
+     * Decodes the targets of the edges of v.
+     * @param v dense vertex index
+     * @param out where to write them, at least maxDegree() long
+     * @return the number of targets written, the degree of v
+     */
+    int targets(int v, int[] out) {
+        int degree = edgeStart[v + 1] - edgeStart[v];
+        int pos = byteStart[v];
+        int prev = v;
+        for (int k = 0; k < degree; k++) {
+            int zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[pos++];
+                zigzag |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            prev += (zigzag >>> 1) ^ -(zigzag & 1);
+            out[k] = prev;
+        }
+        return degree;
+    }
+
+    /**
+     * Returns the target of one edge, decoding the list it is in.
+     * @param v dense index of the edge's source
+     * @param e an edge of v
+     * @return dense index of its target
+     */
+    int target(int v, int e) {
+        int pos = byteStart[v];
+        int prev = v;
+        for (int k = edgeStart[v]; k <= e; k++) {
+            int zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[pos++];
+                zigzag |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            prev += (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+        return prev;
+    }
+
+    /**
+     * Returns the largest number of edges of any vertex.
+     * @return the largest degree
+     */
+    int maxDegree() {
+        return maxDegree;
+    }
+
+    /**
+     * Returns the number of bytes the packed lists and their offsets take.
+     * @return the size of the arrays in bytes
+     */
+    long sizeInBytes() {
+        return bytes.length + 4L * (byteStart.length + edgeStart.length);
+    }
+}
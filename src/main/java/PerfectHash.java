@@ -0,0 +1,154 @@
+/**
+ * A minimal perfect hash function over a fixed set of long keys: it maps the n keys
+ * one-to-one onto the slots 0 through n - 1, using about 1.3 ints of memory per key
+ * and no boxing. Keys outside the set map to some slot too, so callers keep the key of
+ * each slot and compare, as GraphDB does with vertex ids.
+ *
+ * Built by hash and displace: keys are split into buckets of about BUCKET_SIZE by one
+ * hash, and each bucket, largest first, is given the first seed under which a second
+ * hash sends all its keys to free slots. A bucket of one key, placed last, just records
+ * a free slot instead of a seed.
+ */
+public class PerfectHash {
+    /** Average keys per bucket; fewer means faster building and more seeds to keep. */
+    private static final int BUCKET_SIZE = 3;
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+
+    private final int n;
+    /* Seed of each bucket, or -1 - slot for a bucket whose one key has that slot. */
+    private final int[] seeds;
+
+    /**
+     * Builds the function for a set of keys.
+     * @param keys distinct keys
+     * @throws IllegalArgumentException if a key appears twice
+     */
+    PerfectHash(long[] keys) {
+        n = keys.length;
+        int buckets = Math.max(1, (n + BUCKET_SIZE - 1) / BUCKET_SIZE);
+        seeds = new int[buckets];
+
+        /* Group the keys by bucket, in CSR form. */
+        int[] start = new int[buckets + 1];
+        for (long key : keys) {
+            start[bucket(key, buckets) + 1]++;
+        }
+        int largest = 0;
+        for (int b = 0; b < buckets; b++) {
+            largest = Math.max(largest, start[b + 1]);
+            start[b + 1] += start[b];
+        }
+        long[] grouped = new long[n];
+        int[] fill = new int[buckets];
+        for (long key : keys) {
+            int b = bucket(key, buckets);
+            grouped[start[b] + fill[b]++] = key;
+        }
+
+        /* Order buckets by decreasing size with a counting sort. */
+        int[] bySize = new int[largest + 2];
+        for (int b = 0; b < buckets; b++) {
+            bySize[largest - (start[b + 1] - start[b]) + 1]++;
+        }
+        for (int s = 0; s <= largest; s++) {
+            bySize[s + 1] += bySize[s];
+        }
+        int[] order = new int[buckets];
+        for (int b = 0; b < buckets; b++) {
+            order[bySize[largest - (start[b + 1] - start[b])]++] = b;
+        }
+
+        boolean[] taken = new boolean[n];
+        int[] slots = new int[Math.max(1, largest)];
+        int nextFree = 0;
+        for (int b : order) {
+            int size = start[b + 1] - start[b];
+            if (size == 0) {
+                break;
+            }
+            if (size == 1) {
+                while (taken[nextFree]) {
+                    nextFree++;
+                }
+                taken[nextFree] = true;
+                seeds[b] = -1 - nextFree;
+                continue;
+            }
+            for (int k = start[b] + 1; k < start[b + 1]; k++) {
+                for (int j = start[b]; j < k; j++) {
+                    if (grouped[j] == grouped[k]) {
+                        throw new IllegalArgumentException("Duplicate key " + grouped[k]);
+                    }
+                }
+            }
+            for (int seed = 0; ; seed++) {
+                if (place(grouped, start[b], size, seed, taken, slots)) {
+                    seeds[b] = seed;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Tries to give every key of a bucket a free slot under a seed, taking the slots if
+     * they are all free and distinct.
+     */
+    private boolean place(long[] keys, int from, int size, int seed, boolean[] taken,
+                          int[] slots) {
+        for (int k = 0; k < size; k++) {
+            int slot = slot(keys[from + k], seed);
+            if (taken[slot]) {
+                for (int j = 0; j < k; j++) {
+                    taken[slots[j]] = false;
+                }
+                return false;
+            }
+            taken[slot] = true;
+            slots[k] = slot;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the slot of a key.
+     * @param key a key; any long is accepted
+     * @return the slot of key if it is in the set, otherwise an arbitrary slot, or -1 if
+     * the set is empty
+     */
+    int slot(long key) {
+        if (n == 0) {
+            return -1;
+        }
+        int seed = seeds[bucket(key, seeds.length)];
+        return seed < 0 ? -1 - seed : slot(key, seed);
+    }
+
+    /**
+     * Returns the number of keys.
+     * @return the number of slots
+     */
+    int size() {
+        return n;
+    }
+
+    private static int bucket(long key, int buckets) {
+        return range(mix(key), buckets);
+    }
+
+    private int slot(long key, int seed) {
+        return range(mix(key + GOLDEN * (seed + 1L)), n);
+    }
+
+    /** Maps the high 32 bits of a hash onto 0 through bound - 1 without division. */
+    private static int range(long hash, int bound) {
+        return (int) (((hash >>> 32) * bound) >>> 32);
+    }
+
+    /** The SplitMix64 finalizer. */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,357 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * PNG writer for composited rasters with its own compression knobs: the deflate level,
+ * the row filter, and whether to write an indexed (palette) image when the raster has
+ * at most 256 colours. The Deflater and row buffers are kept per thread and reused, so
+ * encoding a raster allocates nothing but the output. Images are written as 8-bit RGB
+ * or 8-bit indexed colour without interlacing.
+ */
+public class PngEncoder {
+    /** Largest IDAT chunk written, in bytes. */
+    private static final int CHUNK_SIZE = 1 << 16;
+    private static final byte[] SIGNATURE = {(byte) 137, 80, 78, 71, 13, 10, 26, 10};
+    private static final int COLOR_TYPE_RGB = 2;
+    private static final int COLOR_TYPE_INDEXED = 3;
+
+    private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+
+    /**
+     * PNG row filters. ADAPTIVE picks, per row, the filter whose output has the smallest
+     * sum of absolute values, as libpng does.
+     */
+    public enum Filter {
+        NONE(0), SUB(1), UP(2), AVERAGE(3), PAETH(4), ADAPTIVE(-1);
+
+        private final int type;
+
+        Filter(int type) {
+            this.type = type;
+        }
+    }
+
+    private final int level;
+    private final Filter filter;
+    private final boolean indexed;
+
+    /**
+     * Per-thread scratch space.
+     */
+    private static class Buffers {
+        private final Deflater deflater = new Deflater();
+        private final CRC32 crc = new CRC32();
+        private byte[] prev = new byte[0];
+        private byte[] curr = new byte[0];
+        private byte[][] filtered = new byte[5][0];
+        private byte[] chunk = new byte[CHUNK_SIZE + 12];
+        private int[] paletteKeys = new int[512];
+        private byte[] paletteSlots = new byte[512];
+        private boolean[] paletteUsed = new boolean[512];
+
+        private void ensureRowLength(int n) {
+            if (curr.length < n) {
+                prev = new byte[n];
+                curr = new byte[n];
+                for (int f = 0; f < filtered.length; f++) {
+                    filtered[f] = new byte[n];
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates an encoder.
+     * @param level deflate level, 0 (store) through 9 (smallest)
+     * @param filter row filter
+     * @param indexed write a palette image when the raster has at most 256 colours
+     */
+    public PngEncoder(int level, Filter filter, boolean indexed) {
+        if (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Deflate level must be 0 to 9: " + level);
+        }
+        this.level = level;
+        this.filter = filter;
+        this.indexed = indexed;
+    }
+
+    /**
+     * Writes img to os as a PNG.
+     * @param img image to encode
+     * @param os stream to write to; not closed
+     * @throws IOException if writing to os fails
+     */
+    public void write(BufferedImage img, OutputStream os) throws IOException {
+        Buffers b = BUFFERS.get();
+        int width = img.getWidth();
+        int height = img.getHeight();
+        int[] pixels = pixels(img);
+        int[] palette = indexed ? palette(pixels, b) : null;
+        int bpp = palette == null ? 3 : 1;
+        int rowLength = width * bpp;
+
+        os.write(SIGNATURE);
+        byte[] header = new byte[13];
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = 8;
+        header[9] = (byte) (palette == null ? COLOR_TYPE_RGB : COLOR_TYPE_INDEXED);
+        writeChunk(os, b, "IHDR", header, header.length);
+        if (palette != null) {
+            byte[] plte = new byte[3 * palette.length];
+            for (int i = 0; i < palette.length; i++) {
+                plte[3 * i] = (byte) (palette[i] >> 16);
+                plte[3 * i + 1] = (byte) (palette[i] >> 8);
+                plte[3 * i + 2] = (byte) palette[i];
+            }
+            writeChunk(os, b, "PLTE", plte, plte.length);
+        }
+
+        Deflater deflater = b.deflater;
+        deflater.reset();
+        deflater.setLevel(level);
+        deflater.setStrategy(filter == Filter.NONE || palette != null
+                ? Deflater.DEFAULT_STRATEGY : Deflater.FILTERED);
+        b.ensureRowLength(rowLength);
+        Arrays.fill(b.prev, 0, rowLength, (byte) 0);
+        int chunkFill = 0;
+        byte[] filterType = new byte[1];
+        for (int y = 0; y < height; y++) {
+            if (palette == null) {
+                for (int x = 0, i = y * width, j = 0; x < width; x++, i++) {
+                    int p = pixels[i];
+                    b.curr[j++] = (byte) (p >> 16);
+                    b.curr[j++] = (byte) (p >> 8);
+                    b.curr[j++] = (byte) p;
+                }
+            } else {
+                for (int x = 0, i = y * width; x < width; x++, i++) {
+                    b.curr[x] = paletteIndex(pixels[i], b);
+                }
+            }
+            int type = filterRow(b, rowLength, bpp);
+            filterType[0] = (byte) type;
+            chunkFill = deflate(os, b, filterType, 1, chunkFill);
+            chunkFill = deflate(os, b, type == 0 ? b.curr : b.filtered[type], rowLength,
+                    chunkFill);
+            byte[] t = b.prev;
+            b.prev = b.curr;
+            b.curr = t;
+        }
+        deflater.finish();
+        while (!deflater.finished()) {
+            chunkFill += deflater.deflate(b.chunk, 8 + chunkFill, CHUNK_SIZE - chunkFill);
+            if (chunkFill == CHUNK_SIZE) {
+                flushIdat(os, b, chunkFill);
+                chunkFill = 0;
+            }
+        }
+        if (chunkFill > 0) {
+            flushIdat(os, b, chunkFill);
+        }
+        writeChunk(os, b, "IEND", header, 0);
+    }
+
+    /**
+     * Feeds len bytes of data to the deflater, writing IDAT chunks as they fill up.
+     * @return the number of compressed bytes pending in the chunk buffer
+     */
+    private static int deflate(OutputStream os, Buffers b, byte[] data, int len,
+                               int chunkFill) throws IOException {
+        Deflater deflater = b.deflater;
+        deflater.setInput(data, 0, len);
+        while (!deflater.needsInput()) {
+            chunkFill += deflater.deflate(b.chunk, 8 + chunkFill, CHUNK_SIZE - chunkFill);
+            if (chunkFill == CHUNK_SIZE) {
+                flushIdat(os, b, chunkFill);
+                chunkFill = 0;
+            }
+        }
+        return chunkFill;
+    }
+
+    /**
+     * Applies the configured filter to b.curr against b.prev.
+     * @return the filter type used; its output is in b.filtered[type], or b.curr for 0
+     */
+    private int filterRow(Buffers b, int n, int bpp) {
+        if (filter != Filter.ADAPTIVE) {
+            if (filter != Filter.NONE) {
+                applyFilter(filter.type, b.curr, b.prev, b.filtered[filter.type], n, bpp);
+            }
+            return filter.type;
+        }
+        int best = 0;
+        long bestSum = absSum(b.curr, n);
+        for (int type = 1; type <= 4; type++) {
+            applyFilter(type, b.curr, b.prev, b.filtered[type], n, bpp);
+            long sum = absSum(b.filtered[type], n);
+            if (sum < bestSum) {
+                bestSum = sum;
+                best = type;
+            }
+        }
+        return best;
+    }
+
+    private static void applyFilter(int type, byte[] curr, byte[] prev, byte[] out,
+                                    int n, int bpp) {
+        switch (type) {
+            case 1:
+                System.arraycopy(curr, 0, out, 0, bpp);
+                for (int i = bpp; i < n; i++) {
+                    out[i] = (byte) (curr[i] - curr[i - bpp]);
+                }
+                break;
+            case 2:
+                for (int i = 0; i < n; i++) {
+                    out[i] = (byte) (curr[i] - prev[i]);
+                }
+                break;
+            case 3:
+                for (int i = 0; i < n; i++) {
+                    int left = i < bpp ? 0 : curr[i - bpp] & 0xff;
+                    out[i] = (byte) (curr[i] - ((left + (prev[i] & 0xff)) >> 1));
+                }
+                break;
+            default:
+                for (int i = 0; i < n; i++) {
+                    int a = i < bpp ? 0 : curr[i - bpp] & 0xff;
+                    int up = prev[i] & 0xff;
+                    int c = i < bpp ? 0 : prev[i - bpp] & 0xff;
+                    out[i] = (byte) (curr[i] - paeth(a, up, c));
+                }
+                break;
+        }
+    }
+
+    private static int paeth(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) {
+            return a;
+        }
+        return pb <= pc ? b : c;
+    }
+
+    private static long absSum(byte[] row, int n) {
+        long sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += Math.abs((int) row[i]);
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the pixels of img as packed RGB ints, without copying for TYPE_INT_RGB and
+     * TYPE_INT_ARGB images whose buffer holds exactly their pixels, row after row. Others,
+     * such as subimages sharing a larger image's buffer, are copied out.
+     */
+    private static int[] pixels(BufferedImage img) {
+        int width = img.getWidth(), height = img.getHeight();
+        WritableRaster raster = img.getRaster();
+        if ((img.getType() == BufferedImage.TYPE_INT_RGB
+                || img.getType() == BufferedImage.TYPE_INT_ARGB)
+                && raster.getSampleModel() instanceof SinglePixelPackedSampleModel) {
+            SinglePixelPackedSampleModel model =
+                    (SinglePixelPackedSampleModel) raster.getSampleModel();
+            DataBufferInt buffer = (DataBufferInt) raster.getDataBuffer();
+            int[] data = buffer.getData();
+            if (model.getScanlineStride() == width && buffer.getOffset() == 0
+                    && raster.getSampleModelTranslateX() == 0
+                    && raster.getSampleModelTranslateY() == 0
+                    && data.length == width * height) {
+                return data;
+            }
+        }
+        return img.getRGB(0, 0, width, height, null, 0, width);
+    }
+
+    /**
+     * Collects the distinct colours of pixels into the per-thread palette table.
+     * @return the palette, or null if there are more than 256 colours
+     */
+    private static int[] palette(int[] pixels, Buffers b) {
+        Arrays.fill(b.paletteUsed, false);
+        int[] colours = new int[256];
+        int count = 0;
+        int last = -1;
+        for (int p : pixels) {
+            int rgb = p & 0xffffff;
+            if (rgb == last) {
+                continue;
+            }
+            last = rgb;
+            int slot = slotOf(rgb, b);
+            if (!b.paletteUsed[slot]) {
+                if (count == 256) {
+                    return null;
+                }
+                b.paletteUsed[slot] = true;
+                b.paletteKeys[slot] = rgb;
+                b.paletteSlots[slot] = (byte) count;
+                colours[count++] = rgb;
+            }
+        }
+        return Arrays.copyOf(colours, count);
+    }
+
+    private static byte paletteIndex(int p, Buffers b) {
+        return b.paletteSlots[slotOf(p & 0xffffff, b)];
+    }
+
+    /** Linear-probing slot of rgb in the 512-entry palette table. */
+    private static int slotOf(int rgb, Buffers b) {
+        int slot = (rgb * 0x9E3779B1) >>> 23;
+        while (b.paletteUsed[slot] && b.paletteKeys[slot] != rgb) {
+            slot = (slot + 1) & 511;
+        }
+        return slot;
+    }
+
+    private static void flushIdat(OutputStream os, Buffers b, int len) throws IOException {
+        byte[] c = b.chunk;
+        putInt(c, 0, len);
+        c[4] = 'I';
+        c[5] = 'D';
+        c[6] = 'A';
+        c[7] = 'T';
+        b.crc.reset();
+        b.crc.update(c, 4, len + 4);
+        putInt(c, 8 + len, (int) b.crc.getValue());
+        os.write(c, 0, len + 12);
+    }
+
+    private static void writeChunk(OutputStream os, Buffers b, String type, byte[] data,
+                                   int len) throws IOException {
+        byte[] head = new byte[8];
+        putInt(head, 0, len);
+        for (int i = 0; i < 4; i++) {
+            head[4 + i] = (byte) type.charAt(i);
+        }
+        b.crc.reset();
+        b.crc.update(head, 4, 4);
+        b.crc.update(data, 0, len);
+        os.write(head);
+        os.write(data, 0, len);
+        byte[] crc = new byte[4];
+        putInt(crc, 0, (int) b.crc.getValue());
+        os.write(crc);
+    }
+
+    private static void putInt(byte[] a, int off, int v) {
+        a[off] = (byte) (v >>> 24);
+        a[off + 1] = (byte) (v >>> 16);
+        a[off + 2] = (byte) (v >>> 8);
+        a[off + 3] = (byte) v;
+    }
+}
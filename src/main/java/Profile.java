@@ -0,0 +1,96 @@
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The ways of travelling a route may be searched for. One graph holds the ways of every
+ * profile it was read with, and each way records which of them may use it as a bitmask
+ * of their bits, so that the profiles share one set of vertices and edges rather than
+ * each having a graph of its own; a search for one profile skips the edges its bit is
+ * not set on.
+ */
+public enum Profile {
+    DRIVE, BIKE, WALK;
+
+    /** Mask of every profile. */
+    static final int ALL = (1 << values().length) - 1;
+
+    /**
+     * Only allow for non-service roads; this prevents going on pedestrian streets as much as
+     * possible. Note that in Berkeley, many of the campus roads are tagged as motor vehicle
+     * roads, but in practice we walk all over them with such impunity that we forget cars can
+     * actually drive on them.
+     */
+    private static final Set<String> DRIVE_HIGHWAY_TYPES = new HashSet<>(Arrays.asList
+            ("motorway", "trunk", "primary", "secondary", "tertiary", "unclassified",
+                    "residential", "living_street", "motorway_link", "trunk_link", "primary_link",
+                    "secondary_link", "tertiary_link"));
+    /** Roads bicycles may use unless tagged otherwise: all but motorways, and paths. */
+    private static final Set<String> BIKE_HIGHWAY_TYPES = new HashSet<>(Arrays.asList
+            ("trunk", "primary", "secondary", "tertiary", "unclassified", "residential",
+                    "living_street", "trunk_link", "primary_link", "secondary_link",
+                    "tertiary_link", "service", "track", "path", "cycleway"));
+    /** Roads pedestrians may use unless tagged otherwise. */
+    private static final Set<String> WALK_HIGHWAY_TYPES = new HashSet<>(Arrays.asList
+            ("trunk", "primary", "secondary", "tertiary", "unclassified", "residential",
+                    "living_street", "trunk_link", "primary_link", "secondary_link",
+                    "tertiary_link", "service", "track", "path", "cycleway", "footway",
+                    "pedestrian", "steps"));
+
+    /**
+     * Returns the bit of this profile in access masks.
+     * @return a mask with only this profile set
+     */
+    int bit() {
+        return 1 << ordinal();
+    }
+
+    /**
+     * Returns the mask of a set of profiles.
+     * @param profiles some profiles
+     * @return a mask with exactly their bits set
+     */
+    static int mask(Set<Profile> profiles) {
+        int mask = 0;
+        for (Profile p : profiles) {
+            mask |= p.bit();
+        }
+        return mask;
+    }
+
+    /**
+     * Returns which profiles may use a way. Driving follows the highway type alone, as
+     * routes always have; a bicycle or foot tag of "no" closes a way to bicycles or
+     * pedestrians, and one of "yes", "designated" or "permissive" opens it.
+     * @param highway value of the way's highway tag
+     * @param bicycle value of its bicycle tag, or "" if it has none
+     * @param foot value of its foot tag, or "" if it has none
+     * @return the mask of the profiles allowed on the way, 0 if it is no road
+     */
+    static int access(String highway, String bicycle, String foot) {
+        if (highway.isEmpty()) {
+            return 0;
+        }
+        int mask = DRIVE_HIGHWAY_TYPES.contains(highway) ? DRIVE.bit() : 0;
+        if (allowed(BIKE_HIGHWAY_TYPES.contains(highway), bicycle)) {
+            mask |= BIKE.bit();
+        }
+        if (allowed(WALK_HIGHWAY_TYPES.contains(highway), foot)) {
+            mask |= WALK.bit();
+        }
+        return mask;
+    }
+
+    private static boolean allowed(boolean byDefault, String tag) {
+        switch (tag) {
+            case "no":
+                return false;
+            case "yes":
+            case "designated":
+            case "permissive":
+                return true;
+            default:
+                return byDefault;
+        }
+    }
+}
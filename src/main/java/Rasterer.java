@@ -51,7 +51,6 @@ public class Rasterer {
      *                    forget to set this to true on success! <br>
      */
     public Map<String, Object> getMapRaster(Map<String, Double> params) {
-        System.out.println(params);
         Map<String, Object> results;
 
         // Parse query variables
@@ -87,6 +86,46 @@ public class Rasterer {
         return results;
     }
 
+    /**
+     * Narrows a raster result to exactly the query box, for clients that want an image of
+     * their viewport's size instead of whole tiles. The query box is clipped to the map,
+     * the result's bounds are replaced by the clipped box, and raster_width and
+     * raster_height are set to the part of the w by h viewport the clipped box covers.
+     * @param raster a successful result of getMapRaster for params
+     * @param params the query box and viewport size passed to getMapRaster
+     * @return {x, y, width, height} of the clipped box, in pixels of the image made by
+     * laying out the whole render grid
+     */
+    public static double[] cropToQuery(Map<String, Object> raster, Map<String, Double> params) {
+        double gridUlLon = (double) raster.get("raster_ul_lon");
+        double gridUlLat = (double) raster.get("raster_ul_lat");
+        double gridLrLon = (double) raster.get("raster_lr_lon");
+        double gridLrLat = (double) raster.get("raster_lr_lat");
+        String[][] grid = (String[][]) raster.get("render_grid");
+        double lonDpp = (gridLrLon - gridUlLon) / (grid[0].length * MapServer.TILE_SIZE);
+        double latDpp = (gridUlLat - gridLrLat) / (grid.length * MapServer.TILE_SIZE);
+
+        double ullon = params.get("ullon"), ullat = params.get("ullat");
+        double lrlon = params.get("lrlon"), lrlat = params.get("lrlat");
+        double cropUlLon = Math.max(ullon, gridUlLon);
+        double cropUlLat = Math.min(ullat, gridUlLat);
+        double cropLrLon = Math.min(lrlon, gridLrLon);
+        double cropLrLat = Math.max(lrlat, gridLrLat);
+        int width = (int) Math.max(1, Math.round(params.get("w")
+                * (cropLrLon - cropUlLon) / (lrlon - ullon)));
+        int height = (int) Math.max(1, Math.round(params.get("h")
+                * (cropUlLat - cropLrLat) / (ullat - lrlat)));
+
+        raster.put("raster_ul_lon", cropUlLon);
+        raster.put("raster_ul_lat", cropUlLat);
+        raster.put("raster_lr_lon", cropLrLon);
+        raster.put("raster_lr_lat", cropLrLat);
+        raster.put("raster_width", width);
+        raster.put("raster_height", height);
+        return new double[] {(cropUlLon - gridUlLon) / lonDpp, (gridUlLat - cropUlLat) / latDpp,
+            (cropLrLon - cropUlLon) / lonDpp, (cropUlLat - cropLrLat) / latDpp};
+    }
+
     /**
      * Returns the longitudinal distance per pixel of a given area
      * @param lowerRightLon lower right longitude of the given area
@@ -147,12 +186,12 @@ public class Rasterer {
                 MapServer.TILE_SIZE);
         while (currLonDpp > this.queryLonDpp) {
             level++;
-            if (level >= 7) {
+            if (level >= MapServer.MAX_DEPTH) {
                 this.blockLonDpp = getLonDpp(MapServer.ROOT_LRLON, MapServer.ROOT_ULLON,
-                        MapServer.TILE_SIZE, 7);
+                        MapServer.TILE_SIZE, MapServer.MAX_DEPTH);
                 this.blockLatDpp = getLatDpp(MapServer.ROOT_LRLAT, MapServer.ROOT_ULLAT,
-                        MapServer.TILE_SIZE, 7);
-                return 7;
+                        MapServer.TILE_SIZE, MapServer.MAX_DEPTH);
+                return MapServer.MAX_DEPTH;
             }
             currLonDpp = currLonDpp / 2;
             currLatDpp = currLatDpp / 2;
@@ -0,0 +1,236 @@
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded least-recently-used cache of routes, keyed by the pair of points on roads a
+ * route request snapped to, each a vertex id or a caller-encoded position on an edge.
+ * Each entry keeps the path as a long[] together with its precomputed navigation
+ * directions and drawable overlay. The cache is split into independently locked segments
+ * so concurrent requests rarely contend, and each segment evicts its least recently used
+ * entries once their estimated size exceeds its share of the byte budget.
+ */
+public class RouteCache {
+    /** Rough heap cost of an entry besides its path and directions. */
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+    /** Rough heap cost of one NavigationDirection besides its way name characters. */
+    private static final int DIRECTION_OVERHEAD_BYTES = 64;
+    /** Rough heap cost per vertex of an overlay's packed and simplified coordinates. */
+    private static final int OVERLAY_BYTES_PER_VERTEX = 32;
+
+    private final Segment[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * A cached route.
+     */
+    public static class Entry {
+        /** Vertex ids of the route, in order. Must not be modified. */
+        final long[] path;
+        /** Directions for the route; unmodifiable. */
+        final List<Router.NavigationDirection> directions;
+        /** Drawable form of the route. */
+        final RouteOverlay overlay;
+        /** Estimated heap cost of this entry in bytes. */
+        final long bytes;
+
+        Entry(long[] path, List<Router.NavigationDirection> directions,
+              RouteOverlay overlay) {
+            this.path = path;
+            this.directions = Collections.unmodifiableList(directions);
+            this.overlay = overlay;
+            long b = ENTRY_OVERHEAD_BYTES + 8L * path.length
+                    + (long) OVERLAY_BYTES_PER_VERTEX * overlay.size();
+            for (Router.NavigationDirection d : directions) {
+                b += DIRECTION_OVERHEAD_BYTES + 2L * d.way.length();
+            }
+            this.bytes = b;
+        }
+    }
+
+    private static class Key {
+        private final long start;
+        private final long dest;
+
+        Key(long start, long dest) {
+            this.start = start;
+            this.dest = dest;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return start == k.start && dest == k.dest;
+        }
+
+        @Override
+        public int hashCode() {
+            long h = start * 0x9E3779B97F4A7C15L + dest;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+
+    /**
+     * One independently locked LRU map.
+     */
+    private class Segment extends LinkedHashMap<Key, Entry> {
+        private static final long serialVersionUID = 1L;
+        private final long maxBytes;
+        private long bytes;
+
+        Segment(long maxBytes) {
+            super(16, 0.75f, true);
+            this.maxBytes = maxBytes;
+        }
+
+        synchronized Entry lookup(Key k) {
+            return get(k);
+        }
+
+        synchronized void store(Key k, Entry e) {
+            Entry old = put(k, e);
+            if (old != null) {
+                bytes -= old.bytes;
+            }
+            bytes += e.bytes;
+            Iterator<Map.Entry<Key, Entry>> it = entrySet().iterator();
+            while (bytes > maxBytes && it.hasNext()) {
+                Map.Entry<Key, Entry> eldest = it.next();
+                if (eldest.getValue() == e) {
+                    break;
+                }
+                bytes -= eldest.getValue().bytes;
+                it.remove();
+                evictions.increment();
+            }
+        }
+
+        synchronized void reset() {
+            clear();
+            bytes = 0;
+        }
+
+        synchronized long bytes() {
+            return bytes;
+        }
+
+        synchronized int entries() {
+            return size();
+        }
+    }
+
+    /**
+     * Creates a cache holding roughly at most maxBytes of routes.
+     * @param maxBytes byte budget across all segments
+     * @param numSegments number of independently locked segments
+     */
+    public RouteCache(long maxBytes, int numSegments) {
+        segments = new Segment[numSegments];
+        for (int i = 0; i < numSegments; i++) {
+            segments[i] = new Segment(maxBytes / numSegments);
+        }
+    }
+
+    /**
+     * Returns the cached route between two snapped points, or null on a miss.
+     * @param start key of the start point
+     * @param dest key of the destination point
+     * @return the cached entry or null
+     */
+    public Entry get(long start, long dest) {
+        Key k = new Key(start, dest);
+        Entry e = segmentFor(k).lookup(k);
+        if (e == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return e;
+    }
+
+    /**
+     * Caches a route between two snapped points, evicting older routes as needed.
+     * @param start key of the start point
+     * @param dest key of the destination point
+     * @param path vertex ids of the route
+     * @param directions navigation directions of the route
+     * @param overlay drawable form of the route
+     * @return the stored entry
+     */
+    public Entry put(long start, long dest, long[] path,
+                     List<Router.NavigationDirection> directions, RouteOverlay overlay) {
+        Key k = new Key(start, dest);
+        Entry e = new Entry(path, directions, overlay);
+        segmentFor(k).store(k, e);
+        return e;
+    }
+
+    /**
+     * Drops every cached route.
+     */
+    public void clear() {
+        for (Segment s : segments) {
+            s.reset();
+        }
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Returns the fraction of lookups that were hits, or 0 before the first lookup.
+     * @return the hit ratio
+     */
+    public double hitRatio() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * Returns the estimated heap cost of all cached routes.
+     * @return size in bytes
+     */
+    public long sizeBytes() {
+        long b = 0;
+        for (Segment s : segments) {
+            b += s.bytes();
+        }
+        return b;
+    }
+
+    /**
+     * Returns the number of cached routes.
+     * @return the number of entries
+     */
+    public int size() {
+        int n = 0;
+        for (Segment s : segments) {
+            n += s.entries();
+        }
+        return n;
+    }
+
+    private Segment segmentFor(Key k) {
+        int h = k.hashCode();
+        h ^= h >>> 16;
+        return segments[(h & 0x7fffffff) % segments.length];
+    }
+}
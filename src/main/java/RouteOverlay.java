@@ -0,0 +1,214 @@
+import java.awt.Graphics2D;
+import java.awt.geom.Path2D;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Drawable form of a route. The coordinates of the route's vertices are looked up once
+ * and packed into a single array; for each raster depth the polyline is simplified with
+ * Douglas-Peucker to within half a pixel of that depth the first time it is drawn there.
+ * Drawing clips the simplified polyline to the raster and strokes it as one Path2D.
+ */
+public class RouteOverlay {
+    /** Largest distance in pixels a simplified route may stray from the original. */
+    private static final double TOLERANCE_PX = 0.5;
+
+    /** Interleaved lon, lat of every vertex of the route. */
+    private final double[] coords;
+    /** Per-depth simplified copies of coords, filled in lazily. */
+    private final AtomicReferenceArray<double[]> simplified =
+            new AtomicReferenceArray<>(MapServer.MAX_DEPTH + 1);
+
+    /**
+     * Creates an overlay from packed coordinates.
+     * @param coords interleaved lon, lat of every vertex; kept, not copied
+     */
+    public RouteOverlay(double[] coords) {
+        this.coords = coords;
+    }
+
+    /**
+     * Looks up the coordinates of a route's vertices.
+     * @param g The graph the route was found in.
+     * @param route vertex ids of the route
+     * @return the overlay of the route
+     */
+    public static RouteOverlay of(GraphDB g, long[] route) {
+        double[] coords = new double[2 * route.length];
+        for (int i = 0; i < route.length; i++) {
+            coords[2 * i] = g.lon(route[i]);
+            coords[2 * i + 1] = g.lat(route[i]);
+        }
+        return new RouteOverlay(coords);
+    }
+
+    /**
+     * Returns the number of vertices in the route.
+     * @return the number of vertices
+     */
+    public int size() {
+        return coords.length / 2;
+    }
+
+    /**
+     * Returns the route simplified for a raster depth.
+     * @param depth raster depth, 0 through MapServer.MAX_DEPTH
+     * @return interleaved lon, lat of the kept vertices
+     */
+    double[] simplified(int depth) {
+        depth = Math.max(0, Math.min(MapServer.MAX_DEPTH, depth));
+        double[] s = simplified.get(depth);
+        if (s == null) {
+            double lonDpp = (MapServer.ROOT_LRLON - MapServer.ROOT_ULLON)
+                    / (MapServer.TILE_SIZE * (1 << depth));
+            double latDpp = (MapServer.ROOT_ULLAT - MapServer.ROOT_LRLAT)
+                    / (MapServer.TILE_SIZE * (1 << depth));
+            s = simplify(coords, lonDpp * TOLERANCE_PX, latDpp * TOLERANCE_PX);
+            simplified.compareAndSet(depth, null, s);
+        }
+        return s;
+    }
+
+    /**
+     * Draws the route onto a raster.
+     * @param g2d graphics of the raster, with stroke and colour already set
+     * @param depth raster depth, used to pick the simplification
+     * @param ullon upper left longitude of the raster
+     * @param ullat upper left latitude of the raster
+     * @param wdpp longitude per pixel of the raster
+     * @param hdpp latitude per pixel of the raster
+     * @param width raster width in pixels
+     * @param height raster height in pixels
+     * @param marginPx how far outside the raster a segment may lie and still be drawn,
+     *                 usually the stroke width
+     */
+    public void draw(Graphics2D g2d, int depth, double ullon, double ullat, double wdpp,
+                     double hdpp, int width, int height, double marginPx) {
+        Path2D.Float path = clippedPath(simplified(depth), ullon, ullat, wdpp, hdpp,
+                width, height, marginPx);
+        if (path != null) {
+            g2d.draw(path);
+        }
+    }
+
+    /**
+     * Projects a polyline into raster pixels, keeping only segments that may touch the
+     * raster. Segments wholly beyond one side of it are dropped, and the path is broken
+     * where they were.
+     * @return the path, or null if no segment touches the raster
+     */
+    static Path2D.Float clippedPath(double[] pts, double ullon, double ullat, double wdpp,
+                                    double hdpp, int width, int height, double marginPx) {
+        int n = pts.length / 2;
+        if (n < 2) {
+            return null;
+        }
+        double minX = -marginPx, minY = -marginPx;
+        double maxX = width + marginPx, maxY = height + marginPx;
+        Path2D.Float path = null;
+        boolean penDown = false;
+        double px = (pts[0] - ullon) / wdpp;
+        double py = (ullat - pts[1]) / hdpp;
+        int pcode = outcode(px, py, minX, minY, maxX, maxY);
+        for (int i = 1; i < n; i++) {
+            double x = (pts[2 * i] - ullon) / wdpp;
+            double y = (ullat - pts[2 * i + 1]) / hdpp;
+            int code = outcode(x, y, minX, minY, maxX, maxY);
+            if ((pcode & code) == 0) {
+                if (path == null) {
+                    path = new Path2D.Float(Path2D.WIND_NON_ZERO, 2 * (n - i + 1));
+                }
+                if (!penDown) {
+                    path.moveTo(px, py);
+                    penDown = true;
+                }
+                path.lineTo(x, y);
+            } else {
+                penDown = false;
+            }
+            px = x;
+            py = y;
+            pcode = code;
+        }
+        return path;
+    }
+
+    /** Cohen-Sutherland region code of a point relative to a rectangle. */
+    private static int outcode(double x, double y, double minX, double minY,
+                               double maxX, double maxY) {
+        int code = 0;
+        if (x < minX) {
+            code |= 1;
+        } else if (x > maxX) {
+            code |= 2;
+        }
+        if (y < minY) {
+            code |= 4;
+        } else if (y > maxY) {
+            code |= 8;
+        }
+        return code;
+    }
+
+    /**
+     * Douglas-Peucker simplification of an interleaved lon, lat polyline, measuring
+     * error in units of the given per-axis tolerances.
+     * @return the kept points, always including both ends
+     */
+    static double[] simplify(double[] pts, double lonTolerance, double latTolerance) {
+        int n = pts.length / 2;
+        if (n < 3) {
+            return pts;
+        }
+        boolean[] keep = new boolean[n];
+        keep[0] = true;
+        keep[n - 1] = true;
+        int[] stack = new int[2 * n];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = n - 1;
+        int kept = 2;
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+            double ax = pts[2 * first] / lonTolerance;
+            double ay = pts[2 * first + 1] / latTolerance;
+            double bx = pts[2 * last] / lonTolerance - ax;
+            double by = pts[2 * last + 1] / latTolerance - ay;
+            double len2 = bx * bx + by * by;
+            double worst = 1.0;
+            int worstIndex = -1;
+            for (int i = first + 1; i < last; i++) {
+                double px = pts[2 * i] / lonTolerance - ax;
+                double py = pts[2 * i + 1] / latTolerance - ay;
+                double d2;
+                if (len2 == 0) {
+                    d2 = px * px + py * py;
+                } else {
+                    double cross = px * by - py * bx;
+                    d2 = cross * cross / len2;
+                }
+                if (d2 > worst) {
+                    worst = d2;
+                    worstIndex = i;
+                }
+            }
+            if (worstIndex != -1) {
+                keep[worstIndex] = true;
+                kept++;
+                stack[top++] = first;
+                stack[top++] = worstIndex;
+                stack[top++] = worstIndex;
+                stack[top++] = last;
+            }
+        }
+        double[] out = new double[2 * kept];
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            if (keep[i]) {
+                out[k++] = pts[2 * i];
+                out[k++] = pts[2 * i + 1];
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,146 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds the current route of each client, keyed by a route token. Routes are stored as
+ * their RouteOverlay, whose packed coordinate arrays are shared with the route cache. A
+ * route expires once it has not been read or written for the time-to-live, and the
+ * number of routes is capped, so memory stays bounded no matter how many clients come
+ * and go. Expired routes are swept lazily by whichever request first notices the sweep
+ * interval has passed.
+ */
+public class RouteSessions {
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final long ttlMillis;
+    private final int maxSessions;
+    private final AtomicLong nextSweep;
+
+    /**
+     * One client's route and when it was last touched.
+     */
+    private static class Session {
+        private final RouteOverlay route;
+        private volatile long lastAccess;
+
+        Session(RouteOverlay route, long now) {
+            this.route = route;
+            this.lastAccess = now;
+        }
+    }
+
+    /**
+     * Creates an empty store.
+     * @param ttlMillis how long an untouched route is kept, in milliseconds
+     * @param maxSessions maximum number of routes kept at once
+     */
+    public RouteSessions(long ttlMillis, int maxSessions) {
+        this.ttlMillis = ttlMillis;
+        this.maxSessions = maxSessions;
+        this.nextSweep = new AtomicLong(System.currentTimeMillis() + ttlMillis);
+    }
+
+    /**
+     * Returns the route of a client, or null if it has none or it expired.
+     * @param token the client's route token
+     * @return the client's route
+     */
+    public RouteOverlay get(String token) {
+        return get(token, System.currentTimeMillis());
+    }
+
+    RouteOverlay get(String token, long now) {
+        if (token == null) {
+            return null;
+        }
+        Session s = sessions.get(token);
+        if (s == null) {
+            return null;
+        }
+        if (now - s.lastAccess > ttlMillis) {
+            sessions.remove(token, s);
+            return null;
+        }
+        s.lastAccess = now;
+        return s.route;
+    }
+
+    /**
+     * Sets the route of a client, replacing any previous one.
+     * @param token the client's route token
+     * @param route the client's new route
+     */
+    public void put(String token, RouteOverlay route) {
+        put(token, route, System.currentTimeMillis());
+    }
+
+    void put(String token, RouteOverlay route, long now) {
+        sessions.put(token, new Session(route, now));
+        long sweepAt = nextSweep.get();
+        if (now >= sweepAt && nextSweep.compareAndSet(sweepAt, now + ttlMillis)) {
+            sweep(now);
+        }
+        if (sessions.size() > maxSessions) {
+            evictOldest(sessions.size() - maxSessions);
+        }
+    }
+
+    /**
+     * Removes the route of a client.
+     * @param token the client's route token
+     */
+    public void remove(String token) {
+        if (token != null) {
+            sessions.remove(token);
+        }
+    }
+
+    /**
+     * Returns the number of routes currently held, including expired ones not yet swept.
+     * @return the number of routes
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Drops every route that has not been touched within the time-to-live.
+     * @param now current time in milliseconds
+     */
+    void sweep(long now) {
+        Iterator<Map.Entry<String, Session>> it = sessions.entrySet().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().getValue().lastAccess > ttlMillis) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Drops at least the n least recently touched routes, plus a tenth of the cap so
+     * that the next eviction is many puts away. Only reached when more clients than
+     * maxSessions were active within one time-to-live.
+     */
+    private synchronized void evictOldest(int n) {
+        if (sessions.size() <= maxSessions) {
+            return;
+        }
+        long[] accesses = new long[sessions.size()];
+        int count = 0;
+        for (Session s : sessions.values()) {
+            if (count == accesses.length) {
+                break;
+            }
+            accesses[count++] = s.lastAccess;
+        }
+        Arrays.sort(accesses, 0, count);
+        int drop = Math.min(count, n + maxSessions / 10);
+        if (drop == 0) {
+            return;
+        }
+        long cutoff = accesses[drop - 1];
+        sessions.values().removeIf(s -> s.lastAccess <= cutoff);
+    }
+}
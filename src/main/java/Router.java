@@ -1,9 +1,8 @@
-import java.util.PriorityQueue;
-import java.util.HashSet;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
-import java.util.Stack;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -16,41 +15,124 @@ import java.util.regex.Pattern;
  * down to the priority you use to order your vertices.
  */
 public class Router {
-    private static PriorityQueue<SearchNode> fringe;
-    private static HashSet<Long> visited;
-    private static SearchNode goalNode;
 
+    /* How a search slot was reached, where not by a contracted edge: the start itself,
+     * the start's chain towards its source or its target, the destination straight
+     * along the chain it shares with the start, or the destination from the source or
+     * target of its own chain. */
+    private static final int FROM_START = -1, START_TO_SOURCE = -2, START_TO_TARGET = -3,
+            DIRECT = -4, DEST_FROM_SOURCE = -5, DEST_FROM_TARGET = -6;
 
-    private static class SearchNode implements Comparable<SearchNode> {
-        private Long nodeId;
-        private double backwardCost;
-        private double forwardCost;
-        private SearchNode prev;
+    private static final ThreadLocal<SearchState> STATE = new ThreadLocal<>();
 
-        private SearchNode(Long init, double num, double heur, SearchNode pre) {
-            this.nodeId = init;
-            this.backwardCost = num;
-            this.forwardCost = heur;
-            this.prev = pre;
+    /**
+     * Reusable search arrays for one contracted graph: one slot per junction, and one
+     * more for a destination partway along a chain. They are reset in time proportional
+     * to the previous search, so repeated queries allocate only their result.
+     */
+    private static class SearchState {
+        private final ContractedGraph c;
+        private final IndexMinPQ fringe;
+        private final double[] distTo;
+        /** Contracted edge each slot was reached by, or one of the codes above. */
+        private final int[] edgeTo;
+        private final boolean[] settled;
+        private final int[] touched;
+        /** Targets of the junction being settled, decoded from the contracted graph. */
+        private final int[] targets;
+        private int touchedCount;
+
+        private SearchState(ContractedGraph c) {
+            int n = c.junctionCount() + 1;
+            this.c = c;
+            targets = new int[c.maxDegree()];
+            fringe = new IndexMinPQ(n);
+            distTo = new double[n];
+            edgeTo = new int[n];
+            settled = new boolean[n];
+            touched = new int[n];
+            Arrays.fill(distTo, Double.POSITIVE_INFINITY);
         }
 
-        @Override
-        public int compareTo(SearchNode n) {
-            double thisPriority = this.backwardCost + this.forwardCost;
-            double thatPriority = n.backwardCost + n.forwardCost;
-            if (thisPriority > thatPriority) {
-                return 1;
+        private void reset() {
+            fringe.clear();
+            for (int k = 0; k < touchedCount; k++) {
+                distTo[touched[k]] = Double.POSITIVE_INFINITY;
+                settled[touched[k]] = false;
             }
-            if (thisPriority < thatPriority) {
-                return -1;
+            touchedCount = 0;
+        }
+
+        /**
+         * Lowers the distance of slot j to dist if that is shorter.
+         * @return whether it was
+         */
+        private boolean relax(int j, double dist, int how, double priority) {
+            if (dist >= distTo[j]) {
+                return false;
             }
-            return 0;
+            if (distTo[j] == Double.POSITIVE_INFINITY) {
+                touched[touchedCount++] = j;
+            }
+            distTo[j] = dist;
+            edgeTo[j] = how;
+            fringe.push(j, priority);
+            return true;
         }
+    }
 
+    /**
+     * Effort spent answering one routing query. The counts are always kept, since they
+     * are just local increments; the timings are only taken when asked for.
+     */
+    public static class SearchStats {
+        /** Vertices of the contracted graph taken off the fringe. */
+        public int settled;
+        /** Edges to unsettled vertices examined. */
+        public int relaxed;
+        /** Vertices added to the fringe or moved up it by a shorter distance. */
+        public int pushes;
+        /** Entries taken off the fringe. */
+        public int pops;
+        /** Largest number of entries on the fringe at once. */
+        public int maxFringe;
+        /** Nanoseconds spent snapping the endpoints to vertices. */
+        public long snapNanos;
+        /** Nanoseconds spent searching. */
+        public long searchNanos;
+        /** Nanoseconds spent rebuilding the path from the search tree. */
+        public long pathNanos;
+
+        @Override
         public String toString() {
-            return "[" + this.nodeId + "]";
+            return String.format("settled=%d relaxed=%d pushes=%d pops=%d maxFringe=%d "
+                    + "snap=%dns search=%dns path=%dns", settled, relaxed, pushes, pops,
+                    maxFringe, snapNanos, searchNanos, pathNanos);
         }
+    }
 
+    /**
+     * A route together with the effort it took to find.
+     */
+    public static class RouteResult {
+        /** Vertex ids of the route, empty if there is none. */
+        public final List<Long> path;
+        /** Whether there is a route; between two points on one edge it passes no vertex. */
+        public final boolean found;
+        /**
+         * Length of the route in miles, each road's scaled by its live weight, so longer
+         * than the distance travelled where roads are slowed; infinite if there is none.
+         */
+        public final double length;
+        /** Effort of the search, or null if statistics were not collected. */
+        public final SearchStats stats;
+
+        RouteResult(List<Long> path, boolean found, double length, SearchStats stats) {
+            this.path = path;
+            this.found = found;
+            this.length = length;
+            this.stats = stats;
+        }
     }
 
     /**
@@ -66,80 +148,472 @@ public class Router {
      */
     public static List<Long> shortestPath(GraphDB g, double stlon, double stlat,
                                           double destlon, double destlat) {
-        visited = new HashSet<>();
-        fringe = new PriorityQueue<>();
-        long startNodeId = g.closest(stlon, stlat);
-        long destNodeId = g.closest(destlon, destlat);
-        SearchNode startNode = new SearchNode(startNodeId,
-                0.0, g.getForwardCost(startNodeId, destNodeId), null);
-
-        fringe.add(startNode);
-
-        while (!fringe.isEmpty()) {
-            SearchNode currNode = fringe.poll();
-            visited.add(currNode.nodeId);
-
-            if (isDestination(currNode.nodeId, destNodeId)) {
-                goalNode = currNode;
-                return solutionList();
-            }
-            for (Long nodeId: g.adjacent(currNode.nodeId)) {
-                if (!visited.contains(nodeId)) {
-                    double currCost = currNode.backwardCost + g.distance(nodeId, currNode.nodeId);
-                    g.setCurrCost(nodeId, currCost);
-                    double heur = g.getForwardCost(nodeId, destNodeId);
-                    SearchNode succNode = new SearchNode(nodeId, currCost, heur, currNode);
-                    fringe.add(succNode);
-                }
-            }
+        return route(g, stlon, stlat, destlon, destlat, false).path;
+    }
+
+    /**
+     * Finds the shortest path between the vertices closest to two locations.
+     * @param g The graph to use.
+     * @param stlon The longitude of the start location.
+     * @param stlat The latitude of the start location.
+     * @param destlon The longitude of the destination location.
+     * @param destlat The latitude of the destination location.
+     * @param collectStats whether to return the effort of the search
+     * @return the path, with its search statistics if collectStats is set
+     */
+    public static RouteResult route(GraphDB g, double stlon, double stlat,
+                                    double destlon, double destlat, boolean collectStats) {
+        return route(g, stlon, stlat, destlon, destlat, Profile.DRIVE, collectStats);
+    }
+
+    /**
+     * Finds the shortest path for a profile between the vertices closest to two
+     * locations that the profile may use.
+     * @param g The graph to use, read with profile.
+     * @param stlon The longitude of the start location.
+     * @param stlat The latitude of the start location.
+     * @param destlon The longitude of the destination location.
+     * @param destlat The latitude of the destination location.
+     * @param profile the way of travelling; only edges it may use are followed
+     * @param collectStats whether to return the effort of the search
+     * @return the path, with its search statistics if collectStats is set
+     */
+    public static RouteResult route(GraphDB g, double stlon, double stlat, double destlon,
+                                    double destlat, Profile profile, boolean collectStats) {
+        long snapStart = collectStats ? System.nanoTime() : 0;
+        long startNodeId = g.closest(stlon, stlat, false, profile);
+        long destNodeId = g.closest(destlon, destlat, false, profile);
+        long snapNanos = collectStats ? System.nanoTime() - snapStart : 0;
+        RouteResult result = route(g.searchGraph(), startNodeId, destNodeId, profile,
+                collectStats);
+        if (collectStats) {
+            result.stats.snapNanos = snapNanos;
         }
-        return new ArrayList<>();
+        return result;
     }
 
     /**
-     * Returns the solution in an ArrayList
-     * @return an ArrayList containing a list
+     * Return a List of longs representing the shortest path between two vertices.
+     * @param g The graph to use.
+     * @param startNodeId The id of the start vertex.
+     * @param destNodeId The id of the destination vertex.
+     * @return A list of node id's in the order visited on the shortest path.
      */
-    private static ArrayList<Long> solutionList() {
-        ArrayList<Long> path = new ArrayList<>();
-        Stack<Long> solIterable = solutionStack();
-        for (int i = solIterable.size() - 1; i >= 0; i--) {
-            path.add(solIterable.get(i));
+    public static List<Long> shortestPath(GraphDB g, long startNodeId, long destNodeId) {
+        return route(g, startNodeId, destNodeId, false).path;
+    }
+
+    /**
+     * Finds the shortest path for driving between two vertices with A*.
+     * @param g The graph to use.
+     * @param startNodeId The id of the start vertex.
+     * @param destNodeId The id of the destination vertex.
+     * @param collectStats whether to return the effort of the search
+     * @return the path, with its search statistics if collectStats is set
+     */
+    public static RouteResult route(GraphDB g, long startNodeId, long destNodeId,
+                                    boolean collectStats) {
+        return route(g.searchGraph(), startNodeId, destNodeId, collectStats);
+    }
+
+    /**
+     * Finds the shortest path between two points on roads, such as GraphDB.snap returns,
+     * either of which may lie partway along an edge. The route starts and ends on those
+     * partial edges rather than going out of its way to a vertex first.
+     * @param g The graph to use.
+     * @param start the snapped start
+     * @param dest the snapped destination
+     * @param collectStats whether to return the effort of the search
+     * @return the vertices passed between the two points, with its search statistics if
+     * collectStats is set; found says whether there is a route, since two points on one
+     * edge pass no vertex
+     */
+    public static RouteResult route(GraphDB g, SegmentIndex.Snap start, SegmentIndex.Snap dest,
+                                    boolean collectStats) {
+        return route(g, start, dest, Profile.DRIVE, g.weights(), Double.POSITIVE_INFINITY,
+                collectStats);
+    }
+
+    /**
+     * Finds the shortest path for a profile between two points on edges it may use,
+     * such as GraphDB.snap returns for it.
+     * @param g The graph to use, read with profile.
+     * @param start the snapped start
+     * @param dest the snapped destination
+     * @param profile the way of travelling; only edges it may use are followed
+     * @param collectStats whether to return the effort of the search
+     * @return the route, not found if either point is on an edge profile may not use
+     */
+    public static RouteResult route(GraphDB g, SegmentIndex.Snap start, SegmentIndex.Snap dest,
+                                    Profile profile, boolean collectStats) {
+        return route(g, start, dest, profile, g.weights(), Double.POSITIVE_INFINITY,
+                collectStats);
+    }
+
+    /**
+     * Finds the shortest path between two points on roads if it is no longer than a
+     * limit. The search gives up as soon as every route left to try would be longer, so
+     * a tight limit keeps the search near the two points.
+     * @param g The graph to use.
+     * @param start the snapped start
+     * @param dest the snapped destination
+     * @param profile the way of travelling; only edges it may use are followed
+     * @param weights the live weights to use, or EdgeWeights.NONE for plain lengths
+     * @param maxMiles the longest route wanted
+     * @param collectStats whether to return the effort of the search
+     * @return the route, not found if it would be longer than maxMiles
+     */
+    static RouteResult route(GraphDB g, SegmentIndex.Snap start, SegmentIndex.Snap dest,
+                             Profile profile, EdgeWeights weights, double maxMiles,
+                             boolean collectStats) {
+        long searchStart = collectStats ? System.nanoTime() : 0;
+        ContractedGraph c = g.searchGraph();
+        return search(c, Place.on(c, start), Place.on(c, dest), profile.bit(), weights,
+                maxMiles, collectStats, searchStart);
+    }
+
+    /**
+     * Finds the shortest path between two vertices with A* over a contracted graph,
+     * settling only junctions. A start or destination partway along a chain joins the
+     * search through the junctions at either end of its chain. Vertices in different
+     * connected components are answered with no path at once.
+     * @param c The contracted graph to search.
+     * @param startNodeId The id of the start vertex.
+     * @param destNodeId The id of the destination vertex.
+     * @param collectStats whether to return the effort of the search
+     * @return the path through every vertex of the full graph, with its search
+     * statistics if collectStats is set
+     */
+    static RouteResult route(ContractedGraph c, long startNodeId, long destNodeId,
+                             boolean collectStats) {
+        return route(c, startNodeId, destNodeId, Profile.DRIVE, collectStats);
+    }
+
+    /**
+     * Finds the shortest path for a profile between two vertices over a contracted
+     * graph, following only the edges the profile may use.
+     */
+    static RouteResult route(ContractedGraph c, long startNodeId, long destNodeId,
+                             Profile profile, boolean collectStats) {
+        long searchStart = collectStats ? System.nanoTime() : 0;
+        GraphDB g = c.graph();
+        int s = g.indexOf(startNodeId);
+        int t = g.indexOf(destNodeId);
+        if (s < 0 || t < 0) {
+            return noRoute(collectStats, searchStart);
         }
-        return path;
+        return search(c, Place.at(c, s), Place.at(c, t), profile.bit(), g.weights(),
+                Double.POSITIVE_INFINITY, collectStats, searchStart);
     }
 
+    /**
+     * Returns part of a road's length scaled by its factor; none of a closed road is
+     * still none, where the plain product would not be a number.
+     */
+    private static double weighted(double miles, double factor) {
+        return miles == 0 ? 0 : miles * factor;
+    }
+
+    private static RouteResult noRoute(boolean collectStats, long searchStart) {
+        SearchStats stats = null;
+        if (collectStats) {
+            stats = new SearchStats();
+            stats.searchNanos = System.nanoTime() - searchStart;
+        }
+        return new RouteResult(new ArrayList<>(), false, Double.POSITIVE_INFINITY, stats);
+    }
 
     /**
-     * returns the solution in a stack (reversed order)
-     * @return a Stack<Long>
+     * Where a route starts or ends in a contracted graph: at a junction, or partway along
+     * a chain, either at a shape point or between two vertices of the full graph.
      */
-    private static Stack<Long> solutionStack() {
-        if (goalNode != null) {
-            Stack<Long> sol = new Stack<>();
-            sol.push(goalNode.nodeId);
-            SearchNode temp = goalNode;
-            while (temp.prev != null) {
-                sol.push(temp.prev.nodeId);
-                temp = temp.prev;
+    private static class Place {
+        /** Junction number, or -1 if the place lies partway along chain. */
+        private final int junction;
+        /** Contracted edge the place lies on, if it is not a junction. */
+        private final int chain;
+        /** Distance in miles along chain from its source. */
+        private final double offset;
+        /** A vertex of the full graph at or beside the place, for its component. */
+        private final int vertex;
+        private final double lon, lat;
+
+        private Place(int junction, int chain, double offset, int vertex, double lon,
+                      double lat) {
+            this.junction = junction;
+            this.chain = chain;
+            this.offset = offset;
+            this.vertex = vertex;
+            this.lon = lon;
+            this.lat = lat;
+        }
+
+        /** The place of dense vertex v. */
+        private static Place at(ContractedGraph c, int v) {
+            GraphDB g = c.graph();
+            int j = c.junctionOf(v);
+            if (j >= 0) {
+                return new Place(j, -1, 0, v, g.lonAt(v), g.latAt(v));
+            }
+            return new Place(-1, c.chainOf(v), c.chainOffset(v), v, g.lonAt(v), g.latAt(v));
+        }
+
+        /**
+         * The place of a point on an edge. Every edge of the full graph lies on one
+         * contracted edge, and the place is measured along the one a shape point end
+         * records, or else along the edge between the two junctions, so that two points
+         * on the same road always share a chain.
+         */
+        private static Place on(ContractedGraph c, SegmentIndex.Snap snap) {
+            if (snap.vertex() >= 0) {
+                return at(c, snap.vertex());
             }
-            return sol;
+            GraphDB g = c.graph();
+            int a = snap.from, b = snap.to;
+            double length = g.edgeLength(snap.edge);
+            if (c.junctionOf(a) < 0 || c.junctionOf(b) < 0) {
+                boolean swap = c.junctionOf(a) >= 0;
+                int p = swap ? b : a, q = swap ? a : b;
+                double fromP = swap ? length - snap.offset : snap.offset;
+                int chain = c.chainOf(p);
+                /* q comes before p on the chain if it is an earlier shape point, or the
+                 * source junction of a chain p is first on. */
+                boolean qFirst = c.junctionOf(q) < 0 ? c.chainPos(q) < c.chainPos(p)
+                        : c.chainPos(p) == c.viaStart(chain)
+                        && c.vertexOf(c.edgeSource(chain)) == q;
+                double offset = c.chainOffset(p) + (qFirst ? -fromP : fromP);
+                return new Place(-1, chain, offset, a, snap.lon, snap.lat);
+            }
+            int ja = c.junctionOf(a), jb = c.junctionOf(b);
+            int from = Math.min(ja, jb), to = Math.max(ja, jb);
+            int[] targets = new int[c.maxDegree()];
+            int degree = c.targets(from, targets);
+            for (int i = 0; i < degree; i++) {
+                int e = c.edgeStart(from) + i;
+                if (targets[i] == to && c.viaStart(e) == c.viaStart(e + 1)
+                        && c.edgeLength(e) == length) {
+                    double offset = from == ja ? snap.offset : length - snap.offset;
+                    return new Place(-1, e, offset, a, snap.lon, snap.lat);
+                }
+            }
+            return at(c, snap.fraction < 0.5 ? a : b);
+        }
+    }
+
+    /**
+     * Searches the contracted graph from one place to another.
+     * @param access the bit of the profile searched for; edges without it are skipped
+     * @param w the version of the live weights to search with throughout
+     * @param maxMiles the longest route wanted
+     * @param searchStart when the query began, if statistics are collected
+     */
+    private static RouteResult search(ContractedGraph c, Place s, Place t, int access,
+                                      EdgeWeights w, double maxMiles, boolean collectStats,
+                                      long searchStart) {
+        GraphDB g = c.graph();
+        if (g.componentOf(s.vertex) != g.componentOf(t.vertex)) {
+            /* No route leaves a connected component; don't search it all to find that. */
+            return noRoute(collectStats, searchStart);
+        }
+        if (s.junction < 0 && (c.edgeAccess(s.chain) & access) == 0
+                || t.junction < 0 && (c.edgeAccess(t.chain) & access) == 0) {
+            /* Partway along an edge the profile may not use; it cannot get on or off. */
+            return noRoute(collectStats, searchStart);
+        }
+        /* The search state is per thread, so routes may be searched on many threads. */
+        SearchState state = stateFor(c);
+        state.reset();
+        double destLon = t.lon, destLat = t.lat;
+        int relaxed = 0, pushes = 0, pops = 0, maxFringe = 0;
+
+        int destChain = -1, destSource = -1, destTarget = -1;
+        double toDestFromSource = 0, toDestFromTarget = 0;
+        int goal = t.junction;
+        if (goal < 0) {
+            goal = c.junctionCount();
+            destChain = t.chain;
+            destSource = c.edgeSource(destChain);
+            destTarget = c.edgeTarget(destChain);
+            toDestFromSource = weighted(t.offset, w.factor(destChain));
+            toDestFromTarget = weighted(c.edgeLength(destChain) - t.offset,
+                    w.factor(destChain));
+        }
+
+        if (s.junction >= 0) {
+            state.relax(s.junction, 0, FROM_START, heuristic(c, s.junction, destLon, destLat));
+            pushes++;
+        } else {
+            int chain = s.chain;
+            double factor = w.factor(chain);
+            double back = weighted(s.offset, factor);
+            double ahead = weighted(c.edgeLength(chain) - s.offset, factor);
+            int a = c.edgeSource(chain), b = c.edgeTarget(chain);
+            pushes += state.relax(a, back, START_TO_SOURCE,
+                    back + heuristic(c, a, destLon, destLat)) ? 1 : 0;
+            pushes += state.relax(b, ahead, START_TO_TARGET,
+                    ahead + heuristic(c, b, destLon, destLat)) ? 1 : 0;
+            if (chain == destChain) {
+                double direct = weighted(Math.abs(s.offset - t.offset), factor);
+                pushes += state.relax(goal, direct, DIRECT, direct) ? 1 : 0;
+            }
+        }
+
+        while (!state.fringe.isEmpty()) {
+            if (state.fringe.minPriority() > maxMiles) {
+                /* No route through what is left of the fringe is short enough. */
+                break;
+            }
+            int j = state.fringe.pop();
+            pops++;
+            state.settled[j] = true;
+            if (j == goal) {
+                break;
+            }
+            double dj = state.distTo[j];
+            if (j == destSource) {
+                relaxed++;
+                double d = dj + toDestFromSource;
+                pushes += state.relax(goal, d, DEST_FROM_SOURCE, d) ? 1 : 0;
+            }
+            if (j == destTarget) {
+                relaxed++;
+                double d = dj + toDestFromTarget;
+                pushes += state.relax(goal, d, DEST_FROM_TARGET, d) ? 1 : 0;
+            }
+            int degree = c.targets(j, state.targets);
+            for (int i = 0; i < degree; i++) {
+                int k = state.targets[i];
+                int e = c.edgeStart(j) + i;
+                if (state.settled[k] || (c.edgeAccess(e) & access) == 0) {
+                    continue;
+                }
+                relaxed++;
+                double dk = dj + c.edgeLength(e) * w.factor(e);
+                if (dk < state.distTo[k]) {
+                    state.relax(k, dk, e, dk + heuristic(c, k, destLon, destLat));
+                    pushes++;
+                }
+            }
+            maxFringe = Math.max(maxFringe, state.fringe.size());
+        }
+
+        boolean found = state.settled[goal];
+        double length = found ? state.distTo[goal] : Double.POSITIVE_INFINITY;
+        if (!collectStats) {
+            return new RouteResult(found ? pathTo(c, state, goal, s, t) : new ArrayList<>(),
+                    found, length, null);
         }
-        return new Stack<>();
+        SearchStats stats = new SearchStats();
+        long pathStart = System.nanoTime();
+        stats.searchNanos = pathStart - searchStart;
+        List<Long> path = found ? pathTo(c, state, goal, s, t) : new ArrayList<>();
+        stats.pathNanos = System.nanoTime() - pathStart;
+        stats.settled = pops;
+        stats.relaxed = relaxed;
+        stats.pushes = pushes;
+        stats.pops = pops;
+        stats.maxFringe = maxFringe;
+        return new RouteResult(path, found, length, stats);
     }
 
     /**
-     * Returns whether given node is already destination
-     * @param sNode test node
-     * @param dNode destination node
-     * @return true if it's destination
-     * false if not
+     * Returns the straight-line distance from junction j to the destination, which no
+     * route is shorter than.
      */
-    private static boolean isDestination(long sNode, long dNode) {
-        return sNode == dNode;
+    private static double heuristic(ContractedGraph c, int j, double destLon, double destLat) {
+        GraphDB g = c.graph();
+        int v = c.vertexOf(j);
+        return GraphDB.distance(g.lonAt(v), g.latAt(v), destLon, destLat);
     }
 
+    private static SearchState stateFor(ContractedGraph c) {
+        SearchState state = STATE.get();
+        if (state == null || state.c != c) {
+            state = new SearchState(c);
+            STATE.set(state);
+        }
+        return state;
+    }
 
+    /**
+     * Rebuilds the route found to the goal slot, expanding each contracted edge and
+     * the partial chains at either end into the vertices they pass. A shape point at
+     * the start or destination itself counts as passed.
+     * @param s the start
+     * @param t the destination
+     * @return the ids of every vertex on the route, in order
+     */
+    private static List<Long> pathTo(ContractedGraph c, SearchState state, int goal,
+                                     Place s, Place t) {
+        GraphDB g = c.graph();
+        /* Built backwards, from t to s. */
+        ArrayList<Long> path = new ArrayList<>();
+        int j = goal;
+        if (goal == c.junctionCount()) {
+            int chain = t.chain;
+            int first = c.viaStart(chain), last = c.viaStart(chain + 1) - 1;
+            int how = state.edgeTo[goal];
+            if (how == DIRECT) {
+                double lo = Math.min(s.offset, t.offset), hi = Math.max(s.offset, t.offset);
+                boolean forward = t.offset >= s.offset;
+                for (int k = forward ? last : first; k >= first && k <= last;
+                     k += forward ? -1 : 1) {
+                    double offset = c.chainOffset(c.viaAt(k));
+                    if (offset >= lo && offset <= hi) {
+                        path.add(g.idAt(c.viaAt(k)));
+                    }
+                }
+                Collections.reverse(path);
+                return path;
+            }
+            if (how == DEST_FROM_SOURCE) {
+                for (int k = last; k >= first; k--) {
+                    if (c.chainOffset(c.viaAt(k)) <= t.offset) {
+                        path.add(g.idAt(c.viaAt(k)));
+                    }
+                }
+                j = c.edgeSource(chain);
+            } else {
+                for (int k = first; k <= last; k++) {
+                    if (c.chainOffset(c.viaAt(k)) >= t.offset) {
+                        path.add(g.idAt(c.viaAt(k)));
+                    }
+                }
+                j = c.edgeTarget(chain);
+            }
+        }
+        while (true) {
+            path.add(g.idAt(c.vertexOf(j)));
+            int how = state.edgeTo[j];
+            if (how >= 0) {
+                for (int k = c.viaStart(how + 1) - 1; k >= c.viaStart(how); k--) {
+                    path.add(g.idAt(c.viaAt(k)));
+                }
+                j = c.edgeSource(how);
+                continue;
+            }
+            if (how != FROM_START) {
+                int chain = s.chain;
+                int first = c.viaStart(chain), last = c.viaStart(chain + 1) - 1;
+                if (how == START_TO_SOURCE) {
+                    for (int k = first; k <= last; k++) {
+                        if (c.chainOffset(c.viaAt(k)) <= s.offset) {
+                            path.add(g.idAt(c.viaAt(k)));
+                        }
+                    }
+                } else {
+                    for (int k = last; k >= first; k--) {
+                        if (c.chainOffset(c.viaAt(k)) >= s.offset) {
+                            path.add(g.idAt(c.viaAt(k)));
+                        }
+                    }
+                }
+            }
+            break;
+        }
+        Collections.reverse(path);
+        return path;
+    }
 
     /**
      * Create the list of directions corresponding to a route on the graph.
@@ -152,41 +626,38 @@ public class Router {
     public static List<NavigationDirection> routeDirections(GraphDB g, List<Long> route) {
 
         ArrayList<NavigationDirection> naviDirections = new ArrayList<>();
+        WayTable ways = g.ways();
 
         //Initiate initial nodes
         long prevNodeId = route.get(0);
+        int prevIndex = g.indexOf(prevNodeId);
 
-        String prevStreetName = g.getNodeName(prevNodeId);
-        String startStreetName = prevStreetName;
+        /* Streets are compared by interned name id, so a vertex where two ways of the same
+         * name meet does not start a new direction. */
+        int prevName = route.size() > 1
+                ? stepName(g, prevIndex, g.indexOf(route.get(1)), -1) : WayTable.NO_NAME;
+        int startName = prevName;
         NavigationDirection currNav = new NavigationDirection();
         double currDis = 0;
-        setStreetNameInfo(prevStreetName, currNav);
+        setStreetNameInfo(streetName(ways, prevName), currNav);
 
         // Process preceding nodes
         for (int i = 1; i < route.size(); i++) {
             long currNodeId = route.get(i);
-            currDis += g.distance(currNodeId, prevNodeId);
-
-            String currStreetName = g.getNodeName(currNodeId);
-            if (g.containsStreetName(currNodeId, prevStreetName)
-                    && !prevStreetName.equals("")) {
-                currStreetName = prevStreetName;
-            }
-
-            if (currStreetName.equals("")) {
-                currStreetName = NavigationDirection.UNKNOWN_ROAD;
-            }
-
+            int currIndex = g.indexOf(currNodeId);
+            int e = g.edgeBetween(prevIndex, currIndex, prevName);
+            currDis += e < 0 ? g.distance(currNodeId, prevNodeId) : g.edgeLength(e);
+            int currName = e < 0 ? WayTable.NO_NAME : ways.nameId(g.edgeWay(e));
 
             // Create new NavigationDirection instance when there is
             // a street name change
-            if (!currStreetName.equals(prevStreetName)) {
+            if (currName != prevName) {
 
                 setDistanceInfo(currDis, currNav);
 
                 // Calculate direction
                 int direction = getDirection(g, prevNodeId, currNodeId);
-                if (startStreetName.equals(prevStreetName)) {
+                if (startName == prevName) {
                     direction = 0;
                 }
                 setDirectionInfo(direction, currNav);
@@ -198,10 +669,11 @@ public class Router {
                 // Create new NavigationDIrection instance, begin
                 // a new round of data collection
                 currNav = new NavigationDirection();
-                setStreetNameInfo(currStreetName, currNav);
-                prevStreetName = currStreetName;
+                setStreetNameInfo(streetName(ways, currName), currNav);
+                prevName = currName;
             }
             prevNodeId = currNodeId;
+            prevIndex = currIndex;
         }
 
         long currNodeId = route.get(route.size() - 1);
@@ -212,6 +684,30 @@ public class Router {
         return naviDirections;
     }
 
+    /**
+     * Returns the name id of the way taken from vertex v to vertex w
+     * @param g GraphDB instance
+     * @param v dense index of the vertex left
+     * @param w dense index of the vertex reached
+     * @param prefer name id to prefer where several ways join v and w
+     * @return a name id, NO_NAME if no edge joins them
+     */
+    private static int stepName(GraphDB g, int v, int w, int prefer) {
+        int e = g.edgeBetween(v, w, prefer);
+        return e < 0 ? WayTable.NO_NAME : g.ways().nameId(g.edgeWay(e));
+    }
+
+    /**
+     * Returns the street name to show for a name id
+     * @param ways the way table
+     * @param nameId a name id
+     * @return the name, or UNKNOWN_ROAD for a way without one
+     */
+    private static String streetName(WayTable ways, int nameId) {
+        return nameId == WayTable.NO_NAME ? NavigationDirection.UNKNOWN_ROAD
+                : ways.nameOf(nameId);
+    }
+
     /**
      * Sets street name information to the NavigationDirection instance
      * @param streetName street name to be changes
@@ -0,0 +1,397 @@
+import java.util.Arrays;
+
+/**
+ * Static R-tree over the road segments of a graph, for snapping a point onto the nearest
+ * road rather than the nearest vertex: on a long straight road the nearest vertex can be
+ * hundreds of metres away from a point right beside it. Each undirected edge is one
+ * segment. The tree is packed bottom-up with Sort-Tile-Recursive: segments are sorted by
+ * the x of their centre into vertical slices of about sqrt(leaves) leaves each, each
+ * slice is sorted by y, and runs of FANOUT segments become the leaves; runs of FANOUT
+ * nodes then become each level above. Nodes keep only their bounding boxes, in one
+ * array; leaf entries are edges of the graph, whose ends give their boxes.
+ *
+ * Distances are compared in a plane where x is longitude scaled by the cosine of the
+ * middle latitude and y is latitude, which is accurate to well under a metre across a
+ * city.
+ */
+public class SegmentIndex {
+    /** Entries per node. */
+    private static final int FANOUT = 16;
+
+    private final GraphDB g;
+    private final double cosLat;
+    /* The segments in packed order: edge segEdge[i] of graph vertex segFrom[i]. */
+    private final int[] segFrom;
+    private final int[] segEdge;
+    private final int[] segTo;
+    /* Boxes of all nodes as minX, minY, maxX, maxY; level L has levelCount[L] nodes
+     * starting at node levelStart[L]. Level 0 are the leaves; the last is the root. */
+    private final double[] boxes;
+    private final int[] levelStart;
+    private final int[] levelCount;
+
+    /**
+     * A point on a road segment.
+     */
+    public static class Snap {
+        /** Dense index of the vertex the edge starts from. */
+        public final int from;
+        /** Dense index of the vertex the edge leads to. */
+        public final int to;
+        /** Graph edge from "from" to "to". */
+        public final int edge;
+        /** Position along the edge, 0 at from and 1 at to. */
+        public final double fraction;
+        /** Distance along the edge from "from" in miles. */
+        public final double offset;
+        /** Longitude of the point. */
+        public final double lon;
+        /** Latitude of the point. */
+        public final double lat;
+        /** Distance in miles from the query point to this point. */
+        public final double distance;
+
+        Snap(int from, int to, int edge, double fraction, double offset, double lon,
+             double lat, double distance) {
+            this.from = from;
+            this.to = to;
+            this.edge = edge;
+            this.fraction = fraction;
+            this.offset = offset;
+            this.lon = lon;
+            this.lat = lat;
+            this.distance = distance;
+        }
+
+        /**
+         * Returns the vertex the point is at, if it is at one end of the edge.
+         * @return a dense vertex index, or -1 if the point is strictly inside the edge
+         */
+        public int vertex() {
+            return fraction == 0 ? from : fraction == 1 ? to : -1;
+        }
+    }
+
+    /**
+     * Builds the tree over every edge of a graph.
+     * @param g a graph with its dense arrays built
+     */
+    SegmentIndex(GraphDB g) {
+        this.g = g;
+        int n = g.vertexCount();
+        double loLat = Double.POSITIVE_INFINITY, hiLat = Double.NEGATIVE_INFINITY;
+        for (int v = 0; v < n; v++) {
+            loLat = Math.min(loLat, g.latAt(v));
+            hiLat = Math.max(hiLat, g.latAt(v));
+        }
+        cosLat = n == 0 ? 1 : Math.cos(Math.toRadians((loLat + hiLat) / 2));
+
+        /* One segment per undirected edge, from its lower-numbered end. */
+        int[] targets = new int[Math.max(1, g.maxDegree())];
+        int m = 0;
+        for (int v = 0; v < n; v++) {
+            int degree = g.targets(v, targets);
+            for (int k = 0; k < degree; k++) {
+                if (v < targets[k]) {
+                    m++;
+                }
+            }
+        }
+        int[] from = new int[m], edge = new int[m], to = new int[m];
+        double[] cx = new double[m], cy = new double[m];
+        int s = 0;
+        for (int v = 0; v < n; v++) {
+            int degree = g.targets(v, targets);
+            for (int k = 0; k < degree; k++) {
+                int w = targets[k];
+                if (v < w) {
+                    from[s] = v;
+                    edge[s] = g.edgeStart(v) + k;
+                    to[s] = w;
+                    cx[s] = (x(v) + x(w)) / 2;
+                    cy[s] = (g.latAt(v) + g.latAt(w)) / 2;
+                    s++;
+                }
+            }
+        }
+
+        /* Sort-Tile-Recursive order of the segments. */
+        int[] order = sortBy(cx, identity(m), 0, m);
+        int leaves = (m + FANOUT - 1) / FANOUT;
+        int slices = (int) Math.ceil(Math.sqrt(leaves));
+        int perSlice = slices == 0 ? 0 : (int) Math.ceil((double) leaves / slices) * FANOUT;
+        for (int lo = 0; lo < m; lo += perSlice) {
+            int hi = Math.min(m, lo + perSlice);
+            int[] slice = sortBy(cy, order, lo, hi);
+            System.arraycopy(slice, 0, order, lo, hi - lo);
+        }
+        segFrom = new int[m];
+        segEdge = new int[m];
+        segTo = new int[m];
+        for (int i = 0; i < m; i++) {
+            segFrom[i] = from[order[i]];
+            segEdge[i] = edge[order[i]];
+            segTo[i] = to[order[i]];
+        }
+
+        /* Pack the levels bottom-up. */
+        int levels = 1;
+        int total = Math.max(1, leaves);
+        for (int count = Math.max(1, leaves); count > 1; levels++) {
+            count = (count + FANOUT - 1) / FANOUT;
+            total += count;
+        }
+        levelStart = new int[levels];
+        levelCount = new int[levels];
+        boxes = new double[4 * total];
+        levelCount[0] = Math.max(1, leaves);
+        for (int i = 0; i < leaves; i++) {
+            int b = 4 * i;
+            boxes[b] = boxes[b + 1] = Double.POSITIVE_INFINITY;
+            boxes[b + 2] = boxes[b + 3] = Double.NEGATIVE_INFINITY;
+            for (int k = i * FANOUT; k < Math.min(m, (i + 1) * FANOUT); k++) {
+                extend(b, x(segFrom[k]), g.latAt(segFrom[k]));
+                extend(b, x(segTo[k]), g.latAt(segTo[k]));
+            }
+        }
+        for (int level = 1; level < levels; level++) {
+            levelStart[level] = levelStart[level - 1] + levelCount[level - 1];
+            levelCount[level] = (levelCount[level - 1] + FANOUT - 1) / FANOUT;
+            for (int i = 0; i < levelCount[level]; i++) {
+                int b = 4 * (levelStart[level] + i);
+                boxes[b] = boxes[b + 1] = Double.POSITIVE_INFINITY;
+                boxes[b + 2] = boxes[b + 3] = Double.NEGATIVE_INFINITY;
+                int below = levelStart[level - 1];
+                for (int k = i * FANOUT; k < Math.min(levelCount[level - 1], (i + 1) * FANOUT);
+                     k++) {
+                    int c = 4 * (below + k);
+                    extend(b, boxes[c], boxes[c + 1]);
+                    extend(b, boxes[c + 2], boxes[c + 3]);
+                }
+            }
+        }
+    }
+
+    private double x(int v) {
+        return g.lonAt(v) * cosLat;
+    }
+
+    private void extend(int b, double x, double y) {
+        boxes[b] = Math.min(boxes[b], x);
+        boxes[b + 1] = Math.min(boxes[b + 1], y);
+        boxes[b + 2] = Math.max(boxes[b + 2], x);
+        boxes[b + 3] = Math.max(boxes[b + 3], y);
+    }
+
+    private static int[] identity(int m) {
+        int[] ids = new int[m];
+        for (int i = 0; i < m; i++) {
+            ids[i] = i;
+        }
+        return ids;
+    }
+
+    /**
+     * Returns items[lo] through items[hi - 1] sorted by their key, which is quantised to
+     * 31 bits over its range so that item and key share one primitive long to sort.
+     */
+    private static int[] sortBy(double[] key, int[] items, int lo, int hi) {
+        double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+        for (int i = lo; i < hi; i++) {
+            min = Math.min(min, key[items[i]]);
+            max = Math.max(max, key[items[i]]);
+        }
+        double scale = max > min ? Integer.MAX_VALUE / (max - min) : 0;
+        long[] packed = new long[hi - lo];
+        for (int i = lo; i < hi; i++) {
+            packed[i - lo] = (long) ((key[items[i]] - min) * scale) << 32 | items[i];
+        }
+        Arrays.sort(packed);
+        int[] sorted = new int[hi - lo];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = (int) packed[i];
+        }
+        return sorted;
+    }
+
+    /**
+     * Returns the point on any road segment nearest to a location.
+     * @param lon query longitude
+     * @param lat query latitude
+     * @return the nearest point, or null if the graph has no edges
+     */
+    Snap nearest(double lon, double lat) {
+        Snap[] snaps = nearest(lon, lat, 1, Double.POSITIVE_INFINITY, Profile.ALL);
+        return snaps.length == 0 ? null : snaps[0];
+    }
+
+    /**
+     * Returns the nearest point on each of the k road segments nearest to a location,
+     * nearest first, leaving out segments farther than a radius. Nodes are visited best
+     * first, by the distance to their box, until no unvisited box is nearer than the
+     * k-th best segment found or the radius.
+     * @param lon query longitude
+     * @param lat query latitude
+     * @param k largest number of segments to return
+     * @param miles search radius in miles
+     * @param access mask of profiles; only segments allowing one of them are returned
+     * @return up to k points, one per segment
+     */
+    Snap[] nearest(double lon, double lat, int k, double miles, int access) {
+        if (segFrom.length == 0 || k <= 0) {
+            return new Snap[0];
+        }
+        double qx = lon * cosLat, qy = lat;
+        double radius = miles / GraphDB.MILES_PER_DEGREE;
+        double limit = radius * radius;
+        int root = levelStart.length - 1;
+        /* A binary heap of nodes by squared distance; node numbers are global. */
+        double[] heapKey = new double[64];
+        int[] heapNode = new int[64];
+        int size = 0;
+        heapKey[0] = 0;
+        heapNode[0] = levelStart[root];
+        size++;
+        /* The best segments so far, nearest first. */
+        double[] best = new double[k];
+        int[] bestSeg = new int[k];
+        double[] bestT = new double[k];
+        int found = 0;
+        while (size > 0 && heapKey[0] <= limit) {
+            int node = heapNode[0];
+            size--;
+            heapKey[0] = heapKey[size];
+            heapNode[0] = heapNode[size];
+            siftDown(heapKey, heapNode, size);
+
+            int level = levelOf(node);
+            int i = node - levelStart[level];
+            if (level == 0) {
+                for (int s = i * FANOUT; s < Math.min(segFrom.length, (i + 1) * FANOUT); s++) {
+                    if ((g.edgeAccess(segEdge[s]) & access) == 0) {
+                        continue;
+                    }
+                    double ax = x(segFrom[s]), ay = g.latAt(segFrom[s]);
+                    double dx = x(segTo[s]) - ax, dy = g.latAt(segTo[s]) - ay;
+                    double len2 = dx * dx + dy * dy;
+                    double t = len2 == 0 ? 0 : ((qx - ax) * dx + (qy - ay) * dy) / len2;
+                    t = Math.max(0, Math.min(1, t));
+                    double px = ax + t * dx - qx, py = ay + t * dy - qy;
+                    double d = px * px + py * py;
+                    if (d <= limit) {
+                        /* Insert in order, dropping the farthest once k are kept. */
+                        int at = Math.min(found, k - 1);
+                        while (at > 0 && best[at - 1] > d) {
+                            if (at < k) {
+                                best[at] = best[at - 1];
+                                bestSeg[at] = bestSeg[at - 1];
+                                bestT[at] = bestT[at - 1];
+                            }
+                            at--;
+                        }
+                        best[at] = d;
+                        bestSeg[at] = s;
+                        bestT[at] = t;
+                        found = Math.min(found + 1, k);
+                        if (found == k) {
+                            limit = best[k - 1];
+                        }
+                    }
+                }
+                continue;
+            }
+            int below = levelStart[level - 1];
+            for (int c = i * FANOUT; c < Math.min(levelCount[level - 1], (i + 1) * FANOUT); c++) {
+                double d = boxDistance(4 * (below + c), qx, qy);
+                if (d <= limit) {
+                    if (size == heapKey.length) {
+                        heapKey = Arrays.copyOf(heapKey, size * 2);
+                        heapNode = Arrays.copyOf(heapNode, size * 2);
+                    }
+                    heapKey[size] = d;
+                    heapNode[size] = below + c;
+                    siftUp(heapKey, heapNode, size++);
+                }
+            }
+        }
+
+        Snap[] snaps = new Snap[found];
+        for (int j = 0; j < found; j++) {
+            snaps[j] = snap(bestSeg[j], bestT[j], lon, lat);
+        }
+        return snaps;
+    }
+
+    /** The point a fraction t along packed segment s, for a query at lon, lat. */
+    private Snap snap(int s, double t, double lon, double lat) {
+        /* A point on a vertex may project a rounding error short of it; count it as on. */
+        if (t < 1e-12) {
+            t = 0;
+        } else if (t > 1 - 1e-12) {
+            t = 1;
+        }
+        int v = segFrom[s], w = segTo[s];
+        double pLon = g.lonAt(v) + t * (g.lonAt(w) - g.lonAt(v));
+        double pLat = g.latAt(v) + t * (g.latAt(w) - g.latAt(v));
+        return new Snap(v, w, segEdge[s], t, t * g.edgeLength(segEdge[s]), pLon, pLat,
+                GraphDB.distance(lon, lat, pLon, pLat));
+    }
+
+    private int levelOf(int node) {
+        int level = 0;
+        while (level + 1 < levelStart.length && node >= levelStart[level + 1]) {
+            level++;
+        }
+        return level;
+    }
+
+    /** Returns the squared distance from a point to box b, 0 inside it. */
+    private double boxDistance(int b, double qx, double qy) {
+        double dx = Math.max(0, Math.max(boxes[b] - qx, qx - boxes[b + 2]));
+        double dy = Math.max(0, Math.max(boxes[b + 1] - qy, qy - boxes[b + 3]));
+        return dx * dx + dy * dy;
+    }
+
+    private static void siftUp(double[] key, int[] item, int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (key[parent] <= key[i]) {
+                break;
+            }
+            swap(key, item, i, parent);
+            i = parent;
+        }
+    }
+
+    private static void siftDown(double[] key, int[] item, int size) {
+        int i = 0;
+        while (2 * i + 1 < size) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && key[child + 1] < key[child]) {
+                child++;
+            }
+            if (key[i] <= key[child]) {
+                break;
+            }
+            swap(key, item, i, child);
+            i = child;
+        }
+    }
+
+    private static void swap(double[] key, int[] item, int i, int j) {
+        double k = key[i];
+        key[i] = key[j];
+        key[j] = k;
+        int t = item[i];
+        item[i] = item[j];
+        item[j] = t;
+    }
+
+    /**
+     * Returns the number of segments indexed.
+     * @return the number of undirected edges
+     */
+    int size() {
+        return segFrom.length;
+    }
+}
@@ -0,0 +1,160 @@
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import javax.imageio.ImageIO;
+
+/**
+ * Bounded least-recently-used cache of decoded tile images in front of a TileStore.
+ * Tiles are all the same size, so the bound is a tile count. The cache is split into
+ * independently locked segments; decoding happens outside the locks, so two threads
+ * missing on the same tile at once may both decode it.
+ */
+public class TileCache {
+    private final TileStore store;
+    private final Segment[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * One independently locked LRU map.
+     */
+    private static class Segment extends LinkedHashMap<String, BufferedImage> {
+        private static final long serialVersionUID = 1L;
+        private final int maxTiles;
+
+        Segment(int maxTiles) {
+            super(16, 0.75f, true);
+            this.maxTiles = maxTiles;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, BufferedImage> eldest) {
+            return size() > maxTiles;
+        }
+
+        synchronized BufferedImage lookup(String name) {
+            return get(name);
+        }
+
+        synchronized boolean has(String name) {
+            return containsKey(name);
+        }
+
+        synchronized void store(String name, BufferedImage img) {
+            put(name, img);
+        }
+
+        synchronized int entries() {
+            return size();
+        }
+    }
+
+    /**
+     * Creates a cache holding at most maxTiles decoded tiles.
+     * @param store where to read tiles that are not cached
+     * @param maxTiles maximum number of tiles kept
+     * @param numSegments number of independently locked segments
+     */
+    public TileCache(TileStore store, int maxTiles, int numSegments) {
+        this.store = store;
+        segments = new Segment[numSegments];
+        for (int i = 0; i < numSegments; i++) {
+            segments[i] = new Segment(Math.max(1, maxTiles / numSegments));
+        }
+    }
+
+    /**
+     * Returns a decoded tile, reading and caching it on a miss.
+     * @param name tile file name, e.g. "d2_x1_y3.png"
+     * @return the tile, or null if it does not exist or could not be decoded
+     */
+    public BufferedImage get(String name) {
+        Segment s = segmentFor(name);
+        BufferedImage img = s.lookup(name);
+        if (img != null) {
+            hits.increment();
+            return img;
+        }
+        misses.increment();
+        img = load(name);
+        if (img != null) {
+            s.store(name, img);
+        }
+        return img;
+    }
+
+    /**
+     * Reads a tile into the cache if it is not already there, without counting a hit
+     * or miss.
+     * @param name tile file name
+     */
+    public void warm(String name) {
+        Segment s = segmentFor(name);
+        if (!s.has(name)) {
+            BufferedImage img = load(name);
+            if (img != null) {
+                s.store(name, img);
+            }
+        }
+    }
+
+    /**
+     * Returns true if a tile is cached.
+     * @param name tile file name
+     * @return whether the tile is cached
+     */
+    public boolean contains(String name) {
+        return segmentFor(name).has(name);
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the fraction of lookups that were hits, or 0 before the first lookup.
+     * @return the hit ratio
+     */
+    public double hitRatio() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * Returns the number of cached tiles.
+     * @return the number of tiles
+     */
+    public int size() {
+        int n = 0;
+        for (Segment s : segments) {
+            n += s.entries();
+        }
+        return n;
+    }
+
+    private BufferedImage load(String name) {
+        try {
+            byte[] bytes = store.readTile(name);
+            if (bytes != null) {
+                return ImageIO.read(new ByteArrayInputStream(bytes));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    private Segment segmentFor(String name) {
+        int h = name.hashCode();
+        h ^= h >>> 16;
+        return segments[(h & 0x7fffffff) % segments.length];
+    }
+}
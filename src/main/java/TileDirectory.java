@@ -0,0 +1,28 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Tile store reading each tile from its own file in a directory.
+ */
+public class TileDirectory implements TileStore {
+    private final Path root;
+
+    /**
+     * @param root directory holding the tile files
+     */
+    public TileDirectory(String root) {
+        this.root = Paths.get(root);
+    }
+
+    @Override
+    public byte[] readTile(String name) throws IOException {
+        try {
+            return Files.readAllBytes(root.resolve(name));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+}
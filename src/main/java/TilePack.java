@@ -0,0 +1,220 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tile store backed by a single archive holding the whole tile pyramid, so a tile costs
+ * one positional read instead of a file open plus read. The archive layout is:
+ * <pre>
+ *   int  magic "BMTP", int version, int tile count n
+ *   n x  long key, sorted ascending       (key = depth &lt;&lt; 48 | x &lt;&lt; 24 | y)
+ *   n x  long offset of the tile's bytes from the start of the file
+ *   n x  int  length of the tile's bytes
+ *   tile bytes, in key order
+ * </pre>
+ * All numbers are big-endian. The index is read into memory when the archive is
+ * opened; tile bytes are read with positional FileChannel reads, which are safe to
+ * issue from many threads at once.
+ * Run main to pack a directory of "dD_xX_yY.png" files into an archive.
+ */
+public class TilePack implements TileStore, AutoCloseable {
+    private static final int MAGIC = 0x424d5450;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 12;
+
+    private final FileChannel channel;
+    private final long[] keys;
+    private final long[] offsets;
+    private final int[] lengths;
+
+    /**
+     * Opens an archive written by pack().
+     * @param path archive file
+     * @throws IOException if the file cannot be read or is not a tile archive
+     */
+    public TilePack(String path) throws IOException {
+        channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        readFully(header, 0);
+        header.flip();
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            channel.close();
+            throw new IOException(path + " is not a tile archive");
+        }
+        int n = header.getInt();
+        ByteBuffer index = ByteBuffer.allocate(n * 20);
+        readFully(index, HEADER_BYTES);
+        index.flip();
+        keys = new long[n];
+        offsets = new long[n];
+        lengths = new int[n];
+        LongBuffer longs = index.asLongBuffer();
+        longs.get(keys);
+        longs.get(offsets);
+        index.position(16 * n);
+        index.asIntBuffer().get(lengths);
+    }
+
+    /**
+     * Returns the number of tiles in the archive.
+     * @return the number of tiles
+     */
+    public int size() {
+        return keys.length;
+    }
+
+    @Override
+    public byte[] readTile(String name) throws IOException {
+        long key = keyOf(name);
+        if (key < 0) {
+            return null;
+        }
+        return readTile(key);
+    }
+
+    /**
+     * Returns the encoded bytes of the tile at (depth, x, y), or null if absent.
+     * @throws IOException if reading the archive fails
+     */
+    public byte[] readTile(int depth, int x, int y) throws IOException {
+        return readTile(key(depth, x, y));
+    }
+
+    private byte[] readTile(long key) throws IOException {
+        int i = Arrays.binarySearch(keys, key);
+        if (i < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[lengths[i]];
+        readFully(ByteBuffer.wrap(bytes), offsets[i]);
+        return bytes;
+    }
+
+    private void readFully(ByteBuffer dst, long position) throws IOException {
+        while (dst.hasRemaining()) {
+            int n = channel.read(dst, position);
+            if (n < 0) {
+                throw new IOException("Tile archive is truncated");
+            }
+            position += n;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    static long key(int depth, int x, int y) {
+        return ((long) depth << 48) | ((long) x << 24) | y;
+    }
+
+    /**
+     * Parses a tile file name of the form "dD_xX_yY.png" into its key.
+     * @return the key, or -1 if the name is not a tile name
+     */
+    static long keyOf(String name) {
+        int[] parts = new int[3];
+        char[] tags = {'d', 'x', 'y'};
+        int pos = 0;
+        for (int p = 0; p < 3; p++) {
+            if (p > 0) {
+                if (pos >= name.length() || name.charAt(pos) != '_') {
+                    return -1;
+                }
+                pos++;
+            }
+            if (pos >= name.length() || name.charAt(pos) != tags[p]) {
+                return -1;
+            }
+            pos++;
+            int start = pos;
+            int v = 0;
+            while (pos < name.length() && Character.isDigit(name.charAt(pos))
+                    && pos - start < 7) {
+                v = 10 * v + (name.charAt(pos) - '0');
+                pos++;
+            }
+            if (pos == start) {
+                return -1;
+            }
+            parts[p] = v;
+        }
+        if (!name.startsWith(".png", pos) || pos + 4 != name.length()) {
+            return -1;
+        }
+        return key(parts[0], parts[1], parts[2]);
+    }
+
+    /**
+     * Packs every tile file in a directory into one archive.
+     * @param dir directory of "dD_xX_yY.png" files
+     * @param out archive file to write
+     * @return the number of tiles packed
+     * @throws IOException if reading a tile or writing the archive fails
+     */
+    public static int pack(String dir, String out) throws IOException {
+        File[] files = new File(dir).listFiles();
+        List<long[]> tiles = new ArrayList<>();
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) {
+                long key = keyOf(files[i].getName());
+                if (key >= 0 && files[i].isFile()) {
+                    tiles.add(new long[] {key, i, files[i].length()});
+                }
+            }
+        }
+        tiles.sort((a, b) -> Long.compare(a[0], b[0]));
+        int n = tiles.size();
+        try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(out), 1 << 16))) {
+            os.writeInt(MAGIC);
+            os.writeInt(VERSION);
+            os.writeInt(n);
+            for (long[] t : tiles) {
+                os.writeLong(t[0]);
+            }
+            long offset = HEADER_BYTES + 20L * n;
+            for (long[] t : tiles) {
+                os.writeLong(offset);
+                offset += t[2];
+            }
+            for (long[] t : tiles) {
+                os.writeInt((int) t[2]);
+            }
+            for (long[] t : tiles) {
+                byte[] bytes = Files.readAllBytes(files[(int) t[1]].toPath());
+                if (bytes.length != t[2]) {
+                    throw new IOException(files[(int) t[1]] + " changed while packing");
+                }
+                os.write(bytes);
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Packs a tile directory from the command line.
+     * @param args tile directory and archive path
+     * @throws IOException if packing fails
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("Usage: java TilePack <tile directory> <archive file>");
+            return;
+        }
+        int n = pack(args[0], args[1]);
+        System.out.println("Packed " + n + " tiles into " + args[1]);
+    }
+}
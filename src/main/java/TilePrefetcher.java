@@ -0,0 +1,149 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Warms the tile cache with the tiles the next raster request is likely to need: the
+ * ring of tiles around the current render grid (for panning) and the tiles one level
+ * deeper under it (for zooming in). Prefetching runs on one low-priority daemon thread
+ * with a bounded queue; when the queue is full new work is dropped. While more than a
+ * given number of raster requests are being served, pending prefetches are cancelled
+ * and new ones are not queued, so prefetching never competes with real requests.
+ */
+public class TilePrefetcher {
+    private final TileCache cache;
+    private final ThreadPoolExecutor executor;
+    private final AtomicInteger foreground = new AtomicInteger();
+    private final int maxForeground;
+    private final LongAdder prefetched = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+
+    /**
+     * Creates a prefetcher.
+     * @param cache the cache to warm
+     * @param queueCapacity maximum number of tiles waiting to be prefetched
+     * @param maxForeground number of concurrent raster requests above which
+     *                      prefetching pauses
+     */
+    public TilePrefetcher(TileCache cache, int queueCapacity, int maxForeground) {
+        this.cache = cache;
+        this.maxForeground = maxForeground;
+        this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread t = new Thread(r, "tile-prefetch");
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+                    return t;
+                }, new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    /**
+     * Marks the start of a raster request.
+     */
+    public void beginRequest() {
+        if (foreground.incrementAndGet() > maxForeground) {
+            cancelPending();
+        }
+    }
+
+    /**
+     * Marks the end of a raster request.
+     */
+    public void endRequest() {
+        foreground.decrementAndGet();
+    }
+
+    /**
+     * Queues the neighbours and children of a render grid that are not yet cached.
+     * @param renderGrid tile names of the raster just served
+     * @param depth depth of the raster just served
+     */
+    public void afterRaster(String[][] renderGrid, int depth) {
+        if (foreground.get() > maxForeground) {
+            return;
+        }
+        for (String name : candidates(renderGrid, depth)) {
+            if (!cache.contains(name)) {
+                executor.execute(() -> prefetch(name));
+            }
+        }
+    }
+
+    /**
+     * Drops every queued prefetch.
+     */
+    public void cancelPending() {
+        int n = executor.getQueue().size();
+        executor.getQueue().clear();
+        cancelled.add(n);
+    }
+
+    public long prefetched() {
+        return prefetched.sum();
+    }
+
+    public long cancelled() {
+        return cancelled.sum();
+    }
+
+    /**
+     * Stops the prefetch thread, dropping queued work.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void prefetch(String name) {
+        if (foreground.get() > maxForeground) {
+            cancelled.increment();
+            return;
+        }
+        cache.warm(name);
+        prefetched.increment();
+    }
+
+    /**
+     * Returns the tiles to prefetch after serving a render grid: first the ring of
+     * tiles around it at the same depth, then the tiles covering it one depth deeper.
+     * @param renderGrid tile names of the raster just served
+     * @param depth depth of the raster just served
+     * @return tile names, most likely needed first
+     */
+    static List<String> candidates(String[][] renderGrid, int depth) {
+        List<String> names = new ArrayList<>();
+        long ul = TilePack.keyOf(renderGrid[0][0]);
+        long lr = TilePack.keyOf(renderGrid[renderGrid.length - 1][renderGrid[0].length - 1]);
+        if (ul < 0 || lr < 0) {
+            return names;
+        }
+        int ulX = (int) (ul >>> 24) & 0xffffff;
+        int ulY = (int) ul & 0xffffff;
+        int lrX = (int) (lr >>> 24) & 0xffffff;
+        int lrY = (int) lr & 0xffffff;
+        int max = (1 << depth) - 1;
+        for (int y = ulY - 1; y <= lrY + 1; y++) {
+            for (int x = ulX - 1; x <= lrX + 1; x++) {
+                boolean inside = x >= ulX && x <= lrX && y >= ulY && y <= lrY;
+                if (!inside && x >= 0 && y >= 0 && x <= max && y <= max) {
+                    names.add(tileName(depth, x, y));
+                }
+            }
+        }
+        if (depth < MapServer.MAX_DEPTH) {
+            for (int y = 2 * ulY; y <= 2 * lrY + 1; y++) {
+                for (int x = 2 * ulX; x <= 2 * lrX + 1; x++) {
+                    names.add(tileName(depth + 1, x, y));
+                }
+            }
+        }
+        return names;
+    }
+
+    private static String tileName(int depth, int x, int y) {
+        return "d" + depth + "_x" + x + "_y" + y + ".png";
+    }
+}
@@ -0,0 +1,15 @@
+import java.io.IOException;
+
+/**
+ * Source of encoded map tile images, addressed by their file name in the
+ * "dD_xX_yY.png" format Rasterer puts in the render grid.
+ */
+public interface TileStore {
+    /**
+     * Returns the encoded PNG bytes of a tile.
+     * @param name tile file name, e.g. "d2_x1_y3.png"
+     * @return the tile's bytes, or null if there is no such tile
+     * @throws IOException if the tile exists but could not be read
+     */
+    byte[] readTile(String name) throws IOException;
+}
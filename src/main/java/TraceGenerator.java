@@ -0,0 +1,99 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Makes synthetic GPS traces over a graph, for testing and measuring map matching. A
+ * trace follows shortest routes between random vertices of the largest connected
+ * component, joined end to end until it is long enough, with a fix every SPACING miles
+ * along the way moved by normally distributed noise. The same graph and seed always
+ * give the same traces.
+ */
+public class TraceGenerator {
+    /** Distance between fixes in miles, about 15 metres: a car at 30 mph every second. */
+    static final double SPACING = 0.0093;
+
+    private final GraphDB g;
+    private final double noise;
+    private final Random random;
+    private final int[] largest;
+
+    /**
+     * A synthetic trace and the route it was made from.
+     */
+    public static class Trace {
+        /** Longitudes of the fixes, in order. */
+        public final double[] lons;
+        /** Latitudes of the fixes, in order. */
+        public final double[] lats;
+        /** Vertex ids of the route driven. */
+        public final List<Long> route;
+
+        Trace(double[] lons, double[] lats, List<Long> route) {
+            this.lons = lons;
+            this.lats = lats;
+            this.route = route;
+        }
+    }
+
+    /**
+     * Creates a generator.
+     * @param g the graph to drive on
+     * @param noise standard deviation of GPS error in miles
+     * @param seed seed of the traces' randomness
+     */
+    public TraceGenerator(GraphDB g, double noise, long seed) {
+        this.g = g;
+        this.noise = noise;
+        this.random = new Random(seed);
+        int count = 0;
+        for (int v = 0; v < g.vertexCount(); v++) {
+            count += g.componentOf(v) == 0 ? 1 : 0;
+        }
+        largest = new int[count];
+        for (int v = 0, k = 0; v < g.vertexCount(); v++) {
+            if (g.componentOf(v) == 0) {
+                largest[k++] = v;
+            }
+        }
+    }
+
+    /**
+     * Makes the next trace.
+     * @param fixes number of fixes
+     * @return a trace of exactly that many fixes
+     */
+    public Trace next(int fixes) {
+        double[] lons = new double[fixes], lats = new double[fixes];
+        List<Long> route = new ArrayList<>();
+        route.add(g.idAt(largest[random.nextInt(largest.length)]));
+        int made = 0;
+        /* Distance along the current edge to the next fix. */
+        double ahead = 0;
+        int at = 0;
+        while (made < fixes) {
+            if (at + 1 == route.size()) {
+                long to = g.idAt(largest[random.nextInt(largest.length)]);
+                List<Long> leg = Router.shortestPath(g, route.get(at), to);
+                route.addAll(leg.subList(Math.min(1, leg.size()), leg.size()));
+                continue;
+            }
+            long v = route.get(at), w = route.get(at + 1);
+            double length = g.distance(v, w);
+            while (ahead <= length && made < fixes) {
+                double t = length == 0 ? 0 : ahead / length;
+                double lat = g.lat(v) + t * (g.lat(w) - g.lat(v));
+                double lon = g.lon(v) + t * (g.lon(w) - g.lon(v));
+                double cosLat = Math.cos(Math.toRadians(lat));
+                double degrees = noise / GraphDB.MILES_PER_DEGREE;
+                lats[made] = lat + random.nextGaussian() * degrees;
+                lons[made] = lon + random.nextGaussian() * degrees / cosLat;
+                made++;
+                ahead += SPACING;
+            }
+            ahead -= length;
+            at++;
+        }
+        return new Trace(lons, lats, new ArrayList<>(route.subList(0, at + 1)));
+    }
+}
@@ -0,0 +1,269 @@
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Uniform grid over the vertices of a graph for nearest-vertex queries, one at a time or
+ * in batches. Each vertex is kept as its unit vector on the sphere, stored by cell in
+ * three parallel arrays. The squared chord between two unit vectors grows with their
+ * great-circle distance, so the nearest vertex by chord is the nearest by
+ * GraphDB.distance. The chord also needs no trigonometry per candidate: each cell
+ * is scanned by a loop of subtractions and multiply-adds over adjacent array elements,
+ * the kind of loop HotSpot unrolls and can vectorize.
+ *
+ * Cells are numbered, and their vertices stored, along a Hilbert curve, and a batch
+ * is answered in that order of its queries' cells, so consecutive queries search the
+ * same or neighbouring cells while they are still in cache.
+ */
+public class VertexIndex {
+    /** Average number of vertices per cell the grid is sized for. */
+    private static final int POINTS_PER_CELL = 8;
+    /** A great circle between two points of a parallel is a little shorter than it. */
+    private static final double MARGIN = 0.99;
+
+    private final double minLon;
+    private final double minLat;
+    private final double cellLon;
+    private final double cellLat;
+    private final int cols;
+    private final int rows;
+    /** Number of the cell in column c and row r, at r * cols + c. */
+    private final int[] cellNumber;
+    /* Vertices of cell c are at positions cellStart[c] through cellStart[c + 1] - 1. */
+    private final int[] cellStart;
+    /** Dense vertex at each position. */
+    private final int[] vertex;
+    /* Unit vector of the vertex at each position. */
+    private final double[] xs;
+    private final double[] ys;
+    private final double[] zs;
+    /* Smallest length of a degree of longitude, in degrees of latitude. */
+    private final double cosEdge;
+
+    /**
+     * Builds the grid over every vertex of a graph.
+     * @param g a graph with its dense arrays built
+     */
+    VertexIndex(GraphDB g) {
+        int n = g.vertexCount();
+        double loLon = Double.POSITIVE_INFINITY, hiLon = Double.NEGATIVE_INFINITY;
+        double loLat = Double.POSITIVE_INFINITY, hiLat = Double.NEGATIVE_INFINITY;
+        for (int v = 0; v < n; v++) {
+            loLon = Math.min(loLon, g.lonAt(v));
+            hiLon = Math.max(hiLon, g.lonAt(v));
+            loLat = Math.min(loLat, g.latAt(v));
+            hiLat = Math.max(hiLat, g.latAt(v));
+        }
+        if (n == 0) {
+            loLon = 0;
+            hiLon = 0;
+            loLat = 0;
+            hiLat = 0;
+        }
+        double cosLat = Math.cos(Math.toRadians((loLat + hiLat) / 2));
+        double width = Math.max((hiLon - loLon) * cosLat, 1e-9);
+        double height = Math.max(hiLat - loLat, 1e-9);
+        double cells = Math.max(1, n / POINTS_PER_CELL);
+        double side = Math.sqrt(width * height / cells);
+        cols = (int) Math.max(1, Math.min(Math.ceil(width / side), 1 << 14));
+        rows = (int) Math.max(1, Math.min(Math.ceil(height / side), 1 << 14));
+        minLon = loLon;
+        minLat = loLat;
+        cellLon = Math.max(hiLon - loLon, 1e-9) / cols;
+        cellLat = Math.max(hiLat - loLat, 1e-9) / rows;
+        /* Degrees of longitude are shortest at the latitude farthest from the equator. */
+        cosEdge = Math.cos(Math.toRadians(Math.max(Math.abs(loLat), Math.abs(hiLat))));
+
+        /* Number the cells along a Hilbert curve, so that cells near each other on the
+         * map mostly sit near each other in the arrays too. */
+        long[] keys = new long[cols * rows];
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                keys[r * cols + c] = GraphDB.hilbert(c, r) << 32 | (r * cols + c);
+            }
+        }
+        Arrays.sort(keys);
+        cellNumber = new int[cols * rows];
+        for (int k = 0; k < keys.length; k++) {
+            cellNumber[(int) keys[k]] = k;
+        }
+
+        cellStart = new int[cols * rows + 1];
+        int[] cellOf = new int[n];
+        for (int v = 0; v < n; v++) {
+            cellOf[v] = cell(col(g.lonAt(v)), row(g.latAt(v)));
+            cellStart[cellOf[v] + 1]++;
+        }
+        for (int c = 0; c < cols * rows; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        vertex = new int[n];
+        xs = new double[n];
+        ys = new double[n];
+        zs = new double[n];
+        int[] fill = Arrays.copyOf(cellStart, cols * rows);
+        for (int v = 0; v < n; v++) {
+            int p = fill[cellOf[v]]++;
+            vertex[p] = v;
+            double phi = Math.toRadians(g.latAt(v)), lambda = Math.toRadians(g.lonAt(v));
+            xs[p] = Math.cos(phi) * Math.cos(lambda);
+            ys[p] = Math.cos(phi) * Math.sin(lambda);
+            zs[p] = Math.sin(phi);
+        }
+    }
+
+    /**
+     * Returns the accepted vertex nearest to a location.
+     * @param lon query longitude
+     * @param lat query latitude
+     * @param accept filter on dense vertex indices, or null to accept every vertex
+     * @return a dense vertex index, or -1 if no vertex is accepted
+     */
+    int nearest(double lon, double lat, IntPredicate accept) {
+        return nearest(lon, lat, accept, new double[16]);
+    }
+
+    /**
+     * Returns the vertex nearest to each of a batch of locations.
+     * @param lons query longitudes
+     * @param lats query latitudes, as many as lons
+     * @param accept filter on dense vertex indices, or null to accept every vertex
+     * @return the dense index of the nearest accepted vertex to each query, in query
+     * order, -1 where none is accepted
+     */
+    int[] nearestBatch(double[] lons, double[] lats, IntPredicate accept) {
+        int m = lons.length;
+        long[] keys = new long[m];
+        for (int q = 0; q < m; q++) {
+            keys[q] = GraphDB.hilbert(col(lons[q]), row(lats[q])) << 32 | q;
+        }
+        Arrays.sort(keys);
+        /* Gather the queries into that order first; the loads are independent, so they
+         * overlap, where inside the search each would stall it. */
+        double[] sortedLons = new double[m], sortedLats = new double[m];
+        for (int k = 0; k < m; k++) {
+            int q = (int) keys[k];
+            sortedLons[k] = lons[q];
+            sortedLats[k] = lats[q];
+        }
+        int[] result = new int[m];
+        double[] scratch = new double[16];
+        for (int k = 0; k < m; k++) {
+            result[(int) keys[k]] = nearest(sortedLons[k], sortedLats[k], accept, scratch);
+        }
+        return result;
+    }
+
+    /**
+     * Searches rings of cells outward from the query's cell until no unsearched cell
+     * can hold a nearer vertex than the best found.
+     * @param scratch buffer for squared chords, grown as cells need
+     */
+    private int nearest(double lon, double lat, IntPredicate accept, double[] scratch) {
+        if (vertex.length == 0) {
+            return -1;
+        }
+        double phi = Math.toRadians(lat), lambda = Math.toRadians(lon);
+        double qx = Math.cos(phi) * Math.cos(lambda);
+        double qy = Math.cos(phi) * Math.sin(lambda);
+        double qz = Math.sin(phi);
+        int qc = col(lon);
+        int qr = row(lat);
+        int maxRing = Math.max(Math.max(qc, cols - 1 - qc), Math.max(qr, rows - 1 - qr));
+        int best = -1;
+        double bestChord = Double.POSITIVE_INFINITY;
+        for (int ring = 0; ring <= maxRing; ring++) {
+            if (best >= 0) {
+                double gap = MARGIN * Math.toRadians(gap(lon, lat, qc, qr, ring));
+                double bound = 2 * Math.sin(Math.min(Math.PI, gap) / 2);
+                if (bound * bound > bestChord) {
+                    break;
+                }
+            }
+            for (int r = qr - ring; r <= qr + ring; r++) {
+                if (r < 0 || r >= rows) {
+                    continue;
+                }
+                boolean edgeRow = r == qr - ring || r == qr + ring;
+                int step = edgeRow ? 1 : 2 * ring;
+                for (int c = qc - ring; c <= qc + ring; c += Math.max(step, 1)) {
+                    if (c < 0 || c >= cols) {
+                        continue;
+                    }
+                    int from = cellStart[cell(c, r)], to = cellStart[cell(c, r) + 1];
+                    if (to - from > scratch.length) {
+                        scratch = new double[Integer.highestOneBit(to - from) * 2];
+                    }
+                    chords(qx, qy, qz, from, to, scratch);
+                    for (int p = from; p < to; p++) {
+                        double d = scratch[p - from];
+                        if (d < bestChord || d == bestChord && vertex[p] < vertex[best]) {
+                            if (accept == null || accept.test(vertex[p])) {
+                                bestChord = d;
+                                best = p;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return best < 0 ? -1 : vertex[best];
+    }
+
+    /**
+     * Returns a lower bound, in degrees of latitude, on the distance from a query to
+     * any cell outside the square of rings 0 through ring - 1 around its cell; sides
+     * of the square at the edge of the grid have no cells beyond them.
+     */
+    private double gap(double lon, double lat, int qc, int qr, int ring) {
+        double gap = Double.POSITIVE_INFINITY;
+        if (qc - ring >= 0) {
+            gap = Math.min(gap, (lon - minLon - (qc - ring + 1) * cellLon) * cosEdge);
+        }
+        if (qc + ring < cols) {
+            gap = Math.min(gap, (minLon + (qc + ring) * cellLon - lon) * cosEdge);
+        }
+        if (qr - ring >= 0) {
+            gap = Math.min(gap, lat - minLat - (qr - ring + 1) * cellLat);
+        }
+        if (qr + ring < rows) {
+            gap = Math.min(gap, minLat + (qr + ring) * cellLat - lat);
+        }
+        return Math.max(0, gap);
+    }
+
+    /**
+     * Writes the squared chord from the query's unit vector to each vertex at positions
+     * from through to - 1 into out, starting at out[0].
+     */
+    private void chords(double qx, double qy, double qz, int from, int to, double[] out) {
+        for (int p = from; p < to; p++) {
+            double dx = xs[p] - qx;
+            double dy = ys[p] - qy;
+            double dz = zs[p] - qz;
+            out[p - from] = dx * dx + dy * dy + dz * dz;
+        }
+    }
+
+    /**
+     * Returns the number of bytes the grid's arrays take.
+     * @return the size of the arrays in bytes
+     */
+    long sizeInBytes() {
+        return 4L * (cellNumber.length + cellStart.length + vertex.length)
+                + 24L * vertex.length;
+    }
+
+    private int col(double lon) {
+        int c = (int) ((lon - minLon) / cellLon);
+        return Math.max(0, Math.min(cols - 1, c));
+    }
+
+    private int row(double lat) {
+        int r = (int) ((lat - minLat) / cellLat);
+        return Math.max(0, Math.min(rows - 1, r));
+    }
+
+    private int cell(int c, int r) {
+        return cellNumber[r * cols + c];
+    }
+}
@@ -0,0 +1,138 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The ways of the road graph, each stored once and numbered densely, so that edges can
+ * refer to their way by an int instead of every vertex holding its street names. Ways
+ * with the same name, highway type, speed limit and access share an entry. Names and highway
+ * types are interned too, so two ways can be told to be on the same street by comparing
+ * name ids. Name id NO_NAME is the empty name of ways that have none.
+ */
+public class WayTable {
+    /** Name id of the empty name. */
+    static final int NO_NAME = 0;
+
+    private final ArrayList<String> names = new ArrayList<>();
+    private final Map<String, Integer> nameIds = new HashMap<>();
+    private final ArrayList<String> highways = new ArrayList<>();
+    private final Map<String, Integer> highwayIds = new HashMap<>();
+    private final Map<String, Integer> wayIds = new HashMap<>();
+    private int[] wayName = new int[16];
+    private int[] wayHighway = new int[16];
+    private double[] wayMaxSpeed = new double[16];
+    private byte[] wayAccess = new byte[16];
+    private int size;
+
+    WayTable() {
+        intern("", names, nameIds);
+    }
+
+    /**
+     * Returns the id of the way with the given attributes, adding it if it is new.
+     * @param name name of the way, or "" if it has none
+     * @param highway value of the way's highway tag
+     * @param maxSpeed speed limit in miles per hour, or 0 if unknown
+     * @param access mask of the profiles that may use the way
+     * @return the way id
+     */
+    int add(String name, String highway, double maxSpeed, int access) {
+        int nameId = intern(name, names, nameIds);
+        int highwayId = intern(highway, highways, highwayIds);
+        String key = nameId + " " + highwayId + " " + maxSpeed + " " + access;
+        Integer id = wayIds.get(key);
+        if (id != null) {
+            return id;
+        }
+        if (size == wayName.length) {
+            wayName = Arrays.copyOf(wayName, size * 2);
+            wayHighway = Arrays.copyOf(wayHighway, size * 2);
+            wayMaxSpeed = Arrays.copyOf(wayMaxSpeed, size * 2);
+            wayAccess = Arrays.copyOf(wayAccess, size * 2);
+        }
+        wayName[size] = nameId;
+        wayHighway[size] = highwayId;
+        wayMaxSpeed[size] = maxSpeed;
+        wayAccess[size] = (byte) access;
+        wayIds.put(key, size);
+        return size++;
+    }
+
+    private static int intern(String s, ArrayList<String> values, Map<String, Integer> ids) {
+        Integer id = ids.get(s);
+        if (id == null) {
+            id = values.size();
+            values.add(s);
+            ids.put(s, id);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the number of distinct ways.
+     * @return the number of ways
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the name id of a way.
+     * @param way way id
+     * @return the id of its name
+     */
+    int nameId(int way) {
+        return wayName[way];
+    }
+
+    /**
+     * Returns the name of a way.
+     * @param way way id
+     * @return the name, or "" if it has none
+     */
+    String name(int way) {
+        return names.get(wayName[way]);
+    }
+
+    /**
+     * Returns the name with the given name id.
+     * @param nameId a name id
+     * @return the name
+     */
+    String nameOf(int nameId) {
+        return names.get(nameId);
+    }
+
+    /**
+     * Returns the name id of a name.
+     * @param name a street name
+     * @return its id, or -1 if no way has that name
+     */
+    int nameIdOf(String name) {
+        Integer id = nameIds.get(name);
+        return id == null ? -1 : id;
+    }
+
+    String highway(int way) {
+        return highways.get(wayHighway[way]);
+    }
+
+    /**
+     * Returns the speed limit of a way.
+     * @param way way id
+     * @return the limit in miles per hour, or 0 if it is not known
+     */
+    double maxSpeed(int way) {
+        return wayMaxSpeed[way];
+    }
+
+    /**
+     * Returns which profiles may use a way.
+     * @param way way id
+     * @return a mask of Profile bits
+     */
+    int access(int way) {
+        return wayAccess[way];
+    }
+}
@@ -0,0 +1,103 @@
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded pool of worker threads for one class of request. Each class of work (raster,
+ * routing, search) gets its own pool, so a flood of expensive requests can only fill its
+ * own queue and never delays the other classes. Work that arrives while every thread is
+ * busy and the queue is full is rejected straight away instead of waiting, which the
+ * server turns into a 503.
+ */
+public class WorkerPool {
+    private final String name;
+    private final ThreadPoolExecutor executor;
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * Creates a pool.
+     * @param name name of the pool, used for its threads
+     * @param threads number of worker threads
+     * @param queueCapacity maximum number of tasks waiting for a thread
+     */
+    public WorkerPool(String name, int threads, int queueCapacity) {
+        this.name = name;
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Runs work on the pool and waits for its result.
+     * @param work the work to run
+     * @return the result of the work
+     * @throws RejectedExecutionException if the pool is saturated, or the caller was
+     *                                    interrupted while waiting
+     */
+    public <T> T call(Callable<T> work) {
+        Future<T> future;
+        try {
+            future = executor.submit(work);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw e;
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException(name + " request interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * Returns the number of tasks waiting for a thread.
+     * @return the queue length
+     */
+    public int queued() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Returns the number of threads running a task.
+     * @return the number of busy threads
+     */
+    public int active() {
+        return executor.getActiveCount();
+    }
+
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Stops the pool's threads, interrupting running work.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,42 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.function.Function;
+
+/**
+ * Graphs of networks from OsmGenerator for the tests, read through a temporary file that
+ * is deleted once read.
+ */
+class SyntheticGraphs {
+    private SyntheticGraphs() {
+    }
+
+    /**
+     * Generates a network and reads it into a graph of its drivable roads.
+     * @param nodes approximate number of road nodes
+     * @param seed seed of the network's randomness
+     * @return the graph
+     * @throws IOException if the temporary file cannot be written
+     */
+    static GraphDB graph(long nodes, long seed) throws IOException {
+        return load(nodes, seed, GraphDB::new);
+    }
+
+    /**
+     * Generates a network and reads it with load, for graphs read with other options or
+     * several graphs of the same network.
+     * @param nodes approximate number of road nodes
+     * @param seed seed of the network's randomness
+     * @param load reads the file at the given path
+     * @return what load returns
+     * @throws IOException if the temporary file cannot be written
+     */
+    static <T> T load(long nodes, long seed, Function<String, T> load) throws IOException {
+        File file = File.createTempFile("synthetic", ".osm.xml");
+        try {
+            new OsmGenerator(nodes, seed).write(file.getPath());
+            return load.apply(file.getPath());
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestComponents {
+    private static GraphDB graph;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        graph = SyntheticGraphs.graph(3000, 7);
+    }
+
+    @Test
+    public void testLabels() {
+        int n = graph.vertexCount();
+        int[] sizes = new int[graph.componentCount()];
+        for (int v = 0; v < n; v++) {
+            sizes[graph.componentOf(v)]++;
+            for (int e = graph.edgeStart(v); e < graph.edgeStart(v + 1); e++) {
+                assertEquals(graph.componentOf(v), graph.componentOf(graph.edgeTarget(v, e)));
+            }
+        }
+        /* The grid, then one two-node private drive per ten points of interest. */
+        assertEquals(4, sizes.length);
+        assertTrue(sizes[0] > n - 10);
+        for (int c = 1; c < sizes.length; c++) {
+            assertEquals(2, sizes[c]);
+        }
+    }
+
+    @Test
+    public void testUnreachable() {
+        int grid = 0, drive = 0;
+        while (graph.componentOf(drive) == 0) {
+            drive++;
+        }
+        long s = graph.idAt(grid), t = graph.idAt(drive);
+        Router.RouteResult result = Router.route(graph, s, t, true);
+        assertTrue(result.path.isEmpty());
+        assertEquals(0, result.stats.settled);
+        assertEquals(0, result.stats.pushes);
+
+        /* Snapping to the drive itself, or only to the grid. */
+        double lon = graph.lonAt(drive), lat = graph.latAt(drive);
+        assertEquals(t, graph.closest(lon, lat));
+        long snapped = graph.closest(lon, lat, true);
+        assertNotEquals(t, snapped);
+        assertEquals(0, graph.componentOf(graph.indexOf(snapped)));
+        assertTrue(Router.route(graph, s, snapped, false).path.size() > 0);
+    }
+}
@@ -0,0 +1,91 @@
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestContractedGraph {
+    private static GraphDB graph;
+    private static ContractedGraph full;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        graph = SyntheticGraphs.graph(3000, 7);
+        full = new ContractedGraph(graph, false);
+    }
+
+    private static double length(List<Long> path) {
+        double total = 0;
+        for (int i = 1; i < path.size(); i++) {
+            total += graph.distance(path.get(i - 1), path.get(i));
+        }
+        return total;
+    }
+
+    @Test
+    public void testCounts() {
+        ContractedGraph c = graph.searchGraph();
+        int n = graph.vertexCount();
+        assertEquals(n, full.junctionCount());
+        assertEquals(graph.edgeStart(n), full.edgeCount());
+        /* Shape points between blocks go; only junctions remain. */
+        assertTrue(c.junctionCount() + " of " + n, c.junctionCount() < n / 2);
+        int shapes = 0;
+        for (int v = 0; v < n; v++) {
+            if (c.junctionOf(v) < 0) {
+                shapes++;
+                assertTrue(c.chainOf(v) >= 0);
+                assertEquals(v, c.viaAt(c.chainPos(v)));
+            } else {
+                assertEquals(v, c.vertexOf(c.junctionOf(v)));
+            }
+        }
+        assertEquals(n, c.junctionCount() + shapes);
+        /* A chain through k shape points replaces k + 1 edges each way with one. */
+        assertEquals(graph.edgeStart(n), c.edgeCount() + 2 * shapes);
+    }
+
+    @Test
+    public void testSameRoutesAsFullGraph() {
+        ContractedGraph c = graph.searchGraph();
+        int n = graph.vertexCount();
+        Random random = new Random(7);
+        for (int q = 0; q < 200; q++) {
+            long s = graph.idAt(random.nextInt(n)), t = graph.idAt(random.nextInt(n));
+            List<Long> expected = Router.route(full, s, t, false).path;
+            List<Long> actual = Router.route(c, s, t, false).path;
+            assertEquals(expected.isEmpty(), actual.isEmpty());
+            if (actual.isEmpty()) {
+                continue;
+            }
+            assertEquals(s, (long) actual.get(0));
+            assertEquals(t, (long) actual.get(actual.size() - 1));
+            for (int i = 1; i < actual.size(); i++) {
+                int v = graph.indexOf(actual.get(i - 1)), w = graph.indexOf(actual.get(i));
+                assertTrue(graph.edgeBetween(v, w, -1) >= 0);
+            }
+            assertEquals(length(expected), length(actual), 1e-9);
+        }
+    }
+
+    @Test
+    public void testAlongOneChain() {
+        ContractedGraph c = graph.searchGraph();
+        int e = 0;
+        while (c.viaStart(e + 1) - c.viaStart(e) < 2) {
+            e++;
+        }
+        long a = graph.idAt(c.viaAt(c.viaStart(e)));
+        long b = graph.idAt(c.viaAt(c.viaStart(e) + 1));
+        assertEquals(2, Router.route(c, a, b, false).path.size());
+        assertEquals(2, Router.route(c, b, a, false).path.size());
+        assertEquals(1, Router.route(c, a, a, false).path.size());
+        long source = graph.idAt(c.vertexOf(c.edgeSource(e)));
+        List<Long> path = Router.route(c, source, b, false).path;
+        assertEquals(3, path.size());
+        assertEquals(a, (long) path.get(1));
+    }
+}
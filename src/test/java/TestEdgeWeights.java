@@ -0,0 +1,133 @@
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestEdgeWeights {
+    /** Returns a fresh graph, with no live weights, of the same network each time. */
+    private static GraphDB graph() throws Exception {
+        return SyntheticGraphs.graph(3000, 41);
+    }
+
+    /** Returns a route of at least a few vertices on g, searching random pairs. */
+    private static Router.RouteResult longRoute(GraphDB g, Random random) {
+        while (true) {
+            long from = g.idAt(random.nextInt(g.vertexCount()));
+            long to = g.idAt(random.nextInt(g.vertexCount()));
+            Router.RouteResult r = Router.route(g, from, to, false);
+            if (r.found && r.path.size() >= 6) {
+                return r;
+            }
+        }
+    }
+
+    /** Returns whether a path steps between a and b, either way. */
+    private static boolean uses(List<Long> path, long a, long b) {
+        for (int i = 1; i < path.size(); i++) {
+            long v = path.get(i - 1), w = path.get(i);
+            if (v == a && w == b || v == b && w == a) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void testClosedRoadIsAvoided() throws Exception {
+        GraphDB g = graph();
+        Random random = new Random(43);
+        for (int q = 0; q < 20; q++) {
+            Router.RouteResult before = longRoute(g, random);
+            List<Long> path = before.path;
+            int mid = path.size() / 2;
+            long a = path.get(mid), b = path.get(mid + 1);
+            long from = path.get(0), to = path.get(path.size() - 1);
+            g.updateWeights(new long[]{a}, new long[]{b},
+                    new double[]{Double.POSITIVE_INFINITY});
+            Router.RouteResult closed = Router.route(g, from, to, false);
+            if (closed.found) {
+                assertFalse(uses(closed.path, a, b));
+                assertTrue(closed.length >= before.length - 1e-9);
+                assertTrue(closed.length < Double.POSITIVE_INFINITY);
+            }
+            /* Reopening the road restores the route. */
+            g.updateWeights(new long[]{b}, new long[]{a}, new double[]{1});
+            Router.RouteResult reopened = Router.route(g, from, to, false);
+            assertEquals(before.length, reopened.length, 1e-9);
+        }
+    }
+
+    @Test
+    public void testFactorScalesLength() throws Exception {
+        GraphDB g = graph();
+        Random random = new Random(47);
+        int rerouted = 0;
+        for (int q = 0; q < 20; q++) {
+            Router.RouteResult before = longRoute(g, random);
+            List<Long> path = before.path;
+            long a = path.get(1), b = path.get(2);
+            long from = path.get(0), to = path.get(path.size() - 1);
+            double road = g.distance(a, b);
+            g.updateWeights(new long[]{a}, new long[]{b}, new double[]{3});
+            Router.RouteResult slowed = Router.route(g, from, to, false);
+            assertTrue(slowed.found);
+            /* No shorter, and if the road is kept, longer by at least twice the edge. */
+            assertTrue(slowed.length >= before.length - 1e-9);
+            assertTrue(slowed.length > before.length + 2 * road - 1e-6
+                    || !uses(slowed.path, a, b));
+            rerouted += uses(slowed.path, a, b) ? 0 : 1;
+            g.updateWeights(new long[]{a}, new long[]{b}, new double[]{1});
+        }
+        assertTrue(rerouted < 20);
+    }
+
+    @Test
+    public void testSearchesKeepTheirVersion() throws Exception {
+        GraphDB g = graph();
+        EdgeWeights before = g.weights();
+        assertEquals(0, before.version());
+        Random random = new Random(53);
+        List<Long> path = longRoute(g, random).path;
+        long a = path.get(2), b = path.get(3);
+        int v = g.indexOf(a), w = g.indexOf(b);
+        ContractedGraph c = g.searchGraph();
+        int forward = c.edgeContaining(g.edgeBetween(v, w, -1), v, w);
+        int backward = c.reverseOf(forward);
+        assertTrue(backward >= 0);
+        assertEquals(forward, c.reverseOf(backward));
+
+        assertEquals(1, g.updateWeights(new long[]{a}, new long[]{b}, new double[]{2}));
+        assertEquals(1, before.factor(forward), 0);
+        assertEquals(2, g.weights().factor(forward), 0);
+        assertEquals(2, g.weights().factor(backward), 0);
+        assertEquals(2, g.updateWeights(new long[0], new long[0], new double[0]));
+        assertEquals(2, g.weights().factor(backward), 0);
+        /* Versions share the pages an update leaves alone, but never the ones it changes. */
+        EdgeWeights second = g.weights();
+        g.updateWeights(new long[]{b}, new long[]{a}, new double[]{Double.POSITIVE_INFINITY});
+        assertEquals(2, second.factor(forward), 0);
+        assertEquals(Double.POSITIVE_INFINITY, g.weights().factor(forward), 0);
+        for (int e = 0; e < c.edgeCount(); e++) {
+            if (e != forward && e != backward) {
+                assertEquals(1, g.weights().factor(e), 0);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFactorBelowOne() throws Exception {
+        GraphDB g = graph();
+        int v = 0, w = g.edgeTarget(v, g.edgeStart(v));
+        g.updateWeights(new long[]{g.idAt(v)}, new long[]{g.idAt(w)}, new double[]{0.5});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoSuchEdge() throws Exception {
+        GraphDB g = graph();
+        g.updateWeights(new long[]{g.idAt(0)}, new long[]{g.idAt(0)}, new double[]{2});
+    }
+}
@@ -0,0 +1,68 @@
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestGraphOrder {
+    @Test
+    public void testHilbertCurve() {
+        /* The first 64 cells of the curve fill the 8 by 8 corner, each next to the last. */
+        int[][] cells = new int[64][];
+        for (int x = 0; x < 8; x++) {
+            for (int y = 0; y < 8; y++) {
+                long d = GraphDB.hilbert(x, y);
+                assertTrue(d < 64);
+                assertNull(cells[(int) d]);
+                cells[(int) d] = new int[] {x, y};
+            }
+        }
+        for (int d = 1; d < 64; d++) {
+            int dx = Math.abs(cells[d][0] - cells[d - 1][0]);
+            int dy = Math.abs(cells[d][1] - cells[d - 1][1]);
+            assertEquals(1, dx + dy);
+        }
+    }
+
+    @Test
+    public void testSameGraphEitherOrder() throws Exception {
+        GraphDB[] graphs = SyntheticGraphs.load(3000, 11,
+                path -> new GraphDB[] {new GraphDB(path), new GraphDB(path, false)});
+        GraphDB curve = graphs[0], input = graphs[1];
+        int n = curve.vertexCount();
+        assertEquals(input.vertexCount(), n);
+        assertEquals(input.edgeStart(n), curve.edgeStart(n));
+
+        /* Neighbours sit closer together in the arrays along the curve. */
+        assertTrue(meanGap(curve) * 4 < meanGap(input));
+
+        Random random = new Random(11);
+        for (int q = 0; q < 50; q++) {
+            long s = input.idAt(random.nextInt(n)), t = input.idAt(random.nextInt(n));
+            assertEquals(pathLength(input, Router.shortestPath(input, s, t)),
+                    pathLength(curve, Router.shortestPath(curve, s, t)), 1e-9);
+        }
+    }
+
+    private static double meanGap(GraphDB g) {
+        int n = g.vertexCount();
+        double total = 0;
+        for (int v = 0; v < n; v++) {
+            for (int e = g.edgeStart(v); e < g.edgeStart(v + 1); e++) {
+                total += Math.abs(g.edgeTarget(v, e) - v);
+            }
+        }
+        return total / g.edgeStart(n);
+    }
+
+    private static double pathLength(GraphDB g, List<Long> path) {
+        double total = 0;
+        for (int i = 1; i < path.size(); i++) {
+            total += g.distance(path.get(i - 1), path.get(i));
+        }
+        return total;
+    }
+}
@@ -0,0 +1,96 @@
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares GridIndex queries against brute force over random points around Berkeley.
+ */
+public class TestGridIndex {
+    private static final int NUM_POINTS = 5000;
+    private static final int NUM_QUERIES = 200;
+
+    private static double[][] randomPoints(Random r, int n) {
+        double[] lons = new double[n];
+        double[] lats = new double[n];
+        for (int i = 0; i < n; i++) {
+            lons[i] = MapServer.ROOT_ULLON + r.nextDouble() * (MapServer.ROOT_LRLON
+                    - MapServer.ROOT_ULLON);
+            lats[i] = MapServer.ROOT_LRLAT + r.nextDouble() * (MapServer.ROOT_ULLAT
+                    - MapServer.ROOT_LRLAT);
+        }
+        return new double[][] {lons, lats};
+    }
+
+    private static double[] sortedDistances(double[] lons, double[] lats,
+                                            double lon, double lat) {
+        double[] d = new double[lons.length];
+        for (int i = 0; i < lons.length; i++) {
+            d[i] = GraphDB.distance(lon, lat, lons[i], lats[i]);
+        }
+        Arrays.sort(d);
+        return d;
+    }
+
+    private static double[] distancesOf(int[] hits, double[] lons, double[] lats,
+                                        double lon, double lat) {
+        double[] d = new double[hits.length];
+        for (int i = 0; i < hits.length; i++) {
+            d[i] = GraphDB.distance(lon, lat, lons[hits[i]], lats[hits[i]]);
+        }
+        return d;
+    }
+
+    @Test
+    public void testNearestMatchesBruteForce() {
+        Random r = new Random(61);
+        double[][] pts = randomPoints(r, NUM_POINTS);
+        GridIndex index = new GridIndex(pts[0], pts[1]);
+        double[][] queries = randomPoints(r, NUM_QUERIES);
+        for (int q = 0; q < NUM_QUERIES; q++) {
+            double lon = queries[0][q];
+            double lat = queries[1][q];
+            int[] hits = index.nearest(lon, lat, 8, null);
+            double[] expected = Arrays.copyOf(sortedDistances(pts[0], pts[1], lon, lat), 8);
+            assertArrayEquals(expected, distancesOf(hits, pts[0], pts[1], lon, lat), 1e-12);
+        }
+    }
+
+    @Test
+    public void testWithinMatchesBruteForce() {
+        Random r = new Random(62);
+        double[][] pts = randomPoints(r, NUM_POINTS);
+        GridIndex index = new GridIndex(pts[0], pts[1]);
+        double[][] queries = randomPoints(r, NUM_QUERIES);
+        for (int q = 0; q < NUM_QUERIES; q++) {
+            double lon = queries[0][q];
+            double lat = queries[1][q];
+            double[] all = sortedDistances(pts[0], pts[1], lon, lat);
+            int expected = 0;
+            while (expected < all.length && all[expected] <= 0.3) {
+                expected++;
+            }
+            int[] hits = index.within(lon, lat, 0.3, null);
+            assertArrayEquals(Arrays.copyOf(all, expected),
+                    distancesOf(hits, pts[0], pts[1], lon, lat), 1e-12);
+        }
+    }
+
+    @Test
+    public void testFilterAndQueryOutsideGrid() {
+        double[] lons = {0.0, 1.0, 2.0, 3.0};
+        double[] lats = {0.0, 0.0, 0.0, 0.0};
+        GridIndex index = new GridIndex(lons, lats);
+        assertArrayEquals(new int[] {3, 2}, index.nearest(10.0, 0.0, 2, null));
+        assertArrayEquals(new int[] {1, 3}, index.nearest(-5.0, 0.0, 2, i -> i % 2 == 1));
+        assertEquals(4, index.nearest(1.0, 0.0, 10, null).length);
+        assertEquals(4, index.nearest(1.0, 0.0, Integer.MAX_VALUE, null).length);
+        assertEquals(4, index.within(1.0, 0.0, 1e300, null).length);
+        assertEquals(4, index.within(1.0, 0.0, Double.POSITIVE_INFINITY, null).length);
+        assertEquals(0, new GridIndex(new double[0], new double[0])
+                .nearest(0, 0, 3, null).length);
+    }
+}
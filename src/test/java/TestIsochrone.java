@@ -0,0 +1,68 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Reachability checks on the tiny graph, where every distance can be worked out by hand.
+ */
+public class TestIsochrone {
+    private static final String OSM_DB_PATH_TINY = "../library-sp18/data/tiny-clean.osm.xml";
+    private static GraphDB graphTiny;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graphTiny = new GraphDB(OSM_DB_PATH_TINY);
+        initialized = true;
+    }
+
+    @Test
+    public void testZeroBudget() {
+        Isochrone.Result r = Isochrone.reachable(graphTiny, 0.2, 38.2, 0);
+        assertEquals(22L, r.start);
+        assertEquals(1, r.nodes.length);
+        assertEquals(22L, r.nodes[0]);
+        assertEquals(0.0, r.distances[0], 0.0);
+    }
+
+    @Test
+    public void testSmallBudget() {
+        double budget = graphTiny.distance(22L, 11L) + 0.001;
+        Isochrone.Result r = Isochrone.reachable(graphTiny, 0.2, 38.2, budget);
+        HashSet<Long> actual = new HashSet<>();
+        for (long id : r.nodes) {
+            actual.add(id);
+        }
+        HashSet<Long> expected = new HashSet<>();
+        expected.add(22L);
+        expected.add(11L);
+        assertEquals(expected, actual);
+        assertEquals(graphTiny.distance(22L, 11L), r.distances[1], 0.00001);
+    }
+
+    @Test
+    public void testWholeGraph() {
+        Isochrone.Result r = Isochrone.reachable(graphTiny, 0.2, 38.2, 1000);
+        assertEquals(7, r.nodes.length);
+        for (int i = 1; i < r.distances.length; i++) {
+            assertTrue(r.distances[i - 1] <= r.distances[i]);
+        }
+        /* 22 and 55 lie inside the hull of the other five vertices. */
+        assertEquals(5, r.outline.length);
+    }
+
+    @Test
+    public void testRepeatedQueriesReuseState() {
+        Isochrone.reachable(graphTiny, 0.2, 38.2, 1000);
+        Isochrone.Result r = Isochrone.reachable(graphTiny, 0.6, 38.6, 0);
+        assertEquals(1, r.nodes.length);
+        assertEquals(66L, r.nodes[0]);
+    }
+}
@@ -0,0 +1,108 @@
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestMapMatcher {
+    private static GraphDB graph;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        graph = SyntheticGraphs.graph(5000, 19);
+    }
+
+    /**
+     * Returns the share of matches on an edge of the route driven, counting those a few
+     * metres into a side street at a junction of the route, where noise may put them.
+     */
+    private static double onRoute(List<MapMatcher.Match> matches, List<Long> route) {
+        Set<Long> vertices = new HashSet<>(route);
+        int on = 0;
+        for (MapMatcher.Match m : matches) {
+            long from = graph.idAt(m.snap.from), to = graph.idAt(m.snap.to);
+            boolean nearFrom = vertices.contains(from)
+                    && GraphDB.distance(m.snap.lon, m.snap.lat, graph.lon(from),
+                    graph.lat(from)) < 0.01;
+            boolean nearTo = vertices.contains(to)
+                    && GraphDB.distance(m.snap.lon, m.snap.lat, graph.lon(to),
+                    graph.lat(to)) < 0.01;
+            if (vertices.contains(from) && vertices.contains(to) || nearFrom || nearTo) {
+                on++;
+            }
+        }
+        return (double) on / matches.size();
+    }
+
+    @Test
+    public void testMatchesNoisyTraces() {
+        TraceGenerator traces = new TraceGenerator(graph, 0.002, 1);
+        MapMatcher matcher = new MapMatcher(graph);
+        for (int k = 0; k < 5; k++) {
+            TraceGenerator.Trace trace = traces.next(150);
+            List<MapMatcher.Match> matches = matcher.match(trace.lons, trace.lats);
+            assertEquals(150, matches.size());
+            assertTrue(onRoute(matches, trace.route) > 0.95);
+
+            /* One unbroken route through adjacent vertices. */
+            long prev = -1;
+            for (int i = 0; i < matches.size(); i++) {
+                MapMatcher.Match m = matches.get(i);
+                assertEquals(i, m.fix);
+                assertEquals(i > 0, m.connected);
+                for (long v : m.path) {
+                    assertTrue(prev == -1 || prev == v
+                            || graph.edgeBetween(graph.indexOf(prev), graph.indexOf(v), -1) >= 0);
+                    prev = v;
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testStreamEmitsBeforeTheEnd() {
+        TraceGenerator.Trace trace = new TraceGenerator(graph, 0.002, 2).next(200);
+        List<MapMatcher.Match> batch = new MapMatcher(graph).match(trace.lons, trace.lats);
+
+        for (int window : new int[] {MapMatcher.DEFAULT_WINDOW, 3}) {
+            MapMatcher matcher = new MapMatcher(graph, MapMatcher.DEFAULT_SIGMA,
+                    MapMatcher.DEFAULT_BETA, MapMatcher.DEFAULT_RADIUS,
+                    MapMatcher.DEFAULT_CANDIDATES, window);
+            List<MapMatcher.Match> streamed = new ArrayList<>();
+            MapMatcher.Stream stream = matcher.stream(streamed::add);
+            int mostBehind = 0;
+            for (int i = 0; i < trace.lons.length; i++) {
+                stream.add(trace.lons[i], trace.lats[i]);
+                mostBehind = Math.max(mostBehind, i + 1 - streamed.size());
+            }
+            stream.finish();
+            assertEquals(trace.lons.length, streamed.size());
+            /* Never more than the window undecided. */
+            assertTrue(mostBehind + " behind", mostBehind <= window + 1);
+            if (window == MapMatcher.DEFAULT_WINDOW) {
+                for (int i = 0; i < batch.size(); i++) {
+                    assertEquals(batch.get(i).snap.edge, streamed.get(i).snap.edge);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBreaksWhereNoRoadIsNear() {
+        TraceGenerator.Trace trace = new TraceGenerator(graph, 0.002, 3).next(40);
+        double[] lons = trace.lons.clone(), lats = trace.lats.clone();
+        /* A fix far off the map splits the trace in two. */
+        lons[20] += 1;
+        List<MapMatcher.Match> matches = new MapMatcher(graph).match(lons, lats);
+        assertEquals(39, matches.size());
+        assertFalse(matches.get(20).connected);
+        assertEquals(21, matches.get(20).fix);
+        assertTrue(matches.get(19).connected);
+    }
+}
@@ -0,0 +1,71 @@
+import org.junit.Test;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestMetrics {
+
+    @Test
+    public void testBucketsRoundTrip() {
+        for (long v = 0; v < 1L << 40; v = v * 3 / 2 + 1) {
+            int b = LatencyHistogram.bucketOf(v);
+            assertTrue(b >= 0 && b < LatencyHistogram.numBuckets());
+            long upper = LatencyHistogram.upperBound(b);
+            assertTrue(upper >= v);
+            /* Buckets are at most 1/16 of their values wide. */
+            assertTrue(upper - v <= Math.max(0, v / 16));
+            if (b > 0) {
+                assertTrue(LatencyHistogram.upperBound(b - 1) < v);
+            }
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.valueAt(0.5));
+        for (int i = 1; i <= 1000; i++) {
+            h.record(i * 1000L);
+        }
+        assertEquals(1000, h.count());
+        assertEquals(500500000L, h.sum());
+        long p50 = h.valueAt(0.5);
+        long p99 = h.valueAt(0.99);
+        assertTrue(p50 >= 500000 && p50 <= 500000 * 17 / 16);
+        assertTrue(p99 >= 990000 && p99 <= 990000 * 17 / 16);
+        h.record(-5);
+        assertEquals(0, h.valueAt(0.0001));
+    }
+
+    @Test
+    public void testPrometheusText() {
+        Metrics m = new Metrics();
+        LongAdder requests = m.counter("test_requests_total", "Requests.", "endpoint", "/a");
+        requests.add(3);
+        assertTrue(requests == m.counter("test_requests_total", "Requests.", "endpoint", "/a"));
+        m.gauge("test_queue", "Queue length.", "pool", "raster", () -> 7);
+        LatencyHistogram h = m.histogram("test_seconds", "Latency.", "phase", "encode");
+        h.record(200000);
+        h.record(3000000000L);
+        String text = m.toPrometheus();
+        assertTrue(text.contains("# TYPE test_requests_total counter\n"));
+        assertTrue(text.contains("test_requests_total{endpoint=\"/a\"} 3\n"));
+        assertTrue(text.contains("test_queue{pool=\"raster\"} 7\n"));
+        assertTrue(text.contains("# TYPE test_seconds histogram\n"));
+        assertTrue(text.contains("test_seconds_bucket{phase=\"encode\",le=\"0.0001\"} 0\n"));
+        assertTrue(text.contains("test_seconds_bucket{phase=\"encode\",le=\"0.00025\"} 1\n"));
+        assertTrue(text.contains("test_seconds_bucket{phase=\"encode\",le=\"2.5\"} 1\n"));
+        assertTrue(text.contains("test_seconds_bucket{phase=\"encode\",le=\"+Inf\"} 2\n"));
+        assertTrue(text.contains("test_seconds_count{phase=\"encode\"} 2\n"));
+        assertTrue(text.contains("test_seconds_sum{phase=\"encode\"} 3.0002\n"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTypeClash() {
+        Metrics m = new Metrics();
+        m.counter("test_total", "Total.", "kind", "a");
+        m.histogram("test_total", "Total.", "kind", "b");
+    }
+}
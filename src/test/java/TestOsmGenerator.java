@@ -0,0 +1,62 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestOsmGenerator {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static String generate(long nodes, long seed) throws Exception {
+        StringWriter out = new StringWriter();
+        new OsmGenerator(nodes, seed).write(out);
+        return out.toString();
+    }
+
+    @Test
+    public void testDeterministic() throws Exception {
+        assertEquals(generate(2000, 1), generate(2000, 1));
+        assertNotEquals(generate(2000, 1), generate(2000, 2));
+    }
+
+    @Test
+    public void testGraphLoads() throws Exception {
+        OsmGenerator generator = new OsmGenerator(5000, 39);
+        File file = tmp.newFile("synthetic.osm.xml");
+        generator.write(file.getPath());
+        GraphDB g = new GraphDB(file.getPath());
+
+        /* Missing blocks cut off a few corners, so a little under the asked-for size. */
+        int vertices = g.vertexCount();
+        assertTrue("vertices " + vertices, vertices > 4000 && vertices <= 5000);
+        int maxDegree = 0;
+        for (int i = 0; i < vertices; i++) {
+            maxDegree = Math.max(maxDegree, g.edgeStart(i + 1) - g.edgeStart(i));
+        }
+        assertEquals(4, maxDegree);
+
+        /* Corner to corner along the arterials. */
+        String xml = new String(Files.readAllBytes(file.toPath()), "UTF-8");
+        assertTrue(xml.contains("1st Boulevard"));
+        int last = generator.rows() - 1;
+        double lonSpan = generator.cols() * 0.001, latSpan = generator.rows() * 0.0008;
+        double centerLon = (MapServer.ROOT_ULLON + MapServer.ROOT_LRLON) / 2;
+        double centerLat = (MapServer.ROOT_ULLAT + MapServer.ROOT_LRLAT) / 2;
+        List<Long> path = Router.shortestPath(g, centerLon - lonSpan / 2,
+                centerLat + latSpan / 2, centerLon + lonSpan / 2 - 0.001,
+                centerLat - latSpan / 2 + 0.0008);
+        assertFalse("no route across " + last + " rows", path.isEmpty());
+        assertFalse(Router.routeDirections(g, path).isEmpty());
+
+        assertFalse(g.getLocationsByPrefix("cafe").isEmpty());
+    }
+}
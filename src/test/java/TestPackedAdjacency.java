@@ -0,0 +1,56 @@
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestPackedAdjacency {
+    @Test
+    public void testRoundTrip() {
+        Random random = new Random(44);
+        int n = 1000;
+        int[] start = new int[n + 1];
+        int[] target = new int[n * 6];
+        int e = 0;
+        for (int v = 0; v < n; v++) {
+            start[v] = e;
+            int degree = random.nextInt(7);
+            for (int k = 0; k < degree; k++) {
+                /* Mostly near neighbours either side, sometimes far ones. */
+                target[e++] = random.nextInt(4) == 0 ? random.nextInt(n)
+                        : Math.max(0, Math.min(n - 1, v + random.nextInt(9) - 4));
+            }
+        }
+        start[n] = e;
+        PackedAdjacency adjacency = new PackedAdjacency(start, target);
+        assertEquals(6, adjacency.maxDegree());
+        int[] out = new int[adjacency.maxDegree()];
+        for (int v = 0; v < n; v++) {
+            assertEquals(start[v], adjacency.edgeStart(v));
+            int degree = adjacency.targets(v, out);
+            assertEquals(start[v + 1] - start[v], degree);
+            for (int k = 0; k < degree; k++) {
+                assertEquals(target[start[v] + k], out[k]);
+                assertEquals(target[start[v] + k], adjacency.target(v, start[v] + k));
+            }
+        }
+        /* Well under the four bytes a target takes in an int array. */
+        assertTrue(adjacency.sizeInBytes() < 4L * (e + 2 * (n + 1)));
+    }
+
+    @Test
+    public void testLargeSteps() {
+        int[] start = {0, 3, 3, 4};
+        int[] target = {Integer.MAX_VALUE - 5, 0, 1 << 30, 0};
+        PackedAdjacency adjacency = new PackedAdjacency(start, target);
+        int[] out = new int[3];
+        assertEquals(3, adjacency.targets(0, out));
+        assertEquals(Integer.MAX_VALUE - 5, out[0]);
+        assertEquals(0, out[1]);
+        assertEquals(1 << 30, out[2]);
+        assertEquals(0, adjacency.targets(1, out));
+        assertEquals(1, adjacency.targets(2, out));
+        assertEquals(0, out[0]);
+    }
+}
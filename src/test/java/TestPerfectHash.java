@@ -0,0 +1,59 @@
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestPerfectHash {
+    @Test
+    public void testSlotsAreAPermutation() {
+        Random random = new Random(45);
+        for (int n : new int[] {1, 2, 3, 10, 1000, 100000}) {
+            Set<Long> distinct = new HashSet<>();
+            while (distinct.size() < n) {
+                /* OSM-like ids: mostly clustered, some anywhere. */
+                distinct.add(random.nextBoolean() ? 4_000_000_000L + random.nextInt(n * 4)
+                        : random.nextLong());
+            }
+            long[] keys = new long[n];
+            int k = 0;
+            for (long key : distinct) {
+                keys[k++] = key;
+            }
+            PerfectHash hash = new PerfectHash(keys);
+            assertEquals(n, hash.size());
+            boolean[] seen = new boolean[n];
+            for (long key : keys) {
+                int slot = hash.slot(key);
+                assertTrue(slot >= 0 && slot < n);
+                assertTrue("slot " + slot + " twice", !seen[slot]);
+                seen[slot] = true;
+            }
+            int slot = hash.slot(-1L);
+            assertTrue(slot >= 0 && slot < n);
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        assertEquals(-1, new PerfectHash(new long[0]).slot(42L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicate() {
+        new PerfectHash(new long[] {7, 8, 9, 7, 10, 11, 12});
+    }
+
+    @Test
+    public void testGraphIndexOf() throws Exception {
+        GraphDB g = new GraphDB("../library-sp18/data/tiny-clean.osm.xml");
+        for (int i = 0; i < g.vertexCount(); i++) {
+            assertEquals(i, g.indexOf(g.idAt(i)));
+        }
+        assertEquals(-1, g.indexOf(12L));
+        assertEquals(-1, g.indexOf(-22L));
+    }
+}
@@ -0,0 +1,98 @@
+import org.junit.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Random;
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestPngEncoder {
+    private static final String TILE = "data/proj3_imgs/d3_x2_y3.png";
+
+    private static BufferedImage tile() throws Exception {
+        BufferedImage src = ImageIO.read(new File(TILE));
+        BufferedImage img = new BufferedImage(src.getWidth(), src.getHeight(),
+                BufferedImage.TYPE_INT_RGB);
+        img.getGraphics().drawImage(src, 0, 0, null);
+        return img;
+    }
+
+    private static BufferedImage roundTrip(PngEncoder e, BufferedImage img) throws Exception {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        e.write(img, os);
+        return ImageIO.read(new ByteArrayInputStream(os.toByteArray()));
+    }
+
+    private static void assertSamePixels(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void testEveryFilterAndLevelRoundTrips() throws Exception {
+        BufferedImage img = tile();
+        for (PngEncoder.Filter f : PngEncoder.Filter.values()) {
+            for (int level : new int[] {0, 1, 6, 9}) {
+                assertSamePixels(img, roundTrip(new PngEncoder(level, f, false), img));
+            }
+        }
+    }
+
+    @Test
+    public void testLargeImageSpansManyChunks() throws Exception {
+        Random r = new Random(31);
+        BufferedImage img = new BufferedImage(700, 500, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < img.getHeight(); y++) {
+            for (int x = 0; x < img.getWidth(); x++) {
+                img.setRGB(x, y, r.nextInt());
+            }
+        }
+        assertSamePixels(img, roundTrip(new PngEncoder(1, PngEncoder.Filter.SUB, true), img));
+    }
+
+    @Test
+    public void testIndexedWhenFewColours() throws Exception {
+        BufferedImage img = new BufferedImage(300, 200, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        g.setColor(new Color(240, 235, 226));
+        g.fillRect(0, 0, 300, 200);
+        g.setColor(MapServer.ROUTE_STROKE_COLOR);
+        g.fillRect(50, 50, 100, 20);
+        ByteArrayOutputStream rgb = new ByteArrayOutputStream();
+        new PngEncoder(6, PngEncoder.Filter.UP, false).write(img, rgb);
+        ByteArrayOutputStream indexed = new ByteArrayOutputStream();
+        new PngEncoder(6, PngEncoder.Filter.UP, true).write(img, indexed);
+        assertTrue(indexed.size() < rgb.size());
+        assertSamePixels(img, ImageIO.read(new ByteArrayInputStream(indexed.toByteArray())));
+    }
+
+    @Test
+    public void testSubimagesKeepTheirOwnPixels() throws Exception {
+        Random r = new Random(37);
+        BufferedImage img = new BufferedImage(120, 90, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < img.getHeight(); y++) {
+            for (int x = 0; x < img.getWidth(); x++) {
+                img.setRGB(x, y, r.nextInt());
+            }
+        }
+        /* Shorter stride than the buffer's, an offset, and a buffer of more rows. */
+        for (BufferedImage sub : new BufferedImage[] {img.getSubimage(10, 20, 50, 40),
+            img.getSubimage(0, 0, 120, 30), img.getSubimage(0, 30, 120, 60)}) {
+            assertSamePixels(sub, roundTrip(new PngEncoder(1, PngEncoder.Filter.NONE,
+                    false), sub));
+            assertSamePixels(sub, roundTrip(new PngEncoder(1, PngEncoder.Filter.NONE,
+                    true), sub));
+        }
+    }
+}
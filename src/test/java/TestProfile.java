@@ -0,0 +1,136 @@
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestProfile {
+    /** The graph read with no profile given. */
+    private static GraphDB plain;
+    /** One graph of every profile's ways. */
+    private static GraphDB shared;
+    /** A graph of each profile's ways alone. */
+    private static Map<Profile, GraphDB> separate = new EnumMap<>(Profile.class);
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        SyntheticGraphs.load(3000, 29, path -> {
+            plain = new GraphDB(path);
+            shared = new GraphDB(path, EnumSet.allOf(Profile.class));
+            for (Profile p : Profile.values()) {
+                separate.put(p, new GraphDB(path, EnumSet.of(p)));
+            }
+            return shared;
+        });
+    }
+
+    @Test
+    public void testAccessTags() {
+        int drive = Profile.DRIVE.bit(), bike = Profile.BIKE.bit(), walk = Profile.WALK.bit();
+        assertEquals(Profile.ALL, Profile.access("residential", "", ""));
+        assertEquals(drive | walk, Profile.access("motorway", "", "yes"));
+        assertEquals(drive, Profile.access("motorway", "", ""));
+        assertEquals(walk, Profile.access("footway", "", ""));
+        assertEquals(bike | walk, Profile.access("footway", "designated", ""));
+        assertEquals(bike, Profile.access("cycleway", "", "no"));
+        assertEquals(drive | walk, Profile.access("primary", "no", ""));
+        assertEquals(0, Profile.access("", "yes", "yes"));
+        assertEquals(0, Profile.access("proposed", "", ""));
+    }
+
+    @Test
+    public void testDefaultGraphIsDriveOnly() {
+        GraphDB g = plain;
+        GraphDB drive = separate.get(Profile.DRIVE);
+        assertEquals(drive.vertexCount(), g.vertexCount());
+        assertEquals(drive.edgeStart(drive.vertexCount()), g.edgeStart(g.vertexCount()));
+        assertEquals(Profile.DRIVE.bit(), g.profiles());
+        /* The paths add edges, and vertices only some profiles reach. */
+        assertTrue(shared.edgeStart(shared.vertexCount())
+                > drive.edgeStart(drive.vertexCount()));
+    }
+
+    @Test
+    public void testSharedRoutesMatchSeparateGraphs() {
+        Random random = new Random(31);
+        int differ = 0;
+        for (Profile p : Profile.values()) {
+            GraphDB own = separate.get(p);
+            for (int q = 0; q < 60; q++) {
+                long from = own.idAt(random.nextInt(own.vertexCount()));
+                long to = own.idAt(random.nextInt(own.vertexCount()));
+                Router.RouteResult expected = Router.route(own.searchGraph(), from, to, p,
+                        false);
+                Router.RouteResult actual = Router.route(shared.searchGraph(), from, to, p,
+                        false);
+                assertEquals(expected.found, actual.found);
+                if (expected.found) {
+                    assertEquals(expected.length, actual.length, 1e-6);
+                    /* Every step is on an edge the profile may use. */
+                    for (int i = 1; i < actual.path.size(); i++) {
+                        int v = shared.indexOf(actual.path.get(i - 1));
+                        int w = shared.indexOf(actual.path.get(i));
+                        assertNotEquals(0, accessBetween(v, w) & p.bit());
+                    }
+                }
+                if (p == Profile.WALK && expected.found) {
+                    Router.RouteResult drive = Router.route(shared.searchGraph(), from, to,
+                            Profile.DRIVE, false);
+                    if (drive.found && drive.length > actual.length + 1e-9) {
+                        differ++;
+                    }
+                }
+            }
+        }
+        /* Footways cut some corners cars have to drive around. */
+        assertTrue(differ > 0);
+    }
+
+    /** Returns the union of the access masks of the edges from v to w. */
+    private static int accessBetween(int v, int w) {
+        int[] targets = new int[shared.maxDegree()];
+        int degree = shared.targets(v, targets);
+        int mask = 0;
+        for (int k = 0; k < degree; k++) {
+            if (targets[k] == w) {
+                mask |= shared.edgeAccess(shared.edgeStart(v) + k);
+            }
+        }
+        return mask;
+    }
+
+    @Test
+    public void testSnapsFollowProfile() {
+        Random random = new Random(37);
+        int footways = 0;
+        for (int q = 0; q < 500; q++) {
+            int v = random.nextInt(shared.vertexCount());
+            double lon = shared.lonAt(v) + (random.nextDouble() - 0.5) * 0.002;
+            double lat = shared.latAt(v) + (random.nextDouble() - 0.5) * 0.002;
+            for (Profile p : Profile.values()) {
+                SegmentIndex.Snap snap = shared.snap(lon, lat, p);
+                assertNotEquals(0, shared.edgeAccess(snap.edge) & p.bit());
+                int closest = shared.indexOf(shared.closest(lon, lat, false, p));
+                assertTrue(shared.allows(closest, p));
+            }
+            SegmentIndex.Snap walk = shared.snap(lon, lat, Profile.WALK);
+            footways += shared.edgeAccess(walk.edge) == Profile.WALK.bit() ? 1 : 0;
+            /* The default snap is for driving. */
+            assertNotEquals(0, shared.edgeAccess(shared.snap(lon, lat).edge)
+                    & Profile.DRIVE.bit());
+        }
+        assertTrue(footways > 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingProfile() {
+        GraphDB walk = separate.get(Profile.WALK);
+        walk.closest(walk.lonAt(0), walk.latAt(0), false, Profile.BIKE);
+    }
+}
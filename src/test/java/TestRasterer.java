@@ -47,6 +47,45 @@ public class TestRasterer {
         }
     }
 
+    @Test
+    public void testCropToQuery() throws Exception {
+        List<Map<String, Double>> testParams = paramsFromFile();
+        for (int i = 0; i < NUM_TESTS; i++) {
+            Map<String, Double> params = testParams.get(i);
+            Map<String, Object> raster = rasterer.getMapRaster(params);
+            String[][] grid = (String[][]) raster.get("render_grid");
+            double[] window = Rasterer.cropToQuery(raster, params);
+            /* Every query box lies inside the map, so the crop is the query box. */
+            assertEquals(params.get("ullon"), (double) raster.get("raster_ul_lon"),
+                    DOUBLE_THRESHOLD);
+            assertEquals(params.get("lrlat"), (double) raster.get("raster_lr_lat"),
+                    DOUBLE_THRESHOLD);
+            assertEquals(params.get("w").intValue(), raster.get("raster_width"));
+            assertEquals(params.get("h").intValue(), raster.get("raster_height"));
+            assertTrue(window[0] >= 0 && window[1] >= 0);
+            assertTrue(window[0] + window[2] <= grid[0].length * MapServer.TILE_SIZE + 1e-6);
+            assertTrue(window[1] + window[3] <= grid.length * MapServer.TILE_SIZE + 1e-6);
+        }
+    }
+
+    @Test
+    public void testCropToQueryClipsToMap() {
+        Map<String, Double> params = new HashMap<>();
+        double lonSpan = MapServer.ROOT_LRLON - MapServer.ROOT_ULLON;
+        params.put("ullon", MapServer.ROOT_ULLON - lonSpan / 2);
+        params.put("lrlon", MapServer.ROOT_LRLON - lonSpan / 2);
+        params.put("ullat", MapServer.ROOT_ULLAT);
+        params.put("lrlat", MapServer.ROOT_LRLAT);
+        params.put("w", 512.0);
+        params.put("h", 400.0);
+        Map<String, Object> raster = rasterer.getMapRaster(params);
+        double[] window = Rasterer.cropToQuery(raster, params);
+        assertEquals(MapServer.ROOT_ULLON, (double) raster.get("raster_ul_lon"), DOUBLE_THRESHOLD);
+        assertEquals(256, raster.get("raster_width"));
+        assertEquals(400, raster.get("raster_height"));
+        assertEquals(0, window[0], 1e-6);
+    }
+
     private List<Map<String, Double>> paramsFromFile() throws Exception {
         List<String> lines = Files.readAllLines(Paths.get(PARAMS_FILE), Charset.defaultCharset());
         List<Map<String, Double>> testParams = new ArrayList<>();
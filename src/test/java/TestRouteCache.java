@@ -0,0 +1,58 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestRouteCache {
+    private static List<Router.NavigationDirection> directions(String way) {
+        List<Router.NavigationDirection> d = new ArrayList<>();
+        Router.NavigationDirection nd = new Router.NavigationDirection();
+        nd.way = way;
+        d.add(nd);
+        return d;
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        RouteCache cache = new RouteCache(1 << 20, 4);
+        assertNull(cache.get(1, 2));
+        cache.put(1, 2, new long[] {1, 5, 2}, directions("Bancroft Way"),
+                new RouteOverlay(new double[6]));
+        RouteCache.Entry e = cache.get(1, 2);
+        assertNotNull(e);
+        assertEquals(3, e.path.length);
+        assertEquals("Bancroft Way", e.directions.get(0).way);
+        assertNull(cache.get(2, 1));
+        assertEquals(1, cache.hits());
+        assertEquals(2, cache.misses());
+        assertEquals(1.0 / 3, cache.hitRatio(), 1e-12);
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsedByBytes() {
+        long[] path = new long[100];
+        List<Router.NavigationDirection> d = directions("Telegraph Avenue");
+        RouteOverlay overlay = new RouteOverlay(new double[200]);
+        long entryBytes = new RouteCache.Entry(path, d, overlay).bytes;
+        /* One segment with room for exactly three entries. */
+        RouteCache cache = new RouteCache(3 * entryBytes, 1);
+        cache.put(1, 1, path, d, overlay);
+        cache.put(2, 2, path, d, overlay);
+        cache.put(3, 3, path, d, overlay);
+        cache.get(1, 1);
+        cache.put(4, 4, path, d, overlay);
+        assertEquals(3, cache.size());
+        assertNull(cache.get(2, 2));
+        assertNotNull(cache.get(1, 1));
+        assertEquals(1, cache.evictions());
+        assertTrue(cache.sizeBytes() <= 3 * entryBytes);
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.sizeBytes());
+    }
+}
@@ -0,0 +1,63 @@
+import org.junit.Test;
+
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestRouteOverlay {
+    /** A zigzag across the root tile whose wiggles are about 1e-5 degrees tall. */
+    private static double[] zigzag(int n) {
+        double[] coords = new double[2 * n];
+        for (int i = 0; i < n; i++) {
+            coords[2 * i] = MapServer.ROOT_ULLON
+                    + (MapServer.ROOT_LRLON - MapServer.ROOT_ULLON) * i / (n - 1);
+            coords[2 * i + 1] = 37.85 + (i % 2) * 1e-5;
+        }
+        return coords;
+    }
+
+    private static int segments(Path2D.Float path) {
+        int lines = 0;
+        float[] c = new float[6];
+        for (PathIterator it = path.getPathIterator(null); !it.isDone(); it.next()) {
+            if (it.currentSegment(c) == PathIterator.SEG_LINETO) {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    @Test
+    public void testSimplificationDependsOnDepth() {
+        RouteOverlay overlay = new RouteOverlay(zigzag(1001));
+        /* At depth 0 a pixel is far larger than a wiggle, so only the ends survive. */
+        assertEquals(4, overlay.simplified(0).length);
+        /* At depth 7 a pixel is about 2.7e-6 degrees, so every wiggle is kept. */
+        assertEquals(2002, overlay.simplified(7).length);
+        assertTrue(overlay.simplified(0) == overlay.simplified(0));
+    }
+
+    @Test
+    public void testSimplifyKeepsCorners() {
+        double[] l = {0, 0, 1, 0, 2, 0, 2, 1, 2, 2};
+        double[] s = RouteOverlay.simplify(l, 0.1, 0.1);
+        assertEquals(6, s.length);
+        assertEquals(2.0, s[2], 0.0);
+        assertEquals(0.0, s[3], 0.0);
+    }
+
+    @Test
+    public void testClipsSegmentsOutsideRaster() {
+        /* Raster covers lon [0, 10] and lat [0, 10] at one degree per pixel. */
+        double[] inside = {1, 9, 5, 5, 9, 1};
+        assertEquals(2, segments(RouteOverlay.clippedPath(inside, 0, 10, 1, 1, 10, 10, 0)));
+        double[] outside = {20, 5, 30, 5, 40, 5};
+        assertNull(RouteOverlay.clippedPath(outside, 0, 10, 1, 1, 10, 10, 0));
+        /* Leaves the raster, wanders off, and comes back: the excursion is dropped. */
+        double[] excursion = {5, 5, 15, 5, 30, 5, 15, 6, 5, 6};
+        assertEquals(2, segments(RouteOverlay.clippedPath(excursion, 0, 10, 1, 1, 10, 10, 0)));
+    }
+}
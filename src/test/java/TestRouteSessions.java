@@ -0,0 +1,52 @@
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestRouteSessions {
+    private static RouteOverlay route(double... lons) {
+        double[] coords = new double[2 * lons.length];
+        for (int i = 0; i < lons.length; i++) {
+            coords[2 * i] = lons[i];
+        }
+        return new RouteOverlay(coords);
+    }
+
+    @Test
+    public void testRoutesAreSeparatePerToken() {
+        RouteSessions s = new RouteSessions(1000, 10);
+        s.put("a", route(1, 2, 3), 0);
+        s.put("b", route(4, 5), 0);
+        assertEquals(3, s.get("a", 1).size());
+        assertEquals(2, s.get("b", 1).size());
+        s.remove("a");
+        assertNull(s.get("a", 2));
+        assertEquals(2, s.get("b", 2).size());
+        assertNull(s.get(null, 2));
+    }
+
+    @Test
+    public void testExpiresAfterTtl() {
+        RouteSessions s = new RouteSessions(1000, 10);
+        s.put("a", route(1), 0);
+        s.put("b", route(2), 0);
+        /* Reading a route keeps it alive. */
+        assertEquals(1, s.get("a", 900).size());
+        assertEquals(1, s.get("a", 1800).size());
+        assertNull(s.get("b", 1800));
+        s.sweep(5000);
+        assertEquals(0, s.size());
+    }
+
+    @Test
+    public void testSizeIsCapped() {
+        RouteSessions s = new RouteSessions(1000000, 100);
+        for (int i = 0; i < 10000; i++) {
+            s.put("t" + i, route(i), i);
+            assertTrue(s.size() <= 100);
+        }
+        assertEquals(1, s.get("t9999", 10000).size());
+        assertNull(s.get("t0", 10000));
+    }
+}
@@ -5,6 +5,8 @@ import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Created by hug, 4/9/2018. Basic tests for A* on the tiny graph.
@@ -63,4 +65,21 @@ public class TestRouterTiny {
         expected.add(55L);
         assertEquals(expected, actual);
     }
+
+    @Test
+    public void testSearchStats() {
+        Router.RouteResult result = Router.route(graphTiny, 0.4, 38.1, 0.4, 38.6, true);
+        assertEquals(Router.shortestPath(graphTiny, 0.4, 38.1, 0.4, 38.6), result.path);
+        Router.SearchStats stats = result.stats;
+        /* Every settled vertex was pushed, and every push but the start's (two from
+         * partway along a chain) followed a relaxation. */
+        assertTrue(stats.settled >= 2);
+        assertTrue(stats.pushes >= stats.settled);
+        assertTrue(stats.pops == stats.settled && stats.pops <= stats.pushes);
+        assertTrue(stats.pushes <= stats.relaxed + 2);
+        assertTrue(stats.maxFringe >= 1 && stats.maxFringe <= stats.pushes);
+        assertTrue(stats.searchNanos > 0);
+
+        assertNull(Router.route(graphTiny, 41L, 46L, false).stats);
+    }
 }
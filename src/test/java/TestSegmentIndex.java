@@ -0,0 +1,144 @@
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestSegmentIndex {
+    private static GraphDB graph;
+    private static double cosLat;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        graph = SyntheticGraphs.graph(3000, 11);
+        double lo = Double.POSITIVE_INFINITY, hi = Double.NEGATIVE_INFINITY;
+        for (int v = 0; v < graph.vertexCount(); v++) {
+            lo = Math.min(lo, graph.latAt(v));
+            hi = Math.max(hi, graph.latAt(v));
+        }
+        cosLat = Math.cos(Math.toRadians((lo + hi) / 2));
+    }
+
+    /** Squared distance in the index's plane from a point to the segment from v to w. */
+    private static double segmentDistance(double lon, double lat, int v, int w) {
+        double ax = graph.lonAt(v) * cosLat, ay = graph.latAt(v);
+        double dx = graph.lonAt(w) * cosLat - ax, dy = graph.latAt(w) - ay;
+        double len2 = dx * dx + dy * dy;
+        double t = len2 == 0 ? 0 : ((lon * cosLat - ax) * dx + (lat - ay) * dy) / len2;
+        t = Math.max(0, Math.min(1, t));
+        double px = ax + t * dx - lon * cosLat, py = ay + t * dy - lat;
+        return px * px + py * py;
+    }
+
+    private static double length(List<Long> path) {
+        double total = 0;
+        for (int i = 1; i < path.size(); i++) {
+            total += graph.distance(path.get(i - 1), path.get(i));
+        }
+        return total;
+    }
+
+    /** Returns the length of the route between two vertices, infinite if there is none. */
+    private static double routeLength(int s, int t) {
+        Router.RouteResult route = Router.route(graph, graph.idAt(s), graph.idAt(t), false);
+        return route.found ? length(route.path) : Double.POSITIVE_INFINITY;
+    }
+
+    /** Returns the length of a route from a snapped point, including its partial edge. */
+    private static double length(SegmentIndex.Snap start, Router.RouteResult route) {
+        int first = graph.indexOf(route.path.get(0));
+        double lead = first == start.from ? start.offset
+                : graph.edgeLength(start.edge) - start.offset;
+        return lead + length(route.path);
+    }
+
+    @Test
+    public void testNearestMatchesBruteForce() {
+        int[] targets = new int[graph.maxDegree()];
+        Random random = new Random(3);
+        double lon0 = graph.lonAt(0), lat0 = graph.latAt(0);
+        for (int q = 0; q < 200; q++) {
+            double lon = lon0 + (random.nextDouble() - 0.5) * 0.05;
+            double lat = lat0 + (random.nextDouble() - 0.5) * 0.05;
+            double best = Double.POSITIVE_INFINITY;
+            for (int v = 0; v < graph.vertexCount(); v++) {
+                int degree = graph.targets(v, targets);
+                for (int k = 0; k < degree; k++) {
+                    best = Math.min(best, segmentDistance(lon, lat, v, targets[k]));
+                }
+            }
+            SegmentIndex.Snap snap = graph.snap(lon, lat);
+            assertEquals(best, segmentDistance(lon, lat, snap.from, snap.to), 1e-15);
+            assertEquals(snap.to, graph.edgeTarget(snap.from, snap.edge));
+        }
+    }
+
+    @Test
+    public void testProjection() {
+        int[] targets = new int[graph.maxDegree()];
+        for (int v = 0; v < graph.vertexCount(); v += 97) {
+            int w = targets[graph.targets(v, targets) - 1];
+            double lon = graph.lonAt(v) + 0.3 * (graph.lonAt(w) - graph.lonAt(v));
+            double lat = graph.latAt(v) + 0.3 * (graph.latAt(w) - graph.latAt(v));
+            SegmentIndex.Snap snap = graph.snap(lon, lat);
+            assertEquals(0, snap.distance, 1e-9);
+            assertEquals(lon, snap.lon, 1e-9);
+            assertEquals(lat, snap.lat, 1e-9);
+            /* The point is on the edge either way round. */
+            double fraction = snap.from == v ? 0.3 : 0.7;
+            assertEquals(fraction, snap.fraction, 1e-6);
+            assertEquals(fraction * graph.edgeLength(snap.edge), snap.offset, 1e-9);
+            assertEquals(-1, snap.vertex());
+        }
+    }
+
+    @Test
+    public void testRouteFromPartialEdge() {
+        Random random = new Random(5);
+        int n = graph.vertexCount();
+        for (int q = 0; q < 50; q++) {
+            int v = random.nextInt(n);
+            int t = random.nextInt(n);
+            int[] targets = new int[graph.maxDegree()];
+            int w = targets[graph.targets(v, targets) - 1];
+            double lon = graph.lonAt(v) + 0.4 * (graph.lonAt(w) - graph.lonAt(v));
+            double lat = graph.latAt(v) + 0.4 * (graph.latAt(w) - graph.latAt(v));
+            SegmentIndex.Snap start = graph.snap(lon, lat);
+            SegmentIndex.Snap dest = graph.snap(graph.lonAt(t), graph.latAt(t));
+            Router.RouteResult route = Router.route(graph, start, dest, false);
+
+            double expected = Math.min(
+                    start.offset + routeLength(start.from, t),
+                    graph.edgeLength(start.edge) - start.offset + routeLength(start.to, t));
+            if (expected == Double.POSITIVE_INFINITY) {
+                assertTrue(!route.found);
+                continue;
+            }
+            assertTrue(route.found);
+            assertEquals(expected, length(start, route), 1e-6);
+            assertEquals(graph.idAt(t), (long) route.path.get(route.path.size() - 1));
+        }
+    }
+
+    @Test
+    public void testSameEdge() {
+        int[] targets = new int[graph.maxDegree()];
+        int v = 0;
+        int w = targets[graph.targets(v, targets) - 1];
+        double dLon = graph.lonAt(w) - graph.lonAt(v), dLat = graph.latAt(w) - graph.latAt(v);
+        double lon = graph.lonAt(v), lat = graph.latAt(v);
+        SegmentIndex.Snap a = graph.snap(lon + 0.2 * dLon, lat + 0.2 * dLat);
+        SegmentIndex.Snap b = graph.snap(lon + 0.7 * dLon, lat + 0.7 * dLat);
+        assertEquals(a.edge, b.edge);
+        /* Straight along the edge, passing no vertex. */
+        for (Router.RouteResult route : new Router.RouteResult[] {
+            Router.route(graph, a, b, true), Router.route(graph, b, a, true)}) {
+            assertTrue(route.found);
+            assertEquals(0, route.path.size());
+            assertTrue(route.stats.settled <= 1);
+        }
+    }
+}
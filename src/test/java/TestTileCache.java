@@ -0,0 +1,78 @@
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestTileCache {
+    private static final String IMG_ROOT = "data/proj3_imgs/";
+
+    @Test
+    public void testHitsMissesAndBound() {
+        TileCache cache = new TileCache(new TileDirectory(IMG_ROOT), 2, 1);
+        BufferedImage a = cache.get("d1_x0_y0.png");
+        assertNotNull(a);
+        assertEquals(MapServer.TILE_SIZE, a.getWidth());
+        assertTrue(a == cache.get("d1_x0_y0.png"));
+        cache.get("d1_x0_y1.png");
+        cache.get("d1_x1_y0.png");
+        assertEquals(2, cache.size());
+        assertFalse(cache.contains("d1_x0_y0.png"));
+        assertNull(cache.get("d9_x0_y0.png"));
+        assertEquals(1, cache.hits());
+        assertEquals(4, cache.misses());
+    }
+
+    @Test
+    public void testCandidates() {
+        String[][] grid = {{"d2_x0_y1.png", "d2_x1_y1.png"}};
+        List<String> names = TilePrefetcher.candidates(grid, 2);
+        /* Ring around x 0-1, y 1 clipped to the left edge: 3 above, 3 below, 1 right. */
+        assertEquals(7 + 4 * 2, names.size());
+        assertTrue(names.contains("d2_x2_y1.png"));
+        assertTrue(names.contains("d2_x0_y0.png"));
+        assertFalse(names.contains("d2_x0_y1.png"));
+        assertTrue(names.contains("d3_x3_y3.png"));
+        assertEquals("d3_x0_y2.png", names.get(7));
+        /* No children below the deepest level. */
+        String[][] deepest = {{"d7_x5_y5.png"}};
+        assertEquals(8, TilePrefetcher.candidates(deepest, MapServer.MAX_DEPTH).size());
+    }
+
+    @Test
+    public void testPrefetchWarmsCache() throws Exception {
+        TileCache cache = new TileCache(new TileDirectory(IMG_ROOT), 64, 4);
+        TilePrefetcher prefetcher = new TilePrefetcher(cache, 64, 2);
+        try {
+            prefetcher.afterRaster(new String[][] {{"d1_x0_y0.png"}}, 1);
+            for (int i = 0; i < 200 && prefetcher.prefetched() < 7; i++) {
+                Thread.sleep(10);
+            }
+            assertEquals(7, prefetcher.prefetched());
+            assertTrue(cache.contains("d1_x1_y1.png"));
+            assertTrue(cache.contains("d2_x1_y1.png"));
+            assertEquals(0, cache.misses());
+        } finally {
+            prefetcher.shutdown();
+        }
+    }
+
+    @Test
+    public void testPausesUnderLoad() {
+        TileCache cache = new TileCache(new TileDirectory(IMG_ROOT), 64, 4);
+        TilePrefetcher prefetcher = new TilePrefetcher(cache, 64, 0);
+        try {
+            prefetcher.beginRequest();
+            prefetcher.afterRaster(new String[][] {{"d1_x0_y0.png"}}, 1);
+            assertEquals(0, prefetcher.prefetched());
+            prefetcher.endRequest();
+        } finally {
+            prefetcher.shutdown();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TestTilePack {
+    private static final String IMG_ROOT = "data/proj3_imgs/";
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testKeyOf() {
+        assertEquals(TilePack.key(3, 1, 7), TilePack.keyOf("d3_x1_y7.png"));
+        assertEquals(TilePack.key(7, 127, 100), TilePack.keyOf("d7_x127_y100.png"));
+        assertEquals(-1, TilePack.keyOf("d3_x1_y7.jpg"));
+        assertEquals(-1, TilePack.keyOf("d3_x1.png"));
+        assertEquals(-1, TilePack.keyOf(".DS_Store"));
+    }
+
+    @Test
+    public void testPackMatchesLooseFiles() throws Exception {
+        File dir = tmp.newFolder("tiles");
+        int copied = 0;
+        for (int d = 0; d <= 2; d++) {
+            for (int x = 0; x < (1 << d); x++) {
+                for (int y = 0; y < (1 << d); y++) {
+                    String name = "d" + d + "_x" + x + "_y" + y + ".png";
+                    Files.copy(new File(IMG_ROOT + name).toPath(),
+                            new File(dir, name).toPath());
+                    copied++;
+                }
+            }
+        }
+        Files.write(new File(dir, "README").toPath(), new byte[] {1, 2, 3});
+        String archive = new File(tmp.getRoot(), "tiles.pack").getPath();
+        assertEquals(copied, TilePack.pack(dir.getPath(), archive));
+
+        TileDirectory loose = new TileDirectory(dir.getPath());
+        try (TilePack pack = new TilePack(archive)) {
+            assertEquals(copied, pack.size());
+            for (int d = 0; d <= 2; d++) {
+                for (int x = 0; x < (1 << d); x++) {
+                    for (int y = 0; y < (1 << d); y++) {
+                        String name = "d" + d + "_x" + x + "_y" + y + ".png";
+                        assertArrayEquals(loose.readTile(name), pack.readTile(name));
+                        assertArrayEquals(loose.readTile(name), pack.readTile(d, x, y));
+                    }
+                }
+            }
+            assertNull(pack.readTile("d3_x0_y0.png"));
+            assertNull(pack.readTile("README"));
+            assertNull(loose.readTile("d3_x0_y0.png"));
+        }
+    }
+}
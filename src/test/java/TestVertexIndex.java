@@ -0,0 +1,83 @@
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestVertexIndex {
+    private static GraphDB graph;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        graph = SyntheticGraphs.graph(3000, 13);
+    }
+
+    /** Distance to the nearest accepted vertex, by scanning them all. */
+    private static double nearestDistance(double lon, double lat, boolean largest) {
+        double best = Double.POSITIVE_INFINITY;
+        for (int v = 0; v < graph.vertexCount(); v++) {
+            if (!largest || graph.componentOf(v) == 0) {
+                best = Math.min(best, GraphDB.distance(lon, lat, graph.lonAt(v),
+                        graph.latAt(v)));
+            }
+        }
+        return best;
+    }
+
+    private static double distanceTo(double lon, double lat, long id) {
+        return GraphDB.distance(lon, lat, graph.lon(id), graph.lat(id));
+    }
+
+    @Test
+    public void testBatchMatchesLinearScan() {
+        Random random = new Random(17);
+        double lon0 = graph.lonAt(0), lat0 = graph.latAt(0);
+        int m = 500;
+        double[] lons = new double[m], lats = new double[m];
+        for (int q = 0; q < m; q++) {
+            /* Some queries fall well outside the graph. */
+            lons[q] = lon0 + (random.nextDouble() - 0.5) * 0.2;
+            lats[q] = lat0 + (random.nextDouble() - 0.5) * 0.2;
+        }
+        for (boolean largest : new boolean[] {false, true}) {
+            long[] ids = graph.closestBatch(lons, lats, largest);
+            assertEquals(m, ids.length);
+            for (int q = 0; q < m; q++) {
+                assertEquals(nearestDistance(lons[q], lats[q], largest),
+                        distanceTo(lons[q], lats[q], ids[q]), 1e-9);
+                assertEquals(graph.closest(lons[q], lats[q], largest), ids[q]);
+            }
+        }
+    }
+
+    @Test
+    public void testVerticesFindThemselves() {
+        int n = graph.vertexCount();
+        double[] lons = new double[n], lats = new double[n];
+        for (int v = 0; v < n; v++) {
+            lons[v] = graph.lonAt(v);
+            lats[v] = graph.latAt(v);
+        }
+        long[] ids = graph.closestBatch(lons, lats, false);
+        for (int v = 0; v < n; v++) {
+            assertEquals(0, distanceTo(lons[v], lats[v], ids[v]), 1e-12);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMismatchedBatch() {
+        graph.closestBatch(new double[2], new double[1], false);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNaNHasNoClosest() {
+        graph.closestBatch(new double[]{graph.lonAt(0), Double.NaN},
+                new double[]{graph.latAt(0), 0}, false);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNaNHasNoClosestVertex() {
+        graph.closest(Double.NaN, graph.latAt(0), false);
+    }
+}
@@ -0,0 +1,70 @@
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestWayTable {
+    private static final String OSM_DB_PATH_TINY = "../library-sp18/data/tiny-clean.osm.xml";
+
+    @Test
+    public void testInterning() {
+        WayTable ways = new WayTable();
+        int a = ways.add("Oak Street", "residential", 25, Profile.ALL);
+        int b = ways.add("Oak Street", "residential", 25, Profile.ALL);
+        int c = ways.add("Oak Street", "primary", 35, Profile.ALL);
+        int d = ways.add("", "residential", 0, Profile.ALL);
+        int f = ways.add("Oak Street", "residential", 25, Profile.WALK.bit());
+        assertEquals(a, b);
+        assertNotEquals(a, c);
+        assertNotEquals(a, f);
+        assertEquals(4, ways.size());
+        assertEquals(Profile.WALK.bit(), ways.access(f));
+        assertEquals(ways.nameId(a), ways.nameId(c));
+        assertEquals(WayTable.NO_NAME, ways.nameId(d));
+        assertEquals("Oak Street", ways.name(c));
+        assertEquals("primary", ways.highway(c));
+        assertEquals(35, ways.maxSpeed(c), 0);
+        assertEquals(ways.nameId(a), ways.nameIdOf("Oak Street"));
+        assertEquals(-1, ways.nameIdOf("Elm Street"));
+    }
+
+    @Test
+    public void testEdgesCarryWays() {
+        GraphDB g = new GraphDB(OSM_DB_PATH_TINY);
+        WayTable ways = g.ways();
+        assertEquals(4, ways.size());
+        int v = g.indexOf(63L);
+        int e = g.edgeBetween(v, g.indexOf(41L), -1);
+        assertEquals("11/41/63 southeast side highway", ways.name(g.edgeWay(e)));
+        assertEquals(25, ways.maxSpeed(g.edgeWay(e)), 0);
+        assertEquals(-1, g.edgeBetween(v, g.indexOf(11L), -1));
+        assertTrue(g.containsStreetName(63L, "scenic 22/55/63/66 highway"));
+        assertFalse(g.containsStreetName(63L, "11/21 connector road"));
+    }
+
+    @Test
+    public void testDirectionsFollowWays() {
+        GraphDB g = new GraphDB(OSM_DB_PATH_TINY);
+        List<Long> route = Arrays.asList(22L, 11L, 41L, 63L, 66L);
+        List<Router.NavigationDirection> directions = Router.routeDirections(g, route);
+        assertEquals(3, directions.size());
+        assertEquals("11/21 connector road", directions.get(0).way);
+        assertEquals(Router.NavigationDirection.START, directions.get(0).direction);
+        assertEquals("11/41/63 southeast side highway", directions.get(1).way);
+        assertEquals("scenic 22/55/63/66 highway", directions.get(2).way);
+        double total = 0, expected = 0;
+        for (Router.NavigationDirection d : directions) {
+            total += d.distance;
+        }
+        for (int i = 1; i < route.size(); i++) {
+            expected += g.distance(route.get(i - 1), route.get(i));
+        }
+        /* Edge lengths are stored as floats, good to about a millionth of a mile here. */
+        assertEquals(expected, total, 1e-6);
+    }
+}
@@ -0,0 +1,85 @@
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestWorkerPool {
+
+    @Test
+    public void testReturnsResultAndRethrows() {
+        WorkerPool pool = new WorkerPool("test", 1, 1);
+        try {
+            assertEquals("done", pool.call(() -> "done"));
+            try {
+                pool.call(() -> {
+                    throw new IllegalStateException("boom");
+                });
+                fail("Expected the worker's exception");
+            } catch (IllegalStateException e) {
+                assertEquals("boom", e.getMessage());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testRejectsWhenSaturated() throws Exception {
+        WorkerPool pool = new WorkerPool("test", 1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            /* One task runs, one waits in the queue; the third is turned away. */
+            blockOn(pool, release);
+            blockOn(pool, release);
+            while (pool.queued() < 1) {
+                Thread.sleep(1);
+            }
+            try {
+                pool.call(() -> "late");
+                fail("Expected the saturated pool to reject work");
+            } catch (RejectedExecutionException e) {
+                assertEquals(1, pool.rejected());
+            }
+        } finally {
+            release.countDown();
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testSaturatedPoolDoesNotDelayAnother() throws Exception {
+        WorkerPool raster = new WorkerPool("raster", 2, 4);
+        WorkerPool search = new WorkerPool("search", 1, 4);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            for (int i = 0; i < 6; i++) {
+                blockOn(raster, release);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < 100; i++) {
+                assertEquals("ok", search.call(() -> "ok"));
+            }
+            long elapsed = System.nanoTime() - start;
+            assertTrue(elapsed < TimeUnit.SECONDS.toNanos(1));
+        } finally {
+            release.countDown();
+            raster.shutdown();
+            search.shutdown();
+        }
+    }
+
+    /** Starts a caller that occupies pool until release is counted down. */
+    private static void blockOn(WorkerPool pool, CountDownLatch release) {
+        Thread t = new Thread(() -> pool.call(() -> {
+            release.await();
+            return null;
+        }));
+        t.setDaemon(true);
+        t.start();
+    }
+}